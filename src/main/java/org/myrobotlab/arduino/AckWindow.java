@@ -0,0 +1,295 @@
+package org.myrobotlab.arduino;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.myrobotlab.framework.QueueStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Sliding window of messages sent to MrlComm which have not been acked yet.
+ *
+ * <pre>
+ * Instead of waiting for the ack of every message, up to windowSize messages
+ * are sent before the sender blocks. Each message gets a trailing sequence
+ * number (0-255):
+ *
+ *   MAGIC_NUMBER|MSG_SIZE+1|METHOD_NUMBER|PARAM0|PARAM1 ...|SEQ
+ *
+ * MrlComm only processes the next message in sequence and acks it with
+ * publishAck/function/seq. Acks are cumulative. When the oldest message is
+ * not acked within the timeout it and everything sent after it is
+ * retransmitted (go back n) - MrlComm drops the ones it already processed.
+ *
+ * The bytes of un-acked messages are capped too, so the window never
+ * overruns MrlComm's serial receive buffer.
+ * </pre>
+ */
+public class AckWindow {
+
+  public final static Logger log = LoggerFactory.getLogger(AckWindow.class);
+
+  public interface Writer {
+    void write(byte[] data) throws Exception;
+  }
+
+  static class Pending {
+    final int seq;
+    final byte[] data;
+    final long firstTs;
+    long ts;
+    int retries;
+
+    Pending(int seq, byte[] data, long ts) {
+      this.seq = seq;
+      this.data = data;
+      this.firstTs = ts;
+      this.ts = ts;
+    }
+  }
+
+  final String name;
+
+  final Writer writer;
+
+  final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+  /**
+   * max un-acked messages
+   */
+  final int windowSize;
+
+  /**
+   * max un-acked bytes - MrlComm's serial receive buffer
+   */
+  final int maxBytes;
+
+  long timeoutMs = 500;
+
+  int maxRetries = 3;
+
+  // all below guarded by this
+  boolean closed = false;
+
+  int nextSeq = 0;
+
+  int bytes = 0;
+
+  int acked = 0;
+
+  int lastStatsAcked = 0;
+
+  long retransmitted = 0;
+
+  long dropped = 0;
+
+  long lag = 0;
+
+  long maxLag = 0;
+
+  long lastStatsTs = System.currentTimeMillis();
+
+  /**
+   * @param name
+   *          name for logging and stats
+   * @param windowSize
+   *          max un-acked messages, less than 128 so sequence numbers stay
+   *          unique in the window
+   * @param maxBytes
+   *          max un-acked bytes
+   * @param writer
+   *          writes a message to the serial port
+   */
+  public AckWindow(String name, int windowSize, int maxBytes, Writer writer) {
+    if (windowSize < 1 || windowSize > 127) {
+      throw new IllegalArgumentException(String.format("window size %d must be 1 to 127", windowSize));
+    }
+    this.name = name;
+    this.windowSize = windowSize;
+    this.maxBytes = maxBytes;
+    this.writer = writer;
+  }
+
+  /**
+   * sends a message with the next sequence number - blocks while the window
+   * is full, retransmitting if the oldest message times out
+   *
+   * @param message
+   *          MAGIC_NUMBER|MSG_SIZE|METHOD_NUMBER|PARAMS ...
+   * @return false if the window gave up - the messages were not acked after
+   *         maxRetries, or the window was closed
+   * @throws Exception
+   *           serial write failed, or the message with its sequence byte is
+   *           larger than maxBytes
+   */
+  public synchronized boolean send(byte[] message) throws Exception {
+    if (message.length + 1 > maxBytes) {
+      throw new IllegalArgumentException(String.format("message of %d bytes and its sequence byte > %d bytes", message.length, maxBytes));
+    }
+    byte[] data = Arrays.copyOf(message, message.length + 1);
+    data[1] = (byte) (message[1] + 1);
+
+    while (!closed && !pending.isEmpty() && (pending.size() >= windowSize || bytes + data.length > maxBytes)) {
+      long wait = pending.peek().ts + timeoutMs - System.currentTimeMillis();
+      if (wait > 0) {
+        wait(wait);
+      } else {
+        retransmit();
+      }
+    }
+    if (closed) {
+      return false;
+    }
+
+    int seq = nextSeq;
+    nextSeq = (nextSeq + 1) & 0xFF;
+    data[data.length - 1] = (byte) seq;
+    pending.add(new Pending(seq, data, System.currentTimeMillis()));
+    bytes += data.length;
+    writer.write(data);
+    return true;
+  }
+
+  /**
+   * MrlComm acked a message - acks all messages up to and including it
+   *
+   * @param seq
+   *          sequence number of the acked message
+   */
+  public synchronized void ack(int seq) {
+    boolean inWindow = false;
+    for (Pending p : pending) {
+      if (p.seq == seq) {
+        inWindow = true;
+        break;
+      }
+    }
+    if (!inWindow) {
+      // ack of an already acked message - MrlComm got a retransmit
+      return;
+    }
+    long now = System.currentTimeMillis();
+    Pending p;
+    do {
+      p = pending.poll();
+      bytes -= p.data.length;
+      ++acked;
+      lag = now - p.firstTs;
+      if (lag > maxLag) {
+        maxLag = lag;
+      }
+    } while (p.seq != seq);
+    notifyAll();
+  }
+
+  /**
+   * retransmits if the oldest message timed out - for when nothing is sent
+   * which would do it
+   */
+  public synchronized void checkTimeouts() {
+    Pending oldest = pending.peek();
+    if (oldest != null && System.currentTimeMillis() - oldest.ts >= timeoutMs) {
+      try {
+        retransmit();
+      } catch (Exception e) {
+        log.error("{} retransmit threw", name, e);
+      }
+    }
+  }
+
+  /**
+   * go back n - resends all un-acked messages, gives up after maxRetries
+   */
+  private void retransmit() throws Exception {
+    Pending oldest = pending.peek();
+    if (oldest.retries >= maxRetries) {
+      log.error("{} seq {} not acked after {} retries - dropping {} messages", name, oldest.seq, oldest.retries, pending.size());
+      dropped += pending.size();
+      close();
+      return;
+    }
+    ++oldest.retries;
+    long now = System.currentTimeMillis();
+    log.warn("{} seq {} not acked in {} ms - retransmitting {} messages", name, oldest.seq, timeoutMs, pending.size());
+    Iterator<Pending> it = pending.iterator();
+    while (it.hasNext()) {
+      Pending p = it.next();
+      p.ts = now;
+      ++retransmitted;
+      writer.write(p.data);
+    }
+  }
+
+  /**
+   * waits until all sent messages are acked or the window gives up
+   */
+  public synchronized void drain() {
+    try {
+      while (!closed && !pending.isEmpty()) {
+        long wait = pending.peek().ts + timeoutMs - System.currentTimeMillis();
+        if (wait > 0) {
+          wait(wait);
+        } else {
+          retransmit();
+        }
+      }
+    } catch (Exception e) {
+      log.error("{} drain threw", name, e);
+    }
+  }
+
+  /**
+   * releases blocked senders - un-acked messages are forgotten
+   */
+  public synchronized void close() {
+    closed = true;
+    pending.clear();
+    bytes = 0;
+    notifyAll();
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  public synchronized int size() {
+    return pending.size();
+  }
+
+  public void setTimeout(long timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+  public void setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * snapshot of un-acked and acked messages, ack lag and retransmits - max lag
+   * is reset
+   *
+   * @return the stats
+   */
+  public synchronized QueueStats getStats() {
+    QueueStats stats = new QueueStats();
+    stats.name = name;
+    stats.currentQueueCount = pending.size();
+    stats.bytes = bytes;
+    stats.total = acked;
+    stats.interval = acked - lastStatsAcked;
+    stats.ts = System.currentTimeMillis();
+    stats.lastTS = lastStatsTs;
+    stats.delta = stats.ts - stats.lastTS;
+    stats.lag = lag;
+    stats.maxLag = maxLag;
+    stats.dropped = dropped;
+    stats.retransmitted = retransmitted;
+    lastStatsTs = stats.ts;
+    lastStatsAcked = acked;
+    maxLag = 0;
+    return stats;
+  }
+
+}
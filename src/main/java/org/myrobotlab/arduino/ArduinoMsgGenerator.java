@@ -26,7 +26,7 @@ public class ArduinoMsgGenerator {
 
   public transient final static Logger log = LoggerFactory.getLogger(ArduinoMsgGenerator.class);
 
-  static final Integer MRLCOMM_VERSION = 68;
+  static final Integer MRLCOMM_VERSION = 72;
 
   private String ackEnabled = "true";
 
@@ -223,7 +223,7 @@ public class ArduinoMsgGenerator {
     idlToJava = idlToJava.replace("%invokeIfService%", "true");
     idlToJava = idlToJava.replace("%javaArduinoClass%", MrlCommPublisher.class.getSimpleName());
     // Msg doesn't publish acks back to MrlComm
-    idlToJava = idlToJava.replace("%publishAcks%", "");
+    idlToJava = idlToJava.replace("%processCommand%", "processCommand(actualCommand);");
     // on startup Msg needs to see an MrlBeginMessage before it's clear to send
     // data.
     idlToJava = idlToJava.replace("%clearToSend%", "false");
@@ -234,8 +234,9 @@ public class ArduinoMsgGenerator {
     virtualJava = virtualJava.replace("%ackEnabled%", "false");
     virtualJava = virtualJava.replace("%invokeIfService%", "false");
 
-    // virtual message should publish an ack after each processCommand call.
-    virtualJava = virtualJava.replace("%publishAcks%", "publishAck(method);");
+    // virtual MrlComm processes the command and publishes its ack - in
+    // sequence order when the ack window is enabled
+    virtualJava = virtualJava.replace("%processCommand%", "arduino.processCommand(actualCommand);");
     // virtual message doesn't need to wait for a begin message to be clear to
     // send.
     virtualJava = virtualJava.replace("%clearToSend%", "true");
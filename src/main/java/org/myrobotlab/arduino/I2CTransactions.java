@@ -0,0 +1,253 @@
+package org.myrobotlab.arduino;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * I2C reads sent to MrlComm which are waiting for their data.
+ *
+ * <pre>
+ * Each read gets a request id (0-255) which MrlComm sends back with the data:
+ *
+ *   &gt; i2cRead/deviceId/deviceAddress/size/requestId
+ *   &gt; i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
+ *   &lt; publishI2cData/deviceId/requestId/[] data
+ *
+ * so data is matched to the read which asked for it and not to whoever is
+ * waiting next. Up to maxInFlight reads per bus are sent without waiting for
+ * data, further ones are queued and sent as data comes back. A sent read which
+ * gets no data within the timeout completes exceptionally and frees its slot.
+ * </pre>
+ *
+ * Reads freed by data or a timeout are followed up on a worker thread of this
+ * bus, the serial reader and the jvm wide timeout thread of CompletableFuture
+ * never block on a send.
+ */
+public class I2CTransactions {
+
+  public final static Logger log = LoggerFactory.getLogger(I2CTransactions.class);
+
+  public interface Sender {
+    void send(Transaction transaction) throws Exception;
+  }
+
+  public static class Transaction {
+    /**
+     * MrlComm device id of the bus
+     */
+    public final int bus;
+    public final int deviceAddress;
+    /**
+     * written before reading - null for a plain read
+     */
+    public final int[] write;
+    public final int readSize;
+    public int requestId = -1;
+    final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+    Transaction(int bus, int deviceAddress, int[] write, int readSize) {
+      this.bus = bus;
+      this.deviceAddress = deviceAddress;
+      this.write = write;
+      this.readSize = readSize;
+    }
+  }
+
+  final String name;
+
+  final Sender sender;
+
+  /**
+   * sends the reads queued behind completed ones - one thread, gone when idle
+   */
+  final ThreadPoolExecutor worker;
+
+  // all below guarded by this
+  /**
+   * sent reads by request id
+   */
+  final Map<Integer, Transaction> inFlight = new HashMap<>();
+
+  /**
+   * reads waiting for a free slot, by bus
+   */
+  final Map<Integer, ArrayDeque<Transaction>> queued = new HashMap<>();
+
+  /**
+   * number of sent reads by bus
+   */
+  final Map<Integer, Integer> busInFlight = new HashMap<>();
+
+  int nextRequestId = 0;
+
+  int maxInFlight = 4;
+
+  long timeoutMs = 1000;
+
+  /**
+   * @param name
+   *          name for logging
+   * @param sender
+   *          sends a read to MrlComm
+   */
+  public I2CTransactions(String name, Sender sender) {
+    this.name = name;
+    this.sender = sender;
+    worker = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+      Thread t = new Thread(r, name + "_i2c");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * queue a read
+   *
+   * @param bus
+   *          MrlComm device id of the bus
+   * @param deviceAddress
+   *          address of the i2c device
+   * @param write
+   *          bytes written before reading (e.g. the register), null for none
+   * @param readSize
+   *          number of bytes to read
+   * @return future completed with the data read
+   */
+  public CompletableFuture<byte[]> submit(int bus, int deviceAddress, int[] write, int readSize) {
+    Transaction t = new Transaction(bus, deviceAddress, write, readSize);
+    synchronized (this) {
+      queued.computeIfAbsent(bus, k -> new ArrayDeque<>()).add(t);
+    }
+    // whenComplete after queuing - a send failure completes it right away
+    t.future.whenComplete((data, e) -> done(t, e));
+    pump(bus);
+    return t.future;
+  }
+
+  /**
+   * sends queued reads of a bus while it has free slots - sending is done
+   * outside the lock, the serial write may block on the ack window while
+   * data is coming back
+   */
+  private void pump(int bus) {
+    while (true) {
+      Transaction t = null;
+      synchronized (this) {
+        ArrayDeque<Transaction> q = queued.get(bus);
+        int count = busInFlight.getOrDefault(bus, 0);
+        if (q == null || q.isEmpty() || count >= maxInFlight || inFlight.size() > 255) {
+          return;
+        }
+        t = q.poll();
+        while (inFlight.containsKey(nextRequestId)) {
+          nextRequestId = (nextRequestId + 1) & 0xFF;
+        }
+        t.requestId = nextRequestId;
+        nextRequestId = (nextRequestId + 1) & 0xFF;
+        inFlight.put(t.requestId, t);
+        busInFlight.put(bus, count + 1);
+      }
+      // the timeout starts when the read is sent, not while it is queued
+      t.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+      try {
+        sender.send(t);
+      } catch (Exception e) {
+        log.error("{} i2c request {} send threw", name, t.requestId, e);
+        t.future.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * a read completed, timed out or was cancelled - frees its slot, the next
+   * read is sent by the worker
+   */
+  private void done(Transaction t, Throwable e) {
+    synchronized (this) {
+      if (t.requestId >= 0 && inFlight.get(t.requestId) == t) {
+        inFlight.remove(t.requestId);
+        busInFlight.merge(t.bus, -1, Integer::sum);
+      } else {
+        ArrayDeque<Transaction> q = queued.get(t.bus);
+        if (q != null) {
+          q.remove(t);
+        }
+      }
+    }
+    if (e != null && !(e instanceof CancellationException)) {
+      log.warn("{} i2c request {} bus {} address {} failed - {}", name, t.requestId, t.bus, t.deviceAddress, e.toString());
+    }
+    worker.execute(() -> pump(t.bus));
+  }
+
+  /**
+   * data from MrlComm
+   *
+   * @param bus
+   *          MrlComm device id of the bus
+   * @param requestId
+   *          request id of the read
+   * @param data
+   *          the data read
+   * @return false if no read was waiting for it - it timed out
+   */
+  public boolean onData(int bus, int requestId, int[] data) {
+    Transaction t;
+    synchronized (this) {
+      t = inFlight.get(requestId);
+    }
+    if (t == null || t.bus != bus) {
+      log.info("{} dropping i2c data of bus {} request {} - nothing waiting for it", name, bus, requestId);
+      return false;
+    }
+    byte[] bytes = new byte[data.length];
+    for (int i = 0; i < data.length; ++i) {
+      bytes[i] = (byte) data[i];
+    }
+    return t.future.complete(bytes);
+  }
+
+  /**
+   * fails all reads - e.g. on disconnect
+   */
+  public void cancelAll() {
+    List<Transaction> all = new ArrayList<>();
+    synchronized (this) {
+      all.addAll(inFlight.values());
+      for (ArrayDeque<Transaction> q : queued.values()) {
+        all.addAll(q);
+      }
+    }
+    for (Transaction t : all) {
+      t.future.cancel(false);
+    }
+  }
+
+  public synchronized int size() {
+    int size = inFlight.size();
+    for (ArrayDeque<Transaction> q : queued.values()) {
+      size += q.size();
+    }
+    return size;
+  }
+
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  public void setTimeout(long timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+}
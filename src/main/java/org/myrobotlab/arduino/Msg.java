@@ -10,6 +10,7 @@ import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.logging.Level;
 
 import org.myrobotlab.arduino.virtual.MrlComm;
@@ -39,6 +40,11 @@ import org.myrobotlab.string.StringUtil;
  The binary wire format of an MrlCommPublisher is:
 
  MAGIC_NUMBER|MSG_SIZE|METHOD_NUMBER|PARAM0|PARAM1 ...
+
+ With the ack window enabled (setAckWindow) messages to MrlComm carry a
+ trailing sequence number, which MrlComm returns in publishAck:
+
+ MAGIC_NUMBER|MSG_SIZE|METHOD_NUMBER|PARAM0|PARAM1 ...|SEQ
  
  </pre>
 
@@ -70,7 +76,7 @@ public class Msg {
   public transient final static Logger log = LoggerFactory.getLogger(Msg.class);
   public static final int MAX_MSG_SIZE = 64;
   public static final int MAGIC_NUMBER = 170; // 10101010
-  public static final int MRLCOMM_VERSION = 68;
+  public static final int MRLCOMM_VERSION = 72;
   // send buffer
   private int sendBufferSize = 0;
   private int sendBuffer[] = new int[MAX_MSG_SIZE];
@@ -95,6 +101,9 @@ public class Msg {
     volatile boolean pendingMessage = false;
   }
   transient AckLock ackRecievedLock = new AckLock();
+  // un-acked messages when MrlComm acks a window of messages - null when
+  // every message waits for its ack
+  private transient volatile AckWindow ackWindow = null;
   // recording related
   transient OutputStream record = null;
   transient StringBuilder rxBuffer = new StringBuilder();
@@ -127,7 +136,7 @@ public class Msg {
   public final static int SOFT_RESET = 7;
   // > enableAck/bool enabled
   public final static int ENABLE_ACK = 8;
-  // < publishAck/function
+  // < publishAck/function/seq
   public final static int PUBLISH_ACK = 9;
   // > echo/f32 myFloat/myByte/f32 secondFloat
   public final static int ECHO = 10;
@@ -141,13 +150,13 @@ public class Msg {
   public final static int DEVICE_DETACH = 14;
   // > i2cBusAttach/deviceId/i2cBus
   public final static int I2C_BUS_ATTACH = 15;
-  // > i2cRead/deviceId/deviceAddress/size
+  // > i2cRead/deviceId/deviceAddress/size/requestId
   public final static int I2C_READ = 16;
   // > i2cWrite/deviceId/deviceAddress/[] data
   public final static int I2C_WRITE = 17;
-  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
+  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
   public final static int I2C_WRITE_READ = 18;
-  // < publishI2cData/deviceId/[] data
+  // < publishI2cData/deviceId/requestId/[] data
   public final static int PUBLISH_I2C_DATA = 19;
   // > neoPixelAttach/deviceId/pin/b16 numPixels/depth
   public final static int NEO_PIXEL_ATTACH = 20;
@@ -229,6 +238,14 @@ public class Msg {
   public final static int PUBLISH_MRL_COMM_BEGIN = 58;
   // > servoStop/deviceId
   public final static int SERVO_STOP = 59;
+  // > setAckWindow/windowSize
+  public final static int SET_ACK_WINDOW = 60;
+  // > servoMoveToMicrosecondsMulti/[] moves
+  public final static int SERVO_MOVE_TO_MICROSECONDS_MULTI = 61;
+  // > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+  public final static int I2C_SAMPLE = 62;
+  // < publishI2cSamples/deviceId/requestId/bu32 timestamp/[] data
+  public final static int PUBLISH_I2C_SAMPLES = 63;
 
 
 /**
@@ -237,10 +254,10 @@ public class Msg {
   
   // public void publishMRLCommError(String errorMsg/*str*/){}
   // public void publishBoardInfo(Integer version/*byte*/, Integer boardType/*byte*/, Integer microsPerLoop/*b16*/, Integer sram/*b16*/, Integer activePins/*byte*/, int[] deviceSummary/*[]*/){}
-  // public void publishAck(Integer function/*byte*/){}
+  // public void publishAck(Integer function/*byte*/, Integer seq/*byte*/){}
   // public void publishEcho(Float myFloat/*f32*/, Integer myByte/*byte*/, Float secondFloat/*f32*/){}
   // public void publishCustomMsg(int[] msg/*[]*/){}
-  // public void publishI2cData(Integer deviceId/*byte*/, int[] data/*[]*/){}
+  // public void publishI2cData(Integer deviceId/*byte*/, Integer requestId/*byte*/, int[] data/*[]*/){}
   // public void publishDebug(String debugMsg/*str*/){}
   // public void publishPinArray(int[] data/*[]*/){}
   // public void publishServoEvent(Integer deviceId/*byte*/, Integer eventType/*byte*/, Integer currentPos/*b16*/, Integer targetPos/*b16*/){}
@@ -248,6 +265,7 @@ public class Msg {
   // public void publishUltrasonicSensorData(Integer deviceId/*byte*/, Integer echoTime/*b16*/){}
   // public void publishEncoderData(Integer deviceId/*byte*/, Integer position/*b16*/){}
   // public void publishMrlCommBegin(Integer version/*byte*/){}
+  // public void publishI2cSamples(Integer deviceId/*byte*/, Integer requestId/*byte*/, Long timestamp/*bu32*/, int[] data/*[]*/){}
   
   
 
@@ -275,11 +293,23 @@ public class Msg {
       log.info("Process Command: {} Method: {}", Msg.methodToString(method), ioCmd);
     }
     
+    AckWindow window = ackWindow;
+    if (window != null) {
+      // retransmit timed out messages - MrlComm's board info keeps this
+      // going when nothing else is sent or received
+      window.checkTimeouts();
+    }
+
     if (method == PUBLISH_ACK) {
       // We saw an ack!  we ack this internally right away, and down below in the generated code, 
       // call publishAck on the MrlCommPublisher
       Integer function = ioCmd[startPos+1]; // bu8
-      ackReceived(function);
+      Integer seq = ioCmd[startPos+2]; // bu8
+      if (window != null) {
+        window.ack(seq);
+      } else {
+        ackReceived(function);
+      }
     }
     
     if (method != PUBLISH_MRL_COMM_BEGIN) {
@@ -292,6 +322,8 @@ public class Msg {
       // Process!
       log.info("Clear to process!!!!!!!!!!!!!!!!!!");
       this.clearToSend = true;
+      // MrlComm (re)started - it acks one message at a time
+      closeAckWindow();
     }
     switch (method) {
     case PUBLISH_MRLCOMM_ERROR: {
@@ -363,15 +395,19 @@ public class Msg {
     case PUBLISH_ACK: {
       Integer function = ioCmd[startPos+1]; // bu8
       startPos += 1;
+      Integer seq = ioCmd[startPos+1]; // bu8
+      startPos += 1;
       if(invoke){
-        arduino.invoke("publishAck",  function);
+        arduino.invoke("publishAck",  function,  seq);
       } else { 
-         arduino.publishAck( function);
+         arduino.publishAck( function,  seq);
       }
       if(record != null){
         rxBuffer.append("< publishAck");
         rxBuffer.append("/");
         rxBuffer.append(function);
+        rxBuffer.append("/");
+        rxBuffer.append(seq);
         rxBuffer.append("\n");
         try{
           record.write(rxBuffer.toString().getBytes());
@@ -440,18 +476,22 @@ public class Msg {
     case PUBLISH_I2C_DATA: {
       Integer deviceId = ioCmd[startPos+1]; // bu8
       startPos += 1;
+      Integer requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
       int[] data = subArray(ioCmd, startPos+2, ioCmd[startPos+1]);
       startPos += 1 + ioCmd[startPos+1];
       if(invoke){
-        arduino.invoke("publishI2cData",  deviceId,  data);
+        arduino.invoke("publishI2cData",  deviceId,  requestId,  data);
       } else { 
-         arduino.publishI2cData( deviceId,  data);
+         arduino.publishI2cData( deviceId,  requestId,  data);
       }
       if(record != null){
         rxBuffer.append("< publishI2cData");
         rxBuffer.append("/");
         rxBuffer.append(deviceId);
         rxBuffer.append("/");
+        rxBuffer.append(requestId);
+        rxBuffer.append("/");
         rxBuffer.append(Arrays.toString(data));
         rxBuffer.append("\n");
         try{
@@ -649,6 +689,41 @@ public class Msg {
 
       break;
     }
+    case PUBLISH_I2C_SAMPLES: {
+      Integer deviceId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      Integer requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      Long timestamp = bu32(ioCmd, startPos+1);
+      startPos += 4; //bu32
+      int[] data = subArray(ioCmd, startPos+2, ioCmd[startPos+1]);
+      startPos += 1 + ioCmd[startPos+1];
+      if(invoke){
+        arduino.invoke("publishI2cSamples",  deviceId,  requestId,  timestamp,  data);
+      } else { 
+         arduino.publishI2cSamples( deviceId,  requestId,  timestamp,  data);
+      }
+      if(record != null){
+        rxBuffer.append("< publishI2cSamples");
+        rxBuffer.append("/");
+        rxBuffer.append(deviceId);
+        rxBuffer.append("/");
+        rxBuffer.append(requestId);
+        rxBuffer.append("/");
+        rxBuffer.append(timestamp);
+        rxBuffer.append("/");
+        rxBuffer.append(Arrays.toString(data));
+        rxBuffer.append("\n");
+        try{
+          record.write(rxBuffer.toString().getBytes());
+          rxBuffer.setLength(0);
+        } catch (IOException e) {
+          log.warn("failed recording bytes.", e); 
+        }
+      }
+
+      break;
+    }
     
     }
   }
@@ -975,18 +1050,19 @@ public class Msg {
     }
   }
 
-  public synchronized byte[] i2cRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer size/*byte*/) {
+  public synchronized byte[] i2cRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer size/*byte*/, Integer requestId/*byte*/) {
     if (debug) {
       log.info("Sending Message: i2cRead to {}", serial.getName());
     }
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
       appendMessage(baos, MAGIC_NUMBER);
-      appendMessage(baos, 1 + 1 + 1 + 1); // size
+      appendMessage(baos, 1 + 1 + 1 + 1 + 1); // size
       appendMessage(baos, I2C_READ); // msgType = 16
       appendMessage(baos, deviceId);
       appendMessage(baos, deviceAddress);
       appendMessage(baos, size);
+      appendMessage(baos, requestId);
  
       byte[] message = sendMessage(baos);
       if (ackEnabled){
@@ -1000,6 +1076,8 @@ public class Msg {
         txBuffer.append(deviceAddress);
         txBuffer.append("/");
         txBuffer.append(size);
+        txBuffer.append("/");
+        txBuffer.append(requestId);
         txBuffer.append("\n");
         record.write(txBuffer.toString().getBytes());
         txBuffer.setLength(0);
@@ -1049,19 +1127,20 @@ public class Msg {
     }
   }
 
-  public synchronized byte[] i2cWriteRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer readSize/*byte*/, Integer writeValue/*byte*/) {
+  public synchronized byte[] i2cWriteRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer readSize/*byte*/, Integer writeValue/*byte*/, Integer requestId/*byte*/) {
     if (debug) {
       log.info("Sending Message: i2cWriteRead to {}", serial.getName());
     }
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
       appendMessage(baos, MAGIC_NUMBER);
-      appendMessage(baos, 1 + 1 + 1 + 1 + 1); // size
+      appendMessage(baos, 1 + 1 + 1 + 1 + 1 + 1); // size
       appendMessage(baos, I2C_WRITE_READ); // msgType = 18
       appendMessage(baos, deviceId);
       appendMessage(baos, deviceAddress);
       appendMessage(baos, readSize);
       appendMessage(baos, writeValue);
+      appendMessage(baos, requestId);
  
       byte[] message = sendMessage(baos);
       if (ackEnabled){
@@ -1077,6 +1156,8 @@ public class Msg {
         txBuffer.append(readSize);
         txBuffer.append("/");
         txBuffer.append(writeValue);
+        txBuffer.append("/");
+        txBuffer.append(requestId);
         txBuffer.append("\n");
         record.write(txBuffer.toString().getBytes());
         txBuffer.setLength(0);
@@ -2238,6 +2319,117 @@ public class Msg {
     }
   }
 
+  public synchronized byte[] setAckWindow(Integer windowSize/*byte*/) {
+    if (debug) {
+      log.info("Sending Message: setAckWindow to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + 1); // size
+      appendMessage(baos, SET_ACK_WINDOW); // msgType = 60
+      appendMessage(baos, windowSize);
+ 
+      byte[] message = sendMessage(baos);
+      if (ackEnabled){
+        waitForAck();
+      }
+      if(record != null){
+        txBuffer.append("> setAckWindow");
+        txBuffer.append("/");
+        txBuffer.append(windowSize);
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+	} catch (Exception e) {
+      log.error("setAckWindow threw",e);
+      return null;
+    }
+  }
+
+  public synchronized byte[] servoMoveToMicrosecondsMulti(int[] moves/*[]*/) {
+    if (debug) {
+      log.info("Sending Message: servoMoveToMicrosecondsMulti to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + (1 + moves.length)); // size
+      appendMessage(baos, SERVO_MOVE_TO_MICROSECONDS_MULTI); // msgType = 61
+      appendMessage(baos, moves);
+ 
+      byte[] message = sendMessage(baos);
+      if (ackEnabled){
+        waitForAck();
+      }
+      if(record != null){
+        txBuffer.append("> servoMoveToMicrosecondsMulti");
+        txBuffer.append("/");
+        txBuffer.append(Arrays.toString(moves));
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+	} catch (Exception e) {
+      log.error("servoMoveToMicrosecondsMulti threw",e);
+      return null;
+    }
+  }
+
+  public synchronized byte[] i2cSample(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer registerAddress/*byte*/, Integer size/*byte*/, Integer interval/*b16*/, Integer batchSize/*byte*/, Integer requestId/*byte*/) {
+    if (debug) {
+      log.info("Sending Message: i2cSample to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + 1 + 1 + 1 + 1 + 2 + 1 + 1); // size
+      appendMessage(baos, I2C_SAMPLE); // msgType = 62
+      appendMessage(baos, deviceId);
+      appendMessage(baos, deviceAddress);
+      appendMessage(baos, registerAddress);
+      appendMessage(baos, size);
+      appendMessageb16(baos, interval);
+      appendMessage(baos, batchSize);
+      appendMessage(baos, requestId);
+ 
+      byte[] message = sendMessage(baos);
+      if (ackEnabled){
+        waitForAck();
+      }
+      if(record != null){
+        txBuffer.append("> i2cSample");
+        txBuffer.append("/");
+        txBuffer.append(deviceId);
+        txBuffer.append("/");
+        txBuffer.append(deviceAddress);
+        txBuffer.append("/");
+        txBuffer.append(registerAddress);
+        txBuffer.append("/");
+        txBuffer.append(size);
+        txBuffer.append("/");
+        txBuffer.append(interval);
+        txBuffer.append("/");
+        txBuffer.append(batchSize);
+        txBuffer.append("/");
+        txBuffer.append(requestId);
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+	} catch (Exception e) {
+      log.error("i2cSample threw",e);
+      return null;
+    }
+  }
+
 
   public static String methodToString(int method) {
     switch (method) {
@@ -2418,6 +2610,18 @@ public class Msg {
     case SERVO_STOP:{
       return "servoStop";
     }
+    case SET_ACK_WINDOW:{
+      return "setAckWindow";
+    }
+    case SERVO_MOVE_TO_MICROSECONDS_MULTI:{
+      return "servoMoveToMicrosecondsMulti";
+    }
+    case I2C_SAMPLE:{
+      return "i2cSample";
+    }
+    case PUBLISH_I2C_SAMPLES:{
+      return "publishI2cSamples";
+    }
 
     default: {
       return "ERROR UNKNOWN METHOD (" + Integer.toString(method) + ")";
@@ -2555,7 +2759,6 @@ public class Msg {
           }
           // process the command.
           processCommand(actualCommand);
-          
           // re-init parser
           Arrays.fill(ioCmd, 0); // optimize remove
           msgSize = 0;
@@ -2663,11 +2866,27 @@ public class Msg {
   synchronized byte[] sendMessage(ByteArrayOutputStream baos) throws Exception {
     byte[] message = baos.toByteArray();
 
-    if (message.length > MAX_MSG_SIZE) {
-      log.error("**** message size {} > MAX_MSG_SIZE {} - not sending ****", MAX_MSG_SIZE, message.length);
+    AckWindow window = ackWindow;
+    // the ack window appends a sequence byte
+    int size = (window == null) ? message.length : message.length + 1;
+    if (size > MAX_MSG_SIZE) {
+      log.error("**** message size {} > MAX_MSG_SIZE {} - not sending ****", size, MAX_MSG_SIZE);
       return message;
     }
 
+    if (window != null && serial != null) {
+      // pipelined - only blocks when the window is full
+      if (window.send(message)) {
+        return message;
+      }
+      // retransmits were not acked - MrlComm processes setAckWindow out of
+      // sequence, so this gets both sides back to one message at a time
+      log.error("ack window gave up on {} - back to waiting for each ack", methodToString(message[2] & 0xFF));
+      ackWindow = null;
+      arduino.ackTimeout();
+      sendAckWindow(0);
+    }
+
     if (ackEnabled) {
       // wait for a pending ack to be received before we process our message.^M
       waitForAck();
@@ -2781,7 +3000,84 @@ public class Msg {
     // }
   }
   
+  /**
+   * Let MrlComm ack a window of messages instead of one message at a time -
+   * up to windowSize messages are sent before waiting for an ack. The acks
+   * carry sequence numbers and un-acked messages are retransmitted.
+   * 
+   * @param windowSize
+   *          max un-acked messages, 0 or 1 waits for each ack
+   * @return true if MrlComm acked the change
+   */
+  public synchronized boolean enableAckWindow(int windowSize) {
+    try {
+      AckWindow window = ackWindow;
+      if (window != null) {
+        window.drain();
+        closeAckWindow();
+      }
+      if (windowSize < 2) {
+        if (window != null) {
+          sendAckWindow(0);
+        }
+        return true;
+      }
+      if (!ackEnabled || serial == null) {
+        log.warn("acks are disabled or not connected - not enabling the ack window");
+        return false;
+      }
+      // sent and acked the old way
+      sendAckWindow(windowSize);
+      if (ackRecievedLock.pendingMessage) {
+        log.error("setAckWindow was not acked - does MrlComm support version {} ?", MRLCOMM_VERSION);
+        return false;
+      }
+      ackWindow = new AckWindow(serial.getName(), windowSize, MAX_MSG_SIZE, data -> serial.write(data));
+      return true;
+    } catch (Exception e) {
+      log.error("enableAckWindow threw", e);
+      return false;
+    }
+  }
+
+  /**
+   * setAckWindow - built here because the generated method is only in Msg
+   */
+  private void sendAckWindow(int windowSize) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    appendMessage(baos, MAGIC_NUMBER);
+    appendMessage(baos, 1 + 1); // size
+    appendMessage(baos, SET_ACK_WINDOW);
+    appendMessage(baos, windowSize);
+    sendMessage(baos);
+  }
+
+  public void closeAckWindow() {
+    AckWindow window = ackWindow;
+    ackWindow = null;
+    if (window != null) {
+      window.close();
+    }
+  }
+
+  public boolean isAckWindowEnabled() {
+    return ackWindow != null;
+  }
+
+  /**
+   * @return throughput, un-acked and retransmit counts of the ack window, null
+   *         if it is not enabled
+   */
+  public QueueStats getAckWindowStats() {
+    AckWindow window = ackWindow;
+    return (window == null) ? null : window.getStats();
+  }
+
   public void waitForAck(){
+    if (ackWindow != null) {
+      // acks are handled by the window
+      return;
+    }
     if (!ackEnabled || serial == null || !serial.isConnected()) {
       return;
     }
@@ -2868,6 +3164,7 @@ public class Msg {
     // reset the parser...
     this.byteCount = new AtomicInteger(0);
     this.msgSize = 0;
+    closeAckWindow();
     ackReceived(-1);
   }
 
@@ -2878,6 +3175,7 @@ public class Msg {
     // reset the parser... this might not be necessary.
     this.byteCount = new AtomicInteger(0);
     this.msgSize = 0;
+    closeAckWindow();
     ackReceived(-1);
   }
 
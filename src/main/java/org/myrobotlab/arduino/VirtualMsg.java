@@ -8,6 +8,7 @@ import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.logging.Level;
 
 import org.myrobotlab.arduino.virtual.MrlComm;
@@ -37,6 +38,11 @@ import org.myrobotlab.string.StringUtil;
  The binary wire format of an MrlComm is:
 
  MAGIC_NUMBER|MSG_SIZE|METHOD_NUMBER|PARAM0|PARAM1 ...
+
+ With the ack window enabled (setAckWindow) messages to MrlComm carry a
+ trailing sequence number, which MrlComm returns in publishAck:
+
+ MAGIC_NUMBER|MSG_SIZE|METHOD_NUMBER|PARAM0|PARAM1 ...|SEQ
  
  </pre>
 
@@ -65,7 +71,7 @@ public class VirtualMsg {
   public transient final static Logger log = LoggerFactory.getLogger(VirtualMsg.class);
   public static final int MAX_MSG_SIZE = 64;
   public static final int MAGIC_NUMBER = 170; // 10101010
-  public static final int MRLCOMM_VERSION = 68;
+  public static final int MRLCOMM_VERSION = 72;
   // send buffer
   private int sendBufferSize = 0;
   private int sendBuffer[] = new int[MAX_MSG_SIZE];
@@ -90,6 +96,9 @@ public class VirtualMsg {
     volatile boolean pendingMessage = false;
   }
   transient AckLock ackRecievedLock = new AckLock();
+  // un-acked messages when MrlComm acks a window of messages - null when
+  // every message waits for its ack
+  private transient volatile AckWindow ackWindow = null;
   // recording related
   transient OutputStream record = null;
   transient StringBuilder rxBuffer = new StringBuilder();
@@ -122,7 +131,7 @@ public class VirtualMsg {
   public final static int SOFT_RESET = 7;
   // > enableAck/bool enabled
   public final static int ENABLE_ACK = 8;
-  // < publishAck/function
+  // < publishAck/function/seq
   public final static int PUBLISH_ACK = 9;
   // > echo/f32 myFloat/myByte/f32 secondFloat
   public final static int ECHO = 10;
@@ -136,13 +145,13 @@ public class VirtualMsg {
   public final static int DEVICE_DETACH = 14;
   // > i2cBusAttach/deviceId/i2cBus
   public final static int I2C_BUS_ATTACH = 15;
-  // > i2cRead/deviceId/deviceAddress/size
+  // > i2cRead/deviceId/deviceAddress/size/requestId
   public final static int I2C_READ = 16;
   // > i2cWrite/deviceId/deviceAddress/[] data
   public final static int I2C_WRITE = 17;
-  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
+  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
   public final static int I2C_WRITE_READ = 18;
-  // < publishI2cData/deviceId/[] data
+  // < publishI2cData/deviceId/requestId/[] data
   public final static int PUBLISH_I2C_DATA = 19;
   // > neoPixelAttach/deviceId/pin/b16 numPixels/depth
   public final static int NEO_PIXEL_ATTACH = 20;
@@ -224,6 +233,14 @@ public class VirtualMsg {
   public final static int PUBLISH_MRL_COMM_BEGIN = 58;
   // > servoStop/deviceId
   public final static int SERVO_STOP = 59;
+  // > setAckWindow/windowSize
+  public final static int SET_ACK_WINDOW = 60;
+  // > servoMoveToMicrosecondsMulti/[] moves
+  public final static int SERVO_MOVE_TO_MICROSECONDS_MULTI = 61;
+  // > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+  public final static int I2C_SAMPLE = 62;
+  // < publishI2cSamples/deviceId/requestId/bu32 timestamp/[] data
+  public final static int PUBLISH_I2C_SAMPLES = 63;
 
 
 /**
@@ -240,9 +257,9 @@ public class VirtualMsg {
   // public void customMsg(int[] msg/*[]*/){}
   // public void deviceDetach(Integer deviceId/*byte*/){}
   // public void i2cBusAttach(Integer deviceId/*byte*/, Integer i2cBus/*byte*/){}
-  // public void i2cRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer size/*byte*/){}
+  // public void i2cRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer size/*byte*/, Integer requestId/*byte*/){}
   // public void i2cWrite(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, int[] data/*[]*/){}
-  // public void i2cWriteRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer readSize/*byte*/, Integer writeValue/*byte*/){}
+  // public void i2cWriteRead(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer readSize/*byte*/, Integer writeValue/*byte*/, Integer requestId/*byte*/){}
   // public void neoPixelAttach(Integer deviceId/*byte*/, Integer pin/*byte*/, Integer numPixels/*b16*/, Integer depth/*byte*/){}
   // public void neoPixelSetAnimation(Integer deviceId/*byte*/, Integer animation/*byte*/, Integer red/*byte*/, Integer green/*byte*/, Integer blue/*byte*/, Integer white/*byte*/, Integer wait_ms/*b32*/){}
   // public void neoPixelWriteMatrix(Integer deviceId/*byte*/, int[] buffer/*[]*/){}
@@ -276,6 +293,9 @@ public class VirtualMsg {
   // public void encoderAttach(Integer deviceId/*byte*/, Integer type/*byte*/, Integer pin/*byte*/){}
   // public void setZeroPoint(Integer deviceId/*byte*/){}
   // public void servoStop(Integer deviceId/*byte*/){}
+  // public void setAckWindow(Integer windowSize/*byte*/){}
+  // public void servoMoveToMicrosecondsMulti(int[] moves/*[]*/){}
+  // public void i2cSample(Integer deviceId/*byte*/, Integer deviceAddress/*byte*/, Integer registerAddress/*byte*/, Integer size/*byte*/, Integer interval/*b16*/, Integer batchSize/*byte*/, Integer requestId/*byte*/){}
   
   
 
@@ -303,11 +323,23 @@ public class VirtualMsg {
       log.info("Process Command: {} Method: {}", Msg.methodToString(method), ioCmd);
     }
     
+    AckWindow window = ackWindow;
+    if (window != null) {
+      // retransmit timed out messages - MrlComm's board info keeps this
+      // going when nothing else is sent or received
+      window.checkTimeouts();
+    }
+
     if (method == PUBLISH_ACK) {
       // We saw an ack!  we ack this internally right away, and down below in the generated code, 
       // call publishAck on the MrlCommPublisher
       Integer function = ioCmd[startPos+1]; // bu8
-      ackReceived(function);
+      Integer seq = ioCmd[startPos+2]; // bu8
+      if (window != null) {
+        window.ack(seq);
+      } else {
+        ackReceived(function);
+      }
     }
     
     if (method != PUBLISH_MRL_COMM_BEGIN) {
@@ -320,6 +352,8 @@ public class VirtualMsg {
       // Process!
       log.info("Clear to process!!!!!!!!!!!!!!!!!!");
       this.clearToSend = true;
+      // MrlComm (re)started - it acks one message at a time
+      closeAckWindow();
     }
     switch (method) {
     case GET_BOARD_INFO: {
@@ -435,10 +469,12 @@ public class VirtualMsg {
       startPos += 1;
       Integer size = ioCmd[startPos+1]; // bu8
       startPos += 1;
+      Integer requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
       if(invoke){
-        arduino.invoke("i2cRead",  deviceId,  deviceAddress,  size);
+        arduino.invoke("i2cRead",  deviceId,  deviceAddress,  size,  requestId);
       } else { 
-         arduino.i2cRead( deviceId,  deviceAddress,  size);
+         arduino.i2cRead( deviceId,  deviceAddress,  size,  requestId);
       }
       break;
     }
@@ -465,10 +501,12 @@ public class VirtualMsg {
       startPos += 1;
       Integer writeValue = ioCmd[startPos+1]; // bu8
       startPos += 1;
+      Integer requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
       if(invoke){
-        arduino.invoke("i2cWriteRead",  deviceId,  deviceAddress,  readSize,  writeValue);
+        arduino.invoke("i2cWriteRead",  deviceId,  deviceAddress,  readSize,  writeValue,  requestId);
       } else { 
-         arduino.i2cWriteRead( deviceId,  deviceAddress,  readSize,  writeValue);
+         arduino.i2cWriteRead( deviceId,  deviceAddress,  readSize,  writeValue,  requestId);
       }
       break;
     }
@@ -886,6 +924,48 @@ public class VirtualMsg {
       }
       break;
     }
+    case SET_ACK_WINDOW: {
+      Integer windowSize = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      if(invoke){
+        arduino.invoke("setAckWindow",  windowSize);
+      } else { 
+         arduino.setAckWindow( windowSize);
+      }
+      break;
+    }
+    case SERVO_MOVE_TO_MICROSECONDS_MULTI: {
+      int[] moves = subArray(ioCmd, startPos+2, ioCmd[startPos+1]);
+      startPos += 1 + ioCmd[startPos+1];
+      if(invoke){
+        arduino.invoke("servoMoveToMicrosecondsMulti",  moves);
+      } else { 
+         arduino.servoMoveToMicrosecondsMulti( moves);
+      }
+      break;
+    }
+    case I2C_SAMPLE: {
+      Integer deviceId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      Integer deviceAddress = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      Integer registerAddress = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      Integer size = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      Integer interval = b16(ioCmd, startPos+1);
+      startPos += 2; //b16
+      Integer batchSize = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      Integer requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      if(invoke){
+        arduino.invoke("i2cSample",  deviceId,  deviceAddress,  registerAddress,  size,  interval,  batchSize,  requestId);
+      } else { 
+         arduino.i2cSample( deviceId,  deviceAddress,  registerAddress,  size,  interval,  batchSize,  requestId);
+      }
+      break;
+    }
     
     }
   }
@@ -970,16 +1050,17 @@ public class VirtualMsg {
     }
   }
 
-  public synchronized byte[] publishAck(Integer function/*byte*/) {
+  public synchronized byte[] publishAck(Integer function/*byte*/, Integer seq/*byte*/) {
     if (debug) {
       log.info("Sending Message: publishAck to {}", serial.getName());
     }
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
       appendMessage(baos, MAGIC_NUMBER);
-      appendMessage(baos, 1 + 1); // size
+      appendMessage(baos, 1 + 1 + 1); // size
       appendMessage(baos, PUBLISH_ACK); // msgType = 9
       appendMessage(baos, function);
+      appendMessage(baos, seq);
  
       byte[] message = sendMessage(baos);
       if (ackEnabled){
@@ -989,6 +1070,8 @@ public class VirtualMsg {
         txBuffer.append("> publishAck");
         txBuffer.append("/");
         txBuffer.append(function);
+        txBuffer.append("/");
+        txBuffer.append(seq);
         txBuffer.append("\n");
         record.write(txBuffer.toString().getBytes());
         txBuffer.setLength(0);
@@ -1069,16 +1152,17 @@ public class VirtualMsg {
     }
   }
 
-  public synchronized byte[] publishI2cData(Integer deviceId/*byte*/, int[] data/*[]*/) {
+  public synchronized byte[] publishI2cData(Integer deviceId/*byte*/, Integer requestId/*byte*/, int[] data/*[]*/) {
     if (debug) {
       log.info("Sending Message: publishI2cData to {}", serial.getName());
     }
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
       appendMessage(baos, MAGIC_NUMBER);
-      appendMessage(baos, 1 + 1 + (1 + data.length)); // size
+      appendMessage(baos, 1 + 1 + 1 + (1 + data.length)); // size
       appendMessage(baos, PUBLISH_I2C_DATA); // msgType = 19
       appendMessage(baos, deviceId);
+      appendMessage(baos, requestId);
       appendMessage(baos, data);
  
       byte[] message = sendMessage(baos);
@@ -1090,6 +1174,8 @@ public class VirtualMsg {
         txBuffer.append("/");
         txBuffer.append(deviceId);
         txBuffer.append("/");
+        txBuffer.append(requestId);
+        txBuffer.append("/");
         txBuffer.append(Arrays.toString(data));
         txBuffer.append("\n");
         record.write(txBuffer.toString().getBytes());
@@ -1338,6 +1424,46 @@ public class VirtualMsg {
     }
   }
 
+  public synchronized byte[] publishI2cSamples(Integer deviceId/*byte*/, Integer requestId/*byte*/, Long timestamp/*bu32*/, int[] data/*[]*/) {
+    if (debug) {
+      log.info("Sending Message: publishI2cSamples to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + 1 + 1 + 4 + (1 + data.length)); // size
+      appendMessage(baos, PUBLISH_I2C_SAMPLES); // msgType = 63
+      appendMessage(baos, deviceId);
+      appendMessage(baos, requestId);
+      appendMessagebu32(baos, timestamp);
+      appendMessage(baos, data);
+ 
+      byte[] message = sendMessage(baos);
+      if (ackEnabled){
+        waitForAck();
+      }
+      if(record != null){
+        txBuffer.append("> publishI2cSamples");
+        txBuffer.append("/");
+        txBuffer.append(deviceId);
+        txBuffer.append("/");
+        txBuffer.append(requestId);
+        txBuffer.append("/");
+        txBuffer.append(timestamp);
+        txBuffer.append("/");
+        txBuffer.append(Arrays.toString(data));
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+	} catch (Exception e) {
+      log.error("publishI2cSamples threw",e);
+      return null;
+    }
+  }
+
 
   public static String methodToString(int method) {
     switch (method) {
@@ -1518,6 +1644,18 @@ public class VirtualMsg {
     case SERVO_STOP:{
       return "servoStop";
     }
+    case SET_ACK_WINDOW:{
+      return "setAckWindow";
+    }
+    case SERVO_MOVE_TO_MICROSECONDS_MULTI:{
+      return "servoMoveToMicrosecondsMulti";
+    }
+    case I2C_SAMPLE:{
+      return "i2cSample";
+    }
+    case PUBLISH_I2C_SAMPLES:{
+      return "publishI2cSamples";
+    }
 
     default: {
       return "ERROR UNKNOWN METHOD (" + Integer.toString(method) + ")";
@@ -1649,8 +1787,7 @@ public class VirtualMsg {
             log.info("Full message received: {} Data:{}", VirtualMsg.methodToString(ioCmd[0]), actualCommand);
           }
           // process the command.
-          processCommand(actualCommand);
-          publishAck(method);
+          arduino.processCommand(actualCommand);
           // re-init parser
           Arrays.fill(ioCmd, 0); // optimize remove
           msgSize = 0;
@@ -1758,11 +1895,27 @@ public class VirtualMsg {
   synchronized byte[] sendMessage(ByteArrayOutputStream baos) throws Exception {
     byte[] message = baos.toByteArray();
 
-    if (message.length > MAX_MSG_SIZE) {
-      log.error("**** message size {} > MAX_MSG_SIZE {} - not sending ****", MAX_MSG_SIZE, message.length);
+    AckWindow window = ackWindow;
+    // the ack window appends a sequence byte
+    int size = (window == null) ? message.length : message.length + 1;
+    if (size > MAX_MSG_SIZE) {
+      log.error("**** message size {} > MAX_MSG_SIZE {} - not sending ****", size, MAX_MSG_SIZE);
       return message;
     }
 
+    if (window != null && serial != null) {
+      // pipelined - only blocks when the window is full
+      if (window.send(message)) {
+        return message;
+      }
+      // retransmits were not acked - MrlComm processes setAckWindow out of
+      // sequence, so this gets both sides back to one message at a time
+      log.error("ack window gave up on {} - back to waiting for each ack", methodToString(message[2] & 0xFF));
+      ackWindow = null;
+      arduino.ackTimeout();
+      sendAckWindow(0);
+    }
+
     if (ackEnabled) {
       // wait for a pending ack to be received before we process our message.^M
       waitForAck();
@@ -1876,7 +2029,84 @@ public class VirtualMsg {
     // }
   }
   
+  /**
+   * Let MrlComm ack a window of messages instead of one message at a time -
+   * up to windowSize messages are sent before waiting for an ack. The acks
+   * carry sequence numbers and un-acked messages are retransmitted.
+   * 
+   * @param windowSize
+   *          max un-acked messages, 0 or 1 waits for each ack
+   * @return true if MrlComm acked the change
+   */
+  public synchronized boolean enableAckWindow(int windowSize) {
+    try {
+      AckWindow window = ackWindow;
+      if (window != null) {
+        window.drain();
+        closeAckWindow();
+      }
+      if (windowSize < 2) {
+        if (window != null) {
+          sendAckWindow(0);
+        }
+        return true;
+      }
+      if (!ackEnabled || serial == null) {
+        log.warn("acks are disabled or not connected - not enabling the ack window");
+        return false;
+      }
+      // sent and acked the old way
+      sendAckWindow(windowSize);
+      if (ackRecievedLock.pendingMessage) {
+        log.error("setAckWindow was not acked - does MrlComm support version {} ?", MRLCOMM_VERSION);
+        return false;
+      }
+      ackWindow = new AckWindow(serial.getName(), windowSize, MAX_MSG_SIZE, data -> serial.write(data));
+      return true;
+    } catch (Exception e) {
+      log.error("enableAckWindow threw", e);
+      return false;
+    }
+  }
+
+  /**
+   * setAckWindow - built here because the generated method is only in Msg
+   */
+  private void sendAckWindow(int windowSize) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    appendMessage(baos, MAGIC_NUMBER);
+    appendMessage(baos, 1 + 1); // size
+    appendMessage(baos, SET_ACK_WINDOW);
+    appendMessage(baos, windowSize);
+    sendMessage(baos);
+  }
+
+  public void closeAckWindow() {
+    AckWindow window = ackWindow;
+    ackWindow = null;
+    if (window != null) {
+      window.close();
+    }
+  }
+
+  public boolean isAckWindowEnabled() {
+    return ackWindow != null;
+  }
+
+  /**
+   * @return throughput, un-acked and retransmit counts of the ack window, null
+   *         if it is not enabled
+   */
+  public QueueStats getAckWindowStats() {
+    AckWindow window = ackWindow;
+    return (window == null) ? null : window.getStats();
+  }
+
   public void waitForAck(){
+    if (ackWindow != null) {
+      // acks are handled by the window
+      return;
+    }
     if (!ackEnabled) {
       return;
     }
@@ -1965,6 +2195,7 @@ public class VirtualMsg {
     // reset the parser...
     this.byteCount = new AtomicInteger(0);
     this.msgSize = 0;
+    closeAckWindow();
     ackReceived(-1);
   }
 
@@ -1975,6 +2206,7 @@ public class VirtualMsg {
     // reset the parser... this might not be necessary.
     this.byteCount = new AtomicInteger(0);
     this.msgSize = 0;
+    closeAckWindow();
     ackReceived(-1);
   }
 
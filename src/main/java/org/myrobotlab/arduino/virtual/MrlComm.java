@@ -52,6 +52,17 @@ public class MrlComm implements SerialDataListener {
 
   boolean ackEnabled = true;
 
+  /**
+   * max un-acked messages of Java-land - 0 acks one message at a time
+   */
+  int ackWindow = 0;
+
+  /**
+   * sequence number of the next message to process when the ack window is
+   * enabled
+   */
+  int nextSeq = 0;
+
   public BoardInfo boardInfo = null;
 
   boolean boardStatusEnabled;
@@ -364,6 +375,43 @@ public class MrlComm implements SerialDataListener {
     ackEnabled = enabled;
   }
 
+  /**
+   * processes a message from Java-land and acks it - with the ack window
+   * enabled only the next message in sequence is processed, the sequence
+   * number is the last byte
+   * 
+   * @param ioCmd
+   *          METHOD_NUMBER|PARAM0|PARAM1 ...
+   */
+  public void processCommand(int[] ioCmd) {
+    int method = ioCmd[0];
+    // setAckWindow is processed out of sequence - it (re)starts the sequence
+    if (ackWindow > 0 && method != VirtualMsg.SET_ACK_WINDOW) {
+      int seq = ioCmd[ioCmd.length - 1];
+      if (seq != nextSeq) {
+        // a retransmit of a processed message or a message after a lost one
+        // re-ack the last processed message and wait for the retransmit
+        virtualMsg.publishAck(method, (nextSeq - 1) & 0xFF);
+        return;
+      }
+      nextSeq = (nextSeq + 1) & 0xFF;
+      virtualMsg.processCommand(ioCmd);
+      virtualMsg.publishAck(method, seq);
+      return;
+    }
+
+    virtualMsg.processCommand(ioCmd);
+    if (ackEnabled) {
+      virtualMsg.publishAck(method, 0);
+    }
+  }
+
+  // > setAckWindow/windowSize
+  public void setAckWindow(Integer windowSize) {
+    ackWindow = windowSize;
+    nextSeq = 0;
+  }
+
   // > enablePin/address/type/b16 rate
   public void enablePin(int address, int type, int rate) {
     // don't add it twice
@@ -489,11 +537,11 @@ public class MrlComm implements SerialDataListener {
     i2cbus.attach(i2cBus);
   }
 
-  // > i2cRead/deviceId/deviceAddress/size
-  public void i2cRead(int deviceId, int deviceAddress, int size) {
+  // > i2cRead/deviceId/deviceAddress/size/requestId
+  public void i2cRead(int deviceId, int deviceAddress, int size, int requestId) {
     MrlI2CBus i2c = (MrlI2CBus) getDevice(deviceId);
     if (i2c != null) {
-      i2c.i2cRead(deviceAddress, size);
+      i2c.i2cRead(deviceAddress, size, requestId);
     } else {
       log.warn("i2c device {} not found", deviceId);
     }
@@ -509,11 +557,21 @@ public class MrlComm implements SerialDataListener {
     }
   }
 
-  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
-  public void i2cWriteRead(int deviceId, int deviceAddress, int readSize, int writeValue) {
+  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
+  public void i2cWriteRead(int deviceId, int deviceAddress, int readSize, int writeValue, int requestId) {
     MrlI2CBus i2c = (MrlI2CBus) getDevice(deviceId);
     if (i2c != null) {
-      i2c.i2cWriteRead(deviceAddress, readSize, writeValue);
+      i2c.i2cWriteRead(deviceAddress, readSize, writeValue, requestId);
+    } else {
+      log.warn("i2c device {} not found", deviceId);
+    }
+  }
+
+  // > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+  public void i2cSample(int deviceId, int deviceAddress, int registerAddress, int size, int interval, int batchSize, int requestId) {
+    MrlI2CBus i2c = (MrlI2CBus) getDevice(deviceId);
+    if (i2c != null) {
+      i2c.i2cSample(deviceAddress, registerAddress, size, interval, batchSize, requestId);
     } else {
       log.warn("i2c device {} not found", deviceId);
     }
@@ -683,6 +741,14 @@ public class MrlComm implements SerialDataListener {
     }
   }
 
+  // > servoMoveToMicrosecondsMulti/[] moves
+  public void servoMoveToMicrosecondsMulti(int[] moves) {
+    // deviceId/b16 target triplets
+    for (int i = 0; i + 2 < moves.length; i += 3) {
+      servoMoveToMicroseconds(moves[i], (moves[i + 1] << 8) + moves[i + 2]);
+    }
+  }
+
   public void servoSetAcceleration(int deviceId, int acceleration) {
     MrlServo servo = (MrlServo) getDevice(deviceId);
     if (servo != null) {
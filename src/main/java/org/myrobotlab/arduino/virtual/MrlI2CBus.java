@@ -5,8 +5,34 @@ import org.myrobotlab.service.VirtualArduino;
 
 public class MrlI2CBus extends Device {
 
+  // samplings one bus can run at a time
+  static final int MAX_I2C_SAMPLES = 4;
+  // data of one publishI2cSamples - MAX_MSG_SIZE less the header
+  // MAGIC|SIZE|METHOD|DEVICE_INDEX|REQUEST_ID|TIMESTAMP(4)|DATASIZE
+  static final int MAX_I2C_SAMPLES_DATA = VirtualMsg.MAX_MSG_SIZE - 10;
+
+  /**
+   * a register of an i2c device read every interval ms, batchSize samples are
+   * collected before they are published
+   */
+  static class I2cSample {
+    int requestId;
+    int deviceAddress;
+    int registerAddress;
+    int size;
+    int interval;
+    int batchSize;
+    long lastSample;
+    long lastStored;
+    long timestamp;
+    int count;
+    int dataSize;
+    int[] data = new int[MAX_I2C_SAMPLES_DATA];
+  }
+
   private static int TWCR = 0;
   int bus;
+  I2cSample[] samples = new I2cSample[MAX_I2C_SAMPLES];
 
   MrlI2CBus(int deviceId, VirtualArduino virtual) {
     super(deviceId, VirtualMsg.DEVICE_TYPE_I2C, virtual);
@@ -32,47 +58,156 @@ public class MrlI2CBus extends Device {
     Wire.endTransmission();
   }
 
-  // I2CREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE
-  // PUBLISH_SENSOR_DATA | DEVICE_INDEX | DATASIZE | DATA ....
+  // I2CREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE | REQUEST_ID
+  // PUBLISH_I2C_DATA | DEVICE_INDEX | REQUEST_ID | DATASIZE | DATA ....
   // DEVICE_INDEX = Index to the I2C bus
   // I2CADDRESS = The address of the i2c device
   // DATA_SIZE = The number of bytes to read from the i2c device
-  void i2cRead(int deviceAddress, int size) {
+  // REQUEST_ID = sent back with the data so it can be matched to its request
+  void i2cRead(int deviceAddress, int size, int requestId) {
 
     int answer = Wire.requestFrom(deviceAddress, size); // reqest a number of
     // bytes to read
 
+    int[] data = new int[answer];
     for (int i = 0; i < answer; i++) {
-      msg.add(Wire.read());
+      data[i] = Wire.read();
     }
 
     // int deviceId = ioCmd[1]; not needed we have our own deviceId
-    msg.publishI2cData(id, msg.getBuffer());
+    msg.publishI2cData(id, requestId, data);
   }
 
-  // I2WRITEREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE | DEVICE_MEMORY_ADDRESS
-  // PUBLISH_SENSOR_DATA | DEVICE_INDEX | DATASIZE | DATA ....
+  // I2WRITEREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE | DEVICE_MEMORY_ADDRESS | REQUEST_ID
+  // PUBLISH_I2C_DATA | DEVICE_INDEX | REQUEST_ID | DATASIZE | DATA ....
   // DEVICE_INDEX = Index to the I2C bus
   // I2CADDRESS = The address of the i2c device
   // DATA_SIZE = The number of bytes to read from the i2c device
-  void i2cWriteRead(int deviceAddress, int readSize, int writeValue) {
+  void i2cWriteRead(int deviceAddress, int readSize, int writeValue, int requestId) {
     Wire.beginTransmission(deviceAddress); // address to the i2c device
     Wire.write(writeValue); // device memory address to read from
     Wire.endTransmission();
     int answer = Wire.requestFrom(deviceAddress, readSize); // reqest a number
     // of bytes to read
 
+    int[] data = new int[answer];
     for (int i = 0; i < answer; i++) {
-      msg.add(Wire.read());
+      data[i] = Wire.read();
     }
 
     // int deviceId = ioCmd[1];
-    msg.publishI2cData(id, msg.getBuffer());
+    msg.publishI2cData(id, requestId, data);
+  }
+
+  // I2CSAMPLE | DEVICE_INDEX | I2CADDRESS | REGISTER | DATASIZE | INTERVAL(2) | BATCHSIZE | REQUEST_ID
+  // PUBLISH_I2C_SAMPLES | DEVICE_INDEX | REQUEST_ID | TIMESTAMP(4) | DATASIZE | (DELTA_MS | DATA ....) ....
+  // starts, changes or stops (interval 0) reading a register every interval ms
+  // the batch is cut down to what fits into one message
+  void i2cSample(int deviceAddress, int registerAddress, int size, int interval, int batchSize, int requestId) {
+    int slot = -1;
+    for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+      if (samples[i] != null && samples[i].requestId == requestId) {
+        slot = i;
+        break;
+      }
+    }
+
+    if (interval <= 0) {
+      if (slot >= 0) {
+        samples[slot] = null;
+      }
+      return;
+    }
+
+    if (size == 0 || size + 1 > MAX_I2C_SAMPLES_DATA) {
+      msg.publishMRLCommError("i2c sample size");
+      return;
+    }
+
+    if (slot < 0) {
+      for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+        if (samples[i] == null) {
+          slot = i;
+          samples[i] = new I2cSample();
+          break;
+        }
+      }
+    }
+
+    if (slot < 0) {
+      msg.publishMRLCommError("no free i2c sample");
+      return;
+    }
+
+    I2cSample sample = samples[slot];
+    sample.requestId = requestId;
+    sample.deviceAddress = deviceAddress;
+    sample.registerAddress = registerAddress;
+    sample.size = size;
+    sample.interval = interval;
+    sample.batchSize = Math.max(1, Math.min(batchSize, MAX_I2C_SAMPLES_DATA / (size + 1)));
+    sample.lastSample = millis() - interval;
+    sample.count = 0;
+    sample.dataSize = 0;
+  }
+
+  void readSample(I2cSample sample, long now) {
+    sample.lastSample = now;
+
+    Wire.beginTransmission(sample.deviceAddress);
+    Wire.write(sample.registerAddress);
+    Wire.endTransmission();
+    int answer = Wire.requestFrom(sample.deviceAddress, sample.size);
+    if (answer != sample.size) {
+      // short read - skip this sample
+      return;
+    }
+
+    // the ms since the previous sample has to fit its byte - start a new batch
+    if (sample.count > 0 && now - sample.lastStored > 255) {
+      publishSamples(sample);
+    }
+    if (sample.count == 0) {
+      sample.timestamp = now;
+      sample.lastStored = now;
+    }
+
+    sample.data[sample.dataSize++] = (int) (now - sample.lastStored);
+    for (int i = 0; i < answer; i++) {
+      sample.data[sample.dataSize++] = Wire.read();
+    }
+    sample.lastStored = now;
+    sample.count++;
+
+    if (sample.count >= sample.batchSize) {
+      publishSamples(sample);
+    }
+  }
+
+  void publishSamples(I2cSample sample) {
+    if (sample.count > 0) {
+      int[] data = new int[sample.dataSize];
+      System.arraycopy(sample.data, 0, data, 0, sample.dataSize);
+      // board millis are an unsigned long
+      msg.publishI2cSamples(id, sample.requestId, sample.timestamp & 0xFFFFFFFFL, data);
+    }
+    sample.count = 0;
+    sample.dataSize = 0;
   }
 
   @Override
   void update() {
-    // Nothing to do
+    long now = millis();
+    for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+      I2cSample sample = samples[i];
+      if (sample != null && now - sample.lastSample >= sample.interval) {
+        readSample(sample, now);
+      }
+    }
+  }
+
+  private long millis() {
+    return System.currentTimeMillis();
   }
 
 }
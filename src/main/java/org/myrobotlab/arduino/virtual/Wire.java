@@ -1,24 +1,33 @@
 package org.myrobotlab.arduino.virtual;
 
+/**
+ * Virtual Wire - every i2c device on the virtual bus is a register file where
+ * each register holds its own address, so a read returns the register it was
+ * read from. The first byte written sets the register pointer, reads
+ * auto-increment it like most i2c sensors do.
+ */
 public class Wire {
 
-  public static void beginTransmission(int writeValue) {
-    // TODO Auto-generated method stub
+  static int register = 0;
+
+  static boolean firstWrite = false;
 
+  public static void beginTransmission(int deviceAddress) {
+    firstWrite = true;
   }
 
   public static void write(int writeValue) {
-    // TODO Auto-generated method stub
-
+    if (firstWrite) {
+      register = writeValue & 0xFF;
+      firstWrite = false;
+    }
   }
 
   public static void endTransmission() {
-    // TODO Auto-generated method stub
-
+    firstWrite = false;
   }
 
   public static int requestFrom(int deviceAddress, int readSize) {
-    // TODO Auto-generated method stub
     return readSize;
   }
 
@@ -33,8 +42,9 @@ public class Wire {
   }
 
   public static int read() {
-    // TODO Auto-generated method stub
-    return 123;
+    int value = register;
+    register = (register + 1) & 0xFF;
+    return value;
   }
 
 }
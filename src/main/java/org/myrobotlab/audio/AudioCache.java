@@ -0,0 +1,354 @@
+package org.myrobotlab.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Index of the audio files a speech synthesis service generated - one
+ * directory per voice under its root (audioFile/&lt;Service&gt;/&lt;voice&gt;/).
+ *
+ * <pre>
+ * index      built once from the directory tree, lookups after that don't
+ *            touch the filesystem
+ * eviction   least recently used files are deleted when the total size is
+ *            over maxBytes, files not used for maxAgeMs are deleted too
+ * retention  files up to clipBytes are kept in memory (up to memoryBytes in
+ *            total, least recently used dropped first) and played from there
+ * stats      hits and misses per voice
+ * </pre>
+ *
+ * Access times are kept in memory - after a restart the order is the files'
+ * modification times.
+ */
+public class AudioCache {
+
+  public final static Logger log = LoggerFactory.getLogger(AudioCache.class);
+
+  public static class VoiceStats {
+    public String voice;
+    public long hits;
+    public long misses;
+    public int files;
+    public long bytes;
+
+    /**
+     * @return hits / lookups - 0 without lookups
+     */
+    public double getHitRate() {
+      long lookups = hits + misses;
+      return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %d files %d bytes %d hits %d misses %.1f%% hit rate", voice, files, bytes, hits, misses, getHitRate() * 100);
+    }
+  }
+
+  static class Entry {
+    final File file;
+    final String voice;
+    final long size;
+    long lastAccess;
+    byte[] data;
+
+    Entry(File file, String voice, long size, long lastAccess) {
+      this.file = file;
+      this.voice = voice;
+      this.size = size;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  final File root;
+
+  /**
+   * by absolute path - in access order, eldest first
+   */
+  final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+  final Map<String, VoiceStats> stats = new TreeMap<>();
+
+  long bytes = 0;
+
+  long memory = 0;
+
+  long maxBytes;
+
+  long maxAgeMs;
+
+  long clipBytes;
+
+  long memoryBytes;
+
+  boolean loaded = false;
+
+  /**
+   * @param root
+   *          directory of the voice directories
+   * @param maxBytes
+   *          total size of the files - 0 for no limit
+   * @param maxAgeMs
+   *          files not used for longer are deleted - 0 for no limit
+   * @param clipBytes
+   *          files up to this size are kept in memory - 0 for none
+   * @param memoryBytes
+   *          total size of the files kept in memory
+   */
+  public AudioCache(File root, long maxBytes, long maxAgeMs, long clipBytes, long memoryBytes) {
+    this.root = root;
+    setLimits(maxBytes, maxAgeMs, clipBytes, memoryBytes);
+  }
+
+  public synchronized void setLimits(long maxBytes, long maxAgeMs, long clipBytes, long memoryBytes) {
+    this.maxBytes = maxBytes;
+    this.maxAgeMs = maxAgeMs;
+    this.clipBytes = clipBytes;
+    this.memoryBytes = memoryBytes;
+    if (loaded) {
+      evict();
+    }
+  }
+
+  /**
+   * builds the index from the directory tree - once, the first lookup does it
+   * if not called before
+   */
+  public synchronized void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    long start = System.currentTimeMillis();
+    List<Entry> found = new ArrayList<>();
+    File[] voices = root.listFiles(File::isDirectory);
+    if (voices != null) {
+      for (File dir : voices) {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) {
+          continue;
+        }
+        for (File file : files) {
+          if (file.length() > 0) {
+            found.add(new Entry(file.getAbsoluteFile(), dir.getName(), file.length(), file.lastModified()));
+          }
+        }
+      }
+    }
+    // eldest first
+    found.sort((a, b) -> Long.compare(a.lastAccess, b.lastAccess));
+    for (Entry entry : found) {
+      entries.put(entry.file.getPath(), entry);
+      getStats(entry.voice);
+      bytes += entry.size;
+    }
+    evict();
+    log.info("audio cache {} - {} files {} bytes in {} ms", root, entries.size(), bytes, System.currentTimeMillis() - start);
+  }
+
+  /**
+   * @param file
+   *          a file in a voice directory
+   * @return true if it's cached - counts a hit or a miss for its voice
+   */
+  public synchronized boolean lookup(File file) {
+    load();
+    Entry entry = entries.get(file.getAbsolutePath());
+    VoiceStats s = getStats(voiceOf(file));
+    if (entry == null) {
+      ++s.misses;
+      return false;
+    }
+    ++s.hits;
+    entry.lastAccess = System.currentTimeMillis();
+    return true;
+  }
+
+  /**
+   * @param file
+   *          a file in a voice directory
+   * @return true if it's cached - no stats, no change of its age
+   */
+  public synchronized boolean contains(File file) {
+    load();
+    return entries.containsKey(file.getAbsolutePath());
+  }
+
+  /**
+   * @param file
+   *          a cached file
+   * @return its content if it's kept in memory, else null - also null when
+   *         it can't be read, the entry is dropped then
+   */
+  public synchronized byte[] getData(File file) {
+    load();
+    Entry entry = entries.get(file.getAbsolutePath());
+    if (entry == null || entry.size > clipBytes || entry.size > memoryBytes) {
+      return null;
+    }
+    entry.lastAccess = System.currentTimeMillis();
+    if (entry.data == null) {
+      try {
+        entry.data = Files.readAllBytes(entry.file.toPath());
+        memory += entry.data.length;
+        evict();
+      } catch (IOException e) {
+        // e.g. deleted behind our back
+        log.warn("could not read {} - dropped from the index", entry.file, e);
+        remove(entry.file);
+      }
+    }
+    return entry.data;
+  }
+
+  /**
+   * adds a generated file
+   *
+   * @param file
+   *          a file in a voice directory
+   */
+  public synchronized void put(File file) {
+    load();
+    if (file.length() == 0) {
+      return;
+    }
+    String voice = voiceOf(file);
+    remove(file);
+    Entry entry = new Entry(file.getAbsoluteFile(), voice, file.length(), System.currentTimeMillis());
+    entries.put(entry.file.getPath(), entry);
+    getStats(voice);
+    bytes += entry.size;
+    evict();
+  }
+
+  /**
+   * @param file
+   *          removed from the index (not deleted)
+   */
+  public synchronized void remove(File file) {
+    Entry entry = entries.remove(file.getAbsolutePath());
+    if (entry != null) {
+      bytes -= entry.size;
+      if (entry.data != null) {
+        memory -= entry.data.length;
+      }
+    }
+  }
+
+  /**
+   * empties the index - the next lookup builds it again
+   */
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+    memory = 0;
+    loaded = false;
+  }
+
+  /**
+   * deletes the least recently used files until the size is within maxBytes,
+   * and the files older than maxAgeMs - drops clips from memory until within
+   * memoryBytes
+   */
+  void evict() {
+    long oldest = (maxAgeMs > 0) ? System.currentTimeMillis() - maxAgeMs : Long.MIN_VALUE;
+    Iterator<Entry> it = entries.values().iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      boolean over = maxBytes > 0 && bytes > maxBytes;
+      if (!over && entry.lastAccess >= oldest) {
+        // access order - the rest are newer
+        break;
+      }
+      it.remove();
+      bytes -= entry.size;
+      if (entry.data != null) {
+        memory -= entry.data.length;
+      }
+      if (!entry.file.delete()) {
+        log.warn("could not delete {}", entry.file);
+      }
+    }
+    if (memory > memoryBytes) {
+      for (Entry entry : entries.values()) {
+        if (memory <= memoryBytes) {
+          break;
+        }
+        if (entry.data != null) {
+          memory -= entry.data.length;
+          entry.data = null;
+        }
+      }
+    }
+  }
+
+  private String voiceOf(File file) {
+    File dir = file.getAbsoluteFile().getParentFile();
+    return (dir == null) ? "" : dir.getName();
+  }
+
+  private VoiceStats getStats(String voice) {
+    VoiceStats s = stats.get(voice);
+    if (s == null) {
+      s = new VoiceStats();
+      s.voice = voice;
+      stats.put(voice, s);
+    }
+    return s;
+  }
+
+  /**
+   * @return hits, misses, files and bytes per voice
+   */
+  public synchronized List<VoiceStats> getStats() {
+    load();
+    for (VoiceStats s : stats.values()) {
+      s.files = 0;
+      s.bytes = 0;
+    }
+    for (Entry entry : entries.values()) {
+      VoiceStats s = getStats(entry.voice);
+      ++s.files;
+      s.bytes += entry.size;
+    }
+    List<VoiceStats> copy = new ArrayList<>();
+    for (VoiceStats s : stats.values()) {
+      VoiceStats c = new VoiceStats();
+      c.voice = s.voice;
+      c.hits = s.hits;
+      c.misses = s.misses;
+      c.files = s.files;
+      c.bytes = s.bytes;
+      copy.add(c);
+    }
+    return copy;
+  }
+
+  public File getRoot() {
+    return root;
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized long getMemoryBytes() {
+    return memory;
+  }
+
+  public synchronized int size() {
+    load();
+    return entries.size();
+  }
+
+}
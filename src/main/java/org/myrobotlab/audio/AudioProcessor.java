@@ -120,7 +120,15 @@ public class AudioProcessor extends Thread {
 
       AudioInputStream in = null;
 
-      if (data.getFileName() != null) {
+      if (data.inputStream != null) {
+        // e.g. a clip kept in memory by a speech cache - from the start when
+        // repeated
+        if (data.inputStream.markSupported()) {
+          data.inputStream.reset();
+        }
+        in = AudioSystem.getAudioInputStream(data.inputStream);
+
+      } else if (data.getFileName() != null) {
         File file = new File(data.getFileName());
         if (file.length() == 0) {
           audioFile.error(String.format("audio file %s 0 byte length", file.getName()));
@@ -128,9 +136,6 @@ public class AudioProcessor extends Thread {
         }
 
         in = AudioSystem.getAudioInputStream(file);
-
-      } else if (data.inputStream != null) {
-        in = AudioSystem.getAudioInputStream(data.inputStream);
       }
 
       AudioFormat baseFormat = in.getFormat();
@@ -38,6 +38,7 @@ import org.myrobotlab.codec.json.ProxySerializer;
 import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.MethodCache;
+import org.myrobotlab.framework.MethodEntry;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.StaticType;
 import org.myrobotlab.logging.Level;
@@ -61,6 +62,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import com.fasterxml.jackson.module.noctordeser.NoCtorDeserModule;
 
 /**
@@ -126,6 +132,31 @@ public class CodecUtils {
    */
   public static final Set<String> WRAPPER_TYPES_CANONICAL = WRAPPER_TYPES.stream().map(Object::getClass).map(Class::getCanonicalName).collect(Collectors.toSet());
   public static final String API_MESSAGES = "messages";
+
+  /**
+   * Message.encoding of the double encoded protocol - each data parameter is a
+   * json string inside the json message
+   */
+  public static final String ENCODING_JSON = "json";
+
+  /**
+   * Message.encoding of the single pass protocol - data parameters are
+   * embedded json values, decoded directly into the parameter types of the
+   * target method
+   */
+  public static final String ENCODING_JSON_TYPED = "json-typed";
+
+  /**
+   * Message.encoding of the binary Smile protocol - same structure as
+   * {@link #ENCODING_JSON_TYPED}, byte[] payloads stay raw binary
+   */
+  public static final String ENCODING_SMILE = "smile";
+
+  /**
+   * Message.encoding of the binary CBOR protocol - same structure as
+   * {@link #ENCODING_JSON_TYPED}, byte[] payloads stay raw binary
+   */
+  public static final String ENCODING_CBOR = "cbor";
   public static final String API_SERVICE = "service";
 
   /**
@@ -191,6 +222,17 @@ public class CodecUtils {
    */
   private static final ObjectMapper mapper = new ObjectMapper();
 
+  /**
+   * Smile mapper for binary messages - configured like {@link #mapper}, raw
+   * binary is not 7 bit encoded
+   */
+  private static final ObjectMapper smileMapper = new ObjectMapper(SmileFactory.builder().disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT).build());
+
+  /**
+   * CBOR mapper for binary messages - configured like {@link #mapper}
+   */
+  private static final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
   /**
    * The pretty printer to be used with {@link #mapper}
    */
@@ -205,6 +247,13 @@ public class CodecUtils {
 
   // Class initializer to setup mapper when the class is loaded
   static {
+    configureMapper(mapper);
+    // binary codecs serialize exactly like json
+    configureMapper(smileMapper);
+    configureMapper(cborMapper);
+  }
+
+  private static void configureMapper(ObjectMapper mapper) {
     // This allows Jackson to when no default constructor is
     // available
     mapper.registerModule(new NoCtorDeserModule());
@@ -225,7 +274,6 @@ public class CodecUtils {
 
     // Make jackson behave such that unknown properties are ignored
     mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
   }
 
   /**
@@ -621,18 +669,227 @@ public class CodecUtils {
    *           if jsonData is malformed
    */
   public static /* @Nullable */ Message jsonToMessage(/* @Nonnull */ String jsonData) {
+    return jsonToMessage(jsonData, ENCODING_JSON);
+  }
+
+  /**
+   * Single pass message decoding. The envelope is streamed, the data
+   * parameters are kept as token buffers until name and method are known (the
+   * field order of the envelope does not matter), then bound directly into
+   * the parameter types of the target method. Nothing is parsed twice.
+   * <p>
+   * Messages with {@link #ENCODING_JSON} (double encoded parameters from old
+   * clients) are still accepted and decoded with
+   * {@link #decodeMessageParams(Message)}.
+   * </p>
+   *
+   * @param jsonData
+   *          The serialized Message in JSON form
+   * @param defaultEncoding
+   *          encoding assumed when the message does not have one - the
+   *          negotiated encoding of the connection
+   * @return A completely decoded Message object. Null is allowed if the JSON
+   *         represented null.
+   * @throws JsonDeserializationException
+   *           if jsonData is malformed
+   */
+  public static /* @Nullable */ Message jsonToMessage(/* @Nonnull */ String jsonData, String defaultEncoding) {
     if (log.isDebugEnabled()) {
       log.debug("Deserializing message: {}", jsonData);
     }
-    Message msg = fromJson(jsonData, Message.class);
+    try (JsonParser parser = mapper.getFactory().createParser(jsonData)) {
+      return readMessage(parser, defaultEncoding);
+    } catch (JsonDeserializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new JsonDeserializationException(e);
+    }
+  }
+
+  /**
+   * Decodes a binary message created by {@link #toBinaryMsg(Message, String)}.
+   * Smile and CBOR are told apart by the Smile header, data parameters are
+   * bound to the parameter types of the target method like
+   * {@link #ENCODING_JSON_TYPED}.
+   *
+   * @param data
+   *          the Smile or CBOR message
+   * @return the decoded Message, its encoding is the binary encoding it came
+   *         in with
+   * @throws JsonDeserializationException
+   *           if data is malformed
+   */
+  public static /* @Nullable */ Message binaryToMessage(/* @Nonnull */ byte[] data) {
+    String encoding = getBinaryEncoding(data);
+    ObjectMapper binaryMapper = ENCODING_SMILE.equals(encoding) ? smileMapper : cborMapper;
+    try (JsonParser parser = binaryMapper.getFactory().createParser(data)) {
+      return readMessage(parser, encoding);
+    } catch (JsonDeserializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new JsonDeserializationException(e);
+    }
+  }
 
-    if (msg == null) {
+  /**
+   * streaming envelope decoder shared by the json and binary codecs
+   */
+  @SuppressWarnings("unchecked")
+  private static Message readMessage(JsonParser parser, String defaultEncoding) throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == null || token == JsonToken.VALUE_NULL) {
       log.warn("Null message within json, probably shouldn't happen");
       return null;
     }
+    if (token != JsonToken.START_OBJECT) {
+      throw new IOException(String.format("message must be a json object not %s", token));
+    }
+
+    Message msg = new Message();
+    TokenBuffer[] params = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      token = parser.nextToken();
+      switch (field) {
+        case "msgId":
+          msg.msgId = parser.getValueAsLong();
+          break;
+        case "name":
+          msg.name = parser.getValueAsString();
+          break;
+        case "sender":
+          msg.sender = parser.getValueAsString();
+          break;
+        case "sendingMethod":
+          msg.sendingMethod = parser.getValueAsString();
+          break;
+        case "method":
+          msg.method = parser.getValueAsString();
+          break;
+        case "status":
+          msg.status = parser.getValueAsString();
+          break;
+        case "encoding":
+          msg.encoding = parser.getValueAsString();
+          break;
+        case "historyList":
+          if (token == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+              msg.addHop(parser.getValueAsString());
+            }
+          }
+          break;
+        case "properties":
+          if (token == JsonToken.START_OBJECT) {
+            Map<String, Object> properties = mapper.readValue(parser, LinkedHashMap.class);
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+              msg.setProperty(property.getKey(), property.getValue());
+            }
+          }
+          break;
+        case "data":
+          params = bufferParams(parser);
+          break;
+        default:
+          // e.g. the virtual class field
+          parser.skipChildren();
+      }
+    }
+
+    if (params == null) {
+      msg.data = null;
+      msg.encoding = null;
+      return msg;
+    }
+
+    String encoding = (msg.encoding != null) ? msg.encoding : defaultEncoding;
+    if (ENCODING_JSON_TYPED.equals(encoding) || isBinaryEncoding(encoding)) {
+      msg.data = decodeTypedParams(msg, params);
+      // data is decoded - the encoding tells the gateway the sender
+      // understands the single pass protocol
+      msg.encoding = encoding;
+      return msg;
+    }
+
+    // double encoded - parameters are json strings
+    Object[] data = new Object[params.length];
+    for (int i = 0; i < params.length; ++i) {
+      try (JsonParser p = params[i].asParser()) {
+        p.nextToken();
+        data[i] = (p.currentToken() == JsonToken.VALUE_STRING) ? p.getText() : mapper.readValue(p, Object.class);
+      }
+    }
+    msg.data = data;
     return decodeMessageParams(msg);
   }
 
+  /**
+   * copies each element of the data array into its own token buffer
+   */
+  private static TokenBuffer[] bufferParams(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+    List<TokenBuffer> buffers = new ArrayList<>();
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      TokenBuffer buffer = new TokenBuffer(parser);
+      buffer.copyCurrentStructure(parser);
+      buffers.add(buffer);
+    }
+    return buffers.toArray(new TokenBuffer[buffers.size()]);
+  }
+
+  /**
+   * Binds buffered parameters to the parameter types of the first method of
+   * the target service which accepts them. If the target type is not known
+   * (e.g. a relayed message) the parameters are decoded by their json type and
+   * the virtual class field.
+   */
+  private static Object[] decodeTypedParams(Message msg, TokenBuffer[] buffers) throws IOException {
+    Class<?> clazz = (msg.name == null) ? null : Runtime.getClass(msg.getFullName());
+    if (clazz != null && msg.method != null) {
+      List<MethodEntry> possible = MethodCache.getInstance().getRemoteOrdinalMethods(clazz, msg.method, buffers.length);
+      if (possible != null) {
+        for (MethodEntry methodEntry : possible) {
+          Class<?>[] paramTypes = methodEntry.getParameterTypes();
+          try {
+            Object[] params = new Object[buffers.length];
+            for (int i = 0; i < buffers.length; ++i) {
+              try (JsonParser p = buffers[i].asParser()) {
+                params[i] = mapper.readValue(p, paramTypes[i]);
+              }
+            }
+            return params;
+          } catch (Exception e) {
+            log.info("decodeTypedParams {}.{} {} params threw {}", clazz.getSimpleName(), msg.method, buffers.length, e.getMessage());
+          }
+        }
+      }
+    }
+
+    Object[] params = new Object[buffers.length];
+    for (int i = 0; i < buffers.length; ++i) {
+      try (JsonParser p = buffers[i].asParser()) {
+        JsonToken token = p.nextToken();
+        if (token == JsonToken.START_OBJECT) {
+          // Serializable should cover everything of interest
+          params[i] = mapper.readValue(p, Serializable.class);
+        } else if (token == JsonToken.START_ARRAY) {
+          params[i] = mapper.readValue(p, ArrayList.class);
+        } else if (token == JsonToken.VALUE_NUMBER_INT && p.getNumberType() == JsonParser.NumberType.INT) {
+          params[i] = p.getIntValue();
+        } else if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+          params[i] = p.getDoubleValue();
+        } else {
+          params[i] = mapper.readValue(p, Object.class);
+        }
+      }
+    }
+    return params;
+  }
+
   /**
    * Performs the second-stage decoding of a Message with JSON-encoded data
    * parameters. This method is meant to be a helper for the top-level Message
@@ -1347,7 +1604,7 @@ public class CodecUtils {
    *         JSON format.
    */
   public static String toJsonMsg(Message inMsg) {
-    if ("json".equals(inMsg.encoding)) {
+    if (ENCODING_JSON.equals(inMsg.encoding)) {
       // msg already has json encoded data parameters
       // just encode the msg envelope
       return CodecUtils.toJson(inMsg);
@@ -1366,6 +1623,110 @@ public class CodecUtils {
     return CodecUtils.toJson(msg);
   }
 
+  /**
+   * Encodes a Message as JSON in a single pass - the data parameters are
+   * embedded as json values, not as json strings. Messages which already have
+   * double-encoded data are sent as they are, the receiver knows both.
+   *
+   * @param inMsg
+   *          The message to be encoded
+   * @return A String representation of the message with
+   *         {@link #ENCODING_JSON_TYPED}
+   */
+  public static String toJsonTypedMsg(Message inMsg) {
+    if (ENCODING_JSON.equals(inMsg.encoding) || ENCODING_JSON_TYPED.equals(inMsg.encoding)) {
+      return CodecUtils.toJson(inMsg);
+    }
+    // the same msg may be sent to other connections - do not change it
+    Message msg = new Message(inMsg);
+    msg.encoding = ENCODING_JSON_TYPED;
+    return CodecUtils.toJson(msg);
+  }
+
+  /**
+   * Encodes a Message with the encoding negotiated for a connection
+   *
+   * @param msg
+   *          The message to be encoded
+   * @param encoding
+   *          {@link #ENCODING_JSON_TYPED} or anything else for the double
+   *          encoded protocol
+   * @return the json
+   */
+  public static String toJsonMsg(Message msg, String encoding) {
+    if (ENCODING_JSON_TYPED.equals(encoding)) {
+      return toJsonTypedMsg(msg);
+    }
+    return toJsonMsg(msg);
+  }
+
+  /**
+   * Encodes a Message in a binary format. The structure is the same as
+   * {@link #ENCODING_JSON_TYPED} - only the envelope format differs, and
+   * byte[] payloads (images, audio, serial data) are written as raw binary
+   * instead of base64. Messages which already have double-encoded data are
+   * sent as they are.
+   *
+   * @param inMsg
+   *          The message to be encoded
+   * @param encoding
+   *          {@link #ENCODING_SMILE} or {@link #ENCODING_CBOR}
+   * @return the encoded message
+   */
+  public static byte[] toBinaryMsg(Message inMsg, String encoding) {
+    ObjectMapper binaryMapper = ENCODING_SMILE.equals(encoding) ? smileMapper : cborMapper;
+    Message msg = inMsg;
+    if (!ENCODING_JSON.equals(inMsg.encoding) && !encoding.equals(inMsg.encoding)) {
+      // the same msg may be sent to other connections - do not change it
+      msg = new Message(inMsg);
+      msg.encoding = encoding;
+    }
+    try {
+      return binaryMapper.writeValueAsBytes(msg);
+    } catch (Exception e) {
+      log.error("toBinaryMsg threw", e);
+      return null;
+    }
+  }
+
+  /**
+   * @param encoding
+   *          a message encoding
+   * @return true if messages with this encoding are sent as binary
+   */
+  public static boolean isBinaryEncoding(String encoding) {
+    return ENCODING_SMILE.equals(encoding) || ENCODING_CBOR.equals(encoding);
+  }
+
+  /**
+   * @param data
+   *          a binary message
+   * @return {@link #ENCODING_SMILE} if the data starts with the Smile header,
+   *         {@link #ENCODING_CBOR} otherwise
+   */
+  public static String getBinaryEncoding(byte[] data) {
+    if (data.length >= 3 && data[0] == SmileConstants.HEADER_BYTE_1 && data[1] == SmileConstants.HEADER_BYTE_2 && data[2] == SmileConstants.HEADER_BYTE_3) {
+      return ENCODING_SMILE;
+    }
+    return ENCODING_CBOR;
+  }
+
+  /**
+   * The encoding a gateway uses for a connection which asked for one.
+   * Unknown or missing encodings get the double encoded json every client
+   * understands.
+   *
+   * @param requested
+   *          the encoding requested by the client
+   * @return a supported encoding
+   */
+  public static String getSupportedEncoding(String requested) {
+    if (ENCODING_JSON_TYPED.equals(requested) || isBinaryEncoding(requested)) {
+      return requested;
+    }
+    return ENCODING_JSON;
+  }
+
   @Deprecated
   public static Message toJsonParameters(Message msg) {
     Object[] data = msg.getData();
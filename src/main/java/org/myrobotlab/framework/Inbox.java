@@ -27,10 +27,10 @@ package org.myrobotlab.framework;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 
+import org.myrobotlab.framework.interfaces.Mailbox;
+import org.myrobotlab.framework.interfaces.Mailbox.OverrunPolicy;
 import org.myrobotlab.framework.interfaces.MessageListener;
 import org.myrobotlab.logging.LoggerFactory;
 import org.slf4j.Logger;
@@ -42,15 +42,19 @@ public class Inbox implements Serializable {
   public final static Logger log = LoggerFactory.getLogger(Inbox.class.getCanonicalName());
 
   String name;
-  LinkedList<Message> msgBox = new LinkedList<Message>();
   boolean isRunning = false;
   boolean bufferOverrun = false;
   boolean blocking = false;
   int maxQueue = 1024; // will need to adjust unit test if you change this
   // value
 
+  /**
+   * the queue - lock free ring buffer by default, replaced by setMailbox
+   */
+  transient volatile Mailbox msgBox = new RingBufferMailbox(maxQueue);
+
   // support remote blocking... in-process blocking uses invoke
-  public HashMap<String, Object[]> blockingList = new HashMap<>();
+  public transient PendingReplies pendingReplies = PendingReplies.getInstance();
 
   List<MessageListener> listeners = new ArrayList<MessageListener>();
 
@@ -74,49 +78,25 @@ public class Inbox implements Serializable {
      */
 
     // --- sendBlocking support begin --------------------
-    // TODO - possible safety check msg.status == Message.RETURN
-    // &&
-    String blockingKey = String.format("%s.%s", msg.getFullName(), msg.getMethod());
-    if (blockingList.containsKey(blockingKey)) {
-      Object[] returnContainer = blockingList.get(blockingKey);
-      if (msg.data == null) {
-        returnContainer[0] = null;
-      } else {
-        // transferring data
-        returnContainer[0] = msg.data[0];
-      }
-
-      synchronized (returnContainer) {
-        blockingList.remove(blockingKey);
-        returnContainer.notifyAll(); // addListener sender
-      }
+    if (pendingReplies.complete(msg)) {
       // do not invoke this msg - sendBlocking has
       // been notified and data returned
       // --- sendBlocking support end --------------------
     } else {
       // We do want to invoke this message
-      synchronized (msgBox) {
-        while (blocking && (msgBox.size() >= maxQueue)) // queue "full"
-        {
-          try {
-            msgBox.wait();
-          } catch (InterruptedException ex) {
-            log.debug("inbox enque msg INTERRUPTED " + name);
-          }
-        }
-
-        if (msgBox.size() > maxQueue) {
-          bufferOverrun = true;
-          log.warn("inbox size {} BUFFER OVERRUN dumping msg from {} To {}.{}", msgBox.size(), msg.sender, msg.name, msg.method);
-        } else {
-          msgBox.addFirst(msg);
-          // Logging.logTime(String.format("inbox - %s size %d", name,
-          // msgBox.size()));
-          if (log.isDebugEnabled()) {
-            log.debug("{}.msgBox + 1 = {}", name, msgBox.size());
-          }
-          msgBox.notifyAll(); // must own the lock
-        }
+      Mailbox box = msgBox;
+      boolean added = box.offer(msg);
+      Mailbox current;
+      while ((current = msgBox) != box) {
+        // replaced while adding - follow the others to the new mailbox
+        added = Mailboxes.followSwap(box, added, msg, current);
+        box = current;
+      }
+      if (!added) {
+        bufferOverrun = true;
+        log.warn("inbox size {} BUFFER OVERRUN dumping msg from {} To {}.{}", box.size(), msg.sender, msg.name, msg.method);
+      } else if (log.isDebugEnabled()) {
+        log.debug("{}.msgBox + 1 = {}", name, msgBox.size());
       }
     }
 
@@ -168,19 +148,12 @@ public class Inbox implements Serializable {
      */
 
     Message msg = null;
-
-    synchronized (msgBox) {
-
-      while (msg == null) { // while no messages && no messages that are
-        // blocking
-        if (msgBox.size() == 0) {
-          msgBox.wait(); // must own the lock
-        } else {
-          msg = msgBox.removeLast();
-          log.debug("{}.msgBox -1 {}", name, msgBox.size());
-        }
-      }
-      msgBox.notifyAll();
+    do {
+      msg = msgBox.take();
+      // woken up on a replaced mailbox - take from the new one
+    } while (msg == Mailboxes.WAKE_UP);
+    if (log.isDebugEnabled()) {
+      log.debug("{}.msgBox -1 {}", name, msgBox.size());
     }
     return msg;
   }
@@ -191,6 +164,65 @@ public class Inbox implements Serializable {
 
   public void setBlocking(boolean toBlock) {
     blocking = toBlock;
+    msgBox.setOverrunPolicy((toBlock) ? OverrunPolicy.BLOCK : OverrunPolicy.DROP_NEWEST);
+  }
+
+  /**
+   * what to do with new messages when the inbox is full - setBlocking(true) is
+   * the same as OverrunPolicy.BLOCK
+   * 
+   * @param policy
+   *          DROP_NEWEST, DROP_OLDEST, BLOCK or GROW
+   */
+  public void setOverrunPolicy(OverrunPolicy policy) {
+    if (policy == OverrunPolicy.GROW && !(msgBox instanceof LinkedListMailbox)) {
+      // a ring buffer can't grow
+      setMailbox(Outbox.newMailbox(maxQueue, policy));
+      return;
+    }
+    blocking = policy == OverrunPolicy.BLOCK;
+    msgBox.setOverrunPolicy(policy);
+  }
+
+  public OverrunPolicy getOverrunPolicy() {
+    return msgBox.getOverrunPolicy();
+  }
+
+  public int getMaxQueueSize() {
+    return maxQueue;
+  }
+
+  /**
+   * resizes the queue - queued messages are moved to the new one, can be done
+   * while the service is processing
+   * 
+   * @param size
+   *          max number of queued messages
+   */
+  public void setMaxQueueSize(int size) {
+    maxQueue = size;
+    setMailbox(Outbox.newMailbox(size, msgBox.getOverrunPolicy()));
+  }
+
+  /**
+   * swap the queue implementation, queued messages are moved to the new
+   * mailbox - a service thread waiting on the old one is woken up and takes
+   * from the new one
+   * 
+   * @param mailbox
+   *          the new queue
+   */
+  synchronized public void setMailbox(Mailbox mailbox) {
+    Mailbox old = msgBox;
+    msgBox = mailbox;
+    maxQueue = mailbox.getMaxSize();
+    blocking = mailbox.getOverrunPolicy() == OverrunPolicy.BLOCK;
+    Mailboxes.moveTo(old, mailbox);
+    old.offer(Mailboxes.WAKE_UP);
+  }
+
+  public Mailbox getMailbox() {
+    return msgBox;
   }
 
   public int size() {
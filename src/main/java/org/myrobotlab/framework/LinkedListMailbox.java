@@ -0,0 +1,126 @@
+package org.myrobotlab.framework;
+
+import java.util.LinkedList;
+
+import org.myrobotlab.framework.interfaces.Mailbox;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * The original Inbox/Outbox queue - a LinkedList guarded by its own monitor
+ * with wait/notifyAll on every add and remove. The default of the Outbox,
+ * which never drops by default (GROW), and a reference for benchmarking
+ * against {@link RingBufferMailbox}.
+ *
+ */
+public class LinkedListMailbox implements Mailbox {
+
+  public final static Logger log = LoggerFactory.getLogger(LinkedListMailbox.class);
+
+  final LinkedList<Message> msgBox = new LinkedList<Message>();
+
+  final int maxSize;
+
+  volatile OverrunPolicy policy;
+
+  long dropped = 0;
+
+  public LinkedListMailbox(int maxSize) {
+    this(maxSize, OverrunPolicy.DROP_NEWEST);
+  }
+
+  public LinkedListMailbox(int maxSize, OverrunPolicy policy) {
+    this.maxSize = maxSize;
+    this.policy = policy;
+  }
+
+  @Override
+  public boolean offer(Message msg) {
+    synchronized (msgBox) {
+      while (policy == OverrunPolicy.BLOCK && (msgBox.size() >= maxSize)) {
+        try {
+          msgBox.wait();
+        } catch (InterruptedException ex) {
+          log.debug("mailbox offer INTERRUPTED - dropping {}", msg);
+          Thread.currentThread().interrupt();
+          ++dropped;
+          return false;
+        }
+      }
+
+      if (msgBox.size() >= maxSize && policy != OverrunPolicy.GROW) {
+        ++dropped;
+        if (policy == OverrunPolicy.DROP_OLDEST) {
+          msgBox.removeLast();
+        } else {
+          return false;
+        }
+      }
+      msgBox.addFirst(msg);
+      msgBox.notifyAll();
+    }
+    return true;
+  }
+
+  @Override
+  public Message poll() {
+    synchronized (msgBox) {
+      if (msgBox.size() == 0) {
+        return null;
+      }
+      Message msg = msgBox.removeLast();
+      msgBox.notifyAll();
+      return msg;
+    }
+  }
+
+  @Override
+  public Message take() throws InterruptedException {
+    synchronized (msgBox) {
+      while (msgBox.size() == 0) {
+        msgBox.wait();
+      }
+      Message msg = msgBox.removeLast();
+      msgBox.notifyAll();
+      return msg;
+    }
+  }
+
+  @Override
+  public int size() {
+    synchronized (msgBox) {
+      return msgBox.size();
+    }
+  }
+
+  @Override
+  public void clear() {
+    synchronized (msgBox) {
+      msgBox.clear();
+      msgBox.notifyAll();
+    }
+  }
+
+  @Override
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public OverrunPolicy getOverrunPolicy() {
+    return policy;
+  }
+
+  @Override
+  public void setOverrunPolicy(OverrunPolicy policy) {
+    this.policy = policy;
+  }
+
+  @Override
+  public long getDropped() {
+    synchronized (msgBox) {
+      return dropped;
+    }
+  }
+
+}
@@ -69,6 +69,12 @@ public final class MRLListener implements Serializable {
    */
   public String callbackMethod;
 
+  /**
+   * invoker resolved for the callback the last time this subscription was
+   * delivered in-process - saves a method cache lookup per message
+   */
+  transient volatile MethodInvoker invoker;
+
   public MRLListener() {
   }
 
@@ -78,6 +84,29 @@ public final class MRLListener implements Serializable {
     this.callbackName = callbackName;
   }
 
+  /**
+   * Get the invoker for the callback method on a subscriber of a specific
+   * type. Resolved through the MethodCache the first time, or when the type of
+   * the subscriber or payload changes.
+   * 
+   * @param subscriberType
+   *          class of the subscribing service
+   * @param params
+   *          payload
+   * @return the invoker or null if the callback method does not exist
+   * @throws ClassNotFoundException
+   *           if the subscriber type can not be loaded
+   */
+  public MethodInvoker getInvoker(Class<?> subscriberType, Object... params) throws ClassNotFoundException {
+    MethodInvoker current = invoker;
+    if (current != null && current.matches(subscriberType, params)) {
+      return current;
+    }
+    current = MethodCache.getInstance().getInvoker(subscriberType, callbackMethod, params);
+    invoker = current;
+    return current;
+  }
+
   @Override
   public boolean equals(final Object other) {
     if (other instanceof MRLListener) {
@@ -0,0 +1,73 @@
+package org.myrobotlab.framework;
+
+import org.myrobotlab.framework.interfaces.Mailbox;
+
+/**
+ * What the Inbox and Outbox need to swap their mailbox while messages are
+ * added - not part of the Mailbox interface.
+ *
+ */
+final class Mailboxes {
+
+  /**
+   * not a message - offered to a mailbox which has been replaced, wakes up the
+   * consumers parked on it so they move to the new one
+   */
+  static final Message WAKE_UP = new Message();
+
+  private Mailboxes() {
+  }
+
+  /**
+   * moves the queued messages of a replaced mailbox to its replacement - wake
+   * ups are left for the consumers still parked on it
+   *
+   * @param from
+   *          the replaced mailbox
+   * @param to
+   *          the new mailbox
+   * @return number of messages moved
+   */
+  static int moveTo(Mailbox from, Mailbox to) {
+    int moved = 0;
+    int wakeUps = 0;
+    Message msg = null;
+    while ((msg = from.poll()) != null) {
+      if (msg == WAKE_UP) {
+        ++wakeUps;
+      } else {
+        to.offer(msg);
+        ++moved;
+      }
+    }
+    for (int i = 0; i < wakeUps; ++i) {
+      from.offer(WAKE_UP);
+    }
+    return moved;
+  }
+
+  /**
+   * a producer's offer to a mailbox it read before it was swapped - what is
+   * left in the old mailbox follows to the current one, a message the old one
+   * had no room for is offered to the current one
+   *
+   * @param box
+   *          the mailbox the message was offered to
+   * @param added
+   *          what its offer returned
+   * @param msg
+   *          the message
+   * @param current
+   *          the mailbox read again after the offer
+   * @return true if the message is queued in the current mailbox or moved to
+   *         it
+   */
+  static boolean followSwap(Mailbox box, boolean added, Message msg, Mailbox current) {
+    moveTo(box, current);
+    if (!added) {
+      added = current.offer(msg);
+    }
+    return added;
+  }
+
+}
@@ -94,6 +94,17 @@ public class Message implements Serializable {
 
   public String status;
 
+  /**
+   * status of a request which expects its return value sent back with the
+   * same msgId
+   */
+  public final static String BLOCKING = "BLOCKING";
+
+  /**
+   * status of a reply to a BLOCKING request
+   */
+  public final static String RETURN = "RETURN";
+
   public String encoding; // null == none |json|cli|xml|stream ...
 
   /**
@@ -15,6 +15,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 
@@ -130,6 +131,18 @@ public class MethodCache {
 
   Map<String, MethodIndex> objectCache = new TreeMap<>();
 
+  /**
+   * resolved invokers - class -&gt; method name -&gt; invokers for the different
+   * parameter types the method has been called with
+   */
+  Map<Class<?>, Map<String, MethodInvoker[]>> invokerCache = new ConcurrentHashMap<>();
+
+  /**
+   * max number of parameter type combinations cached per method - beyond this
+   * they are resolved but not cached
+   */
+  static final int MAX_INVOKERS_PER_METHOD = 16;
+
   protected MethodCache() {
   }
 
@@ -239,6 +252,7 @@ public class MethodCache {
    */
   public void clear() {
     objectCache.clear();
+    invokerCache.clear();
   }
 
   public int getObjectSize() {
@@ -440,6 +454,58 @@ public class MethodCache {
     return null;
   }
 
+  /**
+   * Get a pre-resolved invoker for the object type, method and the runtime
+   * types of the parameters. The first call resolves through getMethod, after
+   * that it is a couple of hash lookups and a type check, no string keys are
+   * built.
+   * 
+   * @param objectType
+   *          the class of the receiver
+   * @param methodName
+   *          method name
+   * @param params
+   *          parameters which will be passed
+   * @return the invoker or null if the method can not be resolved
+   * @throws ClassNotFoundException
+   *           if the type can not be loaded
+   */
+  public MethodInvoker getInvoker(Class<?> objectType, String methodName, Object... params) throws ClassNotFoundException {
+    Map<String, MethodInvoker[]> byName = invokerCache.get(objectType);
+    if (byName == null) {
+      byName = invokerCache.computeIfAbsent(objectType, k -> new ConcurrentHashMap<>());
+    }
+
+    MethodInvoker[] invokers = byName.get(methodName);
+    if (invokers != null) {
+      for (MethodInvoker invoker : invokers) {
+        if (invoker.matches(params)) {
+          return invoker;
+        }
+      }
+    }
+
+    Class<?>[] paramTypes = getParamTypes(params);
+    Method method = getMethod(objectType, methodName, paramTypes);
+    if (method == null) {
+      return null;
+    }
+    MethodInvoker invoker = new MethodInvoker(objectType, method, paramTypes);
+    byName.compute(methodName, (k, current) -> {
+      if (current == null) {
+        return new MethodInvoker[] { invoker };
+      }
+      if (current.length >= MAX_INVOKERS_PER_METHOD) {
+        return current;
+      }
+      MethodInvoker[] grown = new MethodInvoker[current.length + 1];
+      System.arraycopy(current, 0, grown, 0, current.length);
+      grown[current.length] = invoker;
+      return grown;
+    });
+    return invoker;
+  }
+
   final public Object invokeOn(Object obj, String methodName, Object... params)
       throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, ClassNotFoundException {
 
@@ -450,8 +516,8 @@ public class MethodCache {
 
     Object retobj = null;
     MethodCache cache = MethodCache.getInstance();
-    Method method = cache.getMethod(obj.getClass(), methodName, params);
-    retobj = method.invoke(obj, params);
+    MethodInvoker invoker = cache.getInvoker(obj.getClass(), methodName, params);
+    retobj = invoker.invoke(obj, params);
     return retobj;
   }
 
@@ -0,0 +1,142 @@
+package org.myrobotlab.framework;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * A pre-resolved invocation handle. It is resolved once through the
+ * MethodCache for a receiver class, method name and the runtime classes of
+ * the parameters, after that invoking is a MethodHandle call - no string keys,
+ * no reflective lookup.
+ *
+ * The handle is adapted to (Object, Object[])Object so it can be invoked
+ * exactly regardless of the target signature, primitives are unboxed by the
+ * handle itself. Methods which can not be unreflected (e.g. public methods of
+ * a non public class) fall back to Method.invoke.
+ *
+ * Invokers are cached in the MethodCache and on MRLListener subscriptions.
+ */
+public final class MethodInvoker {
+
+  public final static Logger log = LoggerFactory.getLogger(MethodInvoker.class);
+
+  static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  static final Object[] NO_PARAMS = new Object[0];
+
+  /**
+   * the class of the object this invoker was resolved for
+   */
+  final Class<?> type;
+
+  /**
+   * runtime classes of the parameters this invoker was resolved for - null
+   * entries were null parameters
+   */
+  final Class<?>[] paramTypes;
+
+  final Method method;
+
+  final MethodHandle handle;
+
+  public MethodInvoker(Class<?> type, Method method, Class<?>[] paramTypes) {
+    this.type = type;
+    this.method = method;
+    this.paramTypes = paramTypes;
+    this.handle = unreflect(method);
+  }
+
+  private static MethodHandle unreflect(Method method) {
+    try {
+      MethodHandle mh = MethodHandles.publicLookup().unreflect(method).asFixedArity();
+      if (Modifier.isStatic(method.getModifiers())) {
+        mh = MethodHandles.dropArguments(mh, 0, Object.class);
+      }
+      int paramCount = method.getParameterCount();
+      return mh.asType(MethodType.genericMethodType(paramCount + 1)).asSpreader(Object[].class, paramCount).asType(INVOKE_TYPE);
+    } catch (Exception e) {
+      log.debug("could not unreflect {} - using reflection", method);
+      return null;
+    }
+  }
+
+  /**
+   * checks if this invoker can be used for the object type and parameters
+   *
+   * @param objectType
+   *          the receiver class
+   * @param params
+   *          parameters
+   * @return true if it was resolved for exactly these types
+   */
+  public boolean matches(Class<?> objectType, Object[] params) {
+    return type == objectType && matches(params);
+  }
+
+  /**
+   * checks if the runtime classes of the parameters are the ones this invoker
+   * was resolved for
+   *
+   * @param params
+   *          parameters
+   * @return true if they match
+   */
+  public boolean matches(Object[] params) {
+    int length = (params == null) ? 0 : params.length;
+    if (length != paramTypes.length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      Object param = params[i];
+      if (param == null) {
+        if (paramTypes[i] != null) {
+          return false;
+        }
+      } else if (param.getClass() != paramTypes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * invoke the method
+   *
+   * @param obj
+   *          the receiver
+   * @param params
+   *          the parameters
+   * @return the return value, null for void methods
+   * @throws IllegalAccessException
+   *           reflection fallback failed
+   * @throws InvocationTargetException
+   *           the invoked method threw - the cause is what it threw
+   */
+  public Object invoke(Object obj, Object... params) throws IllegalAccessException, InvocationTargetException {
+    if (handle == null) {
+      return method.invoke(obj, params);
+    }
+    try {
+      return handle.invokeExact(obj, (params == null) ? NO_PARAMS : params);
+    } catch (Throwable e) {
+      throw new InvocationTargetException(e);
+    }
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  @Override
+  public String toString() {
+    return method.toString();
+  }
+
+}
@@ -28,15 +28,16 @@ package org.myrobotlab.framework;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.framework.SubscriberQueue.SlowSubscriberPolicy;
+import org.myrobotlab.framework.interfaces.Mailbox;
+import org.myrobotlab.framework.interfaces.Mailbox.OverrunPolicy;
 import org.myrobotlab.framework.interfaces.MessageListener;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
 import org.myrobotlab.logging.LoggerFactory;
@@ -50,6 +51,12 @@ import org.slf4j.Logger;
  * It can (if possible) take a message and move it to the inbox of a local service, or
  * (if necessary) send it to a local operator.
  * 
+ * The outbox thread only routes - each message is queued on a SubscriberQueue per
+ * (publisher, subscriber) pair and delivered by the shared OutboxDispatcher pool. Order is
+ * kept per pair, a slow subscriber only backs up its own queue, what happens then
+ * depends on its SlowSubscriberPolicy - DROP unless BLOCK or COALESCE_LATEST is set
+ * for it.
+ * 
  * It knows nothing about protocols, serialization methods, or communication methods.
  */
 
@@ -64,31 +71,54 @@ public class Outbox implements Runnable, Serializable {
 
   protected String name = null;
 
-  private transient LinkedList<Message> msgBox = new LinkedList<Message>();
+  int maxQueue = 1024;
+
+  /**
+   * the queue - grows past maxQueue with a warning by default, published
+   * messages are not dropped unless a dropping policy is set - replaced by
+   * setMailbox
+   */
+  private transient volatile Mailbox msgBox = new LinkedListMailbox(maxQueue, OverrunPolicy.GROW);
 
   private boolean isRunning = false;
 
   private boolean blocking = false;
 
-  int maxQueue = 1024;
-
   int initialThreadCount = 1;
 
   transient ArrayList<Thread> outboxThreadPool = new ArrayList<Thread>();
 
-  protected Map<String, FilterInterface> filters = new TreeMap<>();
-
   public interface FilterInterface {
     public boolean filter(Message msg);
   }
 
   /**
-   * pub/sub listeners - HashMap &lt; {topic}, List {listeners} &gt;
+   * pub/sub listeners - {topic} to List {listeners}, with filters - read
+   * through immutable snapshots
    */
-  protected Map<String, List<MRLListener>> notifyList = new TreeMap<String, List<MRLListener>>();
+  protected transient SubscriptionRegistry subscriptions = new SubscriptionRegistry();
 
   List<MessageListener> listeners = new ArrayList<MessageListener>();
 
+  /**
+   * delivery queues - subscriber full name to queue
+   */
+  transient Map<String, SubscriberQueue> subscriberQueues = new ConcurrentHashMap<>();
+
+  int subscriberQueueSize = 1024;
+
+  /**
+   * policy of new subscriber queues - BLOCK is only set per subscriber
+   */
+  SlowSubscriberPolicy subscriberPolicy = SlowSubscriberPolicy.DROP;
+
+  /**
+   * min ms between publishQueueStats of the subscriber queues
+   */
+  int statsInterval = 1000;
+
+  transient long lastStatsTs = 0;
+
   private boolean autoClean = false;
 
   public boolean isAutoClean() {
@@ -109,7 +139,7 @@ public class Outbox implements Runnable, Serializable {
 
   public Set<String> getAttached(String publishingPoint, boolean localOnly) {
     Set<String> unique = new TreeSet<>();
-    for (List<MRLListener> subcribers : notifyList.values()) {
+    for (List<MRLListener> subcribers : subscriptions.getAll().values()) {
       for (MRLListener listener : subcribers) {
         if (localOnly && !CodecUtils.isLocal(listener.callbackName)) {
           continue;
@@ -131,33 +161,21 @@ public class Outbox implements Runnable, Serializable {
     // log.error(String.format("%s.outbox.add(msg) %s.%s --> %s.%s",
     // myService.getName(), msg.sender, msg.sendingMethod, msg.name,
     // msg.method));
-    synchronized (msgBox) {
-      while (blocking && (msgBox.size() >= maxQueue)) {
-        // queue "full"
-        try {
-          // log.debug("outbox enque msg WAITING ");
-          msgBox.wait(); // Limit the size
-        } catch (InterruptedException ex) {
-          log.debug("outbox add enque msg INTERRUPTED ");
-        }
-      }
-
-      // we warn if over 10 messages are in the queue - but we will still
-      // process them
-      if (msgBox.size() > maxQueue) {
-        // log.warn("{} outbox BUFFER OVERRUN size {} Dropping message to
-        // {}.{}", myService.getName(), msgBox.size(), msg.name, msg.method);
-        log.warn("{} outbox BUFFER OVERRUN size {} Dropping message to {}", name, msgBox.size(), msg);
-      }
-      msgBox.addFirst(msg);
-
-      // Logging.logTime(String.format("outbox %s size %d",myService.getName(),
-      // msgBox.size()));
-
-      if (log.isDebugEnabled()) {
-        log.debug("msg [{}]", msg.toString());
-      }
-      msgBox.notifyAll(); // must own the lock
+    Mailbox box = msgBox;
+    boolean added = box.offer(msg);
+    Mailbox current;
+    while ((current = msgBox) != box) {
+      // replaced while adding - follow the others to the new mailbox
+      added = Mailboxes.followSwap(box, added, msg, current);
+      box = current;
+    }
+    if (!added) {
+      log.warn("{} outbox BUFFER OVERRUN size {} Dropping message to {}", name, box.size(), msg);
+    } else if (box.getOverrunPolicy() == OverrunPolicy.GROW && box.size() > maxQueue && box.size() % maxQueue == 1) {
+      // once per maxQueue messages over
+      log.warn("{} outbox BUFFER OVERRUN size {} max {}", name, box.size(), maxQueue);
+    } else if (log.isDebugEnabled()) {
+      log.debug("msg [{}]", msg.toString());
     }
 
     // now that it's actually in the queue. let's notify the listeners
@@ -166,32 +184,21 @@ public class Outbox implements Runnable, Serializable {
     }
   }
 
-  // FIXME - consider using a blocking queue now that we are using Java 5.0
   @Override
   public void run() {
     isRunning = true;
     while (isRunning) {
       Message msg = null;
-      synchronized (msgBox) {
-        try {
-          while (msgBox.size() == 0) {
-            // log.debug("outbox run WAITING ");
-            msgBox.wait(); // must own the lock
-          }
-        } catch (InterruptedException ex) {
-          log.debug("outbox run INTERRUPTED ");
-          // msgBox.notifyAll();
-          isRunning = false;
-          return;
+      try {
+        msg = msgBox.take();
+        if (msg == Mailboxes.WAKE_UP) {
+          // woken up on a replaced mailbox - take from the new one
+          continue;
         }
-        msg = msgBox.removeLast();
-        // chase network bugs
-        // log.error(String.format("%s.outbox.run(msg) %s.%s -- %s.%s ",
-        // myService.getName(), msg.sender, msg.sendingMethod, msg.name,
-        // msg.method));
-        // log.debug(String.format("removed from msgBox size now %d",
-        // msgBox.size()));
-        msgBox.notifyAll();
+      } catch (InterruptedException ex) {
+        log.debug("outbox run INTERRUPTED ");
+        isRunning = false;
+        return;
       }
 
       // RELAY OTHER SERVICE'S MSGS
@@ -202,36 +209,23 @@ public class Outbox implements Runnable, Serializable {
       // deprecate that logic
       if (msg.getName() != null) {
         log.debug("{} configured to RELAY ", msg.getName());
-        send(msg);
+        dispatch(msg);
         // recently added -
         // if I'm relaying I'm not broadcasting...(i think)
         continue;
       }
 
       // BROADCASTS name=="" WILL DROP DOWN and be processed here
-      if (notifyList.size() != 0) {
+      if (!subscriptions.isEmpty()) {
         // get the value for the source method
-        List<MRLListener> subList = notifyList.get(msg.sendingMethod);
-        if (subList == null) {
+        SubscriptionRegistry.Topic topic = subscriptions.getTopic(msg.sendingMethod);
+        if (topic == null) {
           // log.debug("no additional routes for {}.{} ", msg.sender, msg.sendingMethod);
           // This will cause issues in broadcasts
           continue;
         }
-
-        for (int i = 0; i < subList.size(); ++i) {
-          MRLListener listener = subList.get(i);
-          msg.setName(listener.callbackName);
-          msg.method = listener.callbackMethod;
-
-          if (!isFiltered(msg)) {
-            send(msg);
-          }
-
-          // must make new for internal queues
-          // otherwise you'll change the name on
-          // existing enqueued messages
-          msg = new Message(msg);
-        }
+        broadcast(msg, topic);
+        reportStats();
       } else {
         if (log.isDebugEnabled()) {
           log.debug("{}/{}({}) notifyList is empty", msg.getName(), msg.method, CodecUtils.getParameterSignature(msg.data));
@@ -241,25 +235,173 @@ public class Outbox implements Runnable, Serializable {
     } // while (isRunning)
   }
 
+  /**
+   * queue a copy of the message for each subscriber, the published message
+   * itself is not changed
+   * 
+   * @param msg
+   *          published message
+   * @param topic
+   *          subscribers of its sendingMethod
+   */
+  void broadcast(Message msg, SubscriptionRegistry.Topic topic) {
+    List<MRLListener> subList = topic.listeners;
+    for (int i = 0; i < subList.size(); ++i) {
+      MRLListener listener = subList.get(i);
+      Message out = new Message(msg);
+      out.setName(listener.callbackName);
+      out.method = listener.callbackMethod;
+
+      // filters are resolved when subscriptions change
+      FilterInterface filter = topic.getFilter(i);
+      if (filter == null || !filter.filter(out)) {
+        dispatch(out);
+      }
+    }
+  }
+
+  /**
+   * queue an addressed message on the (publisher, subscriber) queue
+   * 
+   * @param msg
+   *          message with name set
+   */
+  void dispatch(Message msg) {
+    getSubscriberQueue(msg.getName()).offer(msg);
+  }
+
+  /**
+   * the delivery queue to a subscriber, created with the default policy and
+   * size if it does not exist
+   * 
+   * @param subscriber
+   *          name of the subscriber
+   * @return its queue
+   */
+  public SubscriberQueue getSubscriberQueue(String subscriber) {
+    String fullName = CodecUtils.getFullName(subscriber);
+    SubscriberQueue queue = subscriberQueues.get(fullName);
+    if (queue == null) {
+      queue = subscriberQueues.computeIfAbsent(fullName, k -> new SubscriberQueue(name, k, this::send, subscriberQueueSize, subscriberPolicy));
+    }
+    return queue;
+  }
+
+  /**
+   * publishes the stats of the subscriber queues, if someone subscribed to
+   * publishQueueStats and the stats interval has passed
+   */
+  void reportStats() {
+    long now = System.currentTimeMillis();
+    if (now - lastStatsTs < statsInterval) {
+      return;
+    }
+    lastStatsTs = now;
+    SubscriptionRegistry.Topic topic = subscriptions.getTopic("publishQueueStats");
+    if (topic == null) {
+      return;
+    }
+    for (QueueStats stats : getQueueStats()) {
+      Message msg = Message.createMessage(name, null, "publishQueueStats", stats);
+      msg.sendingMethod = "publishQueueStats";
+      broadcast(msg, topic);
+    }
+  }
+
+  /**
+   * @return depth, lag and drop counts of every subscriber queue
+   */
+  public List<QueueStats> getQueueStats() {
+    List<QueueStats> ret = new ArrayList<>();
+    for (SubscriberQueue queue : subscriberQueues.values()) {
+      ret.add(queue.getStats());
+    }
+    return ret;
+  }
+
+  /**
+   * what to do when a subscriber falls behind, applies to all current and
+   * future subscribers
+   * 
+   * @param policy
+   *          DROP or COALESCE_LATEST - a blocking subscriber would hold up all
+   *          the others, BLOCK is set per subscriber
+   */
+  public void setSubscriberPolicy(SlowSubscriberPolicy policy) {
+    if (policy == SlowSubscriberPolicy.BLOCK) {
+      throw new IllegalArgumentException(String.format("%s - BLOCK is set per subscriber", name));
+    }
+    subscriberPolicy = policy;
+    for (SubscriberQueue queue : subscriberQueues.values()) {
+      queue.setPolicy(policy);
+    }
+  }
+
+  /**
+   * what to do when a specific subscriber falls behind
+   * 
+   * @param subscriber
+   *          name of the subscriber
+   * @param policy
+   *          BLOCK (the outbox waits for it, holding up the other
+   *          subscribers), DROP or COALESCE_LATEST
+   */
+  public void setSubscriberPolicy(String subscriber, SlowSubscriberPolicy policy) {
+    getSubscriberQueue(subscriber).setPolicy(policy);
+  }
+
+  public SlowSubscriberPolicy getSubscriberPolicy() {
+    return subscriberPolicy;
+  }
+
+  /**
+   * max queued messages per subscriber before the slow subscriber policy is
+   * applied
+   * 
+   * @param size
+   *          max queued messages
+   */
+  public void setSubscriberQueueSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException(String.format("subscriber queue size must be > 0 not %d", size));
+    }
+    subscriberQueueSize = size;
+    for (SubscriberQueue queue : subscriberQueues.values()) {
+      queue.setMaxSize(size);
+    }
+  }
+
+  public int getSubscriberQueueSize() {
+    return subscriberQueueSize;
+  }
+
+  public void setStatsInterval(int ms) {
+    statsInterval = ms;
+  }
+
   public FilterInterface addFilter(String name, String method, FilterInterface filter) {
-    return filters.put(String.format("%s.%s", CodecUtils.getFullName(name), method), filter);
+    return subscriptions.putFilter(CodecUtils.getFullName(name), method, filter);
   }
 
   public FilterInterface removeFilter(String name, String method) {
-    return filters.remove(String.format("%s.%s", CodecUtils.getFullName(name), method));
+    return subscriptions.removeFilter(CodecUtils.getFullName(name), method);
   }
 
   public boolean isFiltered(Message msg) {
-    String fullname = CodecUtils.getFullName(msg.name);
-    if (filters.size() == 0 || !filters.containsKey(String.format("%s.%s", fullname, msg.method))) {
-      return false;
-    } else {
-      return filters.get(String.format("%s.%s", fullname, msg.method)).filter(msg);
-    }
+    FilterInterface filter = subscriptions.getFilter(CodecUtils.getFullName(msg.name), msg.method);
+    return filter != null && filter.filter(msg);
   }
 
+  /**
+   * @return queued messages, including the ones waiting for delivery to
+   *         subscribers
+   */
   public int size() {
-    return msgBox.size();
+    int size = msgBox.size();
+    for (SubscriberQueue queue : subscriberQueues.values()) {
+      size += queue.size();
+    }
+    return size;
   }
 
   public void start() {
@@ -280,7 +422,7 @@ public class Outbox implements Runnable, Serializable {
     }
   }
 
-  public LinkedList<Message> getMsgBox() {
+  public Mailbox getMsgBox() {
     return msgBox;
   }
 
@@ -288,8 +430,42 @@ public class Outbox implements Runnable, Serializable {
     return maxQueue;
   }
 
+  /**
+   * resizes the queue - queued messages are moved to the new one, can be done
+   * while the service is publishing
+   * 
+   * @param size
+   *          max number of queued messages - with GROW the size it warns at
+   */
   public void setMaxQueueSize(int size) {
-    maxQueue = size;
+    setMailbox(newMailbox(size, msgBox.getOverrunPolicy()));
+  }
+
+  /**
+   * @return a LinkedListMailbox which can grow, else the lock free
+   *         RingBufferMailbox
+   */
+  static Mailbox newMailbox(int size, OverrunPolicy policy) {
+    return (policy == OverrunPolicy.GROW) ? new LinkedListMailbox(size, policy) : new RingBufferMailbox(size, policy);
+  }
+
+  /**
+   * swap the queue implementation, queued messages are moved to the new
+   * mailbox - outbox threads waiting on the old one are woken up and take from
+   * the new one
+   * 
+   * @param mailbox
+   *          the new queue
+   */
+  synchronized public void setMailbox(Mailbox mailbox) {
+    Mailbox old = msgBox;
+    msgBox = mailbox;
+    maxQueue = mailbox.getMaxSize();
+    blocking = mailbox.getOverrunPolicy() == OverrunPolicy.BLOCK;
+    Mailboxes.moveTo(old, mailbox);
+    for (int i = 0; i < Math.max(1, outboxThreadPool.size()); ++i) {
+      old.offer(Mailboxes.WAKE_UP);
+    }
   }
 
   public boolean isBlocking() {
@@ -297,7 +473,28 @@ public class Outbox implements Runnable, Serializable {
   }
 
   public void setBlocking(boolean blocking) {
-    this.blocking = blocking;
+    setOverrunPolicy((blocking) ? OverrunPolicy.BLOCK : OverrunPolicy.GROW);
+  }
+
+  /**
+   * what to do with new messages when the outbox is full - setBlocking(true)
+   * is the same as OverrunPolicy.BLOCK, setBlocking(false) the default GROW
+   * 
+   * @param policy
+   *          GROW (nothing dropped), DROP_NEWEST, DROP_OLDEST or BLOCK
+   */
+  public void setOverrunPolicy(OverrunPolicy policy) {
+    if (policy == OverrunPolicy.GROW && !(msgBox instanceof LinkedListMailbox)) {
+      // a ring buffer can't grow
+      setMailbox(newMailbox(maxQueue, policy));
+      return;
+    }
+    blocking = policy == OverrunPolicy.BLOCK;
+    msgBox.setOverrunPolicy(policy);
+  }
+
+  public OverrunPolicy getOverrunPolicy() {
+    return msgBox.getOverrunPolicy();
   }
 
   public boolean isRunning() {
@@ -358,7 +555,7 @@ public class Outbox implements Runnable, Serializable {
    * remove ALL listeners/subscribers
    */
   public void reset() {
-    notifyList = new HashMap<String, List<MRLListener>>();
+    subscriptions.clear();
   }
 
   /**
@@ -368,22 +565,22 @@ public class Outbox implements Runnable, Serializable {
    *          the name of the listener to detach
    * 
    */
-  synchronized public void detach(String service) {
+  public void detach(String service) {
     String name = CodecUtils.getFullName(service);
-    for (String topic : notifyList.keySet()) {
-      List<MRLListener> subscribers = notifyList.get(topic);
-      ArrayList<MRLListener> smallerList = new ArrayList<>();
-      for (MRLListener listener : subscribers) {
-        if (!listener.callbackName.equals(name)) {
-          smallerList.add(listener);
-        }
-      }
-      notifyList.put(topic, smallerList);
-    }
+    subscriptions.removeSubscriber(name);
+    // queued messages are still delivered
+    subscriberQueues.remove(name);
   }
 
+  /**
+   * @return unmodifiable snapshot of the subscriptions
+   */
   public Map<String, List<MRLListener>> getNotifyList() {
-    return notifyList;
+    return subscriptions.getAll();
+  }
+
+  public SubscriptionRegistry getSubscriptions() {
+    return subscriptions;
   }
 
 }
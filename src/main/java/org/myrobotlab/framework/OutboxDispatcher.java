@@ -0,0 +1,82 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Process wide fan-out executor shared by all outboxes.
+ *
+ * <pre>
+ * An Outbox thread only routes - it finds the subscribers of a published
+ * message and puts a copy in the SubscriberQueue of each (publisher,
+ * subscriber) pair. The queues are drained by this pool, one worker per queue
+ * at a time, so every pair stays in FIFO order while a slow subscriber only
+ * holds up its own queue.
+ *
+ * The pool keeps a worker per core (at least 2) and grows when they are all
+ * busy - a delivery blocked in a service's inbox or a slow gateway write only
+ * holds its own worker, the extra workers exit after a minute idle. A queue
+ * gives its worker back after a batch of messages so a busy subscriber can not
+ * starve the others.
+ * </pre>
+ */
+public class OutboxDispatcher {
+
+  public final static Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+  private static volatile OutboxDispatcher instance;
+
+  final ThreadPoolExecutor executor;
+
+  final int coreThreads;
+
+  public static OutboxDispatcher getInstance() {
+    if (instance != null) {
+      return instance;
+    }
+    synchronized (OutboxDispatcher.class) {
+      if (instance == null) {
+        instance = new OutboxDispatcher(Math.max(2, java.lang.Runtime.getRuntime().availableProcessors()));
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * @param coreThreads
+   *          workers kept when idle
+   */
+  OutboxDispatcher(int coreThreads) {
+    this.coreThreads = coreThreads;
+    AtomicInteger count = new AtomicInteger();
+    // no queue - a task gets an idle worker or a new one
+    executor = new ThreadPoolExecutor(coreThreads, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), r -> {
+      Thread t = new Thread(r, "outbox_dispatch_" + count.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * schedule a subscriber queue to be drained
+   *
+   * @param task
+   *          the drain task
+   */
+  public void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  /**
+   * @return current number of workers
+   */
+  public int getThreadCount() {
+    return executor.getPoolSize();
+  }
+
+}
@@ -0,0 +1,173 @@
+package org.myrobotlab.framework;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Process wide table of replies which are being waited on. It replaces the
+ * string keyed Inbox.blockingList.
+ *
+ * <pre>
+ * There are two ways a reply is matched :
+ *
+ *   by correlation id - sendBlocking/sendAsync send a msg with status BLOCKING
+ *     and a unique msgId, the invoked service sends the return value back
+ *     with status RETURN and the same msgId
+ *
+ *   by topic - waitFor subscribes to a {name}.{method} and waits for the
+ *     next message delivered to {subscriber}.{callbackMethod}
+ * </pre>
+ *
+ * Every Inbox.add and Service.invoke(Message) asks this table if the message
+ * is a reply. When nothing is pending that is a status check and a volatile
+ * read - no keys are built, nothing is allocated.
+ */
+public class PendingReplies {
+
+  public final static Logger log = LoggerFactory.getLogger(PendingReplies.class);
+
+  private static PendingReplies instance;
+
+  /**
+   * replies matched by msgId
+   */
+  final Map<Long, CompletableFuture<Object>> byId = new ConcurrentHashMap<>();
+
+  /**
+   * replies matched by destination name then method
+   */
+  final Map<String, Map<String, Queue<CompletableFuture<Object>>>> byTopic = new ConcurrentHashMap<>();
+
+  final AtomicInteger pendingIds = new AtomicInteger();
+
+  final AtomicInteger pendingTopics = new AtomicInteger();
+
+  public static PendingReplies getInstance() {
+    if (instance != null) {
+      return instance;
+    }
+    synchronized (PendingReplies.class) {
+      if (instance == null) {
+        instance = new PendingReplies();
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Expect a reply with status RETURN and the msgId of the request
+   *
+   * @param msgId
+   *          unique id of the request message
+   * @param timeoutMs
+   *          max time to wait, null waits forever
+   * @return future completed with the returned data
+   */
+  public CompletableFuture<Object> expect(long msgId, Integer timeoutMs) {
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    byId.put(msgId, future);
+    pendingIds.incrementAndGet();
+    future.whenComplete((ret, e) -> {
+      if (byId.remove(msgId, future)) {
+        pendingIds.decrementAndGet();
+      }
+    });
+    return withTimeout(future, timeoutMs);
+  }
+
+  /**
+   * Expect the next message delivered to fullName.method
+   *
+   * @param fullName
+   *          full name of the receiving service
+   * @param method
+   *          method the message will invoke
+   * @param timeoutMs
+   *          max time to wait, null waits forever
+   * @return future completed with the delivered data
+   */
+  public CompletableFuture<Object> expect(String fullName, String method, Integer timeoutMs) {
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    Queue<CompletableFuture<Object>> waiting = byTopic.computeIfAbsent(fullName, k -> new ConcurrentHashMap<>()).computeIfAbsent(method,
+        k -> new ConcurrentLinkedQueue<>());
+    waiting.add(future);
+    pendingTopics.incrementAndGet();
+    future.whenComplete((ret, e) -> {
+      if (waiting.remove(future)) {
+        pendingTopics.decrementAndGet();
+      }
+    });
+    return withTimeout(future, timeoutMs);
+  }
+
+  private CompletableFuture<Object> withTimeout(CompletableFuture<Object> future, Integer timeoutMs) {
+    if (timeoutMs != null) {
+      future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+    return future;
+  }
+
+  /**
+   * If the message is a reply someone is waiting for, complete their future.
+   *
+   * @param msg
+   *          incoming message
+   * @return true if the message was a reply and has been consumed
+   */
+  public boolean complete(Message msg) {
+    if (Message.RETURN.equals(msg.status)) {
+      CompletableFuture<Object> future = (pendingIds.get() > 0) ? byId.get(msg.msgId) : null;
+      if (future != null) {
+        future.complete(getReturn(msg));
+      } else {
+        // the waiter timed out or was cancelled - nothing to invoke
+        log.info("dropping late reply {}", msg);
+      }
+      return true;
+    }
+
+    if (pendingTopics.get() > 0 && msg.name != null) {
+      Map<String, Queue<CompletableFuture<Object>>> methods = byTopic.get(msg.name);
+      if (methods == null) {
+        return false;
+      }
+      Queue<CompletableFuture<Object>> waiting = methods.get(msg.method);
+      if (waiting == null || waiting.isEmpty()) {
+        return false;
+      }
+      // everyone waiting on the topic gets the same message
+      Object ret = getReturn(msg);
+      boolean completed = false;
+      CompletableFuture<Object> future = null;
+      while ((future = waiting.poll()) != null) {
+        pendingTopics.decrementAndGet();
+        completed |= future.complete(ret);
+      }
+      return completed;
+    }
+    return false;
+  }
+
+  private Object getReturn(Message msg) {
+    if (msg.data == null || msg.data.length == 0) {
+      return null;
+    }
+    return msg.data[0];
+  }
+
+  /**
+   * @return number of replies being waited on
+   */
+  public int size() {
+    return pendingIds.get() + pendingTopics.get();
+  }
+
+}
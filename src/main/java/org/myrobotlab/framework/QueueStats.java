@@ -11,6 +11,34 @@ public class QueueStats {
   public long delta;
   public long lineSpeed;
 
+  /**
+   * subscriber of a (publisher, subscriber) outbox queue - name is the
+   * publisher
+   */
+  public String subscriber;
+  /**
+   * slow subscriber policy of the queue
+   */
+  public String policy;
+  /**
+   * ms between queuing and delivery of the last message
+   */
+  public long lag;
+  /**
+   * max lag since the previous stats
+   */
+  public long maxLag;
+  public long dropped;
+  public long coalesced;
+  /**
+   * bytes queued - connection send queues
+   */
+  public long bytes;
+  /**
+   * messages sent again - MrlComm ack window
+   */
+  public long retransmitted;
+
   public String getName() {
     return name;
   }
@@ -0,0 +1,254 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.myrobotlab.framework.interfaces.Mailbox;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Lock-free bounded mailbox - the default queue of the Inbox.
+ *
+ * <pre>
+ * It is a sequenced ring buffer (D. Vyukov's bounded queue). Each slot has a
+ * sequence number which tells producers and consumers if the slot is free
+ * or filled for the current lap around the ring. Producers claim slots with a
+ * CAS on the tail, consumers with a CAS on the head, so there are no locks
+ * on the add/remove path.
+ *
+ * The head is CAS'd (and not just written) so that the DROP_OLDEST policy
+ * can let a producer remove the oldest message, and so an Outbox with more
+ * than one thread still works. With a single consumer the CAS never fails.
+ *
+ * Monitors are only used to park a thread which has nothing to do - an empty
+ * mailbox for a consumer or a full one for a BLOCK producer. The waiting
+ * counters keep the fast path from touching the monitors.
+ * </pre>
+ *
+ */
+public class RingBufferMailbox implements Mailbox {
+
+  public final static Logger log = LoggerFactory.getLogger(RingBufferMailbox.class);
+
+  /**
+   * number of poll attempts a consumer makes before it parks
+   */
+  static final int SPIN_TRIES = 64;
+
+  final int mask;
+
+  final int maxSize;
+
+  final AtomicReferenceArray<Message> buffer;
+
+  final AtomicLongArray sequence;
+
+  final AtomicLong head = new AtomicLong();
+
+  final AtomicLong tail = new AtomicLong();
+
+  final AtomicLong dropped = new AtomicLong();
+
+  final AtomicInteger waitingConsumers = new AtomicInteger();
+
+  final AtomicInteger waitingProducers = new AtomicInteger();
+
+  final Object notEmpty = new Object();
+
+  final Object notFull = new Object();
+
+  volatile OverrunPolicy policy;
+
+  public RingBufferMailbox(int maxSize) {
+    this(maxSize, OverrunPolicy.DROP_NEWEST);
+  }
+
+  public RingBufferMailbox(int maxSize, OverrunPolicy policy) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException(String.format("mailbox size must be > 0 not %d", maxSize));
+    }
+    this.maxSize = maxSize;
+    setOverrunPolicy(policy);
+    int capacity = Integer.highestOneBit(Math.max(maxSize, 2) - 1) << 1;
+    mask = capacity - 1;
+    buffer = new AtomicReferenceArray<>(capacity);
+    sequence = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; ++i) {
+      sequence.set(i, i);
+    }
+  }
+
+  /**
+   * single attempt to add a message
+   *
+   * @param msg
+   *          the message
+   * @return false if full
+   */
+  boolean tryOffer(Message msg) {
+    long pos = tail.get();
+    while (true) {
+      if (pos - head.get() >= maxSize) {
+        return false;
+      }
+      int index = (int) (pos & mask);
+      long diff = sequence.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          buffer.set(index, msg);
+          // publish - the consumer only reads the slot after seeing this
+          sequence.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        // slot of the previous lap not consumed yet - full
+        return false;
+      } else {
+        // another producer got the slot
+        pos = tail.get();
+      }
+    }
+  }
+
+  @Override
+  public boolean offer(Message msg) {
+    boolean added = tryOffer(msg);
+    if (!added) {
+      switch (policy) {
+        case BLOCK:
+          added = offerBlocking(msg);
+          break;
+        case DROP_OLDEST:
+          while (!(added = tryOffer(msg))) {
+            if (poll() != null) {
+              dropped.incrementAndGet();
+            }
+          }
+          break;
+        default:
+          dropped.incrementAndGet();
+      }
+    }
+    if (added && waitingConsumers.get() > 0) {
+      synchronized (notEmpty) {
+        notEmpty.notifyAll();
+      }
+    }
+    return added;
+  }
+
+  private boolean offerBlocking(Message msg) {
+    while (!tryOffer(msg)) {
+      synchronized (notFull) {
+        waitingProducers.incrementAndGet();
+        try {
+          while (size() >= maxSize) {
+            notFull.wait();
+          }
+        } catch (InterruptedException e) {
+          log.debug("mailbox offer INTERRUPTED - dropping {}", msg);
+          Thread.currentThread().interrupt();
+          dropped.incrementAndGet();
+          return false;
+        } finally {
+          waitingProducers.decrementAndGet();
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Message poll() {
+    long pos = head.get();
+    while (true) {
+      int index = (int) (pos & mask);
+      long diff = sequence.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          Message msg = buffer.getAndSet(index, null);
+          // free the slot for the next lap
+          sequence.set(index, pos + mask + 1);
+          if (waitingProducers.get() > 0) {
+            synchronized (notFull) {
+              notFull.notifyAll();
+            }
+          }
+          return msg;
+        }
+        pos = head.get();
+      } else if (diff < 0) {
+        // empty
+        return null;
+      } else {
+        // another consumer got it
+        pos = head.get();
+      }
+    }
+  }
+
+  @Override
+  public Message take() throws InterruptedException {
+    Message msg = null;
+    for (int i = 0; i < SPIN_TRIES; ++i) {
+      msg = poll();
+      if (msg != null) {
+        return msg;
+      }
+      Thread.onSpinWait();
+    }
+    synchronized (notEmpty) {
+      waitingConsumers.incrementAndGet();
+      try {
+        while ((msg = poll()) == null) {
+          notEmpty.wait();
+        }
+      } finally {
+        waitingConsumers.decrementAndGet();
+      }
+    }
+    return msg;
+  }
+
+  @Override
+  public int size() {
+    // read head first - so the result is never negative
+    long h = head.get();
+    long size = tail.get() - h;
+    return (int) Math.max(0, Math.min(size, maxSize));
+  }
+
+  @Override
+  public void clear() {
+    while (poll() != null) {
+    }
+  }
+
+  @Override
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public OverrunPolicy getOverrunPolicy() {
+    return policy;
+  }
+
+  @Override
+  public void setOverrunPolicy(OverrunPolicy policy) {
+    if (policy == OverrunPolicy.GROW) {
+      throw new IllegalArgumentException("a ring buffer can not grow - use a LinkedListMailbox");
+    }
+    this.policy = policy;
+  }
+
+  @Override
+  public long getDropped() {
+    return dropped.get();
+  }
+
+}
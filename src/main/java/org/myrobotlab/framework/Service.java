@@ -51,10 +51,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
-import java.util.Timer;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.config.ConfigUtils;
@@ -92,9 +92,6 @@ import org.slf4j.Logger;
 public abstract class Service<T extends ServiceConfig> implements Runnable, Serializable, ServiceInterface, Broadcaster,
     QueueReporter, FutureInvoker, ConfigurableService<T> {
 
-  // FIXME upgrade to ScheduledExecutorService
-  // http://howtodoinjava.com/2015/03/25/task-scheduling-with-executors-scheduledthreadpoolexecutor-example/
-
   /**
    * contains all the meta data about the service - pulled from the static
    * method getMetaData() each instance will call the method and populate the
@@ -174,15 +171,21 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
    */
   final transient protected static String fs = File.separator;
 
+  /**
+   * ms sendAsync(name, method, data...) waits for the return - a reply which
+   * never comes would otherwise stay in the pending reply table
+   */
+  final public static int SEND_ASYNC_TIMEOUT_MS = 10000;
+
   /**
    * for promoting portability and good pathing
    */
   final transient protected String ps = File.pathSeparator;
 
   /**
-   * a more capable task handler
+   * a more capable task handler - tasks run on the Runtime's TaskScheduler
    */
-  transient Map<String, Timer> tasks = new HashMap<String, Timer>();
+  transient Map<String, Task> tasks = new HashMap<String, Task>();
 
   /**
    * used as a static cache for quick method name testing FIXME - if you make
@@ -740,34 +743,19 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
   public void addListener(String localMethod, String remoteName, String remoteMethod) {
     remoteName = CodecUtils.getFullName(remoteName);
     MRLListener listener = new MRLListener(localMethod, remoteName, remoteMethod);
-    if (outbox.notifyList.containsKey(listener.topicMethod)) {
-      // iterate through all looking for duplicate
-      boolean found = false;
-      List<MRLListener> nes = outbox.notifyList.get(listener.topicMethod);
-      for (int i = 0; i < nes.size(); ++i) {
-        MRLListener entry = nes.get(i);
-        if (entry.equals(listener)) {
-          log.debug("attempting to add duplicate MRLListener {}", listener);
-          found = true;
-          break;
-        }
-      }
-      if (!found) {
-        log.debug("adding addListener from {}.{} to {}.{}", this.getName(), listener.topicMethod, listener.callbackName,
-            listener.callbackMethod);
-        nes.add(listener);
-      }
-    } else {
-      List<MRLListener> notifyList = new CopyOnWriteArrayList<MRLListener>();
-      notifyList.add(listener);
+    if (outbox.getSubscriptions().add(listener)) {
       log.debug("adding addListener from {}.{} to {}.{}", this.getName(), listener.topicMethod, listener.callbackName,
           listener.callbackMethod);
-      outbox.notifyList.put(listener.topicMethod, notifyList);
+    } else {
+      log.debug("attempting to add duplicate MRLListener {}", listener);
     }
   }
 
   public boolean hasSubscribed(String listener, String topicMethod) {
-    List<MRLListener> nes = outbox.notifyList.get(topicMethod);
+    List<MRLListener> nes = outbox.getSubscriptions().get(topicMethod);
+    if (nes == null) {
+      return false;
+    }
     for (MRLListener ne : nes) {
       if (ne.callbackName.contentEquals(listener)) {
         return true;
@@ -813,19 +801,30 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
   @Override
   synchronized public void addTask(String taskName, boolean oneShot, long intervalMs, long delayMs, String method,
       Object... params) {
+    addTask(taskName, oneShot, false, intervalMs, delayMs, method, params);
+  }
+
+  @Override
+  synchronized public void addTaskFixedRate(String taskName, long intervalMs, long delayMs, String method, Object... params) {
+    addTask(taskName, false, true, intervalMs, delayMs, method, params);
+  }
+
+  synchronized private void addTask(String taskName, boolean oneShot, boolean fixedRate, long intervalMs, long delayMs, String method,
+      Object... params) {
     if (tasks.containsKey(taskName)) {
       log.info("already have active task \"{}\"", taskName);
       return;
     }
-    Timer timer = new Timer(String.format("%s.timer", String.format("%s.%s", getName(), taskName)));
     Message msg = Message.createMessage(getFullName(), getFullName(), method, params);
     Task task = new Task(this, oneShot, taskName, intervalMs, msg);
-    timer.schedule(task, delayMs);
-    tasks.put(taskName, timer);
+    task.fixedRate = fixedRate;
+    // in the map before it can run - a one shot removes itself
+    tasks.put(taskName, task);
+    task.schedule(delayMs);
   }
 
   @Override
-  public Map<String, Timer> getTasks() {
+  public Map<String, Task> getTasks() {
     return tasks;
   }
 
@@ -851,15 +850,9 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
   synchronized public void purgeTask(String taskName) {
     if (tasks.containsKey(taskName)) {
       log.debug("remove task {}", taskName);
-      Timer timer = tasks.get(taskName);
-      if (timer != null) {
-        try {
-          timer.cancel();
-          timer.purge();
-          timer = null;
-        } catch (Exception e) {
-          log.info(e.getMessage());
-        }
+      Task task = tasks.get(taskName);
+      if (task != null) {
+        task.cancel();
       }
     } else {
       log.debug("purgeTask - task {} does not exist", taskName);
@@ -868,18 +861,9 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
   }
 
   @Override
-  public void purgeTasks() {
-    for (String taskName : tasks.keySet()) {
-      Timer timer = tasks.get(taskName);
-      if (timer != null) {
-        try {
-          timer.purge();
-          timer.cancel();
-          timer = null;
-        } catch (Exception e) {
-          log.info(e.getMessage());
-        }
-      }
+  synchronized public void purgeTasks() {
+    for (Task task : tasks.values()) {
+      task.cancel();
     }
     tasks.clear();
   }
@@ -1064,7 +1048,7 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
       }
 
     } else {
-      return getOutbox().notifyList.get(key);
+      return getOutbox().getSubscriptions().get(key);
     }
   }
 
@@ -1084,7 +1068,7 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
       }
 
     } else {
-      return new ArrayList<>(getOutbox().notifyList.keySet());
+      return new ArrayList<>(getOutbox().getSubscriptions().getTopicNames());
     }
   }
 
@@ -1202,29 +1186,36 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
       return Runtime.getService(msg.getName()).invoke(msg);
     }
 
-    String blockingKey = String.format("%s.%s", msg.getFullName(), msg.getMethod());
-    if (inbox.blockingList.containsKey(blockingKey)) {
-      Object[] returnContainer = inbox.blockingList.get(blockingKey);
-      if (msg.getData() == null) {
-        returnContainer[0] = null;
-      } else {
-        // transferring data
-        returnContainer[0] = msg.getData()[0];
-      }
-
-      synchronized (returnContainer) {
-        inbox.blockingList.remove(blockingKey);
-        returnContainer.notifyAll(); // addListener sender
-      }
-
+    if (inbox.pendingReplies.complete(msg)) {
       return null;
     }
 
     retobj = invokeOn(false, this, msg.method, msg.data);
 
+    if (Message.BLOCKING.equals(msg.status)) {
+      sendReturn(msg, retobj);
+    }
+
     return retobj;
   }
 
+  /**
+   * The sender of a BLOCKING message is waiting on its msgId - send the return
+   * value back directly with status RETURN and the same msgId.
+   * 
+   * @param request
+   *                the invoked message
+   * @param ret
+   *                its return value
+   */
+  protected void sendReturn(Message request, Object ret) {
+    Message reply = Message.createMessage(getFullName(), request.getSrcFullName(), CodecUtils.getCallbackTopicName(request.method), ret);
+    reply.status = Message.RETURN;
+    reply.msgId = request.msgId;
+    reply.sendingMethod = request.method;
+    send(reply);
+  }
+
   @Override
   final public Object invoke(String method) {
     return invokeOn(false, this, method, (Object[]) null);
@@ -1293,13 +1284,13 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
         log.error("cannot invoke on a null object ! {}({})", methodName, MethodCache.formatParams(params));
         return null;
       }
-      Method method = cache.getMethod(obj.getClass(), methodName, params);
-      if (method == null) {
+      MethodInvoker invoker = cache.getInvoker(obj.getClass(), methodName, params);
+      if (invoker == null) {
         error("could not find method %s.%s(%s)", obj.getClass().getSimpleName(), methodName,
             MethodCache.formatParams(params));
         return null; // should this be allowed to throw to a higher level ?
       }
-      retobj = method.invoke(obj, params);
+      retobj = invoker.invoke(obj, params);
       if (blockLocally) {
         Outbox outbox = null;
         if (obj instanceof ServiceInterface) {
@@ -1308,10 +1299,12 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
           return retobj;
         }
 
-        List<MRLListener> subList = outbox.notifyList.get(methodName);
+        List<MRLListener> subList = outbox.getSubscriptions().get(methodName);
         // correct? get local (default?) gateway
         Runtime runtime = Runtime.getInstance();
         if (subList != null) {
+          // one payload array shared by all local callbacks
+          Object[] payload = new Object[] { retobj };
           for (MRLListener listener : subList) {
             Message msg = Message.createMessage(getFullName(), listener.callbackName, listener.callbackMethod, retobj);
             msg.sendingMethod = methodName;
@@ -1321,11 +1314,11 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
                 log.debug("{} cannot callback to listener {} does not exist for {} ", getName(), listener.callbackName,
                     listener.callbackMethod);
               } else {
-                Method m = cache.getMethod(si.getClass(), listener.callbackMethod, retobj);
-                if (m == null) {
+                MethodInvoker callback = listener.getInvoker(si.getClass(), payload);
+                if (callback == null) {
 
                   // attempt to get defaultInvokeMethod
-                  m = cache.getDefaultInvokeMethod(si.getClass().getCanonicalName());
+                  Method m = cache.getDefaultInvokeMethod(si.getClass().getCanonicalName());
                   if (m != null) {
                     m.invoke(si, listener.callbackMethod, new Object[] { retobj });
                   } else {
@@ -1334,12 +1327,12 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
                   }
                 } else {
                   try {
-                    m.invoke(si, retobj);
+                    callback.invoke(si, payload);
                   } catch (Throwable e) {
                     // we attempted to invoke this , it blew up. Catch it here,
                     // continue
                     // through the rest of the listeners instead of bombing out.
-                    log.error("Invoke blew up! on: {} calling method {} ", si.getName(), m, e);
+                    log.error("Invoke blew up! on: {} calling method {} ", si.getName(), callback, e);
                   }
                 }
               }
@@ -1507,7 +1500,7 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
   public ServiceConfig getFilteredConfig() {
     // Make a copy, because we don't want to modify the original
     ServiceConfig sc = CodecUtils.fromYaml(CodecUtils.toYaml(getConfig()), config.getClass());
-    Map<String, List<MRLListener>> listeners = getOutbox().notifyList;
+    Map<String, List<MRLListener>> listeners = getOutbox().getNotifyList();
     List<Listener> newListeners = new ArrayList<>();
 
     // TODO - perhaps a switch for "remote" things ?
@@ -1631,7 +1624,7 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
    * 
    */
   public void removeAllListeners() {
-    outbox.notifyList.clear();
+    outbox.getSubscriptions().clear();
   }
 
   @Override
@@ -1642,26 +1635,13 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
   @Override
   public void removeListener(String outMethod, String serviceName, String inMethod) {
     String fullName = CodecUtils.getFullName(serviceName);
-    if (outbox.notifyList.containsKey(outMethod)) {
-      List<MRLListener> nel = outbox.notifyList.get(outMethod);
-      nel.removeIf(listener -> {
-        if (listener == null) {
-          log.info("Removing null listener for method {}", outMethod);
-          return true;
-        }
-
-        // Previously we were not checking inMethod, which meant if a service
-        // had multiple
-        // subscriptions to the same topic (one to many mapping), the first in
-        // the list would be removed
-        // instead of the requested one.
-        if (listener.callbackMethod.equals(inMethod)
-            && CodecUtils.checkServiceNameEquality(listener.callbackName, fullName)) {
-          log.info("removeListener requested {}.{} to be removed", fullName, outMethod);
-          return true;
-        }
-        return false;
-      });
+    // Previously we were not checking inMethod, which meant if a service
+    // had multiple
+    // subscriptions to the same topic (one to many mapping), the first in
+    // the list would be removed
+    // instead of the requested one.
+    if (outbox.getSubscriptions().remove(outMethod, fullName, inMethod)) {
+      log.info("removeListener requested {}.{} to be removed", fullName, outMethod);
     } else {
       log.info("removeListener requested {}.{} to be removed - but does not exist", fullName, outMethod);
     }
@@ -1815,17 +1795,48 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
     outbox.add(msg);
   }
 
-  public void sendAsync(String name, String method, Object... data) {
-    // if unknown assume remote - fire and forget on outbox
+  /**
+   * Send a message and get its return value as a future. The message is sent
+   * with status BLOCKING and a unique msgId, the invoked service sends the
+   * return back with the same msgId, which completes the future. The future
+   * completes exceptionally with a java.util.concurrent.TimeoutException after
+   * SEND_ASYNC_TIMEOUT_MS.
+   * 
+   * @param name
+   *               destination service
+   * @param method
+   *               method to invoke
+   * @param data
+   *               parameters
+   * @return future of the return value
+   */
+  @Override
+  public CompletableFuture<Object> sendAsync(String name, String method, Object... data) {
     Message msg = Message.createMessage(getFullName(), name, method, data);
     // All methods which are invoked will
     // get the correct sendingMethod
     // here its hardcoded
     msg.sendingMethod = "send";
-    // log.info(CodecUtils.toJson(msg));
-    send(msg);
+    return sendAsync(msg, SEND_ASYNC_TIMEOUT_MS);
+  }
 
-    outbox.add(msg);
+  /**
+   * Send a message and get its return value as a future.
+   * 
+   * @param msg
+   *                the message
+   * @param timeout
+   *                ms until the future completes exceptionally with a
+   *                java.util.concurrent.TimeoutException, null for no timeout
+   * @return future of the return value
+   */
+  @Override
+  public CompletableFuture<Object> sendAsync(Message msg, Integer timeout) {
+    msg.msgId = Runtime.getUniqueID();
+    msg.status = Message.BLOCKING;
+    CompletableFuture<Object> future = inbox.pendingReplies.expect(msg.msgId, timeout);
+    send(msg);
+    return future;
   }
 
   @Override
@@ -1855,96 +1866,61 @@ public abstract class Service<T extends ServiceConfig> implements Runnable, Seri
     if (Runtime.getInstance().isLocal(msg)) {
       return invoke(msg);
     } else {
-      return waitOn(msg.getFullName(), msg.getMethod(), timeout, msg);
+      return waitOn(sendAsync(msg, timeout), timeout, msg.getFullName(), msg.getMethod());
     }
   }
 
   /**
-   * This method waits on a remote topic by sending a subscription and waiting
-   * for a message to come back. It is used both by sendBlocking and waitFor to
-   * normalize the code - they are equivalent. The only difference between
-   * sendBlocking and waitFor is sendBlocking sends an activating msg to the
-   * remote topic. If timeout occurs before a return message, a TimeoutException
-   * is thrown. This is important to distinguish between a timeout and a valid
-   * null return.
+   * Block on a pending reply. If timeout occurs before a return message, a
+   * TimeoutException is thrown. This is important to distinguish between a
+   * timeout and a valid null return.
    * 
+   * @param reply
+   *                the pending reply
+   * @param timeout
+   *                max time to wait in ms, only used for the error
    * @param fullName
-   *                 - service name
+   *                service name, only used for the error
    * @param method
-   *                 - method name
-   * @param timeout
-   *                 - max time to wait in ms
-   * @param sendMsg
-   *                 - optional message to send to the remote topic
+   *                method name, only used for the error
    * @return the returned object
    * @throws InterruptedException
    *                              boom
    * @throws TimeoutException
    *                              boom
    */
-  protected Object waitOn(String fullName, String method, Integer timeout, Message sendMsg)
+  protected Object waitOn(CompletableFuture<Object> reply, Integer timeout, String fullName, String method)
       throws InterruptedException, TimeoutException {
-
-    String subscriber = null;
-    if (sendMsg != null) {
-      // InProcCli proxies - so the subscription needs to be from the sender NOT
-      // from runtime !
-      subscriber = sendMsg.getSrcFullName();
-    } else {
-      subscriber = getFullName();
-    }
-
-    // put in-process lock in map
-    String callbackMethod = CodecUtils.getCallbackTopicName(method);
-    String blockingKey = String.format("%s.%s", subscriber, callbackMethod);
-    Object[] blockingLockContainer = null;
-    if (!inbox.blockingList.containsKey(blockingKey)) {
-      blockingLockContainer = new Object[1];
-      inbox.blockingList.put(blockingKey, blockingLockContainer);
-    } else {
-      // if it already exists - other threads are already waiting for the
-      // same callback ...
-      blockingLockContainer = inbox.blockingList.get(blockingKey);
-    }
-
-    // send subscription
-    subscribe(fullName, method, subscriber, CodecUtils.getCallbackTopicName(method));
-
-    if (sendMsg != null) {
-      // possible race condition - counting on the delay of
-      // starting a thread for the program counter to reach the
-      // wait before the msg is sent
-      new Thread("blocking-msg") {
-        @Override
-        public void run() {
-          Runtime.getInstance().send(sendMsg);
-        }
-      }.start();
-    }
-
-    synchronized (blockingLockContainer) {
-      if (timeout == null) {
-        blockingLockContainer.wait();
-      } else {
-        long startTs = System.currentTimeMillis();
-        blockingLockContainer.wait(timeout);
-        if (System.currentTimeMillis() - startTs >= timeout) {
-          throw new TimeoutException("timeout of %d for %s.%s exceeded", timeout, fullName, method);
-        }
+    try {
+      return reply.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof java.util.concurrent.TimeoutException) {
+        throw new TimeoutException("timeout of %d for %s.%s exceeded", timeout, fullName, method);
       }
+      log.error("waiting on {}.{} threw", fullName, method, e.getCause());
+      return null;
     }
-
-    // cleanup
-    unsubscribe(fullName, method, subscriber, CodecUtils.getCallbackTopicName(method));
-
-    return blockingLockContainer[0];
-
   }
 
-  // equivalent to sendBlocking without the sending a message
+  /**
+   * Waits for the next publish of a remote topic, by sending a subscription
+   * and waiting for a message to come back. If timeout occurs before a return
+   * message, a TimeoutException is thrown.
+   */
   @Override
   public Object waitFor(String fullName, String method, Integer timeout) throws InterruptedException, TimeoutException {
-    return waitOn(fullName, method, timeout, null);
+    String subscriber = getFullName();
+    String callbackMethod = CodecUtils.getCallbackTopicName(method);
+    CompletableFuture<Object> reply = inbox.pendingReplies.expect(subscriber, callbackMethod, timeout);
+
+    // send subscription
+    subscribe(fullName, method, subscriber, callbackMethod);
+    try {
+      return waitOn(reply, timeout, fullName, method);
+    } finally {
+      // cleanup
+      unsubscribe(fullName, method, subscriber, callbackMethod);
+    }
   }
 
   // BOXING - End --------------------------------------
@@ -0,0 +1,257 @@
+package org.myrobotlab.framework;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * FIFO queue of messages from one publisher to one subscriber. It is drained
+ * by the shared OutboxDispatcher - at most one worker at a time, so the
+ * subscriber gets the messages in the order they were published.
+ *
+ * <pre>
+ * When the subscriber falls behind the SlowSubscriberPolicy decides :
+ *
+ *   DROP            - new messages are dropped when the queue is full - the
+ *                     default
+ *   BLOCK           - the publisher's outbox waits until there is room, which
+ *                     holds up all the subscribers of the publisher - only
+ *                     set for a subscriber which must not miss a message
+ *   COALESCE_LATEST - a new message replaces a queued, undelivered message
+ *                     to the same method (only the latest value is delivered),
+ *                     the oldest message is dropped if the queue is still full
+ * </pre>
+ *
+ * Depth, lag (time between queuing and delivery) and drop counts are
+ * reported as QueueStats.
+ */
+public class SubscriberQueue implements Runnable {
+
+  public final static Logger log = LoggerFactory.getLogger(SubscriberQueue.class);
+
+  public enum SlowSubscriberPolicy {
+    BLOCK, DROP, COALESCE_LATEST
+  }
+
+  /**
+   * max messages delivered before the worker is given back to the pool
+   */
+  static final int DRAIN_BATCH = 32;
+
+  static class Entry {
+    Message msg;
+    final long ts;
+
+    Entry(Message msg, long ts) {
+      this.msg = msg;
+      this.ts = ts;
+    }
+  }
+
+  final String publisher;
+
+  final String subscriber;
+
+  final Consumer<Message> sender;
+
+  final OutboxDispatcher dispatcher;
+
+  final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+  /**
+   * most recent queued entry per method - used by COALESCE_LATEST
+   */
+  final Map<String, Entry> latest = new HashMap<>();
+
+  volatile SlowSubscriberPolicy policy;
+
+  volatile int maxSize;
+
+  // all below guarded by this
+  boolean scheduled = false;
+
+  int waitingPublishers = 0;
+
+  int total = 0;
+
+  long dropped = 0;
+
+  long coalesced = 0;
+
+  long lag = 0;
+
+  long maxLag = 0;
+
+  long lastStatsTs = System.currentTimeMillis();
+
+  public SubscriberQueue(String publisher, String subscriber, Consumer<Message> sender, int maxSize, SlowSubscriberPolicy policy) {
+    this(publisher, subscriber, sender, maxSize, policy, OutboxDispatcher.getInstance());
+  }
+
+  SubscriberQueue(String publisher, String subscriber, Consumer<Message> sender, int maxSize, SlowSubscriberPolicy policy, OutboxDispatcher dispatcher) {
+    this.publisher = publisher;
+    this.subscriber = subscriber;
+    this.sender = sender;
+    this.maxSize = maxSize;
+    this.policy = policy;
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * queue a message for the subscriber
+   *
+   * @param msg
+   *          the message, already addressed to the subscriber
+   * @return false if it was dropped
+   */
+  public boolean offer(Message msg) {
+    synchronized (this) {
+      SlowSubscriberPolicy policy = this.policy;
+      if (policy == SlowSubscriberPolicy.COALESCE_LATEST) {
+        Entry pending = latest.get(msg.method);
+        if (pending != null) {
+          // keeps its place and queued time - only the value is replaced
+          pending.msg = msg;
+          ++coalesced;
+          return true;
+        }
+      }
+
+      if (queue.size() >= maxSize) {
+        switch (policy) {
+          case BLOCK:
+            ++waitingPublishers;
+            try {
+              while (queue.size() >= maxSize) {
+                wait();
+              }
+            } catch (InterruptedException e) {
+              log.debug("{} -> {} offer INTERRUPTED - dropping {}", publisher, subscriber, msg);
+              Thread.currentThread().interrupt();
+              ++dropped;
+              return false;
+            } finally {
+              --waitingPublishers;
+            }
+            break;
+          case COALESCE_LATEST:
+            Entry oldest = queue.poll();
+            if (latest.get(oldest.msg.method) == oldest) {
+              latest.remove(oldest.msg.method);
+            }
+            ++dropped;
+            break;
+          default:
+            ++dropped;
+            return false;
+        }
+      }
+
+      Entry entry = new Entry(msg, System.currentTimeMillis());
+      queue.add(entry);
+      if (policy == SlowSubscriberPolicy.COALESCE_LATEST) {
+        latest.put(msg.method, entry);
+      }
+      if (scheduled) {
+        return true;
+      }
+      scheduled = true;
+    }
+    dispatcher.execute(this);
+    return true;
+  }
+
+  /**
+   * drain task - delivers a batch and re-schedules itself if there is more
+   */
+  @Override
+  public void run() {
+    for (int i = 0; i < DRAIN_BATCH; ++i) {
+      Message msg = null;
+      synchronized (this) {
+        Entry entry = queue.poll();
+        if (entry == null) {
+          scheduled = false;
+          return;
+        }
+        msg = entry.msg;
+        if (!latest.isEmpty() && latest.get(msg.method) == entry) {
+          latest.remove(msg.method);
+        }
+        lag = System.currentTimeMillis() - entry.ts;
+        if (lag > maxLag) {
+          maxLag = lag;
+        }
+        ++total;
+        if (waitingPublishers > 0) {
+          notifyAll();
+        }
+      }
+      try {
+        sender.accept(msg);
+      } catch (Exception e) {
+        log.error("{} -> {} delivery threw", publisher, subscriber, e);
+      }
+    }
+    // give the worker to other queues
+    dispatcher.execute(this);
+  }
+
+  public synchronized int size() {
+    return queue.size();
+  }
+
+  public String getSubscriber() {
+    return subscriber;
+  }
+
+  public SlowSubscriberPolicy getPolicy() {
+    return policy;
+  }
+
+  public synchronized void setPolicy(SlowSubscriberPolicy policy) {
+    if (policy != SlowSubscriberPolicy.COALESCE_LATEST) {
+      latest.clear();
+    }
+    this.policy = policy;
+    notifyAll();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public synchronized void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+    notifyAll();
+  }
+
+  /**
+   * snapshot of depth, lag and counters - max lag is reset
+   *
+   * @return the stats
+   */
+  public synchronized QueueStats getStats() {
+    QueueStats stats = new QueueStats();
+    stats.name = publisher;
+    stats.subscriber = subscriber;
+    stats.policy = policy.toString();
+    stats.currentQueueCount = queue.size();
+    stats.total = total;
+    stats.ts = System.currentTimeMillis();
+    stats.lastTS = lastStatsTs;
+    stats.delta = stats.ts - stats.lastTS;
+    stats.lag = lag;
+    stats.maxLag = maxLag;
+    stats.dropped = dropped;
+    stats.coalesced = coalesced;
+    lastStatsTs = stats.ts;
+    maxLag = 0;
+    return stats;
+  }
+
+}
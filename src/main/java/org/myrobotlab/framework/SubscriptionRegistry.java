@@ -0,0 +1,285 @@
+package org.myrobotlab.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.framework.Outbox.FilterInterface;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * The subscriptions of an Outbox - topic method to the listeners of it.
+ *
+ * <pre>
+ * Readers (the outbox thread, Service.invokeOn, Runtime.getNotifyEntries)
+ * get an immutable snapshot through a single volatile read - no locks, no
+ * ConcurrentModificationException. Writers (addListener, removeListener,
+ * detach, filters) are synchronized, build a new snapshot and publish it
+ * atomically.
+ *
+ * Outbox filters are resolved per subscription when the snapshot is built,
+ * so delivery does not have to look them up per message.
+ * </pre>
+ */
+public class SubscriptionRegistry {
+
+  public final static Logger log = LoggerFactory.getLogger(SubscriptionRegistry.class);
+
+  /**
+   * immutable subscribers of a single topic method
+   */
+  public static final class Topic {
+
+    public final String name;
+
+    /**
+     * unmodifiable list of subscribers
+     */
+    public final List<MRLListener> listeners;
+
+    /**
+     * filter of each subscriber, same index as listeners - null if none of
+     * the subscribers has a filter
+     */
+    public final FilterInterface[] filters;
+
+    Topic(String name, List<MRLListener> listeners, FilterInterface[] filters) {
+      this.name = name;
+      this.listeners = listeners;
+      this.filters = filters;
+    }
+
+    public FilterInterface getFilter(int index) {
+      return (filters == null) ? null : filters[index];
+    }
+  }
+
+  static final class Snapshot {
+
+    /**
+     * hash index used for routing
+     */
+    final Map<String, Topic> topics;
+
+    /**
+     * sorted unmodifiable view for getNotifyList
+     */
+    final Map<String, List<MRLListener>> view;
+
+    Snapshot(Map<String, Topic> topics, Map<String, List<MRLListener>> view) {
+      this.topics = topics;
+      this.view = view;
+    }
+  }
+
+  static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap());
+
+  private volatile Snapshot snapshot = EMPTY;
+
+  /**
+   * filters - callback full name then callback method, guarded by this
+   */
+  private final Map<String, Map<String, FilterInterface>> filters = new HashMap<>();
+
+  /**
+   * the subscribers of a topic
+   *
+   * @param topicMethod
+   *          the publishing method
+   * @return the topic or null if nobody subscribed
+   */
+  public Topic getTopic(String topicMethod) {
+    return snapshot.topics.get(topicMethod);
+  }
+
+  /**
+   * the subscribers of a topic
+   *
+   * @param topicMethod
+   *          the publishing method
+   * @return unmodifiable list or null if nobody subscribed
+   */
+  public List<MRLListener> get(String topicMethod) {
+    Topic topic = snapshot.topics.get(topicMethod);
+    return (topic == null) ? null : topic.listeners;
+  }
+
+  /**
+   * @return unmodifiable, sorted topic to subscribers map
+   */
+  public Map<String, List<MRLListener>> getAll() {
+    return snapshot.view;
+  }
+
+  public Set<String> getTopicNames() {
+    return snapshot.view.keySet();
+  }
+
+  public boolean isEmpty() {
+    return snapshot.topics.isEmpty();
+  }
+
+  /**
+   * filter for messages delivered to a subscriber's method
+   *
+   * @param fullName
+   *          full name of the subscriber
+   * @param method
+   *          callback method
+   * @return the filter or null
+   */
+  public synchronized FilterInterface getFilter(String fullName, String method) {
+    Map<String, FilterInterface> methods = filters.get(fullName);
+    return (methods == null) ? null : methods.get(method);
+  }
+
+  /**
+   * add a subscription
+   *
+   * @param listener
+   *          the subscription
+   * @return false if it already existed
+   */
+  public synchronized boolean add(MRLListener listener) {
+    List<MRLListener> current = get(listener.topicMethod);
+    if (current != null && current.contains(listener)) {
+      return false;
+    }
+    Map<String, List<MRLListener>> lists = copy();
+    lists.computeIfAbsent(listener.topicMethod, k -> new ArrayList<>()).add(listener);
+    publish(lists);
+    return true;
+  }
+
+  /**
+   * remove a subscription
+   *
+   * @param topicMethod
+   *          the publishing method
+   * @param fullName
+   *          full name of the subscriber
+   * @param callbackMethod
+   *          the subscriber's method
+   * @return false if it did not exist
+   */
+  public synchronized boolean remove(String topicMethod, String fullName, String callbackMethod) {
+    if (get(topicMethod) == null) {
+      return false;
+    }
+    Map<String, List<MRLListener>> lists = copy();
+    boolean removed = lists.get(topicMethod).removeIf(listener -> {
+      if (listener == null) {
+        log.info("Removing null listener for method {}", topicMethod);
+        return true;
+      }
+      return listener.callbackMethod.equals(callbackMethod) && CodecUtils.checkServiceNameEquality(listener.callbackName, fullName);
+    });
+    if (removed) {
+      publish(lists);
+    }
+    return removed;
+  }
+
+  /**
+   * remove every subscription of a subscriber
+   *
+   * @param fullName
+   *          full name of the subscriber
+   */
+  public synchronized void removeSubscriber(String fullName) {
+    Map<String, List<MRLListener>> lists = copy();
+    boolean removed = false;
+    for (List<MRLListener> listeners : lists.values()) {
+      removed |= listeners.removeIf(listener -> listener.callbackName.equals(fullName));
+    }
+    if (removed) {
+      publish(lists);
+    }
+  }
+
+  /**
+   * remove all subscriptions
+   */
+  public synchronized void clear() {
+    snapshot = EMPTY;
+  }
+
+  /**
+   * set a filter for messages delivered to a subscriber's method
+   *
+   * @param fullName
+   *          full name of the subscriber
+   * @param method
+   *          callback method
+   * @param filter
+   *          the filter
+   * @return the previous filter
+   */
+  public synchronized FilterInterface putFilter(String fullName, String method, FilterInterface filter) {
+    FilterInterface previous = filters.computeIfAbsent(fullName, k -> new HashMap<>()).put(method, filter);
+    publish(copy());
+    return previous;
+  }
+
+  public synchronized FilterInterface removeFilter(String fullName, String method) {
+    Map<String, FilterInterface> methods = filters.get(fullName);
+    if (methods == null) {
+      return null;
+    }
+    FilterInterface previous = methods.remove(method);
+    if (methods.isEmpty()) {
+      filters.remove(fullName);
+    }
+    publish(copy());
+    return previous;
+  }
+
+  /**
+   * mutable copy of the current subscriptions
+   */
+  private Map<String, List<MRLListener>> copy() {
+    Map<String, List<MRLListener>> lists = new HashMap<>();
+    for (Topic topic : snapshot.topics.values()) {
+      lists.put(topic.name, new ArrayList<>(topic.listeners));
+    }
+    return lists;
+  }
+
+  /**
+   * builds the immutable topic index, resolves filters and publishes it
+   */
+  private void publish(Map<String, List<MRLListener>> lists) {
+    Map<String, Topic> topics = new HashMap<>();
+    Map<String, List<MRLListener>> view = new TreeMap<>();
+    for (Map.Entry<String, List<MRLListener>> entry : lists.entrySet()) {
+      List<MRLListener> listeners = entry.getValue();
+      if (listeners.isEmpty()) {
+        continue;
+      }
+      FilterInterface[] topicFilters = null;
+      if (!filters.isEmpty()) {
+        for (int i = 0; i < listeners.size(); ++i) {
+          MRLListener listener = listeners.get(i);
+          FilterInterface filter = getFilter(CodecUtils.getFullName(listener.callbackName), listener.callbackMethod);
+          if (filter != null) {
+            if (topicFilters == null) {
+              topicFilters = new FilterInterface[listeners.size()];
+            }
+            topicFilters[i] = filter;
+          }
+        }
+      }
+      List<MRLListener> unmodifiable = Collections.unmodifiableList(listeners);
+      topics.put(entry.getKey(), new Topic(entry.getKey(), unmodifiable, topicFilters));
+      view.put(entry.getKey(), unmodifiable);
+    }
+    snapshot = new Snapshot(topics, Collections.unmodifiableMap(view));
+  }
+
+}
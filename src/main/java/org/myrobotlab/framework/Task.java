@@ -1,14 +1,14 @@
 package org.myrobotlab.framework;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import org.myrobotlab.framework.TaskScheduler.ScheduledTask;
+import org.myrobotlab.framework.TaskScheduler.TaskStats;
 
 /**
  * A generic class 
  * @author GroG
  *
  */
-public class Task extends TimerTask {
+public class Task implements Runnable {
 
   /**
    * unique name of task
@@ -32,8 +32,15 @@ public class Task extends TimerTask {
    */
   boolean oneShot = false;
 
-  // FIXME upgrade to ScheduledExecutorService
-  // http://howtodoinjava.com/2015/03/25/task-scheduling-with-executors-scheduledthreadpoolexecutor-example/
+  /**
+   * runs at a fixed rate instead of interval ms after the previous run ended
+   */
+  boolean fixedRate = false;
+
+  /**
+   * handle from the Runtime's TaskScheduler
+   */
+  transient ScheduledTask scheduled;
 
   public Task(Service myService, boolean oneShot, String taskName, long interval, Message msg) {
     this.myService = myService;
@@ -49,30 +56,70 @@ public class Task extends TimerTask {
     this.taskName = s.taskName;
     this.myService = s.myService;
     this.oneShot = s.oneShot;
+    this.fixedRate = s.fixedRate;
+  }
+
+  /**
+   * schedules it on the Runtime's TaskScheduler
+   * 
+   * @param delayMs
+   *          until the first run
+   */
+  void schedule(long delayMs) {
+    TaskScheduler scheduler = TaskScheduler.getInstance();
+    String name = String.format("%s.%s", myService.getName(), taskName);
+    if (oneShot || interval <= 0) {
+      scheduled = scheduler.schedule(name, this, delayMs);
+    } else if (fixedRate) {
+      scheduled = scheduler.scheduleAtFixedRate(name, this, delayMs, interval);
+    } else {
+      scheduled = scheduler.scheduleWithFixedDelay(name, this, delayMs, interval);
+    }
+  }
+
+  /**
+   * stops it - a run in progress finishes
+   */
+  public void cancel() {
+    if (scheduled != null) {
+      scheduled.cancel();
+    }
+  }
+
+  public String getName() {
+    return taskName;
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  public boolean isOneShot() {
+    return oneShot;
+  }
+
+  public boolean isFixedRate() {
+    return fixedRate;
+  }
+
+  /**
+   * @return runs, jitter and overruns so far - null if not scheduled
+   */
+  public TaskStats getStats() {
+    return (scheduled == null) ? null : scheduled.getStats();
   }
 
   @Override
   public void run() {
     // info("task %s running - next run %s", taskName,
     // MathUtils.msToString(interval));
+    // clear history list - becomes "new" message
+    msg.historyList.clear();
     myService.invoke(msg);
 
     // GroG commented out 2019.07.14 for preferrable "blocking" task
     // myService.getInbox().add(msg);
 
-    if (interval > 0) {
-      Task t = new Task(this);
-      // clear history list - becomes "new" message
-      t.msg.historyList.clear();
-      Timer timer = (Timer) myService.tasks.get(taskName);
-      if (timer != null) {
-        // timer = new Timer(String.format("%s.timer", getName()));
-        try {
-          timer.schedule(t, interval);
-        } catch (IllegalStateException e) {
-        }
-      }
-    }
     if (oneShot) {
       myService.purgeTask(taskName);
     }
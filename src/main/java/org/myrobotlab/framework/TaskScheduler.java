@@ -0,0 +1,357 @@
+package org.myrobotlab.framework;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Process wide scheduler for timed tasks - owned by Runtime, shared by all
+ * services instead of a Timer or a sleep loop thread each.
+ *
+ * <pre>
+ * fixed rate  - runs are due every period ms after the first, a late run does
+ *               not move the following ones
+ * fixed delay - a run starts period ms after the previous one ended
+ * one shot    - runs once after the delay
+ * </pre>
+ *
+ * Each task keeps its stats - how late its runs started compared to when they
+ * were due (jitter), how long they took and how many overran (started a whole
+ * period late or took longer than the period). A run of a task never overlaps
+ * the previous one.
+ *
+ * <pre>
+ * one timer thread only hands due runs to a cached pool of worker threads -
+ * a run blocking on a network or a device (e.g. an update check or a scan)
+ * holds up its own task, not the clocks and polls due meanwhile
+ * </pre>
+ */
+public class TaskScheduler {
+
+  public final static Logger log = LoggerFactory.getLogger(TaskScheduler.class);
+
+  private static TaskScheduler instance;
+
+  public static class TaskStats {
+    public String name;
+    public boolean fixedRate;
+    public long periodMs;
+    public long runs;
+    /**
+     * ms the last run started after it was due
+     */
+    public long jitterMs;
+    public long maxJitterMs;
+    /**
+     * ms the last run took
+     */
+    public long durationMs;
+    public long maxDurationMs;
+    public long overruns;
+    public long errors;
+  }
+
+  /**
+   * handle of a scheduled task
+   */
+  public class ScheduledTask implements Runnable {
+
+    final String name;
+    final Runnable runnable;
+    final boolean fixedRate;
+    final long periodMs;
+    final TaskStats stats = new TaskStats();
+    /**
+     * timer of the next run
+     */
+    ScheduledFuture<?> future;
+    volatile boolean cancelled = false;
+    volatile boolean done = false;
+    /**
+     * nanoTime the next run is due
+     */
+    long due;
+
+    ScheduledTask(String name, Runnable runnable, boolean fixedRate, long delayMs, long periodMs) {
+      this.name = name;
+      this.runnable = runnable;
+      this.fixedRate = fixedRate;
+      this.periodMs = periodMs;
+      this.due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+      stats.name = name;
+      stats.fixedRate = fixedRate;
+      stats.periodMs = periodMs;
+    }
+
+    /**
+     * sets the timer for the next run
+     */
+    synchronized void next() {
+      if (cancelled) {
+        return;
+      }
+      try {
+        future = timer.schedule(this::dispatch, Math.max(0, due - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (RejectedExecutionException e) {
+        log.info("task {} not scheduled - scheduler shut down", name);
+        cancel();
+      }
+    }
+
+    /**
+     * on the timer thread - hands the due run to a worker
+     */
+    void dispatch() {
+      if (cancelled) {
+        return;
+      }
+      try {
+        workers.execute(this);
+      } catch (RejectedExecutionException e) {
+        log.info("task {} not run - scheduler shut down", name);
+        cancel();
+      }
+    }
+
+    @Override
+    public void run() {
+      long start = System.nanoTime();
+      long jitterMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(start - due));
+      boolean error = false;
+      try {
+        runnable.run();
+      } catch (Throwable e) {
+        // a periodic task keeps running
+        log.error("task {} threw", name, e);
+        error = true;
+      }
+      long end = System.nanoTime();
+      long durationMs = TimeUnit.NANOSECONDS.toMillis(end - start);
+      if (fixedRate) {
+        // late runs are not skipped - they catch up back to back
+        due += TimeUnit.MILLISECONDS.toNanos(periodMs);
+      } else {
+        due = end + TimeUnit.MILLISECONDS.toNanos(periodMs);
+      }
+
+      synchronized (stats) {
+        ++stats.runs;
+        stats.jitterMs = jitterMs;
+        stats.maxJitterMs = Math.max(stats.maxJitterMs, jitterMs);
+        stats.durationMs = durationMs;
+        stats.maxDurationMs = Math.max(stats.maxDurationMs, durationMs);
+        if (periodMs > 0 && (jitterMs >= periodMs || durationMs > periodMs)) {
+          ++stats.overruns;
+        }
+        if (error) {
+          ++stats.errors;
+        }
+      }
+
+      if (periodMs <= 0) {
+        done = true;
+        tasks.remove(this);
+      } else {
+        next();
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * stops the task - a run in progress finishes
+     */
+    public void cancel() {
+      cancelled = true;
+      synchronized (this) {
+        if (future != null) {
+          future.cancel(false);
+        }
+      }
+      tasks.remove(this);
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    public boolean isDone() {
+      return done || cancelled;
+    }
+
+    public TaskStats getStats() {
+      synchronized (stats) {
+        TaskStats copy = new TaskStats();
+        copy.name = stats.name;
+        copy.fixedRate = stats.fixedRate;
+        copy.periodMs = stats.periodMs;
+        copy.runs = stats.runs;
+        copy.jitterMs = stats.jitterMs;
+        copy.maxJitterMs = stats.maxJitterMs;
+        copy.durationMs = stats.durationMs;
+        copy.maxDurationMs = stats.maxDurationMs;
+        copy.overruns = stats.overruns;
+        copy.errors = stats.errors;
+        return copy;
+      }
+    }
+  }
+
+  /**
+   * only times the runs
+   */
+  final ScheduledThreadPoolExecutor timer;
+
+  /**
+   * runs the tasks - a thread per run in progress, idle ones time out
+   */
+  final ThreadPoolExecutor workers;
+
+  /**
+   * tasks not done or cancelled
+   */
+  final Map<ScheduledTask, Boolean> tasks = new ConcurrentHashMap<>();
+
+  public static TaskScheduler getInstance() {
+    if (instance != null) {
+      return instance;
+    }
+    synchronized (TaskScheduler.class) {
+      if (instance == null) {
+        instance = new TaskScheduler();
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * stops the shared scheduler - when Runtime is released, a later getInstance
+   * starts a new one
+   */
+  public static void shutdownInstance() {
+    synchronized (TaskScheduler.class) {
+      if (instance != null) {
+        instance.shutdown();
+        instance = null;
+      }
+    }
+  }
+
+  TaskScheduler() {
+    timer = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "task_scheduler_timer");
+      t.setDaemon(true);
+      return t;
+    });
+    // cancelled tasks leave the queue right away
+    timer.setRemoveOnCancelPolicy(true);
+    AtomicInteger count = new AtomicInteger();
+    workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+      Thread t = new Thread(r, "task_scheduler_" + count.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * runs the task every periodMs - runs are due at delayMs + n * periodMs
+   *
+   * @param name
+   *          name for logging and stats
+   * @param runnable
+   *          the task
+   * @param delayMs
+   *          until the first run
+   * @param periodMs
+   *          between the starts of runs
+   * @return handle to cancel it
+   */
+  public ScheduledTask scheduleAtFixedRate(String name, Runnable runnable, long delayMs, long periodMs) {
+    ScheduledTask task = new ScheduledTask(name, runnable, true, delayMs, periodMs);
+    tasks.put(task, true);
+    task.next();
+    return task;
+  }
+
+  /**
+   * runs the task with delayMs between the end of a run and the start of the
+   * next
+   *
+   * @param name
+   *          name for logging and stats
+   * @param runnable
+   *          the task
+   * @param delayMs
+   *          until the first run
+   * @param periodMs
+   *          between the end of a run and the start of the next
+   * @return handle to cancel it
+   */
+  public ScheduledTask scheduleWithFixedDelay(String name, Runnable runnable, long delayMs, long periodMs) {
+    ScheduledTask task = new ScheduledTask(name, runnable, false, delayMs, periodMs);
+    tasks.put(task, true);
+    task.next();
+    return task;
+  }
+
+  /**
+   * runs the task once
+   *
+   * @param name
+   *          name for logging and stats
+   * @param runnable
+   *          the task
+   * @param delayMs
+   *          until it runs
+   * @return handle to cancel it
+   */
+  public ScheduledTask schedule(String name, Runnable runnable, long delayMs) {
+    ScheduledTask task = new ScheduledTask(name, runnable, false, delayMs, 0);
+    tasks.put(task, true);
+    task.next();
+    return task;
+  }
+
+  /**
+   * @return stats of all tasks not done or cancelled
+   */
+  public List<TaskStats> getStats() {
+    List<TaskStats> stats = new ArrayList<>();
+    for (ScheduledTask task : tasks.keySet()) {
+      stats.add(task.getStats());
+    }
+    return stats;
+  }
+
+  /**
+   * @return worker threads, busy or idle
+   */
+  public int getThreadCount() {
+    return workers.getPoolSize();
+  }
+
+  /**
+   * cancels all tasks - runs in progress are interrupted
+   */
+  public void shutdown() {
+    for (ScheduledTask task : tasks.keySet()) {
+      task.cancel();
+    }
+    timer.shutdownNow();
+    workers.shutdownNow();
+  }
+
+}
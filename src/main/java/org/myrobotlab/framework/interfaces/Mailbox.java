@@ -0,0 +1,85 @@
+package org.myrobotlab.framework.interfaces;
+
+import org.myrobotlab.framework.Message;
+
+/**
+ * A message queue used by the Inbox and Outbox of a service, bounded unless
+ * its policy is GROW. Many threads may add messages, typically one thread (the
+ * inbox or outbox thread) takes them off. Implementations are expected to be
+ * FIFO.
+ *
+ * What happens when a mailbox is full is decided by its {@link OverrunPolicy}.
+ *
+ */
+public interface Mailbox {
+
+  /**
+   * Policy applied when a message is offered to a full mailbox
+   */
+  public enum OverrunPolicy {
+    /**
+     * the offered message is dropped - the original Inbox behavior
+     */
+    DROP_NEWEST,
+    /**
+     * the oldest queued message is dropped to make room - good for sensor
+     * data where only the latest values matter
+     */
+    DROP_OLDEST,
+    /**
+     * the producer waits until there is room - the original "blocking"
+     * behavior
+     */
+    BLOCK,
+    /**
+     * the message is queued past the max size, nothing is dropped - the
+     * original Outbox behavior, which only warned about the overrun. Only for
+     * mailboxes which can grow, e.g. the LinkedListMailbox
+     */
+    GROW
+  }
+
+  /**
+   * adds a message according to the current overrun policy
+   *
+   * @param msg
+   *          the message
+   * @return false if the message was dropped
+   */
+  public boolean offer(Message msg);
+
+  /**
+   * non blocking removal of the oldest message
+   *
+   * @return the oldest message or null if the mailbox is empty
+   */
+  public Message poll();
+
+  /**
+   * blocks until a message is available
+   *
+   * @return the oldest message
+   * @throws InterruptedException
+   *           when the waiting thread is interrupted
+   */
+  public Message take() throws InterruptedException;
+
+  public int size();
+
+  public void clear();
+
+  /**
+   * @return max number of messages which can be queued
+   */
+  public int getMaxSize();
+
+  public OverrunPolicy getOverrunPolicy();
+
+  public void setOverrunPolicy(OverrunPolicy policy);
+
+  /**
+   * @return number of messages dropped because the mailbox was full
+   */
+  public long getDropped();
+
+}
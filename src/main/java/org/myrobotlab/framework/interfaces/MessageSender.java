@@ -1,5 +1,7 @@
 package org.myrobotlab.framework.interfaces;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.TimeoutException;
 
@@ -45,6 +47,22 @@ public interface MessageSender extends NameProvider, SimpleMessageSender {
 
   public Object sendBlocking(Message msg, Integer timeout) throws InterruptedException, TimeoutException;
 
+  /**
+   * Send a message without blocking, the return value of the invoked method
+   * completes the future.
+   * 
+   * @param name
+   *          - name of destination service
+   * @param method
+   *          - method of destination service
+   * @param data
+   *          - parameter data
+   * @return future of the return value
+   */
+  public CompletableFuture<Object> sendAsync(String name, String method, Object... data);
+
+  public CompletableFuture<Object> sendAsync(Message msg, Integer timeout);
+
   public Object waitFor(String fullName, String method, Integer timeout) throws InterruptedException, TimeoutException;
 
 }
@@ -1,7 +1,8 @@
 package org.myrobotlab.framework.interfaces;
 
 import java.util.Map;
-import java.util.Timer;
+
+import org.myrobotlab.framework.Task;
 
 public interface TaskManager {
 
@@ -10,7 +11,7 @@ public interface TaskManager {
    * 
    * @return - returns all currently defined tasks
    */
-  public Map<String, Timer> getTasks();
+  public Map<String, Task> getTasks();
 
   /**
    * purge a task
@@ -55,6 +56,24 @@ public interface TaskManager {
    */
   public void addTask(String taskName, long intervalMs, long delayMs, String method, Object... params);
 
+  /**
+   * a repeating task which runs at a fixed rate - runs are due every
+   * intervalMs, a late run does not delay the following ones (addTask waits
+   * intervalMs after a run ended)
+   * 
+   * @param taskName
+   *          task name
+   * @param intervalMs
+   *          how frequent in milliseconds
+   * @param delayMs
+   *          the delay
+   * @param method
+   *          the method
+   * @param params
+   *          the params to pass
+   */
+  public void addTaskFixedRate(String taskName, long intervalMs, long delayMs, String method, Object... params);
+
   /**
    * 
    * @param taskName
@@ -35,8 +35,13 @@ import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.imageio.stream.MemoryCacheImageOutputStream;
 
@@ -76,6 +81,12 @@ public class SerializableImage implements Serializable {
   private long timestamp;
   public int frameIndex;
 
+  /**
+   * jpeg encodings by quality - a frame is encoded once for all its consumers
+   * (WebGui, VideoStreamer ...)
+   */
+  transient private Map<Float, byte[]> jpegs;
+
   public static void main(String[] args) throws Exception {
     try {
       LoggingFactory.init();
@@ -161,6 +172,60 @@ public class SerializableImage implements Serializable {
     return null;
   }
 
+  /**
+   * @param quality
+   *          0.0 - 1.0, null for the default
+   * @return the image jpeg encoded - encoded on the first call for a quality,
+   *         the same bytes after that
+   */
+  public synchronized byte[] getJpeg(Double quality) {
+    Float key = (quality == null) ? -1f : quality.floatValue();
+    if (jpegs == null) {
+      jpegs = new HashMap<>();
+    }
+    byte[] jpeg = jpegs.get(key);
+    if (jpeg == null) {
+      BufferedImage img = getImage();
+      if (img == null) {
+        return null;
+      }
+      try {
+        jpeg = toJpeg(img, quality);
+        jpegs.put(key, jpeg);
+      } catch (Exception e) {
+        log.error("could not encode jpeg", e);
+      }
+    }
+    return jpeg;
+  }
+
+  /**
+   * @param img
+   *          image to encode
+   * @param quality
+   *          0.0 - 1.0, null for the default
+   * @return jpeg bytes
+   * @throws IOException
+   *           could not encode
+   */
+  public static byte[] toJpeg(BufferedImage img, Double quality) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream(img.getWidth() * img.getHeight() / 4);
+    if (quality == null) {
+      ImageIO.write(img, "jpg", os);
+    } else {
+      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+      ImageWriteParam writeParam = writer.getDefaultWriteParam();
+      writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      writeParam.setCompressionQuality(quality.floatValue());
+      MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(os);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(img, null, null), writeParam);
+      writer.dispose();
+      out.close();
+    }
+    return os.toByteArray();
+  }
+
   public int getHeight() {
     return image.getHeight();
   }
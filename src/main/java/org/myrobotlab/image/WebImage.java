@@ -32,6 +32,29 @@ public class WebImage {
 
   public Integer frameIndex;
 
+  /**
+   * from the shared jpeg encoding of a frame - other consumers of the same
+   * SerializableImage (e.g. VideoStreamer) don't encode it again
+   * 
+   * @param img
+   *          the frame
+   * @param source
+   *          name of the source
+   * @param quality
+   *          jpeg quality 0.0 - 1.0, null for the default
+   */
+  public WebImage(final SerializableImage img, final String source, final Double quality) {
+    ts = System.currentTimeMillis();
+    this.frameIndex = img.frameIndex;
+    this.source = source;
+    byte[] jpeg = img.getJpeg(quality);
+    if (jpeg != null) {
+      data = String.format("data:image/jpeg;base64,%s", CodecUtils.toBase64(jpeg));
+    } else {
+      log.error("could not create WebImage");
+    }
+  }
+
   public WebImage(final BufferedImage img, final String source, int frameIndex) {
     this(img, source, frameIndex, null, null);
   }
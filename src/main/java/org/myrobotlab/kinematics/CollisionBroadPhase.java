@@ -0,0 +1,272 @@
+package org.myrobotlab.kinematics;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sweep and prune broad phase of CollisionDectection - only pairs of items
+ * whose bounding boxes overlap get to the (costly) closest point test.
+ * 
+ * <pre>
+ * boxes    the segment of each item grown by its radius, refit only for the
+ *          items which moved
+ * sweep    items are kept sorted by the low side of their box along one
+ *          axis, the sweep stops comparing an item once the next item starts
+ *          past its high side. Between two runs few items move, the insertion
+ *          sort keeping them sorted is close to linear.
+ * ignore   pairs to ignore are a bitset per item, indexed by item - built when
+ *          items or ignore lists change instead of comparing names per pair
+ * </pre>
+ * 
+ * Items added, removed or replaced (e.g. a put on CollisionDectection.getItems)
+ * are found by identity, ignore list changes by the ignoreVersion of each item.
+ * 
+ * Not thread safe - CollisionDectection calls it under its lock.
+ */
+class CollisionBroadPhase {
+
+  /**
+   * called with the candidate pairs
+   */
+  interface PairVisitor {
+    /**
+     * @return true to stop the sweep
+     */
+    boolean visit(CollisionItem a, CollisionItem b);
+  }
+
+  CollisionItem[] items = new CollisionItem[0];
+
+  int size = 0;
+
+  /**
+   * set when items were added or removed
+   */
+  boolean dirty = true;
+
+  /**
+   * ignored[i].get(j) - pair i,j is not tested
+   */
+  BitSet[] ignored = new BitSet[0];
+
+  /**
+   * ignoreVersion of each item when the bitsets were built
+   */
+  int[] ignoreVersions = new int[0];
+
+  /**
+   * box of item i is min[3 * i + axis] to max[3 * i + axis]
+   */
+  double[] min = new double[0];
+  double[] max = new double[0];
+
+  /**
+   * origin, end and radius each box was fit to
+   */
+  double[] shapes = new double[0];
+
+  /**
+   * items by the low side of their box on the sweep axis
+   */
+  int[] order = new int[0];
+
+  int axis = 0;
+
+  /**
+   * last sweep
+   */
+  int pairs = 0;
+  int refits = 0;
+
+  void invalidate() {
+    dirty = true;
+  }
+
+  /**
+   * brings the boxes, ignores and order up to date with the items
+   * 
+   * @param all
+   *          all items
+   */
+  void update(Collection<CollisionItem> all) {
+    if (dirty || changed(all)) {
+      rebuild(all);
+      return;
+    }
+    refits = 0;
+    for (int i = 0; i < size; i++) {
+      if (fit(i)) {
+        ++refits;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      if (items[i].ignoreVersion != ignoreVersions[i]) {
+        buildIgnores();
+        break;
+      }
+    }
+    sort();
+  }
+
+  /**
+   * @return true if all are not the items of the last rebuild - the map keeps
+   *         its order while its keys stay the same
+   */
+  private boolean changed(Collection<CollisionItem> all) {
+    if (all.size() != size) {
+      return true;
+    }
+    int i = 0;
+    for (CollisionItem item : all) {
+      if (i >= size || items[i++] != item) {
+        return true;
+      }
+    }
+    return i != size;
+  }
+
+  private void rebuild(Collection<CollisionItem> all) {
+    items = all.toArray(new CollisionItem[0]);
+    size = items.length;
+    min = new double[3 * size];
+    max = new double[3 * size];
+    shapes = new double[7 * size];
+    Arrays.fill(shapes, Double.NaN);
+    for (int i = 0; i < size; i++) {
+      fit(i);
+    }
+    refits = size;
+    buildIgnores();
+
+    // sweep along the axis the items are spread the most
+    double[] low = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+    double[] high = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+    for (int i = 0; i < size; i++) {
+      for (int a = 0; a < 3; a++) {
+        double center = (min[3 * i + a] + max[3 * i + a]) / 2;
+        low[a] = Math.min(low[a], center);
+        high[a] = Math.max(high[a], center);
+      }
+    }
+    axis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (high[a] - low[a] > high[axis] - low[axis]) {
+        axis = a;
+      }
+    }
+
+    order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    sort();
+    dirty = false;
+  }
+
+  /**
+   * refits the box of an item if it moved
+   * 
+   * @return true if it moved
+   */
+  private boolean fit(int i) {
+    CollisionItem item = items[i];
+    Point o = item.getOrigin();
+    Point e = item.getEnd();
+    double r = item.getRadius();
+    int s = 7 * i;
+    if (shapes[s] == o.getX() && shapes[s + 1] == o.getY() && shapes[s + 2] == o.getZ() && shapes[s + 3] == e.getX() && shapes[s + 4] == e.getY() && shapes[s + 5] == e.getZ()
+        && shapes[s + 6] == r) {
+      return false;
+    }
+    shapes[s] = o.getX();
+    shapes[s + 1] = o.getY();
+    shapes[s + 2] = o.getZ();
+    shapes[s + 3] = e.getX();
+    shapes[s + 4] = e.getY();
+    shapes[s + 5] = e.getZ();
+    shapes[s + 6] = r;
+    for (int a = 0; a < 3; a++) {
+      min[3 * i + a] = Math.min(shapes[s + a], shapes[s + 3 + a]) - r;
+      max[3 * i + a] = Math.max(shapes[s + a], shapes[s + 3 + a]) + r;
+    }
+    return true;
+  }
+
+  private void buildIgnores() {
+    Map<String, Integer> index = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      index.put(items[i].getName(), i);
+    }
+    ignored = new BitSet[size];
+    ignoreVersions = new int[size];
+    for (int i = 0; i < size; i++) {
+      ignored[i] = new BitSet(size);
+    }
+    for (int i = 0; i < size; i++) {
+      ignoreVersions[i] = items[i].ignoreVersion;
+      for (String name : items[i].ignore) {
+        Integer j = index.get(name);
+        if (j != null) {
+          // either item ignoring the other is enough
+          ignored[i].set(j);
+          ignored[j].set(i);
+        }
+      }
+    }
+  }
+
+  /**
+   * insertion sort - linear when only a few items moved
+   */
+  private void sort() {
+    for (int k = 1; k < size; k++) {
+      int i = order[k];
+      double low = min[3 * i + axis];
+      int j = k - 1;
+      while (j >= 0 && min[3 * order[j] + axis] > low) {
+        order[j + 1] = order[j];
+        --j;
+      }
+      order[j + 1] = i;
+    }
+  }
+
+  /**
+   * visits the pairs with overlapping boxes which are not ignored
+   * 
+   * @param visitor
+   *          called per pair
+   * @return true if the visitor stopped the sweep
+   */
+  boolean sweep(PairVisitor visitor) {
+    pairs = 0;
+    int a1 = (axis + 1) % 3;
+    int a2 = (axis + 2) % 3;
+    for (int k = 0; k < size; k++) {
+      int i = order[k];
+      double high = max[3 * i + axis];
+      for (int l = k + 1; l < size; l++) {
+        int j = order[l];
+        if (min[3 * j + axis] > high) {
+          // sorted - nothing further can overlap i
+          break;
+        }
+        if (min[3 * j + a1] > max[3 * i + a1] || min[3 * i + a1] > max[3 * j + a1] || min[3 * j + a2] > max[3 * i + a2] || min[3 * i + a2] > max[3 * j + a2]) {
+          continue;
+        }
+        if (ignored[i].get(j)) {
+          continue;
+        }
+        ++pairs;
+        if (visitor.visit(items[i], items[j])) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+}
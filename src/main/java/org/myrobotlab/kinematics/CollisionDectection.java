@@ -7,11 +7,16 @@ import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Collisions between capsule items (a segment and a radius). runTest only
+ * runs the closest point test on the pairs the CollisionBroadPhase finds with
+ * overlapping bounding boxes.
+ * 
  * @author Christian
  *
  */
 public class CollisionDectection {
   transient ConcurrentHashMap<String, CollisionItem> items = new ConcurrentHashMap<String, CollisionItem>();
+  private transient CollisionBroadPhase broadPhase = new CollisionBroadPhase();
   private boolean collision;
   private Point[] collisionPoint = { new Point(0, 0, 0, 0, 0, 0), new Point(0, 0, 0, 0, 0, 0) };
   private CollisionItem[] collisionItems = new CollisionItem[2];
@@ -44,127 +49,82 @@ public class CollisionDectection {
       updateItem.setEnd(item.getEnd());
       for (int i = 0; i < item.ignore.size(); i++) {
         if (!updateItem.ignore.contains(item.ignore.get(i))) {
-          updateItem.ignore.add(item.ignore.get(i));
+          updateItem.addIgnore(item.ignore.get(i));
         }
       }
       items.put(item.getName(), updateItem);
       return;
     }
     items.put(item.getName(), item);
+    broadPhase.invalidate();
   }
 
   public synchronized CollisionResults runTest() {
     collision = false;
-    for (CollisionItem item : items.values()) {
-      // vect1 = vector of the line between the extremity of the first item
-      // double[] vect1 = item.getVector();
-      // par1 = parametric formula of vect1
-      // double[][] par1 = item.calcPar(vect1, 1);//[x,y,z][c,t,k]
-      item.clearDone();
-      for (CollisionItem citem : items.values()) {
-        if (citem.getName().equals(item.getName())) {
-          // do not compared two time the same part
-          continue;
-        }
-        if (item.ignore.contains(citem.getName())) {
-          // item 2 is in the ignore list of item 1
-          continue;
-        }
-        if (citem.ignore.contains(item.getName())) {
-          // item 1 is in the ignore list of item 2
-          continue;
-        }
-        // need to not compare item already done;
-        if (citem.isDone(citem.getName())) {
-          continue;
-        }
-        // //vect2 = vector of the line between the extremity of the second item
-        // double[] vect2 = calcVect(citem);
-        // //par2 = parametric formula of vect1;
-        // double[][] par2 = calcPar(citem, vect2, 2);
-        // //vectT = vector between the origin of the two part
-        // double[][] vectT = calcVectT(par1, par2);
-        // // vectT1/vectT2 = imposing perpendicularity with the item vector
-        // double[] vectT1 = calcPerpendicularity(vectT, vect1);
-        // double[] vectT2 = calcPerpendicularity(vectT, vect2);
-        // // resolve the formulas (vectT1[0] + vectT1[1]*t + vectT1[2]*k = 0
-        // and vectT2[0] + vectT2[1]*t + vectT2[2]*k = 0) we need
-        // to know value of t and k
-        // double[] tTemp = new double[3];
-        // tTemp[0] = vectT1[0]/(vectT1[1]*-1);
-        // tTemp[2] = vectT1[2]/(vectT1[1]*-1);
-        // double[] k = new double[3];
-        // k[0] = vectT2[0] + (tTemp[0] * vectT2[1]);
-        // k[2] = vectT2[2] + (tTemp[2] * vectT2[1]);
-        // k[0] = k[0] / (k[2] * -1);
-        Double[] tk = new Double[2];
-        // tk[0] = (vectT1[0] + (vectT1[2] * k[0])) / (vectT1[1] * -1);
-        // tk[1] = k[0];
-        // if(tk[0] < 0) tk[0] = 0;
-        // if(tk[0] > 1) tk[0] = 1;
-        // if(tk[1] < 0) tk[1] = 0;
-        // if(tk[1] > 1) tk[1] = 1;
-        //// get the equation of the line of the shortest distance between the
-        // center line of the items (Vt = (x, y, z))
-        // double[] vectTFinal = new double[3];
-        // vectTFinal[0] = vectT[0][0] + (vectT[0][1] * tk[0]) + (vectT[0][2] *
-        // tk[1]);
-        // vectTFinal[1] = vectT[1][0] + (vectT[1][1] * tk[0]) + (vectT[1][2] *
-        // tk[1]);
-        // vectTFinal[2] = vectT[2][0] + (vectT[2][1] * tk[0]) + (vectT[2][2] *
-        // tk[1]);
-        // //get the intersection point between Vt and V1;
-        // Point point1 = new Point(par1[0][0] + par1[0][1]*tk[0] + par1[0][2] *
-        // tk[1], par1[1][0] + par1[1][1]*tk[0] + par1[1][2] *
-        // tk[1], par1[2][0] + par1[2][1]*tk[0] + par1[2][2] * tk[1], 0, 0, 0);
-        // //get the intersection point between Vt and V2;
-        // Point point2 = new Point(par2[0][0] + par2[0][1]*tk[0] + par2[0][2] *
-        // tk[1], par2[1][0] + par2[1][1]*tk[0] + par2[1][2] *
-        // tk[1], par2[2][0] + par2[2][1]*tk[0] + par2[2][2] * tk[1], 0, 0, 0);
-        Point[] points = getClosestPoint(item, citem, tk, new Double[3]);
-        Point point1 = points[0];
-        Point point2 = points[1];
-        // calculate the distance between these two points
-        double d = Math.sqrt(((point2.getX() - point1.getX()) * (point2.getX() - point1.getX())) + ((point2.getY() - point1.getY()) * (point2.getY() - point1.getY()))
-            + ((point2.getZ() - point1.getZ()) * (point2.getZ() - point1.getZ())));
-        // if d < radius item 1 + radius item 2 then there is a possible
-        // collision
-        double rad1 = item.getRadius();
-        if (tk[0] <= 0.0 || tk[0] >= 1.0) {
-          rad1 = 0;
-        }
-        double rad2 = citem.getRadius();
-        if (tk[1] == 0.0 || tk[1] == 1.0) {
-          rad2 = 0;
-        }
-        item.haveDone(citem.getName());
-        if (d <= rad1 + rad2 /*
-                              * && ((tk[0] != 0 && tk[0] != 1.0) || (tk[1] != 0
-                              * && tk[1] != 1))
-                              */) {
-          // we got a potential collision
-          collision = true;
-          collisionPoint[0] = point1;
-          collisionPoint[1] = point2;
-          collisionItems[0] = item;
-          collisionItems[1] = citem;
-          collisionLocation[0] = tk[0];
-          collisionLocation[1] = tk[1];
-          CollisionResults retval = new CollisionResults();
-          retval.haveCollision = true;
-          retval.collisionPoints[0] = point1;
-          retval.collisionPoints[1] = point2;
-          retval.collisionItems[0] = item;
-          retval.collisionItems[1] = citem;
-          retval.collisionLocation[0] = tk[0];
-          retval.collisionLocation[1] = tk[1];
-          return retval;
-        }
+    broadPhase.update(items.values());
+    CollisionResults[] found = new CollisionResults[1];
+    broadPhase.sweep((item, citem) -> {
+      // the closest point test is not symmetric - test both ways
+      found[0] = test(item, citem);
+      if (found[0] == null) {
+        found[0] = test(citem, item);
       }
+      return found[0] != null;
+    });
+    if (found[0] != null) {
+      return found[0];
     }
     return new CollisionResults();
   }
 
+  /**
+   * closest point test of two items
+   * 
+   * @return the collision or null
+   */
+  private CollisionResults test(CollisionItem item, CollisionItem citem) {
+    Double[] tk = new Double[2];
+    Point[] points = getClosestPoint(item, citem, tk, new Double[3]);
+    Point point1 = points[0];
+    Point point2 = points[1];
+    // calculate the distance between these two points
+    double d = Math.sqrt(((point2.getX() - point1.getX()) * (point2.getX() - point1.getX())) + ((point2.getY() - point1.getY()) * (point2.getY() - point1.getY()))
+        + ((point2.getZ() - point1.getZ()) * (point2.getZ() - point1.getZ())));
+    // if d < radius item 1 + radius item 2 then there is a possible
+    // collision
+    double rad1 = item.getRadius();
+    if (tk[0] <= 0.0 || tk[0] >= 1.0) {
+      rad1 = 0;
+    }
+    double rad2 = citem.getRadius();
+    if (tk[1] == 0.0 || tk[1] == 1.0) {
+      rad2 = 0;
+    }
+    if (d <= rad1 + rad2 /*
+                          * && ((tk[0] != 0 && tk[0] != 1.0) || (tk[1] != 0
+                          * && tk[1] != 1))
+                          */) {
+      // we got a potential collision
+      collision = true;
+      collisionPoint[0] = point1;
+      collisionPoint[1] = point2;
+      collisionItems[0] = item;
+      collisionItems[1] = citem;
+      collisionLocation[0] = tk[0];
+      collisionLocation[1] = tk[1];
+      CollisionResults retval = new CollisionResults();
+      retval.haveCollision = true;
+      retval.collisionPoints[0] = point1;
+      retval.collisionPoints[1] = point2;
+      retval.collisionItems[0] = item;
+      retval.collisionItems[1] = citem;
+      retval.collisionLocation[0] = tk[0];
+      retval.collisionLocation[1] = tk[1];
+      return retval;
+    }
+    return null;
+  }
+
   public double[] calcPerpendicularity(double[][] vectT, double[] vect) {
     double[] vectP = new double[3];
     vectP[0] = vectT[0][0] * vect[0] + vectT[1][0] * vect[1] + vectT[2][0] * vect[2];
@@ -188,9 +148,10 @@ public class CollisionDectection {
     return collision;
   }
 
-  public void clearItem() {
+  public synchronized void clearItem() {
     // TODO Auto-generated method stub
     items.clear();
+    broadPhase.invalidate();
   }
 
   public Point[] getCollisionPoint() {
@@ -274,7 +235,7 @@ public class CollisionDectection {
     return collisionLocation;
   }
 
-  public void removeKinectObject() {
+  public synchronized void removeKinectObject() {
     ArrayList<String> toRemove = new ArrayList<String>();
     for (CollisionItem ci : items.values()) {
       if (ci.isFromKinect()) {
@@ -284,6 +245,7 @@ public class CollisionDectection {
     for (int i = 0; i < toRemove.size(); i++) {
       items.remove(toRemove.get(i));
     }
+    broadPhase.invalidate();
 
   }
 
@@ -291,9 +253,10 @@ public class CollisionDectection {
     return items;
   }
 
-  public void removeObject(String name) {
+  public synchronized void removeObject(String name) {
     if (items.containsKey(name)) {
       items.remove(name);
+      broadPhase.invalidate();
     }
 
   }
@@ -20,6 +20,10 @@ public class CollisionItem {
   String name;
   double radius = 0.0;
   ArrayList<String> ignore = new ArrayList<String>();
+  /**
+   * bumped by addIgnore and removeIgnore
+   */
+  int ignoreVersion = 0;
   ArrayList<String> done = new ArrayList<String>();
   boolean fromKinect = false;
   public HashMap<Integer[], Map3DPoint> cloudMap;
@@ -355,7 +359,8 @@ public class CollisionItem {
   }
 
   /**
-   * @return the ignore
+   * @return the ignore - change it with addIgnore and removeIgnore, changes
+   *         made to the list itself are not seen by CollisionDectection
    */
   public ArrayList<String> getIgnore() {
     return ignore;
@@ -363,12 +368,14 @@ public class CollisionItem {
 
   public void addIgnore(String ignore) {
     this.ignore.add(ignore);
+    ++ignoreVersion;
   }
 
   public void removeIgnore(String ignore) {
     for (String x : this.ignore) {
       if (x.equals(ignore)) {
         this.ignore.remove(x);
+        ++ignoreVersion;
         break;
       }
     }
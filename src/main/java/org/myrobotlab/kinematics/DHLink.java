@@ -50,6 +50,16 @@ public class DHLink implements Serializable {
   public double currentPos = 0.0;
   public double offset = 0.0;
 
+  /**
+   * transform of the parameters it was resolved for - see getTransform
+   */
+  private transient Matrix transform = null;
+  private transient double transformD, transformTheta, transformR, transformAlpha;
+  /**
+   * incremented each time the transform is resolved again
+   */
+  transient int transformCount = 0;
+
   // private Matrix m;
   // TODO: add max/min angle
   public DHLink(String name, double d, double r, double theta, double alpha) {
@@ -95,7 +105,36 @@ public class DHLink implements Serializable {
    * @return a 4x4 homogenous transformation matrix for the given D-H parameters
    */
   public Matrix resolveMatrix() {
-    Matrix m = new Matrix(4, 4);
+    return resolveMatrix(new Matrix(4, 4));
+  }
+
+  /**
+   * @return the 4x4 homogenous transformation matrix for the current D-H
+   *         parameters - cached, only resolved again when they changed. Not to
+   *         be modified.
+   */
+  public Matrix getTransform() {
+    if (transform == null || d != transformD || theta != transformTheta || r != transformR || alpha != transformAlpha) {
+      if (transform == null) {
+        transform = new Matrix(4, 4);
+      }
+      resolveMatrix(transform);
+      transformD = d;
+      transformTheta = theta;
+      transformR = r;
+      transformAlpha = alpha;
+      ++transformCount;
+    }
+    return transform;
+  }
+
+  /**
+   * @param m
+   *          4x4 matrix the transform is written to
+   * @return m - the homogenous transformation matrix for the given D-H
+   *         parameters
+   */
+  public Matrix resolveMatrix(Matrix m) {
     // elements we need
     double cosTheta = Math.cos(theta);
     double sinTheta = Math.sin(theta);
@@ -132,28 +171,28 @@ public class DHLink implements Serializable {
     // m.elements[3][3] = 1;
 
     // first row of homogenous xform
-    m.elements[0][0] = cosTheta;
-    m.elements[0][1] = -1 * cosAlpha * sinTheta;
-    m.elements[0][2] = sinAlpha * sinTheta;
-    m.elements[0][3] = r * cosTheta;
+    m.set(0, 0, cosTheta);
+    m.set(0, 1, -1 * cosAlpha * sinTheta);
+    m.set(0, 2, sinAlpha * sinTheta);
+    m.set(0, 3, r * cosTheta);
 
     // 2nd row of homogenous xform
-    m.elements[1][0] = sinTheta;
-    m.elements[1][1] = cosAlpha * cosTheta;
-    m.elements[1][2] = -1 * sinAlpha * cosTheta;
-    m.elements[1][3] = r * sinTheta;
+    m.set(1, 0, sinTheta);
+    m.set(1, 1, cosAlpha * cosTheta);
+    m.set(1, 2, -1 * sinAlpha * cosTheta);
+    m.set(1, 3, r * sinTheta);
 
     // 3rd row of homogenous xform
-    m.elements[2][0] = 0;
-    m.elements[2][1] = sinAlpha;
-    m.elements[2][2] = cosAlpha;
-    m.elements[2][3] = d;
+    m.set(2, 0, 0);
+    m.set(2, 1, sinAlpha);
+    m.set(2, 2, cosAlpha);
+    m.set(2, 3, d);
 
     // 4th row of homogenous xform
-    m.elements[3][0] = 0;
-    m.elements[3][1] = 0;
-    m.elements[3][2] = 0;
-    m.elements[3][3] = 1;
+    m.set(3, 0, 0);
+    m.set(3, 1, 0);
+    m.set(3, 2, 0);
+    m.set(3, 3, 1);
 
     return m;
 
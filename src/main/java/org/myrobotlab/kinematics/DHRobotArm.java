@@ -2,6 +2,9 @@ package org.myrobotlab.kinematics;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.InverseKinematics3D;
@@ -13,7 +16,16 @@ public class DHRobotArm implements Serializable {
 
   transient public final static Logger log = LoggerFactory.getLogger(DHRobotArm.class);
 
-  private int maxIterations = 10000;
+  /**
+   * the solver of moveToGoal
+   */
+  static final JacobianIKSolver jacobianSolver = new JacobianIKSolver();
+
+  /**
+   * fewest goals of a batch solved by one thread - the goals of a thread are
+   * solved in order, each starting from the solution of the previous one
+   */
+  static final int MIN_BATCH_CHUNK = 8;
 
   private ArrayList<DHLink> links;
 
@@ -22,6 +34,26 @@ public class DHRobotArm implements Serializable {
   // for debugging .. hmmm
   public transient InverseKinematics3D ik3D = null;
 
+  /**
+   * workspace of forward kinematics and the jacobian - allocated once, reused
+   * by every iteration
+   * 
+   * frames[i] is the base frame times the transforms of links 0 to i - 1, it
+   * is only multiplied again from the first link whose transform changed
+   */
+  private transient Matrix[] frames = null;
+  private transient DHLink[] frameLinks = null;
+  private transient int[] frameCounts = null;
+  private transient Matrix jacobian = null;
+  private transient Matrix jInverse = null;
+  private transient double[] work = null;
+
+  /**
+   * the step a joint at a limit is checked for - a joint which can't move it
+   * gets no share of the motion
+   */
+  static final double DELTA = 0.0001;
+
   public DHRobotArm() {
     super();
     links = new ArrayList<DHLink>();
@@ -41,51 +73,135 @@ public class DHRobotArm implements Serializable {
     return links;
   }
 
-  public Matrix getJInverse() {
-    // something small.
-    // double delta = 0.000001;
-    double delta = 0.0001;
-    int numLinks = this.getNumLinks();
-    // we need a jacobian matrix that is 6 x numLinks
+  /**
+   * @return the pseudo inverse of the jacobian of the palm position - maps
+   *         delta x,y,z to delta joint angles
+   */
+  public synchronized Matrix getJInverse() {
+    updateFrames();
+    return new Matrix(updateJInverse());
+  }
+
+  /**
+   * sizes the workspace for the current links
+   */
+  private void checkWorkspace() {
+    int numLinks = links.size();
+    if (frames != null && frames.length == numLinks + 1) {
+      return;
+    }
+    frames = new Matrix[numLinks + 1];
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = new Matrix(4, 4);
+    }
+    // initial frame orientated around x
+    frames[0].setIdentity();
+    frameLinks = new DHLink[numLinks];
+    frameCounts = new int[numLinks];
     // for now we'll only deal with x,y,z we can add rotation later. so only 3
-    // We can add rotation information into slots 4,5,6 when we add it to the
-    // algorithm.
-    Matrix jacobian = new Matrix(3, numLinks);
-    // compute the gradient of x,y,z based on the joint movement.
-    Point basePosition = this.getPalmPosition();
-    // log.debug("Base Position : " + basePosition);
-    // for each servo, we'll rotate it forward by delta (and back), and get
-    // the new positions
-    for (int j = 0; j < numLinks; j++) {
-      this.getLink(j).incrRotate(delta);
-      Point palmPoint = this.getPalmPosition();
-      Point deltaPoint = palmPoint.subtract(basePosition);
-      this.getLink(j).incrRotate(-delta);
-      // delta position / base position gives us the slope / rate of
-      // change
-      // this is an approx of the gradient of P
-      // UHoh,, what about divide by zero?!
-      // log.debug("Delta Point" + deltaPoint);
-      double dXdj = deltaPoint.getX() / delta;
-      double dYdj = deltaPoint.getY() / delta;
-      double dZdj = deltaPoint.getZ() / delta;
-      jacobian.elements[0][j] = dXdj;
-      jacobian.elements[1][j] = dYdj;
-      jacobian.elements[2][j] = dZdj;
-      // TODO: get orientation roll/pitch/yaw
+    jacobian = new Matrix(3, numLinks);
+    jInverse = new Matrix(numLinks, 3);
+    work = new double[2 * 3 * 3];
+  }
+
+  /**
+   * forward kinematics - updates the frames of the links from the first one
+   * whose transform changed
+   * 
+   * @return the frame of the palm (workspace - not to be kept)
+   */
+  Matrix updateFrames() {
+    checkWorkspace();
+    boolean changed = false;
+    for (int i = 0; i < links.size(); i++) {
+      DHLink link = links.get(i);
+      Matrix transform = link.getTransform();
+      if (changed || frameLinks[i] != link || frameCounts[i] != link.transformCount) {
+        frames[i].multiply(transform, frames[i + 1]);
+        frameLinks[i] = link;
+        frameCounts[i] = link.transformCount;
+        changed = true;
+      }
     }
-    // log.debug("Jacobian(p)approx");
-    // log.info("JACOBIAN\n" +jacobian);
+    return frames[links.size()];
+  }
+
+  /**
+   * @return the pseudo inverse of the jacobian from the current frames
+   *         (workspace - not to be kept)
+   */
+  Matrix updateJInverse() {
+    updateJacobian(true);
     // This is the MAGIC! the pseudo inverse should map
     // deltaTheta[i] to delta[x,y,z]
-    Matrix jInverse = jacobian.pseudoInverse();
-    // log.debug("Pseudo inverse Jacobian(p)approx\n" + jInverse);
-    if (jInverse == null) {
-      jInverse = new Matrix(3, numLinks);
+    if (!jacobian.rightPseudoInverse(jInverse, work)) {
+      // singular - e.g. fewer than 3 joints can move
+      Matrix inverse = jacobian.pseudoInverse();
+      if (inverse == null) {
+        jInverse.setZero();
+      } else {
+        jInverse.set(inverse);
+      }
     }
     return jInverse;
   }
 
+  /**
+   * the jacobian of the palm position from the current frames - column j is
+   * the velocity of the palm when joint j turns - the joint's axis crossed
+   * with the palm relative to the joint
+   * 
+   * @param limits
+   *          true to zero the columns of joints which can't turn further
+   *          (positively) at their limit
+   * @return the jacobian (workspace - not to be kept)
+   */
+  Matrix updateJacobian(boolean limits) {
+    int numLinks = links.size();
+    Matrix palm = frames[numLinks];
+    double px = palm.get(0, 3);
+    double py = palm.get(1, 3);
+    double pz = palm.get(2, 3);
+    for (int j = 0; j < numLinks; j++) {
+      DHLink link = links.get(j);
+      double ax = 0, ay = 0, az = 0;
+      Matrix f = null;
+      if (DHLinkType.REVOLUTE.equals(link.getType()) && (!limits || canMove(link.getTheta(), link))) {
+        // theta turns about z of the previous frame
+        f = frames[j];
+        ax = f.get(0, 2);
+        ay = f.get(1, 2);
+        az = f.get(2, 2);
+      } else if (DHLinkType.REVOLUTE_ALPHA.equals(link.getType()) && (!limits || canMove(link.getAlpha(), link))) {
+        // alpha turns about x of the link's frame
+        f = frames[j + 1];
+        ax = f.get(0, 0);
+        ay = f.get(1, 0);
+        az = f.get(2, 0);
+      }
+      if (f == null) {
+        // at a limit (or prismatic) - incrRotate won't move it
+        jacobian.set(0, j, 0);
+        jacobian.set(1, j, 0);
+        jacobian.set(2, j, 0);
+        continue;
+      }
+      double rx = px - f.get(0, 3);
+      double ry = py - f.get(1, 3);
+      double rz = pz - f.get(2, 3);
+      jacobian.set(0, j, ay * rz - az * ry);
+      jacobian.set(1, j, az * rx - ax * rz);
+      jacobian.set(2, j, ax * ry - ay * rx);
+      // TODO: get orientation roll/pitch/yaw
+    }
+    return jacobian;
+  }
+
+  private static boolean canMove(double angle, DHLink link) {
+    double destAngle = angle + DELTA;
+    return destAngle <= link.getMax() && destAngle >= link.getMin();
+  }
+
   public DHLink getLink(int i) {
     if (links.size() >= i) {
       return links.get(i);
@@ -104,45 +220,15 @@ public class DHRobotArm implements Serializable {
   }
 
   public synchronized Point getJointPosition(int index) {
-    if (index > this.links.size() || index < 0) {
+    if (index >= this.links.size() || index < 0) {
       // TODO: bound check
       return null;
     }
-
-    Matrix m = new Matrix(4, 4);
-    // TODO: init to the ident?
-
-    // initial frame orientated around x
-    m.elements[0][0] = 1;
-    m.elements[1][1] = 1;
-    m.elements[2][2] = 1;
-    m.elements[3][3] = 1;
-
-    // initial frame orientated around z
-    // m.elements[0][2] = 1;
-    // m.elements[1][1] = 1;
-    // m.elements[2][0] = 1;
-    // m.elements[3][3] = 1;
-
-    // log.debug("-------------------------");
-    // log.debug(m);
-    // TODO: validate this approach..
-    for (int i = 0; i <= index; i++) {
-      DHLink link = links.get(i);
-      Matrix s = link.resolveMatrix();
-      // log.debug(s);
-      m = m.multiply(s);
-      // log.debug("-------------------------");
-      // log.debug(m);
-    }
+    updateFrames();
     // now m should be the total translation for the arm
     // given the arms current position
-    double x = m.elements[0][3];
-    double y = m.elements[1][3];
-    double z = m.elements[2][3];
-    // double ws = m.elements[3][3];
-    // log.debug("World Scale : " + ws);
-    Point jointPosition = new Point(x, y, z, 0, 0, 0);
+    Matrix m = frames[index + 1];
+    Point jointPosition = new Point(m.get(0, 3), m.get(1, 3), m.get(2, 3), 0, 0, 0);
     return jointPosition;
 
   }
@@ -153,55 +239,35 @@ public class DHRobotArm implements Serializable {
    * @return the x,y,z of the palm. roll,pitc, and yaw are not returned/computed
    *         with this function
    */
-  public Point getPalmPosition(String lastDHLink) {
-    // TODO Auto-generated method stub
+  public synchronized Point getPalmPosition(String lastDHLink) {
     // return the position of the end effector wrt the base frame
-    Matrix m = new Matrix(4, 4);
-    // TODO: init to the ident?
-
-    // initial frame orientated around x
-    m.elements[0][0] = 1;
-    m.elements[1][1] = 1;
-    m.elements[2][2] = 1;
-    m.elements[3][3] = 1;
-
-    // initial frame orientated around z
-    // m.elements[0][2] = 1;
-    // m.elements[1][1] = 1;
-    // m.elements[2][0] = 1;
-    // m.elements[3][3] = 1;
-
-    // log.debug("-------------------------");
-    // log.debug(m);
-    // TODO: validate this approach..
+    updateFrames();
+    int last = links.size();
     for (int i = 0; i < links.size(); i++) {
-      Matrix s = links.get(i).resolveMatrix();
-      // log.debug(s);
-      m = m.multiply(s);
-      // log.debug("-------------------------");
-      // log.debug(m);
       if (links.get(i).getName() != null && links.get(i).getName().equals(lastDHLink)) {
+        last = i + 1;
         break;
       }
     }
+    Matrix m = frames[last];
     // now m should be the total translation for the arm
     // given the arms current position
-    double x = m.elements[0][3];
-    double y = m.elements[1][3];
-    double z = m.elements[2][3];
+    double x = m.get(0, 3);
+    double y = m.get(1, 3);
+    double z = m.get(2, 3);
     // double ws = m.elements[3][3];
     // log.debug("World Scale : " + ws);
     // TODO: pass /compute the roll pitch and yaw ..
-    double pitch = Math.atan2(-1.0 * (m.elements[2][0]), Math.sqrt(m.elements[0][0] * m.elements[0][0] + m.elements[1][0] * m.elements[1][0]));
+    double pitch = Math.atan2(-1.0 * (m.get(2, 0)), Math.sqrt(m.get(0, 0) * m.get(0, 0) + m.get(1, 0) * m.get(1, 0)));
     double roll = 0;
     double yaw = 0;
     if (pitch == Math.PI / 2) {
-      roll = Math.atan2(m.elements[0][1], m.elements[1][1]);
+      roll = Math.atan2(m.get(0, 1), m.get(1, 1));
     } else if (pitch == -1 * Math.PI / 2) {
-      roll = Math.atan2(m.elements[0][1], m.elements[1][1]) * -1;
+      roll = Math.atan2(m.get(0, 1), m.get(1, 1)) * -1;
     } else {
-      roll = Math.atan2(m.elements[2][1] / Math.cos(pitch), m.elements[2][2]) / Math.cos(pitch);
-      yaw = Math.atan2(m.elements[1][0] / Math.cos(pitch), m.elements[0][0] / Math.cos(pitch)) - Math.PI / 2;
+      roll = Math.atan2(m.get(2, 1) / Math.cos(pitch), m.get(2, 2)) / Math.cos(pitch);
+      yaw = Math.atan2(m.get(1, 0) / Math.cos(pitch), m.get(0, 0) / Math.cos(pitch)) - Math.PI / 2;
     }
     // double pitch=0, roll=0, yaw=0; //attitude, bank, heading
     // if (m.elements[1][0] > 0.998) {
@@ -230,61 +296,47 @@ public class DHRobotArm implements Serializable {
     }
   }
 
+  /**
+   * moves the palm to the goal with the pseudo inverse jacobian solver
+   * 
+   * @param goal
+   *          x,y,z of the palm
+   * @return true if the palm got within 2 mm of the goal
+   */
   public boolean moveToGoal(Point goal) {
-    // we know where we are.. we know where we want to go.
-    int numSteps = 0;
-    double iterStep = 0.05;
-    // we're in millimeters..
-    double errorThreshold = 2.0;
-    // what's the current point
-    while (true) {
-      numSteps++;
-      if (numSteps >= maxIterations) {
-        log.info("Attempted to iterate, didn't make it. Current Position: {} Goal: {} Distance: {}", getPalmPosition(), goal, goal.distanceTo(getPalmPosition()));
-        // we shouldn't publish if we don't solve!
-        return false;
-      }
-      // TODO: what if its unreachable!
-      Point currentPos = this.getPalmPosition();
-      log.debug("Current Position " + currentPos);
-      // vector to destination
-      Point deltaPoint = goal.subtract(currentPos);
-      Matrix dP = new Matrix(3, 1);
-      dP.elements[0][0] = deltaPoint.getX();
-      dP.elements[1][0] = deltaPoint.getY();
-      dP.elements[2][0] = deltaPoint.getZ();
-      // scale a vector towards the goal by the increment step.
-      dP = dP.multiply(iterStep);
-
-      Matrix jInverse = this.getJInverse();
-      // why is this zero?
-      Matrix dTheta = jInverse.multiply(dP);
-      log.debug("delta Theta + " + dTheta);
-      for (int i = 0; i < dTheta.getNumRows(); i++) {
-        // update joint positions! move towards the goal!
-        double d = dTheta.elements[i][0];
-        // incr rotate needs to be min/max aware here!
-        this.getLink(i).incrRotate(d);
-      }
-      // delta point represents the direction we need to move in order to
-      // get there.
-      // we should figure out how to scale the steps.
-      // For debugging of trajectories we should publish here?
-
-      // ik3D.publishTelemetry();
-      // try {
-      // Thread.sleep(2);
-      // } catch (InterruptedException e) {
-      // // TODO Auto-generated catch block
-      // e.printStackTrace();
-      // }
+    return jacobianSolver.solve(this, goal).success;
+  }
 
-      if (deltaPoint.magnitude() < errorThreshold) {
-        log.info("Final Position {} Number of Iterations {}", getPalmPosition(), numSteps);
-        break;
-      }
+  /**
+   * solves the goals of a path on copies of this arm - the arm itself is not
+   * moved. The goals are split in consecutive runs, one per core, each goal
+   * of a run starts from the solution of the previous one.
+   * 
+   * @param solver
+   *          the solver
+   * @param goals
+   *          x,y,z of the palm
+   * @return the solutions in the order of the goals
+   */
+  public List<IKSolution> solveBatch(IKSolver solver, List<Point> goals) {
+    int size = goals.size();
+    IKSolution[] solutions = new IKSolution[size];
+    if (size == 0) {
+      return Arrays.asList(solutions);
     }
-    return true;
+    DHRobotArm start;
+    synchronized (this) {
+      start = new DHRobotArm(this);
+    }
+    int cores = java.lang.Runtime.getRuntime().availableProcessors();
+    int runs = Math.max(1, Math.min(cores, size / MIN_BATCH_CHUNK));
+    IntStream.range(0, runs).parallel().forEach(run -> {
+      DHRobotArm arm = new DHRobotArm(start);
+      for (int i = run * size / runs; i < (run + 1) * size / runs; i++) {
+        solutions[i] = solver.solve(arm, goals.get(i));
+      }
+    });
+    return Arrays.asList(solutions);
   }
 
   public void setLinks(ArrayList<DHLink> links) {
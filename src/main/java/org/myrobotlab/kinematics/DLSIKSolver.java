@@ -0,0 +1,249 @@
+package org.myrobotlab.kinematics;
+
+import java.util.List;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Damped least squares (Levenberg-Marquardt) solver of the palm position.
+ *
+ * <pre>
+ * step        dq = J' (J J' + lambda^2 I)^-1 e - e is the palm to the goal,
+ *             lambda^2 the damping times the largest diagonal of J J'
+ * adaptive    a step which gets closer is kept and the damping shrinks
+ *             (towards a gauss newton step), one which doesn't is undone and
+ *             the damping grows (towards a short gradient step)
+ * limits      links are clamped to their min/max, a link at a limit which the
+ *             goal pulls further out is left out of the step
+ * warm start  from the current joint positions - the previous solution when
+ *             tracking, then a cold start from the centered joints if that
+ *             doesn't converge
+ * </pre>
+ *
+ * Converges in tens of iterations where the pseudo inverse jacobian solver
+ * takes hundreds or thousands.
+ */
+public class DLSIKSolver implements IKSolver {
+
+  public final static Logger log = LoggerFactory.getLogger(DLSIKSolver.class);
+
+  /**
+   * per start
+   */
+  private int maxIterations = 100;
+
+  /**
+   * mm from the goal
+   */
+  private double errorThreshold = 2.0;
+
+  private double initialDamping = 0.001;
+
+  private double minDamping = 0.000001;
+
+  /**
+   * the damping a failed step gives up at - a local minimum
+   */
+  private double maxDamping = 1000000;
+
+  /**
+   * radians - largest turn of a link in one step, a longer step is scaled
+   * down
+   */
+  private double maxStep = 0.5;
+
+  private boolean coldStart = true;
+
+  @Override
+  public IKSolution solve(DHRobotArm arm, Point goal) {
+    long start = System.nanoTime();
+    IKSolution solution = new IKSolution(goal);
+    synchronized (arm) {
+      List<DHLink> links = arm.getLinks();
+      int numLinks = links.size();
+      double[] positions = new double[numLinks];
+      double[] step = new double[numLinks];
+      double[] e = new double[3];
+      double[] next = new double[3];
+
+      for (int i = 0; i < numLinks; i++) {
+        DHLink link = links.get(i);
+        positions[i] = clamp(IKSolution.getPosition(link), link);
+        IKSolution.setPosition(link, positions[i]);
+      }
+      solution.iterations = descend(arm, links, goal, positions, step, e, next);
+      solution.error = error(arm.updateFrames(), goal, e);
+
+      if (solution.error >= errorThreshold && coldStart) {
+        double[] warm = positions.clone();
+        for (int i = 0; i < numLinks; i++) {
+          DHLink link = links.get(i);
+          positions[i] = (link.getMin() + link.getMax()) / 2.0;
+          IKSolution.setPosition(link, positions[i]);
+        }
+        solution.iterations += descend(arm, links, goal, positions, step, e, next);
+        double cold = error(arm.updateFrames(), goal, e);
+        if (cold < solution.error) {
+          solution.error = cold;
+        } else {
+          for (int i = 0; i < numLinks; i++) {
+            IKSolution.setPosition(links.get(i), warm[i]);
+          }
+        }
+      }
+
+      solution.success = solution.error < errorThreshold;
+      solution.palm = arm.getPalmPosition();
+      solution.positions = IKSolution.getPositions(links);
+    }
+    solution.latencyUs = (System.nanoTime() - start) / 1000;
+    if (log.isDebugEnabled()) {
+      log.debug("{}", solution);
+    }
+    return solution;
+  }
+
+  /**
+   * damped least squares steps from the current positions until the palm is
+   * within the threshold, the damping gave up or maxIterations
+   *
+   * @return iterations
+   */
+  private int descend(DHRobotArm arm, List<DHLink> links, Point goal, double[] positions, double[] step, double[] e, double[] next) {
+    int numLinks = links.size();
+    double error = error(arm.updateFrames(), goal, e);
+    double damping = initialDamping;
+    int iterations = 0;
+    while (error >= errorThreshold && iterations < maxIterations) {
+      ++iterations;
+      Matrix j = arm.updateJacobian(false);
+
+      // J J' of the links which can move towards the goal - symmetric
+      double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0;
+      for (int i = 0; i < numLinks; i++) {
+        DHLink link = links.get(i);
+        double jx = j.get(0, i);
+        double jy = j.get(1, i);
+        double jz = j.get(2, i);
+        // the way the gradient turns the link
+        double g = jx * e[0] + jy * e[1] + jz * e[2];
+        if ((g > 0 && positions[i] >= link.getMax()) || (g < 0 && positions[i] <= link.getMin())) {
+          step[i] = Double.NaN;
+          continue;
+        }
+        step[i] = 0;
+        a00 += jx * jx;
+        a01 += jx * jy;
+        a02 += jx * jz;
+        a11 += jy * jy;
+        a12 += jy * jz;
+        a22 += jz * jz;
+      }
+      double lambda2 = damping * Math.max(a00, Math.max(a11, a22));
+      if (lambda2 == 0) {
+        // nothing can move
+        break;
+      }
+      a00 += lambda2;
+      a11 += lambda2;
+      a22 += lambda2;
+
+      // y = (J J' + lambda^2 I)^-1 e by cofactors
+      double c00 = a11 * a22 - a12 * a12;
+      double c01 = a02 * a12 - a01 * a22;
+      double c02 = a01 * a12 - a02 * a11;
+      double c11 = a00 * a22 - a02 * a02;
+      double c12 = a01 * a02 - a00 * a12;
+      double c22 = a00 * a11 - a01 * a01;
+      double det = a00 * c00 + a01 * c01 + a02 * c02;
+      double y0 = (c00 * e[0] + c01 * e[1] + c02 * e[2]) / det;
+      double y1 = (c01 * e[0] + c11 * e[1] + c12 * e[2]) / det;
+      double y2 = (c02 * e[0] + c12 * e[1] + c22 * e[2]) / det;
+
+      double largest = 0;
+      for (int i = 0; i < numLinks; i++) {
+        if (Double.isNaN(step[i])) {
+          continue;
+        }
+        step[i] = j.get(0, i) * y0 + j.get(1, i) * y1 + j.get(2, i) * y2;
+        largest = Math.max(largest, Math.abs(step[i]));
+      }
+      double scale = (largest > maxStep) ? maxStep / largest : 1.0;
+      for (int i = 0; i < numLinks; i++) {
+        if (!Double.isNaN(step[i])) {
+          DHLink link = links.get(i);
+          IKSolution.setPosition(link, clamp(positions[i] + step[i] * scale, link));
+        }
+      }
+
+      double nextError = error(arm.updateFrames(), goal, next);
+      if (nextError < error) {
+        for (int i = 0; i < numLinks; i++) {
+          positions[i] = IKSolution.getPosition(links.get(i));
+        }
+        System.arraycopy(next, 0, e, 0, 3);
+        error = nextError;
+        damping = Math.max(minDamping, damping * 0.3);
+      } else {
+        for (int i = 0; i < numLinks; i++) {
+          IKSolution.setPosition(links.get(i), positions[i]);
+        }
+        damping *= 10;
+        if (damping > maxDamping) {
+          break;
+        }
+      }
+    }
+    return iterations;
+  }
+
+  /**
+   * @param palm
+   *          frame of the palm
+   * @param goal
+   *          the goal
+   * @param e
+   *          set to the vector from the palm to the goal
+   * @return distance from the palm to the goal
+   */
+  private static double error(Matrix palm, Point goal, double[] e) {
+    e[0] = goal.getX() - palm.get(0, 3);
+    e[1] = goal.getY() - palm.get(1, 3);
+    e[2] = goal.getZ() - palm.get(2, 3);
+    return Math.sqrt(e[0] * e[0] + e[1] * e[1] + e[2] * e[2]);
+  }
+
+  private static double clamp(double position, DHLink link) {
+    return Math.max(link.getMin(), Math.min(link.getMax(), position));
+  }
+
+  public int getMaxIterations() {
+    return maxIterations;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  public double getErrorThreshold() {
+    return errorThreshold;
+  }
+
+  public void setErrorThreshold(double errorThreshold) {
+    this.errorThreshold = errorThreshold;
+  }
+
+  public boolean isColdStart() {
+    return coldStart;
+  }
+
+  /**
+   * @param coldStart
+   *          false to give up when the warm start doesn't converge
+   */
+  public void setColdStart(boolean coldStart) {
+    this.coldStart = coldStart;
+  }
+
+}
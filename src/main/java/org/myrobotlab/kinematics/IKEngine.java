@@ -75,7 +75,7 @@ public class IKEngine {
     boolean done = false;
     while (done == false) {
 
-      if (Math.abs(endPoint.subtractFrom(goal).elements[0][0]) <= .01 && Math.abs(endPoint.subtractFrom(goal).elements[1][0]) <= .01) {
+      if (Math.abs(endPoint.subtractFrom(goal).get(0, 0)) <= .01 && Math.abs(endPoint.subtractFrom(goal).get(1, 0)) <= .01) {
         done = true;
       }
       moveToGoal(goal);
@@ -86,8 +86,8 @@ public class IKEngine {
     double x1, z1, x2, z2;
     x1 = z1 = 0;
     for (int i = 0; i < numLinks; i++) {
-      x2 = jointLocations[i].elements[0][0];
-      z2 = jointLocations[i].elements[1][0];
+      x2 = jointLocations[i].get(0, 0);
+      z2 = jointLocations[i].get(1, 0);
       // System.out.println("x" + i + " " + x2);
       // System.out.println("y" + i + " " + z2);
       angles[i] = Math.toDegrees(Math.atan((z2 - z1) / (x2 - x1)));
@@ -137,12 +137,12 @@ public class IKEngine {
       st[i] = Math.sin(sum);
     }
 
-    jointLocations[0].elements[0][0] = lengths[0] * ct[0];
-    jointLocations[0].elements[1][0] = lengths[0] * st[0];
+    jointLocations[0].set(0, 0, lengths[0] * ct[0]);
+    jointLocations[0].set(1, 0, lengths[0] * st[0]);
 
     for (i = 1; i < numLinks; i++) {
-      jointLocations[i].elements[0][0] = jointLocations[i - 1].elements[0][0] + lengths[i] * ct[i];
-      jointLocations[i].elements[1][0] = jointLocations[i - 1].elements[1][0] + lengths[i] * st[i];
+      jointLocations[i].set(0, 0, jointLocations[i - 1].get(0, 0) + lengths[i] * ct[i]);
+      jointLocations[i].set(1, 0, jointLocations[i - 1].get(1, 0) + lengths[i] * st[i]);
     }
 
     endPoint = jointLocations[numLinks - 1];
@@ -152,10 +152,11 @@ public class IKEngine {
 
     // set up the jacobian
     for (i = 0; i < numLinks; i++) {
-      jacobian.elements[0][i] = jacobian.elements[1][i] = 0.0;
+      jacobian.set(0, i, 0.0);
+      jacobian.set(1, i, 0.0);
       for (int j = i; j < numLinks; j++) {
-        jacobian.elements[0][i] += -lengths[j] * st[j];
-        jacobian.elements[1][i] += lengths[j] * ct[j];
+        jacobian.set(0, i, jacobian.get(0, i) - lengths[j] * st[j]);
+        jacobian.set(1, i, jacobian.get(1, i) + lengths[j] * ct[j]);
       }
     }
 
@@ -165,7 +166,7 @@ public class IKEngine {
 
     // increase theta by dTheta
     for (i = 0; i < numLinks; i++) {
-      thetas[i] += dTheta.elements[i][0];
+      thetas[i] += dTheta.get(i, 0);
     }
   }
 
@@ -178,8 +179,8 @@ public class IKEngine {
    *          z components of the goal point
    */
   public void setGoal(double gx, double gy, double gz) {
-    goal.elements[0][0] = gx;
-    goal.elements[1][0] = gz;
+    goal.set(0, 0, gx);
+    goal.set(1, 0, gz);
     myx = gx;
     myy = gy;
 
@@ -234,8 +235,8 @@ public class IKEngine {
 
     for (int i = 0; i < numLinks; i++) {
       jointLocations[i] = new Matrix(2, 1);
-      jointLocations[i].elements[0][0] = 2.0;
-      jointLocations[i].elements[1][0] = 0.0;
+      jointLocations[i].set(0, 0, 2.0);
+      jointLocations[i].set(1, 0, 0.0);
       thetas[i] = Math.PI / 50.0;
       lengths[i] = 2.0 / numLinks;
     }
@@ -0,0 +1,87 @@
+package org.myrobotlab.kinematics;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Result of an IKSolver solving a goal - published per solve by
+ * InverseKinematics3D.
+ */
+public class IKSolution implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * name of the arm
+   */
+  public String arm;
+
+  public Point goal;
+
+  /**
+   * where the palm ended
+   */
+  public Point palm;
+
+  /**
+   * palm within the solver's threshold of the goal
+   */
+  public boolean success;
+
+  /**
+   * iterations until it converged or gave up
+   */
+  public int iterations;
+
+  /**
+   * distance in mm from the palm to the goal
+   */
+  public double error;
+
+  /**
+   * how long the solve took
+   */
+  public long latencyUs;
+
+  /**
+   * radians - theta of revolute links, alpha of revolute alpha links
+   */
+  public double[] positions;
+
+  public IKSolution() {
+  }
+
+  public IKSolution(Point goal) {
+    this.goal = goal;
+  }
+
+  /**
+   * @param links
+   *          links of the arm
+   * @return positions of the links - theta or alpha depending on their type
+   */
+  static double[] getPositions(List<DHLink> links) {
+    double[] positions = new double[links.size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = getPosition(links.get(i));
+    }
+    return positions;
+  }
+
+  static double getPosition(DHLink link) {
+    return DHLinkType.REVOLUTE_ALPHA.equals(link.getType()) ? link.getAlpha() : link.getTheta();
+  }
+
+  static void setPosition(DHLink link, double position) {
+    if (DHLinkType.REVOLUTE_ALPHA.equals(link.getType())) {
+      link.setAlpha(position);
+    } else if (DHLinkType.REVOLUTE.equals(link.getType())) {
+      link.setTheta(position);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %s %s error %.2f mm %d iterations %d us", arm, goal, success ? "solved" : "not solved", error, iterations, latencyUs);
+  }
+
+}
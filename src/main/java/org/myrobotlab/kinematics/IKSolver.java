@@ -0,0 +1,22 @@
+package org.myrobotlab.kinematics;
+
+/**
+ * Solves the joint positions of a DHRobotArm which put its palm on a goal.
+ * The arm is left in the best configuration found - its current one is the
+ * starting point, when tracking that's the solution of the previous goal.
+ * 
+ * Implementations keep no state between calls, one instance can solve for
+ * several arms from several threads (not for the same arm).
+ */
+public interface IKSolver {
+
+  /**
+   * @param arm
+   *          the arm - its joints are moved
+   * @param goal
+   *          x,y,z of the palm
+   * @return iterations, error and joint positions of the solution
+   */
+  IKSolution solve(DHRobotArm arm, Point goal);
+
+}
@@ -0,0 +1,87 @@
+package org.myrobotlab.kinematics;
+
+import java.util.List;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Gradient descent with the pseudo inverse of the jacobian - fixed steps of
+ * iterStep towards the goal, joints at a limit don't move. Slow to converge
+ * and thousands of iterations when it doesn't, the solver of
+ * DHRobotArm.moveToGoal.
+ */
+public class JacobianIKSolver implements IKSolver {
+
+  public final static Logger log = LoggerFactory.getLogger(JacobianIKSolver.class);
+
+  private int maxIterations = 10000;
+
+  private double iterStep = 0.05;
+
+  // we're in millimeters..
+  private double errorThreshold = 2.0;
+
+  @Override
+  public IKSolution solve(DHRobotArm arm, Point goal) {
+    long start = System.nanoTime();
+    IKSolution solution = new IKSolution(goal);
+    synchronized (arm) {
+      List<DHLink> links = arm.getLinks();
+      int numLinks = links.size();
+      // we know where we are.. we know where we want to go.
+      int numSteps = 0;
+      // what's the current point
+      while (true) {
+        numSteps++;
+        // TODO: what if its unreachable!
+        Matrix palm = arm.updateFrames();
+        // vector to destination
+        double dx = goal.getX() - palm.get(0, 3);
+        double dy = goal.getY() - palm.get(1, 3);
+        double dz = goal.getZ() - palm.get(2, 3);
+        solution.error = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+        if (solution.error < errorThreshold) {
+          solution.success = true;
+          break;
+        }
+        if (numSteps >= maxIterations) {
+          log.info("Attempted to iterate, didn't make it. Current Position: {} Goal: {} Distance: {}", arm.getPalmPosition(), goal, solution.error);
+          // we shouldn't publish if we don't solve!
+          break;
+        }
+
+        Matrix jInverse = arm.updateJInverse();
+        for (int i = 0; i < numLinks; i++) {
+          // update joint positions! move towards the goal!
+          // scale a vector towards the goal by the increment step.
+          double d = (jInverse.get(i, 0) * dx + jInverse.get(i, 1) * dy + jInverse.get(i, 2) * dz) * iterStep;
+          // incr rotate needs to be min/max aware here!
+          links.get(i).incrRotate(d);
+        }
+        // delta point represents the direction we need to move in order to
+        // get there.
+        // For debugging of trajectories we should publish here?
+      }
+      solution.iterations = numSteps;
+      solution.palm = arm.getPalmPosition();
+      solution.positions = IKSolution.getPositions(links);
+    }
+    solution.latencyUs = (System.nanoTime() - start) / 1000;
+    // debug - solving thousands a second when tracking
+    if (solution.success && log.isDebugEnabled()) {
+      log.debug("Final Position {} Number of Iterations {}", solution.palm, solution.iterations);
+    }
+    return solution;
+  }
+
+  public int getMaxIterations() {
+    return maxIterations;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+}
@@ -186,7 +186,7 @@ public class Map3D {
     Matrix coord = Matrix.translation(xpos, zpos, ypos);
     Matrix inputMatrix = trMatrix.multiply(rotMatrix).multiply(coord);
 
-    Point pOut = new Point(inputMatrix.elements[0][3], inputMatrix.elements[1][3], inputMatrix.elements[2][3], 0, 0, 0);
+    Point pOut = new Point(inputMatrix.get(0, 3), inputMatrix.get(1, 3), inputMatrix.get(2, 3), 0, 0, 0);
 
     // convert to the coordinate use by our ik engine and reduce the resolution
     double posx = (int) pOut.getX() / skip * skip;
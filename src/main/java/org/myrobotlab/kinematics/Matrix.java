@@ -8,8 +8,12 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.slf4j.Logger;
 
 /**
- * Encapsulates a 4x4 matrix
+ * Encapsulates a matrix - 4x4 by default
  *
+ * Elements are kept row major in one flat array. The methods returning a new
+ * matrix allocate one for the result, the ones taking a result matrix write
+ * into it - those are the ones to use in loops (e.g. IK iterations) with
+ * matrices allocated once and reused.
  *
  */
 public class Matrix implements Serializable {
@@ -22,7 +26,10 @@ public class Matrix implements Serializable {
 
   protected int numCols;
 
-  public double[][] elements;
+  /**
+   * row major - element r,c is data[r * numCols + c]
+   */
+  public double[] data;
 
   /**
    * @param sx
@@ -35,10 +42,10 @@ public class Matrix implements Serializable {
    */
   public static Matrix scaling(double sx, double sy, double sz) {
     Matrix S = new Matrix();
-    S.elements[0][0] = sx;
-    S.elements[1][1] = sy;
-    S.elements[2][2] = sz;
-    S.elements[3][3] = 1;
+    S.set(0, 0, sx);
+    S.set(1, 1, sy);
+    S.set(2, 2, sz);
+    S.set(3, 3, 1);
     return S;
   }
 
@@ -53,13 +60,13 @@ public class Matrix implements Serializable {
    */
   public static Matrix translation(double tx, double ty, double tz) {
     Matrix T = new Matrix();
-    T.elements[0][0] = 1;
-    T.elements[1][1] = 1;
-    T.elements[2][2] = 1;
-    T.elements[3][3] = 1;
-    T.elements[0][3] = tx;
-    T.elements[1][3] = ty;
-    T.elements[2][3] = tz;
+    T.set(0, 0, 1);
+    T.set(1, 1, 1);
+    T.set(2, 2, 1);
+    T.set(3, 3, 1);
+    T.set(0, 3, tx);
+    T.set(1, 3, ty);
+    T.set(2, 3, tz);
     return T;
   }
 
@@ -72,12 +79,12 @@ public class Matrix implements Serializable {
     Matrix R = new Matrix();
     double c = Math.cos(theta);
     double s = Math.sin(theta);
-    R.elements[0][0] = 1;
-    R.elements[1][1] = c;
-    R.elements[2][2] = c;
-    R.elements[3][3] = 1;
-    R.elements[1][2] = s;
-    R.elements[2][1] = -s;
+    R.set(0, 0, 1);
+    R.set(1, 1, c);
+    R.set(2, 2, c);
+    R.set(3, 3, 1);
+    R.set(1, 2, s);
+    R.set(2, 1, -s);
     return R;
   }
 
@@ -90,12 +97,12 @@ public class Matrix implements Serializable {
     Matrix R = new Matrix();
     double c = Math.cos(theta);
     double s = Math.sin(theta);
-    R.elements[0][0] = c;
-    R.elements[1][1] = 1;
-    R.elements[2][2] = c;
-    R.elements[3][3] = 1;
-    R.elements[2][0] = s;
-    R.elements[0][2] = -s;
+    R.set(0, 0, c);
+    R.set(1, 1, 1);
+    R.set(2, 2, c);
+    R.set(3, 3, 1);
+    R.set(2, 0, s);
+    R.set(0, 2, -s);
     return R;
   }
 
@@ -108,12 +115,12 @@ public class Matrix implements Serializable {
     Matrix R = new Matrix();
     double c = Math.cos(theta);
     double s = Math.sin(theta);
-    R.elements[0][0] = c;
-    R.elements[1][1] = c;
-    R.elements[2][2] = 1;
-    R.elements[3][3] = 1;
-    R.elements[0][1] = s;
-    R.elements[1][0] = -s;
+    R.set(0, 0, c);
+    R.set(1, 1, c);
+    R.set(2, 2, 1);
+    R.set(3, 3, 1);
+    R.set(0, 1, s);
+    R.set(1, 0, -s);
     return R;
   }
 
@@ -121,23 +128,13 @@ public class Matrix implements Serializable {
    * Constructs new 4x4 matrix, initializes to it to zeros
    */
   Matrix() {
-    numRows = 4;
-    numCols = 4;
-    elements = new double[numRows][numCols];
-    for (int r = 0; r < numRows; r++)
-      for (int c = 0; c < numCols; c++) {
-        elements[r][c] = 0.0;
-      }
+    this(4, 4);
   }
 
   public Matrix(int rows, int cols) {
     numRows = rows;
     numCols = cols;
-    elements = new double[numRows][numCols];
-    for (int r = 0; r < numRows; r++)
-      for (int c = 0; c < numCols; c++) {
-        elements[r][c] = 0.0;
-      }
+    data = new double[numRows * numCols];
   }
 
   /**
@@ -146,10 +143,52 @@ public class Matrix implements Serializable {
   Matrix(Matrix m) {
     numRows = m.numRows;
     numCols = m.numCols;
-    elements = new double[numRows][numCols];
-    for (int r = 0; r < numRows; r++)
-      for (int c = 0; c < numCols; c++)
-        this.elements[r][c] = m.elements[r][c];
+    data = m.data.clone();
+  }
+
+  public double get(int r, int c) {
+    return data[r * numCols + c];
+  }
+
+  public void set(int r, int c, double value) {
+    data[r * numCols + c] = value;
+  }
+
+  /**
+   * copies m into this matrix
+   * 
+   * @param m
+   *          a Matrix with the same dimensions
+   * @return this
+   */
+  public Matrix set(Matrix m) {
+    if (numRows != m.numRows || numCols != m.numCols) {
+      log.info("dimensions bad in set()");
+      return this;
+    }
+    System.arraycopy(m.data, 0, data, 0, data.length);
+    return this;
+  }
+
+  /**
+   * @return this set to the identity
+   */
+  public Matrix setIdentity() {
+    setZero();
+    for (int i = 0; i < Math.min(numRows, numCols); i++) {
+      data[i * numCols + i] = 1;
+    }
+    return this;
+  }
+
+  /**
+   * @return this set to zeros
+   */
+  public Matrix setZero() {
+    for (int i = 0; i < data.length; i++) {
+      data[i] = 0.0;
+    }
+    return this;
   }
 
   /**
@@ -164,9 +203,8 @@ public class Matrix implements Serializable {
     }
     Matrix ret = new Matrix(numRows, numCols);
 
-    for (int r = 0; r < numRows; r++)
-      for (int c = 0; c < numCols; c++)
-        ret.elements[r][c] = this.elements[r][c] + m.elements[r][c];
+    for (int i = 0; i < data.length; i++)
+      ret.data[i] = this.data[i] + m.data[i];
 
     return ret;
   }
@@ -186,9 +224,8 @@ public class Matrix implements Serializable {
     }
     double sum = 0;
 
-    for (int r = 0; r < numRows; r++)
-      for (int c = 0; c < numCols; c++)
-        sum += this.elements[r][c] * m.elements[r][c];
+    for (int i = 0; i < data.length; i++)
+      sum += this.data[i] * m.data[i];
 
     return sum;
   }
@@ -199,10 +236,9 @@ public class Matrix implements Serializable {
    * @return true if and only if all elements of the matrix equal val
    */
   public boolean equals(double val) {
-    for (int r = 0; r < numRows; r++)
-      for (int c = 0; c < numCols; c++)
-        if (Math.abs(elements[r][c] - val) > .0001)
-          return false;
+    for (int i = 0; i < data.length; i++)
+      if (Math.abs(data[i] - val) > .0001)
+        return false;
     return true;
   }
 
@@ -214,6 +250,35 @@ public class Matrix implements Serializable {
     return numRows;
   }
 
+  /**
+   * @return a copy of the elements as rows - writes to it do not change the
+   *         matrix
+   * @deprecated the elements are in data, row major - use get, set or data
+   */
+  @Deprecated
+  public double[][] getElements() {
+    double[][] elements = new double[numRows][numCols];
+    for (int r = 0; r < numRows; r++) {
+      System.arraycopy(data, r * numCols, elements[r], 0, numCols);
+    }
+    return elements;
+  }
+
+  /**
+   * @param elements
+   *          rows of the matrix - its dimensions become the matrix's
+   * @deprecated use set or data
+   */
+  @Deprecated
+  public void setElements(double[][] elements) {
+    numRows = elements.length;
+    numCols = (numRows == 0) ? 0 : elements[0].length;
+    data = new double[numRows * numCols];
+    for (int r = 0; r < numRows; r++) {
+      System.arraycopy(elements[r], 0, data, r * numCols, numCols);
+    }
+  }
+
   /**
    * Scalar multiplication- multiplies each element by a scalar
    * 
@@ -222,11 +287,20 @@ public class Matrix implements Serializable {
    * @return a new matrix which is equal to the product of s*this
    */
   public Matrix multiply(double s) {
-    Matrix ret = new Matrix(numRows, numCols);
-    for (int i = 0; i < numRows; i++)
-      for (int j = 0; j < numCols; j++)
-        ret.elements[i][j] = elements[i][j] * s;
-    return ret;
+    return new Matrix(this).scale(s);
+  }
+
+  /**
+   * Scalar multiplication in place
+   * 
+   * @param s
+   *          a scalar
+   * @return this multiplied by s
+   */
+  public Matrix scale(double s) {
+    for (int i = 0; i < data.length; i++)
+      data[i] *= s;
+    return this;
   }
 
   /**
@@ -235,20 +309,39 @@ public class Matrix implements Serializable {
    * @return a new matrix which is equal to the product of this*m
    */
   public Matrix multiply(Matrix m) {
-    Matrix ret = new Matrix(numRows, m.numCols);
-    if (numCols != m.numRows) {
+    return multiply(m, new Matrix(numRows, m.numCols));
+  }
+
+  /**
+   * @param m
+   *          a Matrix
+   * @param result
+   *          numRows x m.numCols matrix the product is written to - not this
+   *          or m
+   * @return result, equal to the product of this*m
+   */
+  public Matrix multiply(Matrix m, Matrix result) {
+    if (numCols != m.numRows || result.numRows != numRows || result.numCols != m.numCols) {
       log.info("dimensions bad in multiply()");
-      return ret;
+      return result;
     }
 
-    for (int r = 0; r < numRows; r++)
-      for (int c = 0; c < m.numCols; c++) {
+    double[] a = data;
+    double[] b = m.data;
+    double[] out = result.data;
+    int n = m.numCols;
+    for (int r = 0; r < numRows; r++) {
+      int row = r * numCols;
+      for (int c = 0; c < n; c++) {
+        double sum = 0;
         for (int k = 0; k < numCols; k++) {
-          ret.elements[r][c] += this.elements[r][k] * m.elements[k][c];
+          sum += a[row + k] * b[k * n + c];
         }
+        out[r * n + c] = sum;
       }
+    }
 
-    return ret;
+    return result;
   }
 
   /**
@@ -265,7 +358,7 @@ public class Matrix implements Serializable {
     Matrix R_plus;
     try {
       for (r = 0; r < numRows; r++) {
-        ak.elements[r][0] = this.elements[r][0];
+        ak.set(r, 0, this.get(r, 0));
       }
 
       if (!ak.equals(0.0)) {
@@ -277,14 +370,14 @@ public class Matrix implements Serializable {
       while (k < this.numCols) {
 
         for (r = 0; r < numRows; r++) {
-          ak.elements[r][0] = this.elements[r][k];
+          ak.set(r, 0, this.get(r, k));
         }
 
         dk = R_plus.multiply(ak);
         Matrix T = new Matrix(numRows, k);
         for (r = 0; r < numRows; r++) {
           for (c = 0; c < k; c++) {
-            T.elements[r][c] = this.elements[r][c];
+            T.set(r, c, this.get(r, c));
           }
         }
         ck = ak.subtractFrom(T.multiply(dk));
@@ -298,13 +391,9 @@ public class Matrix implements Serializable {
         Matrix N = R_plus.subtractFrom(dk.multiply(bk));
         R_plus = new Matrix(N.numRows + 1, N.numCols);
 
-        for (r = 0; r < N.numRows; r++) {
-          for (c = 0; c < N.numCols; c++) {
-            R_plus.elements[r][c] = N.elements[r][c];
-          }
-        }
+        System.arraycopy(N.data, 0, R_plus.data, 0, N.data.length);
         for (c = 0; c < N.numCols; c++) {
-          R_plus.elements[R_plus.numRows - 1][c] = bk.elements[0][c];
+          R_plus.set(R_plus.numRows - 1, c, bk.get(0, c));
         }
         k++;
       }
@@ -314,6 +403,108 @@ public class Matrix implements Serializable {
     }
   }
 
+  /**
+   * Right pseudoinverse of a matrix with full row rank (e.g. a 3xN jacobian of
+   * a redundant arm) - this' * (this * this')^-1 - without allocating.
+   * 
+   * @param result
+   *          numCols x numRows matrix the pseudoinverse is written to
+   * @param work
+   *          at least 2 * numRows * numRows doubles
+   * @return false if this * this' is singular - the rows are not independent
+   *         and pseudoInverse() has to be used
+   */
+  public boolean rightPseudoInverse(Matrix result, double[] work) {
+    int m = numRows;
+    int n = numCols;
+    if (result.numRows != n || result.numCols != m || work.length < 2 * m * m) {
+      log.info("dimensions bad in rightPseudoInverse()");
+      return false;
+    }
+    // work[0..m*m) = this * this', work[m*m..2*m*m) = its inverse
+    int inv = m * m;
+    for (int i = 0; i < m; i++) {
+      for (int j = i; j < m; j++) {
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+          sum += data[i * n + k] * data[j * n + k];
+        }
+        work[i * m + j] = sum;
+        work[j * m + i] = sum;
+      }
+    }
+    if (!invert(work, 0, inv, m)) {
+      return false;
+    }
+    // result = this' * inverse
+    for (int k = 0; k < n; k++) {
+      for (int j = 0; j < m; j++) {
+        double sum = 0;
+        for (int i = 0; i < m; i++) {
+          sum += data[i * n + k] * work[inv + i * m + j];
+        }
+        result.data[k * m + j] = sum;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gauss-Jordan inverse with partial pivoting of the m x m matrix at
+   * a[from], written to a[to] - a[from] is destroyed
+   */
+  static boolean invert(double[] a, int from, int to, int m) {
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < m; j++) {
+        a[to + i * m + j] = (i == j) ? 1 : 0;
+      }
+    }
+    double scale = 0;
+    for (int i = 0; i < m * m; i++) {
+      scale = Math.max(scale, Math.abs(a[from + i]));
+    }
+    if (scale == 0) {
+      return false;
+    }
+    for (int col = 0; col < m; col++) {
+      int pivot = col;
+      for (int r = col + 1; r < m; r++) {
+        if (Math.abs(a[from + r * m + col]) > Math.abs(a[from + pivot * m + col])) {
+          pivot = r;
+        }
+      }
+      double p = a[from + pivot * m + col];
+      if (Math.abs(p) < 1e-12 * scale) {
+        return false;
+      }
+      if (pivot != col) {
+        for (int j = 0; j < m; j++) {
+          double t = a[from + col * m + j];
+          a[from + col * m + j] = a[from + pivot * m + j];
+          a[from + pivot * m + j] = t;
+          t = a[to + col * m + j];
+          a[to + col * m + j] = a[to + pivot * m + j];
+          a[to + pivot * m + j] = t;
+        }
+      }
+      for (int j = 0; j < m; j++) {
+        a[from + col * m + j] /= p;
+        a[to + col * m + j] /= p;
+      }
+      for (int r = 0; r < m; r++) {
+        double f = a[from + r * m + col];
+        if (r == col || f == 0) {
+          continue;
+        }
+        for (int j = 0; j < m; j++) {
+          a[from + r * m + j] -= f * a[from + col * m + j];
+          a[to + r * m + j] -= f * a[to + col * m + j];
+        }
+      }
+    }
+    return true;
+  }
+
   /**
    * @param m
    *          a Matrix
@@ -326,10 +517,8 @@ public class Matrix implements Serializable {
       return ret;
     }
 
-    for (int r = 0; r < numRows; r++) {
-      for (int c = 0; c < numCols; c++) {
-        ret.elements[r][c] = this.elements[r][c] - m.elements[r][c];
-      }
+    for (int i = 0; i < data.length; i++) {
+      ret.data[i] = this.data[i] - m.data[i];
     }
 
     return ret;
@@ -347,7 +536,7 @@ public class Matrix implements Serializable {
     for (int r = 0; r < numRows; r++) {
       buf.append(" [ ");
       for (int c = 0; c < numCols; c++) {
-        buf.append(formatter.format(elements[r][c]));
+        buf.append(formatter.format(get(r, c)));
         buf.append(" ");
       }
       buf.append("]\n");
@@ -360,11 +549,22 @@ public class Matrix implements Serializable {
    * @return the transposed matrix with dimensions numCols x numRows
    */
   public Matrix transpose() {
-    Matrix ret = new Matrix(numCols, numRows);
+    return transpose(new Matrix(numCols, numRows));
+  }
 
+  /**
+   * @param result
+   *          numCols x numRows matrix the transpose is written to - not this
+   * @return result
+   */
+  public Matrix transpose(Matrix result) {
+    if (result.numRows != numCols || result.numCols != numRows) {
+      log.info("dimensions bad in transpose()");
+      return result;
+    }
     for (int r = 0; r < numRows; r++)
       for (int c = 0; c < numCols; c++)
-        ret.elements[c][r] = elements[r][c];
-    return ret;
+        result.data[c * numRows + r] = data[r * numCols + c];
+    return result;
   }
 }
@@ -85,7 +85,11 @@ public class MjpegServer extends NanoHTTPD {
                 c.initialized = true;
               }
 
-              byte[] bytes = frame.getBytes();
+              // the jpeg of the frame is shared with its other consumers
+              byte[] bytes = frame.getJpeg(null);
+              if (bytes == null) {
+                continue;
+              }
 
               // begin jpg
               c.os.write(("--BoundaryString\r\n" + "Content-type: image/jpg\r\n" + "Content-Length: " + bytes.length + "\r\n\r\n").getBytes());
@@ -0,0 +1,369 @@
+package org.myrobotlab.net;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.myrobotlab.framework.QueueStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Outbound queue of a single gateway connection (e.g. a browser connected to
+ * the WebGui). Messages are queued encoded and written by the queue's own
+ * writer thread, so a slow client only backs up its own queue and never the
+ * publishing service's outbox.
+ *
+ * <pre>
+ * Messages are keyed by (service, method, destination) - two services of the
+ * client subscribed to the same topic each get their own latest value.
+ *
+ *   coalesced topics - a queued, unsent message is replaced by a newer one with
+ *                      the same key, the client only gets the latest value
+ *   rate caps        - a topic with a max rate is not sent more often, messages
+ *                      in between are coalesced and the latest is sent when
+ *                      the interval has passed
+ *   byte budget      - when more than maxBytes are queued the oldest messages
+ *                      are dropped
+ * </pre>
+ *
+ * Send lag, drop and coalesce counts are reported as QueueStats.
+ */
+public class SendQueue implements Runnable {
+
+  public final static Logger log = LoggerFactory.getLogger(SendQueue.class);
+
+  static class Entry {
+    final String key;
+    Object data;
+    int size;
+    final long ts;
+    /**
+     * rate capped entries are not sent before
+     */
+    long due;
+
+    Entry(String key, Object data, int size, long ts) {
+      this.key = key;
+      this.data = data;
+      this.size = size;
+      this.ts = ts;
+    }
+  }
+
+  final String uuid;
+
+  final Consumer<Object> writer;
+
+  final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+  /**
+   * queued entries which newer messages replace - coalesced and rate capped
+   * topics
+   */
+  final Map<String, Entry> latest = new HashMap<>();
+
+  /**
+   * rate capped entries waiting for their interval
+   */
+  final Map<String, Entry> delayed = new HashMap<>();
+
+  /**
+   * last send time of rate capped keys
+   */
+  final Map<String, Long> lastSent = new HashMap<>();
+
+  volatile Set<String> coalesce;
+
+  volatile Map<String, Double> maxRates;
+
+  volatile long maxBytes;
+
+  Thread worker;
+
+  // all below guarded by this
+  boolean running = false;
+
+  long bytes = 0;
+
+  int total = 0;
+
+  long dropped = 0;
+
+  long coalesced = 0;
+
+  long lag = 0;
+
+  long maxLag = 0;
+
+  long lastStatsTs = System.currentTimeMillis();
+
+  /**
+   * @param uuid
+   *          connection uuid
+   * @param writer
+   *          writes an encoded message to the connection, may block
+   * @param maxBytes
+   *          byte budget of queued messages
+   * @param coalesce
+   *          topics - method or service.method - which are delivered latest
+   *          value only
+   * @param maxRates
+   *          max messages per second of topics - method or service.method
+   */
+  public SendQueue(String uuid, Consumer<Object> writer, long maxBytes, Set<String> coalesce, Map<String, Double> maxRates) {
+    this.uuid = uuid;
+    this.writer = writer;
+    this.maxBytes = maxBytes;
+    this.coalesce = (coalesce == null) ? Collections.emptySet() : coalesce;
+    this.maxRates = (maxRates == null) ? Collections.emptyMap() : maxRates;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    worker = new Thread(this, String.format("send_%s", uuid));
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  public synchronized void stop() {
+    running = false;
+    queue.clear();
+    latest.clear();
+    delayed.clear();
+    bytes = 0;
+    notifyAll();
+  }
+
+  /**
+   * queue an encoded message without a destination
+   *
+   * @param service
+   *          full name of the sending service
+   * @param method
+   *          method of the message
+   * @param data
+   *          the encoded message
+   * @param size
+   *          size of the encoded message in bytes
+   * @return false if the queue is stopped or the message was dropped
+   */
+  public boolean offer(String service, String method, Object data, int size) {
+    return offer(service, method, null, data, size);
+  }
+
+  /**
+   * queue an encoded message
+   *
+   * @param service
+   *          full name of the sending service
+   * @param method
+   *          method of the message
+   * @param destination
+   *          name of the receiving service on the client, may be null
+   * @param data
+   *          the encoded message
+   * @param size
+   *          size of the encoded message in bytes
+   * @return false if the queue is stopped or the message was dropped
+   */
+  public synchronized boolean offer(String service, String method, String destination, Object data, int size) {
+    if (!running) {
+      return false;
+    }
+    if (size > maxBytes) {
+      // would push out everything else
+      ++dropped;
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    // coalesce and rate topics are configured per service.method
+    String topic = service + "." + method;
+    String key = (destination == null) ? topic : topic + "->" + destination;
+
+    Entry pending = latest.get(key);
+    if (pending != null) {
+      // keeps its place and queued time - only the value is replaced
+      bytes += size - pending.size;
+      pending.data = data;
+      pending.size = size;
+      ++coalesced;
+      return trim(pending);
+    }
+
+    Entry entry = new Entry(key, data, size, now);
+    bytes += size;
+    Double rate = getTopicValue(maxRates, topic, method);
+    if (rate != null && rate > 0) {
+      long interval = (long) (1000 / rate);
+      Long last = lastSent.get(key);
+      latest.put(key, entry);
+      if (last != null && now - last < interval) {
+        entry.due = last + interval;
+        delayed.put(key, entry);
+        notifyAll();
+        return trim(entry);
+      }
+      lastSent.put(key, now);
+    } else if (coalesce.contains(method) || coalesce.contains(topic)) {
+      latest.put(key, entry);
+    }
+    queue.add(entry);
+    notifyAll();
+    return trim(entry);
+  }
+
+  private static <T> T getTopicValue(Map<String, T> map, String key, String method) {
+    if (map.isEmpty()) {
+      return null;
+    }
+    T value = map.get(key);
+    return (value != null) ? value : map.get(method);
+  }
+
+  /**
+   * drops the oldest messages until the queue is within its byte budget
+   *
+   * @return false if the offered entry itself was dropped
+   */
+  private boolean trim(Entry offered) {
+    boolean kept = true;
+    while (bytes > maxBytes) {
+      Entry oldest = queue.poll();
+      if (oldest == null) {
+        // only rate capped entries left
+        oldest = delayed.values().iterator().next();
+        delayed.remove(oldest.key);
+      }
+      remove(oldest);
+      ++dropped;
+      if (oldest == offered) {
+        kept = false;
+      }
+    }
+    return kept;
+  }
+
+  private void remove(Entry entry) {
+    bytes -= entry.size;
+    if (latest.get(entry.key) == entry) {
+      latest.remove(entry.key);
+    }
+  }
+
+  /**
+   * next entry to send - due rate capped entries first, they are the older
+   * values
+   */
+  private Entry next(long now) {
+    for (Entry entry : delayed.values()) {
+      if (entry.due <= now) {
+        delayed.remove(entry.key);
+        lastSent.put(entry.key, now);
+        return entry;
+      }
+    }
+    return queue.poll();
+  }
+
+  private long nextDue(long now) {
+    long wait = 0;
+    for (Entry entry : delayed.values()) {
+      long w = Math.max(1, entry.due - now);
+      if (wait == 0 || w < wait) {
+        wait = w;
+      }
+    }
+    return wait;
+  }
+
+  /**
+   * writer thread
+   */
+  @Override
+  public void run() {
+    while (true) {
+      Object data = null;
+      synchronized (this) {
+        Entry entry = null;
+        try {
+          while (running && (entry = next(System.currentTimeMillis())) == null) {
+            wait(nextDue(System.currentTimeMillis()));
+          }
+        } catch (InterruptedException e) {
+          log.info("{} send queue interrupted", uuid);
+          running = false;
+        }
+        if (!running) {
+          return;
+        }
+        remove(entry);
+        lag = System.currentTimeMillis() - entry.ts;
+        if (lag > maxLag) {
+          maxLag = lag;
+        }
+        ++total;
+        data = entry.data;
+      }
+      try {
+        writer.accept(data);
+      } catch (Exception e) {
+        log.error("{} send threw", uuid, e);
+      }
+    }
+  }
+
+  public synchronized int size() {
+    return queue.size() + delayed.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public String getUuid() {
+    return uuid;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public void setCoalesce(Set<String> coalesce) {
+    this.coalesce = coalesce;
+  }
+
+  public void setMaxRates(Map<String, Double> maxRates) {
+    this.maxRates = maxRates;
+  }
+
+  /**
+   * snapshot of depth, lag and counters - max lag is reset
+   *
+   * @return the stats
+   */
+  public synchronized QueueStats getStats() {
+    QueueStats stats = new QueueStats();
+    stats.name = uuid;
+    stats.currentQueueCount = queue.size() + delayed.size();
+    stats.bytes = bytes;
+    stats.total = total;
+    stats.ts = System.currentTimeMillis();
+    stats.lastTS = lastStatsTs;
+    stats.delta = stats.ts - stats.lastTS;
+    stats.lag = lag;
+    stats.maxLag = maxLag;
+    stats.dropped = dropped;
+    stats.coalesced = coalesced;
+    lastStatsTs = stats.ts;
+    maxLag = 0;
+    return stats;
+  }
+
+}
@@ -152,6 +152,16 @@ public class WsClient extends WebSocketListener {
     socket.send(bytes);
   }
 
+  /**
+   * send a binary message
+   * 
+   * @param bytes
+   *          Smile or CBOR encoded message
+   */
+  public void send(byte[] bytes) {
+    send(ByteString.of(bytes));
+  }
+
   // FIXME Need to add @NonNull to overriden method params once we standardize
   // on an annotation lib
 
@@ -184,7 +194,12 @@ public class WsClient extends WebSocketListener {
 
   @Override
   public void onMessage(WebSocket webSocket, ByteString bytes) {
-    log.info("BYTE MESSAGE: " + bytes.hex());
+    if (log.isDebugEnabled()) {
+      log.debug("BYTE MESSAGE: {} bytes", bytes.size());
+    }
+    if (handler != null) {
+      handler.onRemoteMessage(uuid, bytes.toByteArray());
+    }
   }
 
   @Override
@@ -0,0 +1,156 @@
+package org.myrobotlab.opencv;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_32F;
+import static org.bytedeco.opencv.global.opencv_dnn.blobFromImages;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_dnn.Net;
+import org.myrobotlab.opencv.InferenceExecutor.BatchModel;
+
+/**
+ * An OpenCV dnn Net as a BatchModel - the images of a batch go through one
+ * blobFromImages and one forward, the output is split back per image.
+ *
+ * <pre>
+ * DETECTIONS  ssd like output [1, 1, n, 7] - column 0 is the index of the
+ *             image in the batch, each image gets its rows as a n x 7 Mat
+ * ROWS        2d output with the same number of rows per image, in image order
+ *             (e.g. a darknet region layer)
+ * </pre>
+ *
+ * The net is loaded by the model thread on the first batch.
+ */
+public class DnnBatchModel implements BatchModel<Mat, Mat> {
+
+  public enum Output {
+    DETECTIONS, ROWS
+  }
+
+  final Supplier<Net> loader;
+
+  Net net;
+
+  final double scale;
+
+  final Size size;
+
+  final Scalar mean;
+
+  final boolean swapRB;
+
+  final String outputName;
+
+  final Output output;
+
+  /**
+   * @param loader
+   *          reads the net - null if it can't
+   * @param scale
+   *          multiplier of the pixel values
+   * @param size
+   *          input size of the net - images are resized to it
+   * @param mean
+   *          subtracted from the pixel values
+   * @param swapRB
+   *          true for nets trained on rgb
+   * @param outputName
+   *          layer to forward to - null for the default output
+   * @param output
+   *          how the output is split per image
+   */
+  public DnnBatchModel(Supplier<Net> loader, double scale, Size size, Scalar mean, boolean swapRB, String outputName, Output output) {
+    this.loader = loader;
+    this.scale = scale;
+    this.size = size;
+    this.mean = mean;
+    this.swapRB = swapRB;
+    this.outputName = outputName;
+    this.output = output;
+  }
+
+  @Override
+  public List<Mat> infer(List<Mat> inputs) throws Exception {
+    if (net == null) {
+      net = loader.get();
+      if (net == null) {
+        throw new IOException("could not load the net");
+      }
+    }
+    Mat blob;
+    try (MatVector images = new MatVector(inputs.toArray(new Mat[0]))) {
+      blob = blobFromImages(images, scale, size, mean, swapRB, false, CV_32F);
+    }
+    net.setInput(blob);
+    Mat out = (outputName == null) ? net.forward() : net.forward(outputName);
+    List<Mat> outputs = (output == Output.DETECTIONS) ? splitDetections(out, inputs.size()) : splitRows(out, inputs.size());
+    out.close();
+    blob.close();
+    return outputs;
+  }
+
+  static List<Mat> splitDetections(Mat out, int images) {
+    int rows = out.size(2);
+    int cols = out.size(3);
+    List<Mat> outputs = new ArrayList<>();
+    try (Mat detections = new Mat(rows, cols, CV_32F, out.ptr(0, 0)); FloatIndexer in = detections.createIndexer()) {
+      int[] counts = new int[images];
+      for (int r = 0; r < rows; ++r) {
+        int image = (int) in.get(r, 0);
+        // rows after the last detection have a negative image index
+        if (image >= 0 && image < images) {
+          ++counts[image];
+        }
+      }
+      for (int i = 0; i < images; ++i) {
+        Mat mat = new Mat(counts[i], cols, CV_32F);
+        if (counts[i] > 0) {
+          try (FloatIndexer o = mat.createIndexer()) {
+            int j = 0;
+            for (int r = 0; r < rows; ++r) {
+              if ((int) in.get(r, 0) == i) {
+                for (int c = 0; c < cols; ++c) {
+                  o.put(j, c, in.get(r, c));
+                }
+                ++j;
+              }
+            }
+          }
+        }
+        outputs.add(mat);
+      }
+    }
+    return outputs;
+  }
+
+  static List<Mat> splitRows(Mat out, int images) throws IOException {
+    if (out.rows() % images != 0) {
+      throw new IOException(String.format("%d output rows for %d images", out.rows(), images));
+    }
+    int rows = out.rows() / images;
+    List<Mat> outputs = new ArrayList<>();
+    for (int i = 0; i < images; ++i) {
+      try (Mat range = out.rowRange(i * rows, (i + 1) * rows)) {
+        outputs.add(range.clone());
+      }
+    }
+    return outputs;
+  }
+
+  @Override
+  public void close() {
+    if (net != null) {
+      net.deallocate();
+      net = null;
+    }
+  }
+
+}
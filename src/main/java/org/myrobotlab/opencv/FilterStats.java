@@ -0,0 +1,94 @@
+package org.myrobotlab.opencv;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time a filter took per frame - setData, process, postProcess and its
+ * display. Mean and max are over all frames since the last reset,
+ * percentiles over the last SAMPLES frames.
+ */
+public class FilterStats implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * frames the percentiles are computed over
+   */
+  public final static int SAMPLES = 1024;
+
+  public String name;
+  public long frames;
+  public long meanUs;
+  public long p50Us;
+  public long p99Us;
+  public long maxUs;
+
+  transient long totalNanos;
+  transient long maxNanos;
+  transient long[] samples;
+  transient int next;
+
+  public FilterStats() {
+  }
+
+  public FilterStats(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @param nanos
+   *          time of a frame
+   */
+  public synchronized void record(long nanos) {
+    if (samples == null) {
+      samples = new long[SAMPLES];
+    }
+    samples[next] = nanos;
+    next = (next + 1) % SAMPLES;
+    ++frames;
+    totalNanos += nanos;
+    maxNanos = Math.max(maxNanos, nanos);
+  }
+
+  public synchronized void reset() {
+    frames = 0;
+    totalNanos = 0;
+    maxNanos = 0;
+    next = 0;
+    samples = null;
+  }
+
+  /**
+   * @return a copy with the mean, percentiles and max computed
+   */
+  public synchronized FilterStats getStats() {
+    FilterStats s = new FilterStats(name);
+    s.frames = frames;
+    if (frames == 0) {
+      return s;
+    }
+    s.meanUs = TimeUnit.NANOSECONDS.toMicros(totalNanos / frames);
+    s.maxUs = TimeUnit.NANOSECONDS.toMicros(maxNanos);
+    long[] sorted = Arrays.copyOf(samples, (int) Math.min(frames, SAMPLES));
+    Arrays.sort(sorted);
+    s.p50Us = TimeUnit.NANOSECONDS.toMicros(percentile(sorted, 0.50));
+    s.p99Us = TimeUnit.NANOSECONDS.toMicros(percentile(sorted, 0.99));
+    return s;
+  }
+
+  /**
+   * @return the nearest rank percentile of sorted values
+   */
+  static long percentile(long[] sorted, double percentile) {
+    int rank = (int) Math.ceil(percentile * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %d frames mean %d us p50 %d us p99 %d us max %d us", name, frames, meanUs, p50Us, p99Us, maxUs);
+  }
+
+}
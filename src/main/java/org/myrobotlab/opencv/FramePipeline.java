@@ -0,0 +1,329 @@
+package org.myrobotlab.opencv;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Frames processed by a chain of stages, each on its own thread - while a
+ * stage works on frame n the stages before it already work on frame n+1, n+2
+ * ...
+ *
+ * <pre>
+ * order       every stage is a single thread taking frames in order, so
+ *             frames leave the last stage in the order they were submitted
+ * hand-off    bounded queues between the stages - a slow stage blocks the
+ *             ones before it (and submit) instead of frames piling up
+ * errors      a frame a stage threw on is dropped, the following frames go on
+ * drops       frames dropped - on errors or by close(false) - are handed to
+ *             the onDrop callback, e.g. to return their buffers to a pool
+ * </pre>
+ *
+ * Per stage stats - how long frames took in it and waited in its queue, and
+ * how many are queued - are in getStats.
+ */
+public class FramePipeline<T> {
+
+  public final static Logger log = LoggerFactory.getLogger(FramePipeline.class);
+
+  /**
+   * work of a stage on a frame
+   */
+  public interface Stage<T> {
+    void process(T frame) throws Exception;
+  }
+
+  public static class StageStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public String name;
+    public long frames;
+    public long errors;
+    /**
+     * us the last frame took in the stage
+     */
+    public long latencyUs;
+    /**
+     * moving average
+     */
+    public long avgLatencyUs;
+    public long maxLatencyUs;
+    /**
+     * us the last frame waited in the queue of the stage
+     */
+    public long waitUs;
+    /**
+     * frames in the queue of the stage
+     */
+    public int queued;
+    public int queueSize;
+
+    @Override
+    public String toString() {
+      return String.format("%s %d frames latency %d us (avg %d max %d) waited %d us queued %d/%d errors %d", name, frames, latencyUs, avgLatencyUs, maxLatencyUs, waitUs,
+          queued, queueSize, errors);
+    }
+  }
+
+  /**
+   * a frame and when it was queued
+   */
+  static class Item<T> {
+    final T frame;
+    long queuedNanos;
+
+    Item(T frame) {
+      this.frame = frame;
+    }
+  }
+
+  class Worker implements Runnable {
+    final String stageName;
+    final Stage<T> stage;
+    final BlockingQueue<Item<T>> queue;
+    final StageStats stats = new StageStats();
+    Worker next;
+    Thread thread;
+
+    Worker(String stageName, Stage<T> stage) {
+      this.stageName = stageName;
+      this.stage = stage;
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+      stats.name = stageName;
+      stats.queueSize = queueSize;
+    }
+
+    @Override
+    public void run() {
+      // the frame this stage holds - dropped if interrupted before passing it on
+      Item<T> item = null;
+      try {
+        while (true) {
+          item = queue.take();
+          if (item == END) {
+            if (next != null) {
+              next.queue.put(item);
+            }
+            break;
+          }
+          long start = System.nanoTime();
+          boolean error = false;
+          try {
+            stage.process(item.frame);
+          } catch (InterruptedException e) {
+            throw e;
+          } catch (Exception e) {
+            log.error("{} stage {} threw - dropping frame", name, stageName, e);
+            error = true;
+          }
+          long end = System.nanoTime();
+          synchronized (stats) {
+            ++stats.frames;
+            stats.latencyUs = TimeUnit.NANOSECONDS.toMicros(end - start);
+            stats.avgLatencyUs = (stats.frames == 1) ? stats.latencyUs : (stats.avgLatencyUs * 7 + stats.latencyUs) / 8;
+            stats.maxLatencyUs = Math.max(stats.maxLatencyUs, stats.latencyUs);
+            stats.waitUs = TimeUnit.NANOSECONDS.toMicros(start - item.queuedNanos);
+            if (error) {
+              ++stats.errors;
+            }
+          }
+          if (error) {
+            drop(item);
+          } else if (next != null) {
+            item.queuedNanos = System.nanoTime();
+            next.queue.put(item);
+          }
+          item = null;
+        }
+      } catch (InterruptedException e) {
+        log.info("{} stage {} interrupted", name, stageName);
+        if (item != null && item != END) {
+          drop(item);
+        }
+      }
+    }
+  }
+
+  /**
+   * put after the last frame - stages pass it on and end
+   */
+  @SuppressWarnings("rawtypes")
+  final Item END = new Item<>(null);
+
+  final String name;
+
+  final int queueSize;
+
+  final List<Worker> workers = new ArrayList<>();
+
+  boolean started = false;
+
+  boolean closed = false;
+
+  volatile Consumer<T> onDrop = null;
+
+  /**
+   * @param name
+   *          prefix of the stage thread names
+   * @param queueSize
+   *          frames waiting for each stage
+   */
+  public FramePipeline(String name, int queueSize) {
+    this.name = name;
+    this.queueSize = Math.max(1, queueSize);
+  }
+
+  /**
+   * adds a stage after the ones added before
+   *
+   * @param stageName
+   *          name for its thread and stats
+   * @param stage
+   *          the work
+   */
+  public synchronized void addStage(String stageName, Stage<T> stage) {
+    if (started) {
+      throw new IllegalStateException("cannot add a stage to a started pipeline");
+    }
+    Worker worker = new Worker(stageName, stage);
+    if (!workers.isEmpty()) {
+      workers.get(workers.size() - 1).next = worker;
+    }
+    workers.add(worker);
+  }
+
+  /**
+   * @param onDrop
+   *          called with each frame which does not make it through all
+   *          stages
+   */
+  public void setOnDrop(Consumer<T> onDrop) {
+    this.onDrop = onDrop;
+  }
+
+  private void drop(Item<T> item) {
+    Consumer<T> callback = onDrop;
+    if (callback == null) {
+      return;
+    }
+    try {
+      callback.accept(item.frame);
+    } catch (Exception e) {
+      log.error("{} onDrop threw", name, e);
+    }
+  }
+
+  public synchronized void start() {
+    if (started) {
+      return;
+    }
+    started = true;
+    for (int i = 0; i < workers.size(); ++i) {
+      Worker worker = workers.get(i);
+      worker.thread = new Thread(worker, String.format("%s-stage-%d-%s", name, i, worker.stageName));
+      worker.thread.setDaemon(true);
+      worker.thread.start();
+    }
+  }
+
+  /**
+   * queues a frame for the first stage - blocks while its queue is full
+   *
+   * @param frame
+   *          the frame
+   * @throws InterruptedException
+   *           interrupted while waiting
+   */
+  public void submit(T frame) throws InterruptedException {
+    if (!started || closed || workers.isEmpty()) {
+      throw new IllegalStateException(String.format("pipeline %s is not running", name));
+    }
+    Item<T> item = new Item<>(frame);
+    item.queuedNanos = System.nanoTime();
+    workers.get(0).queue.put(item);
+  }
+
+  /**
+   * stops the stages
+   *
+   * @param finish
+   *          true to wait until the frames submitted went through all stages,
+   *          false to drop them
+   * @throws InterruptedException
+   *           interrupted while waiting for the stages
+   */
+  @SuppressWarnings("unchecked")
+  public void close(boolean finish) throws InterruptedException {
+    synchronized (this) {
+      if (closed || !started) {
+        closed = true;
+        return;
+      }
+      closed = true;
+    }
+    if (workers.isEmpty()) {
+      return;
+    }
+    if (finish) {
+      workers.get(0).queue.put(END);
+    } else {
+      for (Worker worker : workers) {
+        worker.thread.interrupt();
+      }
+    }
+    for (Worker worker : workers) {
+      // a stage can be in native code which does not see the interrupt
+      worker.thread.join(finish ? 0 : 5000);
+      if (worker.thread.isAlive()) {
+        log.warn("{} stage {} did not stop", name, worker.stageName);
+      }
+    }
+    if (!finish) {
+      List<Item<T>> queued = new ArrayList<>();
+      for (Worker worker : workers) {
+        worker.queue.drainTo(queued);
+      }
+      for (Item<T> item : queued) {
+        drop(item);
+      }
+    }
+  }
+
+  /**
+   * @return stats of each stage in order
+   */
+  public List<StageStats> getStats() {
+    List<StageStats> ret = new ArrayList<>();
+    for (Worker worker : workers) {
+      synchronized (worker.stats) {
+        StageStats s = new StageStats();
+        s.name = worker.stats.name;
+        s.frames = worker.stats.frames;
+        s.errors = worker.stats.errors;
+        s.latencyUs = worker.stats.latencyUs;
+        s.avgLatencyUs = worker.stats.avgLatencyUs;
+        s.maxLatencyUs = worker.stats.maxLatencyUs;
+        s.waitUs = worker.stats.waitUs;
+        s.queued = worker.queue.size();
+        s.queueSize = worker.stats.queueSize;
+        ret.add(s);
+      }
+    }
+    return ret;
+  }
+
+  public int getStageCount() {
+    return workers.size();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+}
@@ -6,7 +6,10 @@ import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.io.FilenameUtils;
 import org.bytedeco.javacv.Frame;
@@ -31,6 +34,11 @@ public class ImageFileFrameGrabber extends FrameGrabber {
   public String path;
   CloseableFrameConverter converter = new CloseableFrameConverter();
 
+  /**
+   * decoded images, by index of their file - when preloaded
+   */
+  private transient List<Mat> images = null;
+
   // supported formats for imread
   // https://docs.opencv.org/4.5.3/d4/da8/group__imgcodecs.html#ga288b8b3da0892bd651fce07b3bbd3a56
   private transient HashSet<String> validFormats = new HashSet<String>(Arrays.asList("bmp", "jpg", "jpeg", "jpe", "jp2", "png", "tiff", "tif", "hdr", "pic"));
@@ -61,20 +69,67 @@ public class ImageFileFrameGrabber extends FrameGrabber {
           }
         }
       }
+      // in name order - e.g. the frames of a FrameFileRecorder
+      Collections.sort(imageFiles);
+    }
+  }
+
+  /**
+   * decodes all the images once - grab does not read files anymore, e.g. to
+   * benchmark filters. Files which do not decode are dropped, grabbing starts
+   * over from the first image.
+   * 
+   * @param preload
+   *          true to keep the decoded images
+   */
+  public void setPreload(boolean preload) {
+    if (!preload) {
+      images = null;
+      return;
+    }
+    images = new ArrayList<>();
+    Iterator<File> files = imageFiles.iterator();
+    while (files.hasNext()) {
+      File file = files.next();
+      Mat mat = imread(file.getAbsolutePath(), IMREAD_UNCHANGED);
+      if (mat.empty()) {
+        log.warn("could not load {} - skipping it", file);
+        mat.close();
+        files.remove();
+        continue;
+      }
+      images.add(mat);
     }
+    grabCount = 0;
+  }
+
+  public int getImageCount() {
+    return imageFiles.size();
   }
 
   @Override
   public Frame grab() {
+    if (imageFiles.isEmpty()) {
+      return null;
+    }
     // Grab the file to load based on the grabCount
     path = imageFiles.get(grabCount).getAbsolutePath();
     log.debug("Grabbing file {} - {}", grabCount, path);
     // grab it.
-    try {
-      image = imread(path, IMREAD_UNCHANGED);
-    } catch (Throwable e) {
-      log.error("ImageFileFrameGrabber cvLoadImage threw - could not load {}", path, e);
-      return null;
+    if (images != null) {
+      // a copy - filters can change the frame in place
+      Mat preloaded = images.get(grabCount);
+      if (image == null) {
+        image = new Mat();
+      }
+      preloaded.copyTo(image);
+    } else {
+      try {
+        image = imread(path, IMREAD_UNCHANGED);
+      } catch (Throwable e) {
+        log.error("ImageFileFrameGrabber cvLoadImage threw - could not load {}", path, e);
+        return null;
+      }
     }
     // increment our count.
     grabCount++;
@@ -0,0 +1,222 @@
+package org.myrobotlab.opencv;
+
+import static org.bytedeco.opencv.global.opencv_core.cvResetImageROI;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bytedeco.opencv.opencv_core.AbstractIplImage;
+import org.bytedeco.opencv.opencv_core.IplImage;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Native image buffers (and frame converters) re-used from frame to frame
+ * instead of allocated per frame or per filter.
+ *
+ * <pre>
+ * lease    an image of a size, depth and channels - a free one of the same
+ *          kind if there is one (a hit), else a new one (a miss)
+ * release  gives it back - up to maxFree per kind are kept, more are
+ *          deallocated
+ * </pre>
+ *
+ * Filters don't lease directly - they get pooled outputs from
+ * OpenCVFilter.getPooledImage, which are leased by the frame (OpenCVData) and
+ * all released when the frame is. Only frames which stay on the capture
+ * thread give their images back - a frame published to subscribers is
+ * detached, its images are left to the garbage collector.
+ */
+public class ImagePool {
+
+  public final static Logger log = LoggerFactory.getLogger(ImagePool.class);
+
+  public static class PoolStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public long hits;
+    public long misses;
+    /**
+     * images leased and not released
+     */
+    public int leased;
+    public int free;
+    /**
+     * native bytes of the leased images
+     */
+    public long bytesInUse;
+    /**
+     * native bytes of the free images
+     */
+    public long bytesFree;
+
+    /**
+     * @return hits / leases - 0 without leases
+     */
+    public double getHitRate() {
+      long leases = hits + misses;
+      return (leases == 0) ? 0 : (double) hits / leases;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d leased %d bytes, %d free %d bytes, %.1f%% hit rate", leased, bytesInUse, free, bytesFree, getHitRate() * 100);
+    }
+  }
+
+  /**
+   * free images by kind
+   */
+  final Map<Long, ArrayDeque<IplImage>> free = new HashMap<>();
+
+  final ArrayDeque<CloseableFrameConverter> converters = new ArrayDeque<>();
+
+  final int maxFree;
+
+  final PoolStats stats = new PoolStats();
+
+  /**
+   * @param maxFree
+   *          free images kept per kind - about the number of frames in flight
+   */
+  public ImagePool(int maxFree) {
+    this.maxFree = maxFree;
+  }
+
+  /**
+   * @return width, height, depth (with its sign bit) and channels in a long
+   */
+  static long key(int width, int height, int depth, int channels) {
+    long depthBits = (depth & 0xff) | ((depth < 0) ? 0x100 : 0);
+    return ((long) width << 44) | ((long) height << 24) | (depthBits << 8) | (channels & 0xff);
+  }
+
+  /**
+   * @param width
+   *          width
+   * @param height
+   *          height
+   * @param depth
+   *          IPL_DEPTH_8U ...
+   * @param channels
+   *          channels
+   * @return an image of that kind - its content is undefined
+   */
+  public synchronized IplImage lease(int width, int height, int depth, int channels) {
+    ArrayDeque<IplImage> images = free.get(key(width, height, depth, channels));
+    IplImage image = (images == null) ? null : images.poll();
+    if (image != null) {
+      ++stats.hits;
+      --stats.free;
+      stats.bytesFree -= image.imageSize();
+    } else {
+      ++stats.misses;
+      // deallocated when garbage collected if it's never released
+      image = AbstractIplImage.create(width, height, depth, channels);
+    }
+    ++stats.leased;
+    stats.bytesInUse += image.imageSize();
+    return image;
+  }
+
+  /**
+   * @param like
+   *          image to match
+   * @return an image of the same size, depth and channels
+   */
+  public IplImage lease(IplImage like) {
+    return lease(like.width(), like.height(), like.depth(), like.nChannels());
+  }
+
+  /**
+   * @param image
+   *          a leased image - not to be used after
+   */
+  public synchronized void release(IplImage image) {
+    if (image == null) {
+      return;
+    }
+    --stats.leased;
+    stats.bytesInUse -= image.imageSize();
+    // a filter could have left a roi on it
+    cvResetImageROI(image);
+    long key = key(image.width(), image.height(), image.depth(), image.nChannels());
+    ArrayDeque<IplImage> images = free.get(key);
+    if (images == null) {
+      images = new ArrayDeque<>();
+      free.put(key, images);
+    }
+    if (images.size() < maxFree) {
+      images.push(image);
+      ++stats.free;
+      stats.bytesFree += image.imageSize();
+    } else {
+      image.deallocate();
+    }
+  }
+
+  /**
+   * a leased image which is not coming back - deallocated when it's garbage
+   * collected
+   * 
+   * @param image
+   *          a leased image
+   */
+  public synchronized void forget(IplImage image) {
+    if (image == null) {
+      return;
+    }
+    --stats.leased;
+    stats.bytesInUse -= image.imageSize();
+  }
+
+  /**
+   * @return a frame converter - release it when done
+   */
+  public synchronized CloseableFrameConverter leaseConverter() {
+    CloseableFrameConverter converter = converters.poll();
+    return (converter == null) ? new CloseableFrameConverter() : converter;
+  }
+
+  public synchronized void release(CloseableFrameConverter converter) {
+    if (converter == null) {
+      return;
+    }
+    if (converters.size() < maxFree) {
+      converters.push(converter);
+    } else {
+      converter.close();
+    }
+  }
+
+  /**
+   * deallocates the free images and converters - leased ones are not touched
+   */
+  public synchronized void clear() {
+    for (ArrayDeque<IplImage> images : free.values()) {
+      for (IplImage image : images) {
+        image.deallocate();
+      }
+    }
+    free.clear();
+    stats.free = 0;
+    stats.bytesFree = 0;
+    for (CloseableFrameConverter converter : converters) {
+      converter.close();
+    }
+    converters.clear();
+  }
+
+  public synchronized PoolStats getStats() {
+    PoolStats s = new PoolStats();
+    s.hits = stats.hits;
+    s.misses = stats.misses;
+    s.leased = stats.leased;
+    s.free = stats.free;
+    s.bytesInUse = stats.bytesInUse;
+    s.bytesFree = stats.bytesFree;
+    return s;
+  }
+
+}
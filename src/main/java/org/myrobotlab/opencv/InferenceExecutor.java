@@ -0,0 +1,497 @@
+package org.myrobotlab.opencv;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Process wide executor for model inference - filters of any OpenCV service
+ * submit jobs (a frame, a face crop ...) to a model and get the result by
+ * future, instead of each filter running its own classifier thread.
+ *
+ * <pre>
+ * models      registered by name - filters registering the same name share
+ *             the model (and its batches), e.g. the face detector of two
+ *             cameras
+ * batching    each model has a thread running the jobs pending in one batch
+ *             of up to maxBatch - with other users of the model it waits up to
+ *             maxWaitMs (from the first job) for more jobs to fill the batch
+ * order       jobs of a model run in the order they were submitted, a model is
+ *             only used by its thread
+ * cancel      jobs cancelled by their future before their batch runs are
+ *             skipped, the model discards their inputs
+ * </pre>
+ *
+ * Per model stats - throughput, batch sizes and a histogram of the latency
+ * from submit to result - are in getStats.
+ */
+public class InferenceExecutor {
+
+  public final static Logger log = LoggerFactory.getLogger(InferenceExecutor.class);
+
+  private static volatile InferenceExecutor instance;
+
+  /**
+   * upper bounds of the latency histogram buckets in ms - the last bucket is
+   * everything above
+   */
+  public final static long[] LATENCY_BOUNDS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000 };
+
+  /**
+   * a model running a batch of inputs at once
+   */
+  public interface BatchModel<I, O> {
+    /**
+     * @param inputs
+     *          the batch - 1 to maxBatch inputs
+     * @return an output per input in the same order
+     * @throws Exception
+     *           fails all jobs of the batch
+     */
+    List<O> infer(List<I> inputs) throws Exception;
+
+    /**
+     * called for the input of a job which will not run - cancelled, or the
+     * model was released - frees what infer would have
+     *
+     * @param input
+     *          the input of the job
+     */
+    default void discard(I input) {
+    }
+
+    /**
+     * called by the model thread when the last user released the model
+     */
+    default void close() {
+    }
+  }
+
+  public static class InferenceStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public String name;
+    public int users;
+    public int maxBatch;
+    public long maxWaitMs;
+    public long jobs;
+    public long batches;
+    public long errors;
+    /**
+     * jobs waiting for a batch
+     */
+    public int queued;
+    /**
+     * jobs per second over the last second or so
+     */
+    public double jobsPerSecond;
+    public double avgBatchSize;
+    /**
+     * us the last batch took in the model
+     */
+    public long inferUs;
+    /**
+     * moving average of the us from submit to result
+     */
+    public long avgLatencyUs;
+    public long maxLatencyUs;
+    /**
+     * jobs by latency - bucket i up to LATENCY_BOUNDS_MS[i], the last above
+     * all bounds
+     */
+    public long[] latencyHistogram = new long[LATENCY_BOUNDS_MS.length + 1];
+    /**
+     * batches by size - index 0 unused
+     */
+    public long[] batchSizeHistogram;
+
+    /**
+     * @param percentile
+     *          0.0 to 1.0
+     * @return upper bound in ms of the histogram bucket the percentile falls
+     *         in, -1 for the bucket above all bounds or without jobs
+     */
+    public long getLatencyPercentileMs(double percentile) {
+      long total = 0;
+      for (long count : latencyHistogram) {
+        total += count;
+      }
+      if (total == 0) {
+        return -1;
+      }
+      long rank = (long) Math.ceil(percentile * total);
+      long count = 0;
+      for (int i = 0; i < LATENCY_BOUNDS_MS.length; ++i) {
+        count += latencyHistogram[i];
+        if (count >= rank) {
+          return LATENCY_BOUNDS_MS[i];
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %d jobs %.1f/s batch %.2f (max %d) infer %d us latency avg %d us p50 %d ms p95 %d ms queued %d errors %d", name, jobs, jobsPerSecond,
+          avgBatchSize, maxBatch, inferUs, avgLatencyUs, getLatencyPercentileMs(0.5), getLatencyPercentileMs(0.95), queued, errors);
+    }
+  }
+
+  static class Job<I, O> {
+    final I input;
+    final CompletableFuture<O> future = new CompletableFuture<>();
+    final long submitted = System.nanoTime();
+
+    Job(I input) {
+      this.input = input;
+    }
+  }
+
+  /**
+   * handle of a registered model - jobs are submitted to it
+   */
+  public class Model<I, O> implements Runnable {
+
+    final String name;
+    final BatchModel<I, O> batchModel;
+    final BlockingQueue<Job<I, O>> queue = new LinkedBlockingQueue<>();
+    final AtomicInteger users = new AtomicInteger();
+    volatile int maxBatch;
+    volatile long maxWaitMs;
+    final InferenceStats stats = new InferenceStats();
+    volatile Thread thread;
+    /**
+     * start and jobs of the current throughput window
+     */
+    long windowStart = System.nanoTime();
+    long windowJobs;
+
+    Model(String name, BatchModel<I, O> batchModel, int maxBatch, long maxWaitMs) {
+      this.name = name;
+      this.batchModel = batchModel;
+      this.maxBatch = Math.max(1, maxBatch);
+      this.maxWaitMs = Math.max(0, maxWaitMs);
+      stats.name = name;
+    }
+
+    /**
+     * @param input
+     *          the input - not to be changed until the future is done
+     * @return its output
+     */
+    public CompletableFuture<O> submit(I input) {
+      Job<I, O> job = new Job<>(input);
+      if (thread == null) {
+        job.future.completeExceptionally(new CancellationException(String.format("model %s was released", name)));
+        discard(job);
+        return job.future;
+      }
+      queue.add(job);
+      // released while adding
+      if (thread == null && queue.remove(job)) {
+        job.future.cancel(false);
+        discard(job);
+      }
+      return job.future;
+    }
+
+    private void discard(Job<I, O> job) {
+      try {
+        batchModel.discard(job.input);
+      } catch (Exception e) {
+        log.error("model {} discard threw", name, e);
+      }
+    }
+
+    /**
+     * submits inputs which get in the same batch (if it's large enough) - e.g.
+     * the faces of a frame
+     *
+     * @param inputs
+     *          the inputs
+     * @return an output per input
+     */
+    public List<CompletableFuture<O>> submitAll(List<I> inputs) {
+      List<CompletableFuture<O>> futures = new ArrayList<>();
+      // the model thread drains the queue holding its lock
+      synchronized (queue) {
+        for (I input : inputs) {
+          futures.add(submit(input));
+        }
+      }
+      return futures;
+    }
+
+    @Override
+    public void run() {
+      List<Job<I, O>> batch = new ArrayList<>();
+      try {
+        // released - also when the model swallowed the interrupt
+        while (thread != null) {
+          batch.add(queue.take());
+          synchronized (queue) {
+            queue.drainTo(batch, maxBatch - batch.size());
+          }
+          // only worth waiting for other users
+          if (batch.size() < maxBatch && users.get() > 1 && maxWaitMs > 0) {
+            long deadline = batch.get(0).submitted + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            while (batch.size() < maxBatch) {
+              long remaining = deadline - System.nanoTime();
+              if (remaining <= 0) {
+                break;
+              }
+              Job<I, O> job = queue.poll(remaining, TimeUnit.NANOSECONDS);
+              if (job == null) {
+                break;
+              }
+              batch.add(job);
+              synchronized (queue) {
+                queue.drainTo(batch, maxBatch - batch.size());
+              }
+            }
+          }
+          // cancelled by their submitters while waiting
+          batch.removeIf(job -> {
+            if (job.future.isDone()) {
+              discard(job);
+              return true;
+            }
+            return false;
+          });
+          if (!batch.isEmpty()) {
+            infer(batch);
+          }
+          batch.clear();
+        }
+      } catch (InterruptedException e) {
+        log.info("model {} interrupted", name);
+      }
+      // jobs which did not run
+      for (Job<I, O> job : batch) {
+        job.future.cancel(false);
+        discard(job);
+      }
+      Job<I, O> job;
+      while ((job = queue.poll()) != null) {
+        job.future.cancel(false);
+        discard(job);
+      }
+      try {
+        batchModel.close();
+      } catch (Exception e) {
+        log.error("model {} close threw", name, e);
+      }
+    }
+
+    private void infer(List<Job<I, O>> batch) {
+      List<I> inputs = new ArrayList<>(batch.size());
+      for (Job<I, O> job : batch) {
+        inputs.add(job.input);
+      }
+      long start = System.nanoTime();
+      List<O> outputs = null;
+      Exception error = null;
+      try {
+        outputs = batchModel.infer(inputs);
+        if (outputs == null || outputs.size() != inputs.size()) {
+          error = new IllegalStateException(String.format("model %s returned %s outputs for %d inputs", name, (outputs == null) ? null : outputs.size(), inputs.size()));
+        }
+      } catch (Exception e) {
+        log.error("model {} threw on a batch of {}", name, batch.size(), e);
+        error = e;
+      }
+      long end = System.nanoTime();
+
+      synchronized (stats) {
+        ++stats.batches;
+        stats.jobs += batch.size();
+        stats.inferUs = TimeUnit.NANOSECONDS.toMicros(end - start);
+        if (stats.batchSizeHistogram == null || stats.batchSizeHistogram.length <= batch.size()) {
+          stats.batchSizeHistogram = (stats.batchSizeHistogram == null) ? new long[batch.size() + 1] : Arrays.copyOf(stats.batchSizeHistogram, batch.size() + 1);
+        }
+        ++stats.batchSizeHistogram[batch.size()];
+        if (error != null) {
+          stats.errors += batch.size();
+        }
+        for (Job<I, O> job : batch) {
+          long latencyUs = TimeUnit.NANOSECONDS.toMicros(end - job.submitted);
+          stats.avgLatencyUs = (stats.jobs == batch.size()) ? latencyUs : (stats.avgLatencyUs * 7 + latencyUs) / 8;
+          stats.maxLatencyUs = Math.max(stats.maxLatencyUs, latencyUs);
+          ++stats.latencyHistogram[bucket(latencyUs)];
+        }
+        windowJobs += batch.size();
+        if (end - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+          stats.jobsPerSecond = windowJobs * 1e9 / (end - windowStart);
+          windowStart = end;
+          windowJobs = 0;
+        }
+      }
+
+      // the futures are completed last - their callbacks run on this thread
+      for (int i = 0; i < batch.size(); ++i) {
+        if (error != null) {
+          batch.get(i).future.completeExceptionally(error);
+        } else {
+          batch.get(i).future.complete(outputs.get(i));
+        }
+      }
+    }
+
+    /**
+     * @param maxBatch
+     *          jobs run at once
+     */
+    public void setMaxBatch(int maxBatch) {
+      this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    /**
+     * @param maxWaitMs
+     *          ms the first job of a batch waits for others
+     */
+    public void setMaxWaitMs(long maxWaitMs) {
+      this.maxWaitMs = Math.max(0, maxWaitMs);
+    }
+
+    /**
+     * a user is done with the model - the last one stops its thread, pending
+     * jobs are cancelled and their inputs discarded
+     */
+    public void release() {
+      synchronized (InferenceExecutor.this) {
+        if (users.decrementAndGet() > 0 || thread == null) {
+          return;
+        }
+        models.remove(name);
+        thread.interrupt();
+        thread = null;
+      }
+    }
+
+    public InferenceStats getStats() {
+      synchronized (stats) {
+        InferenceStats s = new InferenceStats();
+        s.name = stats.name;
+        s.users = users.get();
+        s.maxBatch = maxBatch;
+        s.maxWaitMs = maxWaitMs;
+        s.jobs = stats.jobs;
+        s.batches = stats.batches;
+        s.errors = stats.errors;
+        s.queued = queue.size();
+        s.jobsPerSecond = stats.jobsPerSecond;
+        s.avgBatchSize = (stats.batches == 0) ? 0 : (double) stats.jobs / stats.batches;
+        s.inferUs = stats.inferUs;
+        s.avgLatencyUs = stats.avgLatencyUs;
+        s.maxLatencyUs = stats.maxLatencyUs;
+        s.latencyHistogram = stats.latencyHistogram.clone();
+        s.batchSizeHistogram = (stats.batchSizeHistogram == null) ? new long[0] : stats.batchSizeHistogram.clone();
+        return s;
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  final Map<String, Model<?, ?>> models = new TreeMap<>();
+
+  public static InferenceExecutor getInstance() {
+    if (instance != null) {
+      return instance;
+    }
+    synchronized (InferenceExecutor.class) {
+      if (instance == null) {
+        instance = new InferenceExecutor();
+      }
+    }
+    return instance;
+  }
+
+  InferenceExecutor() {
+  }
+
+  /**
+   * @return index of the latency histogram bucket
+   */
+  static int bucket(long latencyUs) {
+    for (int i = 0; i < LATENCY_BOUNDS_MS.length; ++i) {
+      if (latencyUs <= LATENCY_BOUNDS_MS[i] * 1000) {
+        return i;
+      }
+    }
+    return LATENCY_BOUNDS_MS.length;
+  }
+
+  /**
+   * gets a model, creating and starting it if it's not registered - every
+   * call is a user to release
+   *
+   * @param name
+   *          name of the model, e.g. its file - it has to include whatever
+   *          the factory builds the model with, only the factory of the first
+   *          user is called, settings which differ per user go in the inputs
+   * @param factory
+   *          creates the model - called once, it should not load anything
+   *          heavy, infer can load on its first batch
+   * @param maxBatch
+   *          jobs run at once - when the model is created
+   * @param maxWaitMs
+   *          ms the first job of a batch waits for others - when the model is
+   *          created
+   * @return the model
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized <I, O> Model<I, O> getModel(String name, Supplier<BatchModel<I, O>> factory, int maxBatch, long maxWaitMs) {
+    Model<I, O> model = (Model<I, O>) models.get(name);
+    if (model == null) {
+      model = new Model<>(name, factory.get(), maxBatch, maxWaitMs);
+      model.thread = new Thread(model, "inference_" + name);
+      model.thread.setDaemon(true);
+      model.thread.start();
+      models.put(name, model);
+    }
+    model.users.incrementAndGet();
+    return model;
+  }
+
+  /**
+   * changes the batching of all registered models
+   *
+   * @param maxBatch
+   *          jobs run at once
+   * @param maxWaitMs
+   *          ms the first job of a batch waits for others
+   */
+  public synchronized void setBatching(int maxBatch, long maxWaitMs) {
+    for (Model<?, ?> model : models.values()) {
+      model.setMaxBatch(maxBatch);
+      model.setMaxWaitMs(maxWaitMs);
+    }
+  }
+
+  /**
+   * @return stats of the registered models
+   */
+  public synchronized List<InferenceStats> getStats() {
+    List<InferenceStats> stats = new ArrayList<>();
+    for (Model<?, ?> model : models.values()) {
+      stats.add(model.getStats());
+    }
+    return stats;
+  }
+
+}
@@ -0,0 +1,355 @@
+package org.myrobotlab.opencv;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.framework.StaticType;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.opencv.FramePipeline.StageStats;
+import org.myrobotlab.opencv.ImagePool.PoolStats;
+import org.myrobotlab.service.OpenCV;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.config.OpenCVConfig;
+import org.slf4j.Logger;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Offline benchmark of an OpenCV filter chain - an OpenCV service captures from
+ * an ImageFileFrameGrabber (a directory of images, e.g. the frames recorded by
+ * a FrameFileRecorder) as fast as it can, without display or camera.
+ *
+ * <pre>
+ * filters     --filters gray:Gray,pyramidDown:PyramidDown or the filters and
+ *             pipeline settings of an OpenCV service yml (--config)
+ * warm up     --warmup frames are not measured
+ * reported    mean, p50, p99 and max time per frame of each filter, frames
+ *             per second end to end, heap bytes allocated per second and per
+ *             frame by the capture, stage and inference threads, image pool
+ *             and (pipelined) stage stats
+ * </pre>
+ *
+ * e.g. headless on a build box with the test images
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp myrobotlab.jar org.myrobotlab.opencv.OpenCVBenchmark -i src/test/resources/OpenCV -f Gray,Smooth,Canny -n 500
+ * </pre>
+ */
+@Command(name = "java -cp myrobotlab.jar org.myrobotlab.opencv.OpenCVBenchmark")
+public class OpenCVBenchmark {
+
+  public final static Logger log = LoggerFactory.getLogger(OpenCVBenchmark.class);
+
+  public static class Result implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public String input;
+    public boolean pipelined;
+    public int frames;
+    public double seconds;
+    public double fps;
+    /**
+     * heap bytes allocated while measuring by the threads working on the
+     * frames - -1 if the jvm can't tell or one of them was gone
+     */
+    public long allocatedBytes;
+    public double allocatedMBPerSecond;
+    public long allocatedBytesPerFrame;
+    public List<FilterStats> filters;
+    public PoolStats imagePool;
+    public List<StageStats> stages;
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("%s%s - %d frames in %.2f s - %.1f fps%n", input, pipelined ? " pipelined" : "", frames, seconds, fps));
+      if (allocatedBytes >= 0) {
+        sb.append(String.format("allocated %.1f MB/s %d bytes/frame%n", allocatedMBPerSecond, allocatedBytesPerFrame));
+      }
+      sb.append(String.format("%-24s %10s %10s %10s %10s%n", "filter", "mean us", "p50 us", "p99 us", "max us"));
+      for (FilterStats f : filters) {
+        sb.append(String.format("%-24s %10d %10d %10d %10d%n", f.name, f.meanUs, f.p50Us, f.p99Us, f.maxUs));
+      }
+      if (imagePool != null) {
+        sb.append(String.format("image pool %s%n", imagePool));
+      }
+      if (stages != null) {
+        for (StageStats s : stages) {
+          sb.append(String.format("stage %s%n", s));
+        }
+      }
+      return sb.toString();
+    }
+  }
+
+  @Option(names = { "-i", "--input" }, description = "image file or directory of images, e.g. the frames of a FrameFileRecorder")
+  public String input = "src/test/resources/OpenCV";
+
+  @Option(names = { "-f", "--filters" }, description = "filter chain of name:Type or Type, e.g. gray:Gray,pyramidDown:PyramidDown")
+  public String filters = "Gray,PyramidDown";
+
+  @Option(names = { "-c", "--config" }, description = "OpenCV service yml - its filters and pipeline settings are benchmarked instead of --filters")
+  public String config = null;
+
+  @Option(names = { "-n", "--frames" }, description = "frames measured")
+  public int frames = 300;
+
+  @Option(names = { "-w", "--warmup" }, description = "frames before measuring")
+  public int warmup = 50;
+
+  @Option(names = { "-p", "--pipelined" }, description = "run the filters pipelined")
+  public boolean pipelined = false;
+
+  @Option(names = { "-d", "--decode" }, description = "decode the image files on every grab instead of once")
+  public boolean decode = false;
+
+  @Option(names = { "-t", "--timeout" }, description = "s to wait for the frames")
+  public int timeout = 300;
+
+  @Option(names = { "--json" }, description = "print the result as json")
+  public boolean json = false;
+
+  @Option(names = { "-h", "-?", "--help" }, usageHelp = true, description = "shows help")
+  public boolean help = false;
+
+  /**
+   * @param chain
+   *          name:Type or Type, comma separated - a Type alone is named
+   *          after it, e.g. PyramidDown is pyramidDown
+   * @return filter types by name in chain order
+   */
+  static Map<String, String> parseFilters(String chain) {
+    Map<String, String> ret = new LinkedHashMap<>();
+    if (chain == null) {
+      return ret;
+    }
+    for (String part : chain.split(",")) {
+      part = part.trim();
+      if (part.isEmpty()) {
+        continue;
+      }
+      String name;
+      String type;
+      int pos = part.indexOf(":");
+      if (pos > 0) {
+        name = part.substring(0, pos).trim();
+        type = part.substring(pos + 1).trim();
+      } else {
+        type = part;
+        name = null;
+      }
+      if (type.startsWith("OpenCVFilter")) {
+        type = type.substring("OpenCVFilter".length());
+      }
+      if (type.isEmpty()) {
+        throw new IllegalArgumentException(String.format("no filter type in %s", part));
+      }
+      if (name == null) {
+        name = type.substring(0, 1).toLowerCase() + type.substring(1);
+      }
+      if (ret.containsKey(name)) {
+        throw new IllegalArgumentException(String.format("filter %s is in the chain twice - name them e.g. %s2:%s", name, name, type));
+      }
+      ret.put(name, type);
+    }
+    return ret;
+  }
+
+  /**
+   * @param serviceName
+   *          the OpenCV service
+   * @return ids of the threads working on its frames - its capture thread and
+   *         pipeline stages (named after the service) and the models of the
+   *         InferenceExecutor
+   */
+  static long[] getFrameThreadIds(String serviceName) {
+    List<Long> ids = new ArrayList<>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith(serviceName + "-") || thread.getName().startsWith("inference_")) {
+        ids.add(thread.getId());
+      }
+    }
+    long[] ret = new long[ids.size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = ids.get(i);
+    }
+    return ret;
+  }
+
+  /**
+   * @param threadIds
+   *          the threads sampled - the same at the start and end of a run
+   * @return heap bytes allocated so far by each thread, -1 for a thread which
+   *         is gone - null if the jvm can't tell
+   */
+  static long[] getAllocatedBytes(long[] threadIds) {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+      return null;
+    }
+    return threads.getThreadAllocatedBytes(threadIds);
+  }
+
+  /**
+   * @return bytes allocated between the samples, -1 if a thread was gone at
+   *         either one - its allocations are not known
+   */
+  static long allocatedBetween(long[] start, long[] end) {
+    if (start == null || end == null || start.length != end.length) {
+      return -1;
+    }
+    long total = 0;
+    for (int i = 0; i < start.length; ++i) {
+      if (start[i] < 0 || end[i] < 0) {
+        return -1;
+      }
+      total += end[i] - start[i];
+    }
+    return total;
+  }
+
+  /**
+   * waits until the OpenCV service grabbed the frame
+   */
+  private void waitForFrame(OpenCV opencv, int frameIndex, long deadline) throws IOException, InterruptedException {
+    while (opencv.getFrameIndex() < frameIndex) {
+      if (!opencv.isCapturing() && opencv.getFrameIndex() == 0) {
+        // the capture loop gave up - e.g. no valid frame
+        throw new IOException(String.format("%s stopped capturing", opencv.getName()));
+      }
+      if (System.currentTimeMillis() > deadline) {
+        throw new IOException(String.format("timeout - %d of %d frames", opencv.getFrameIndex(), frameIndex));
+      }
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * runs the benchmark in a new OpenCV service, released when done
+   *
+   * @return the result
+   * @throws Exception
+   *           bad filters, no images or not getting the frames in time
+   */
+  public Result run() throws Exception {
+    ImageFileFrameGrabber grabber = new ImageFileFrameGrabber(input);
+    // drops the files which do not decode
+    grabber.setPreload(!decode);
+    if (grabber.getImageCount() == 0) {
+      throw new IOException(String.format("no images in %s", input));
+    }
+
+    OpenCV opencv = (OpenCV) Runtime.start("benchmark", "OpenCV");
+    try {
+      opencv.removeFilters();
+      opencv.setNativeViewer(false);
+      opencv.setWebViewer(false);
+      // as fast as it goes
+      opencv.setMaxFps(null);
+
+      if (config != null) {
+        OpenCVConfig c = CodecUtils.readServiceConfig(config, new StaticType<>() {
+        });
+        // only the filters and their settings - not its camera or viewers
+        if (c.filters != null) {
+          for (OpenCVFilter filter : c.filters.values()) {
+            opencv.addFilter(filter);
+          }
+        }
+        opencv.setPipelined(c.pipelined || pipelined);
+        opencv.setPipelineStages(c.pipelineStages);
+        opencv.setInferenceBatch(c.inferenceMaxBatch, c.inferenceMaxWaitMs);
+      } else {
+        for (Map.Entry<String, String> filter : parseFilters(filters).entrySet()) {
+          if (opencv.addFilter(filter.getKey(), filter.getValue()) == null) {
+            throw new IllegalArgumentException(String.format("could not create filter %s of type %s", filter.getKey(), filter.getValue()));
+          }
+        }
+        opencv.setPipelined(pipelined);
+      }
+
+      long deadline = System.currentTimeMillis() + timeout * 1000L;
+      opencv.capture(grabber);
+      waitForFrame(opencv, warmup, deadline);
+
+      opencv.resetFilterStats();
+      // the threads are up after the warm up
+      long[] threadIds = getFrameThreadIds(opencv.getName());
+      int startFrame = opencv.getFrameIndex();
+      long[] startBytes = getAllocatedBytes(threadIds);
+      long start = System.nanoTime();
+
+      waitForFrame(opencv, startFrame + frames, deadline);
+
+      long end = System.nanoTime();
+      long[] endBytes = getAllocatedBytes(threadIds);
+      int endFrame = opencv.getFrameIndex();
+
+      Result result = new Result();
+      result.input = input;
+      result.pipelined = opencv.isPipelined();
+      result.frames = endFrame - startFrame;
+      result.seconds = (end - start) / 1e9;
+      result.fps = result.frames / result.seconds;
+      result.allocatedBytes = allocatedBetween(startBytes, endBytes);
+      if (result.allocatedBytes >= 0) {
+        result.allocatedMBPerSecond = result.allocatedBytes / result.seconds / (1024 * 1024);
+        result.allocatedBytesPerFrame = result.allocatedBytes / Math.max(1, result.frames);
+      }
+      result.filters = opencv.getFilterStats();
+      result.imagePool = opencv.getImagePoolStats();
+      if (result.pipelined) {
+        result.stages = opencv.getPipelineStats();
+      }
+      return result;
+
+    } finally {
+      opencv.stopCapture();
+      Runtime.release(opencv.getName());
+    }
+  }
+
+  public static void main(String[] args) {
+    // no display - before anything touches awt
+    System.setProperty("java.awt.headless", "true");
+    OpenCVBenchmark benchmark = new OpenCVBenchmark();
+    CommandLine cmd = new CommandLine(benchmark);
+    try {
+      cmd.parseArgs(args);
+    } catch (Exception e) {
+      System.err.println(e.getMessage());
+      cmd.usage(System.err);
+      System.exit(2);
+    }
+    if (benchmark.help) {
+      cmd.usage(System.out);
+      return;
+    }
+
+    LoggingFactory.init("WARN");
+    int status = 0;
+    try {
+      Result result = benchmark.run();
+      System.out.println(benchmark.json ? CodecUtils.toPrettyJson(result) : result.toString());
+    } catch (Exception e) {
+      log.error("benchmark failed", e);
+      status = 1;
+    }
+    // the service threads would keep the jvm up
+    System.exit(status);
+  }
+
+}
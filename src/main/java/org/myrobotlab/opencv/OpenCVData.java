@@ -1,5 +1,6 @@
 package org.myrobotlab.opencv;
 
+import static org.bytedeco.opencv.global.opencv_core.cvCopy;
 import static org.myrobotlab.service.OpenCV.INPUT_KEY;
 
 import java.awt.Graphics2D;
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -159,23 +161,69 @@ public class OpenCVData extends CVData {
   // for use with text detection / ocr filters.
   protected ArrayList<DetectedText> detectedText;
 
-  transient private CloseableFrameConverter firstImageConverter = new CloseableFrameConverter();
+  /**
+   * where leased images and converters come from - null to allocate them
+   */
+  transient private ImagePool pool;
+
+  /**
+   * images and converters of this frame - back to the pool when it's released
+   */
+  transient private List<IplImage> leases;
+
+  transient private List<CloseableFrameConverter> converters;
+
+  transient private AtomicInteger refs = new AtomicInteger(1);
 
   public OpenCVData() {
   }
 
   public OpenCVData(String name, long frameStartTs, int frameIndex, Frame frame) {
+    this(name, frameStartTs, frameIndex, frame, null, false);
+  }
+
+  /**
+   * @param name
+   *          name of the service
+   * @param frameStartTs
+   *          when it was grabbed
+   * @param frameIndex
+   *          index of the frame
+   * @param frame
+   *          the grabbed frame
+   * @param pool
+   *          pool for the images of the frame - null to allocate them
+   * @param copy
+   *          true to copy the frame - the grabber re-uses it, or it is used
+   *          again for the next frame
+   */
+  public OpenCVData(String name, long frameStartTs, int frameIndex, Frame frame, ImagePool pool, boolean copy) {
     this.name = name;
     this.timestamp = frameStartTs;
     this.frameIndex = frameIndex;
+    this.pool = pool;
     selectedFilter = INPUT_KEY;
 
+    CloseableFrameConverter firstImageConverter = getConverter();
+    IplImage firstImage = null;
+    if (copy && pool != null) {
+      IplImage grabbed = firstImageConverter.toImage(frame);
+      if (grabbed != null) {
+        firstImage = copy(grabbed);
+        frame = firstImageConverter.toFrame(firstImage);
+      }
+    } else {
+      if (copy) {
+        frame = frame.clone();
+      }
+      firstImage = firstImageConverter.toImage(frame);
+    }
+
     // before the first filter is added input & output point to the
     // same things
     sources.put(String.format("%s.input.Frame", name), frame);
     sources.put(String.format("%s.output.Frame", name), frame);
 
-    IplImage firstImage = firstImageConverter.toImage(frame);
     if (firstImage == null) {
       log.error("could not convert frame to image !!!!");
     }
@@ -185,12 +233,121 @@ public class OpenCVData extends CVData {
   }
 
   /**
-   * resource cleanup
+   * @param width
+   *          width
+   * @param height
+   *          height
+   * @param depth
+   *          IPL_DEPTH_8U ...
+   * @param channels
+   *          channels
+   * @return an image which is valid until the frame is released - its content
+   *         is undefined
    */
-  public void dispose() {
+  public synchronized IplImage lease(int width, int height, int depth, int channels) {
+    if (pool == null) {
+      return IplImage.create(width, height, depth, channels);
+    }
+    IplImage image = pool.lease(width, height, depth, channels);
+    if (leases == null) {
+      leases = new ArrayList<>();
+    }
+    leases.add(image);
+    return image;
+  }
+
+  /**
+   * @param src
+   *          image to copy
+   * @return a copy which is valid until the frame is released
+   */
+  public IplImage copy(IplImage src) {
+    IplImage dst = lease(src.width(), src.height(), src.depth(), src.nChannels());
+    cvCopy(src, dst);
+    return dst;
+  }
+
+  /**
+   * @return a converter which is valid until the frame is released
+   */
+  private synchronized CloseableFrameConverter getConverter() {
+    CloseableFrameConverter converter = (pool == null) ? new CloseableFrameConverter() : pool.leaseConverter();
+    if (converters == null) {
+      converters = new ArrayList<>();
+    }
+    converters.add(converter);
+    return converter;
+  }
+
+  /**
+   * keeps the images of the frame from going back to the pool - for the
+   * capture side handing the frame on (e.g. to the next pipeline stage), which
+   * releases it when done. A frame leaving the capture thread is detached
+   * instead.
+   * 
+   * @return this
+   */
+  public OpenCVData retain() {
+    refs.incrementAndGet();
+    return this;
+  }
+
+  /**
+   * when the last reference is released the images of the frame go back to
+   * the pool - they must not be used after
+   */
+  public void release() {
+    if (refs == null || refs.decrementAndGet() != 0) {
+      return;
+    }
     for (Graphics2D g : g2ds.values()) {
       g.dispose();
     }
+    synchronized (this) {
+      if (leases != null) {
+        for (IplImage image : leases) {
+          pool.release(image);
+        }
+        leases = null;
+      }
+      // without a pool they are left to the gc - their images could still be
+      // referenced
+      if (converters != null && pool != null) {
+        for (CloseableFrameConverter converter : converters) {
+          pool.release(converter);
+        }
+      }
+      converters = null;
+    }
+  }
+
+  /**
+   * the frame leaves the capture thread (published to subscribers or handed to
+   * a getOpenCVData caller) - its images and converters don't go back to the
+   * pool, they are garbage collected once nothing references them
+   * 
+   * @return this
+   */
+  public synchronized OpenCVData detach() {
+    if (pool != null) {
+      if (leases != null) {
+        for (IplImage image : leases) {
+          pool.forget(image);
+        }
+      }
+      // leased from now on are allocated
+      pool = null;
+    }
+    leases = null;
+    converters = null;
+    return this;
+  }
+
+  /**
+   * resource cleanup - releases the reference of the video processor
+   */
+  public void dispose() {
+    release();
   }
 
   public IplImage get(String fullKey) {
@@ -222,10 +379,11 @@ public class OpenCVData extends CVData {
 
     if (image != null) {
       // 1st selected ? 2nd output ?
-      // TODO: find a good way to close this converter
       log.info("Get buffered Image");
+      // not a pooled converter - it would write the next frame into this image
       CloseableFrameConverter sourceConverter = new CloseableFrameConverter();
       image = sourceConverter.toBufferedImage(getImage(filterKey));
+      sourceConverter.close();
       sources.put(key, image);
     }
     return (BufferedImage) sources.get(key);
@@ -317,8 +475,7 @@ public class OpenCVData extends CVData {
     IplImage image = null;
     if (!sources.containsKey(key)) {
       log.info("Get Image");
-      // TODO: find a good way to close this converter!
-      CloseableFrameConverter sourceConverter = new CloseableFrameConverter();
+      CloseableFrameConverter sourceConverter = getConverter();
       image = sourceConverter.toImage(getFrame(filterKey));
       sources.put(key, image);
     }
@@ -40,6 +40,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import javax.swing.ImageIcon;
 
@@ -51,6 +52,8 @@ import org.myrobotlab.document.Classification;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.geometry.PointCloud;
+import org.myrobotlab.opencv.InferenceExecutor.BatchModel;
+import org.myrobotlab.opencv.InferenceExecutor.Model;
 import org.myrobotlab.service.OpenCV;
 import org.slf4j.Logger;
 
@@ -296,6 +299,50 @@ public abstract class OpenCVFilter implements Serializable, CVFilter {
 
   public abstract void imageChanged(IplImage image);
 
+  /**
+   * the standard way for a filter to get an output image - pooled, valid until
+   * the frame is released, so a frame further down a pipeline is not
+   * overwritten by the next one
+   * 
+   * @param width
+   *          width
+   * @param height
+   *          height
+   * @param depth
+   *          IPL_DEPTH_8U ...
+   * @param channels
+   *          channels
+   * @return an image with undefined content
+   */
+  public IplImage getPooledImage(int width, int height, int depth, int channels) {
+    return data.lease(width, height, depth, channels);
+  }
+
+  /**
+   * @param like
+   *          image to match
+   * @return a pooled image of the same size, depth and channels
+   */
+  public IplImage getPooledImage(IplImage like) {
+    return data.lease(like.width(), like.height(), like.depth(), like.nChannels());
+  }
+
+  /**
+   * a model of the shared InferenceExecutor, batched with the settings of the
+   * OpenCV service - released by the filter when done with it
+   * 
+   * @param modelName
+   *          filters using the same name share the model
+   * @param factory
+   *          creates the model if it's not registered yet
+   * @return the model to submit jobs to
+   */
+  public <I, O> Model<I, O> getInferenceModel(String modelName, Supplier<BatchModel<I, O>> factory) {
+    int maxBatch = (opencv == null) ? 1 : opencv.getInferenceMaxBatch();
+    long maxWaitMs = (opencv == null) ? 0 : opencv.getInferenceMaxWaitMs();
+    return InferenceExecutor.getInstance().getModel(modelName, factory, maxBatch, maxWaitMs);
+  }
+
   public void invoke(String method, Object... params) {
     opencv.invoke(method, params);
   }
@@ -11,7 +11,9 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.bytedeco.opencv.opencv_core.AbstractCvScalar;
 import org.bytedeco.opencv.opencv_core.CvScalar;
@@ -19,25 +21,38 @@ import org.bytedeco.opencv.opencv_core.IplImage;
 import org.bytedeco.opencv.opencv_core.Rect;
 import org.bytedeco.opencv.opencv_imgproc.CvFont;
 import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.opencv.InferenceExecutor.BatchModel;
+import org.myrobotlab.opencv.InferenceExecutor.Model;
 import org.myrobotlab.service.Deeplearning4j;
 import org.myrobotlab.service.Runtime;
 import org.myrobotlab.service.Solr;
 import org.slf4j.Logger;
 
-public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
+public class OpenCVFilterDL4J extends OpenCVFilter {
 
   private static final long serialVersionUID = 1L;
   transient public final static Logger log = LoggerFactory.getLogger(OpenCVFilterDL4J.class.getCanonicalName());
 
-  protected Boolean running;
-
   private transient Deeplearning4j dl4j;
+
+  /**
+   * vgg16 in the shared InferenceExecutor - null if it could not be loaded
+   */
+  private transient Model<IplImage, Map<String, Double>> vgg16;
+
+  /**
+   * frame being classified - null when the next can be submitted
+   */
+  private transient volatile CompletableFuture<Map<String, Double>> pending = null;
+
+  private transient int count = 0;
+
+  private transient long start = System.currentTimeMillis();
   private transient CvFont font = cvFont(CV_FONT_HERSHEY_PLAIN);
 
   public Map<String, Double> lastResult = null;
 
   public ArrayList<YoloDetectedObject> yoloLastResult = null;
-  private transient volatile IplImage lastImage = null;
 
   public OpenCVFilterDL4J(String name) {
     super(name);
@@ -61,10 +76,28 @@ public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
       return;
     }
     log.info("Done loading model..");
-    // start classifier thread
-    Thread classifier = new Thread(this, "DL4JClassifierThread");
-    classifier.start();
-    log.info("DL4J Classifier thread started : {}", this.name);
+    // dl4j classifies an image at a time - a batch is classified in turn
+    Deeplearning4j service = dl4j;
+    vgg16 = getInferenceModel("dl4j.vgg16:" + service.getName(), () -> new BatchModel<IplImage, Map<String, Double>>() {
+      @Override
+      public List<Map<String, Double>> infer(List<IplImage> images) throws Exception {
+        List<Map<String, Double>> results = new ArrayList<>();
+        for (IplImage image : images) {
+          try {
+            results.add(service.classifyImageVGG16(image));
+          } finally {
+            image.deallocate();
+          }
+        }
+        return results;
+      }
+
+      @Override
+      public void discard(IplImage image) {
+        image.deallocate();
+      }
+    });
+    log.info("DL4J classifier registered : {}", this.name);
   }
 
   @Override
@@ -78,9 +111,31 @@ public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
     if (yoloLastResult != null) {
       displayResultYolo(image, yoloLastResult);
     }
-    // ok now we just need to update the image that the current thread is
-    // processing (if the current thread is idle i guess?)
-    lastImage = image;
+    // only the latest frame is classified - frames coming while the previous
+    // one is classified are not
+    if (vgg16 == null || !enabled || pending != null) {
+      return image;
+    }
+    // a copy - the frame's buffers are re-used once it's done
+    CompletableFuture<Map<String, Double>> future = vgg16.submit(image.clone());
+    pending = future;
+    // runs on the thread of the model
+    future.whenComplete((result, e) -> {
+      pending = null;
+      if (e != null) {
+        log.warn("Exception classifying image!", e);
+        return;
+      }
+      lastResult = result;
+      count++;
+      if (count % 100 == 0) {
+        double rate = 1000.0 * count / (System.currentTimeMillis() - start);
+        log.info("DL4J Filter Rate: {}", rate);
+      }
+      invoke("publishClassification", lastResult);
+      if (lastResult != null)
+        log.info(formatResultString(lastResult));
+    });
     return image;
   }
 
@@ -132,64 +187,9 @@ public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
 
   @Override
   public void release() {
-    running = false;
-  }
-
-  @Override
-  public void run() {
-
-    int count = 0;
-    long start = System.currentTimeMillis();
-    log.info("Starting the DL4J classifier thread...");
-    running = true;
-    // in a loop, grab the current image and classify it and update the result.
-    while (running) {// FIXME - must be able to release !!
-
-      if (!enabled) {
-        // sleep to avoid cpu usage
-        // TODO: come up with a better way of doing this (maybe shutdown this
-        // thread and restart when it enables/disbales?)
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-          log.info("Dl4j classifier thread interrupted", e);
-        }
-        continue;
-      }
-      // log.info("Running!!!");
-      // now we need to know which image we should classify
-      // there likely needs to be some synchronization on this too.. o/w the
-      // main thread will
-      // be updating it while it's being classified maybe?!
-      if (lastImage != null) {
-        try {
-          // dl4j.yoloImage(lastImage);
-          // yoloLastResult = dl4j.classifyImageTinyYolo(lastImage,
-          // getVideoProcessor().frameIndex);
-          // dl4j.classifyImageDarknet(lastImage);
-          count++;
-          lastResult = dl4j.classifyImageVGG16(lastImage);
-          if (count % 100 == 0) {
-            double rate = 1000.0 * count / (System.currentTimeMillis() - start);
-            log.info("DL4J Filter Rate: {}", rate);
-          }
-          invoke("publishClassification", lastResult);
-          if (lastResult != null)
-            log.info(formatResultString(lastResult));
-        } catch (IOException e) {
-          log.warn("Exception classifying image!", e);
-        }
-      } else {
-        // log.info("No Image to classify...");
-      }
-      // TODO: see why there's a race condition. i seem to need a little delay
-      // here o/w the recognition never seems to start.
-      // maybe lastImage needs to be marked as volatile ?
-      try {
-        Thread.sleep(1);
-      } catch (InterruptedException e) {
-        log.debug("DL4J Filter thread interrupted.", e);
-      }
+    if (vgg16 != null) {
+      vgg16.release();
+      vgg16 = null;
     }
   }
 
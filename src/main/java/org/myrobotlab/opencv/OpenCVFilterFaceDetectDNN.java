@@ -25,10 +25,7 @@
 
 package org.myrobotlab.opencv;
 
-import static org.bytedeco.opencv.global.opencv_core.CV_32F;
-import static org.bytedeco.opencv.global.opencv_dnn.blobFromImage;
 import static org.bytedeco.opencv.global.opencv_dnn.readNetFromCaffe;
-import static org.bytedeco.opencv.global.opencv_imgproc.resize;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -38,14 +35,18 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.opencv.opencv_core.IplImage;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_core.Scalar;
 import org.bytedeco.opencv.opencv_core.Size;
-import org.bytedeco.opencv.opencv_dnn.Net;
 import org.myrobotlab.document.Classification;
+import org.myrobotlab.opencv.InferenceExecutor.Model;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.geometry.Rectangle;
 import org.slf4j.Logger;
@@ -58,7 +59,11 @@ public class OpenCVFilterFaceDetectDNN extends OpenCVFilter {
 
   private String FACE_LABEL = "face";
 
-  transient private Net net;
+  /**
+   * the net in the shared InferenceExecutor - frames of all cameras with this
+   * filter are batched
+   */
+  transient private Model<Mat, Mat> net;
   /**
    * bounding boxes of faces
    */
@@ -73,8 +78,14 @@ public class OpenCVFilterFaceDetectDNN extends OpenCVFilter {
   double threshold = .2;
 
   boolean netError = false;
+
+  /**
+   * ms a frame waits for its detections - the first frame includes reading
+   * the net
+   */
+  long timeoutMs = 10000;
+
   transient private CloseableFrameConverter converter1 = new CloseableFrameConverter();
-  transient private CloseableFrameConverter converter2 = new CloseableFrameConverter();
 
   public OpenCVFilterFaceDetectDNN() {
     this(null);
@@ -85,6 +96,10 @@ public class OpenCVFilterFaceDetectDNN extends OpenCVFilter {
     loadModel();
   }
 
+  /**
+   * checks the model files - the net is read by the InferenceExecutor on the
+   * first frame
+   */
   public void loadModel() {
     // log.info("loading DNN caffee model for face recogntion..");
     if (!new File(protoTxt).exists()) {
@@ -95,8 +110,25 @@ public class OpenCVFilterFaceDetectDNN extends OpenCVFilter {
       log.warn("Caffe DNN Face Detector model not found {}", model);
       return;
     }
-    net = readNetFromCaffe(protoTxt, model);
-    log.info("Caffe DNN Face Detector model loaded.");
+    if (net != null) {
+      // a new model file - registered again on the next frame
+      net.release();
+      net = null;
+    }
+    netError = false;
+  }
+
+  private Model<Mat, Mat> getNet() {
+    if (net == null && new File(protoTxt).exists() && new File(model).exists()) {
+      String proto = protoTxt;
+      String caffeModel = model;
+      // input of the model - 300 x 300 mean subtracted bgr
+      net = getInferenceModel("facedetectdnn:" + caffeModel, () -> new DnnBatchModel(() -> {
+        log.info("Caffe DNN Face Detector model loaded.");
+        return readNetFromCaffe(proto, caffeModel);
+      }, 1.0, new Size(300, 300), new Scalar(104.0, 177.0, 123.0, 0), false, null, DnnBatchModel.Output.DETECTIONS));
+    }
+    return net;
   }
 
   @Override
@@ -105,8 +137,9 @@ public class OpenCVFilterFaceDetectDNN extends OpenCVFilter {
   }
 
   @Override
-  public IplImage process(IplImage image) {
+  public IplImage process(IplImage image) throws InterruptedException {
 
+    Model<Mat, Mat> net = getNet();
     if (net == null) {
       if (netError == false) {
         log.error("DNN net is not ready !");
@@ -117,48 +150,41 @@ public class OpenCVFilterFaceDetectDNN extends OpenCVFilter {
 
     int h = image.height();
     int w = image.width();
-    // TODO: cv2.resize(image, (300, 300))
-    Mat srcMat = converter1.toMat(image);
-    Mat inputMat = new Mat();
-    resize(srcMat, inputMat, new Size(300, 300));// resize the image to match
-    // the input size of the model
-    // create a 4-dimensional blob from image with NCHW (Number of images in the
-    // batch -for training only-, Channel, Height, Width)
-    // dimensions order,
-    // for more details read the official docs at
-    // https://docs.opencv.org/trunk/d6/d0f/group__dnn.html#gabd0e76da3c6ad15c08b01ef21ad55dd8
-    Mat blob = blobFromImage(inputMat, 1.0, new Size(300, 300), new Scalar(104.0, 177.0, 123.0, 0), false, false, CV_32F);
-    // log.info("Input Blob : {}", blob);
-    // set the input to network model
-    if (blob == null) {
+    // the net gets a copy - the image goes back to the pool with its frame,
+    // possibly before a slow net is done with it
+    Mat srcMat = converter1.toMat(image).clone();
+    // a 4-dimensional blob (NCHW) of the frames batched with this one, resized
+    // to the 300 x 300 input of the model, goes through the net - this frame
+    // gets its (number of detections x 7) rows of the output
+    CompletableFuture<Mat> future = net.submit(srcMat);
+    future.whenComplete((detections, error) -> srcMat.close());
+    Mat ne;
+    try {
+      ne = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (netError == false) {
+        log.error("DNN net failed", e.getCause());
+        netError = true;
+      }
+      return image;
+    } catch (TimeoutException e) {
+      if (netError == false) {
+        log.error("DNN net took more than {} ms", timeoutMs);
+        netError = true;
+      }
+      // the net still has its copy of the frame
+      future.whenComplete((detections, error) -> {
+        if (detections != null) {
+          detections.close();
+        }
+      });
       return image;
     }
-
-    net.setInput(blob);
-    // feed forward the input to the network to get the output matrix
-    Mat output = net.forward();
-    Mat ne = new Mat(new Size(output.size(3), output.size(2)), CV_32F, output.ptr(0, 0));// extract
-    // a
-    // 2d
-    // matrix
-    // for
-    // 4d
-    // output
-    // matrix
-    // with
-    // form
-    // of
-    // (number
-    // of
-    // detections
-    // x
-    // 7)
     FloatIndexer srcIndexer = ne.createIndexer(); // create indexer to access
     // elements of the matrix
-    // log.info("Output Size: {}", output.size(3));
     bb.clear();
     classifications.clear();
-    for (int i = 0; i < output.size(3); i++) {// iterate to extract elements
+    for (int i = 0; i < ne.rows(); i++) {// iterate to extract elements
       float confidence = srcIndexer.get(i, 2);
       // log.info("Getting element {} confidence {}", i, confidence);
       float f1 = srcIndexer.get(i, 3);
@@ -197,17 +223,20 @@ public class OpenCVFilterFaceDetectDNN extends OpenCVFilter {
     if (classifications.size() > 0) {
       publishClassification(classifications);
     }
-    IplImage result = converter2.toImage(srcMat);
+    srcIndexer.close();
     ne.close();
-    return result;
+    return image;
   }
 
   @Override
   public void release() {
     // TODO Auto-generated method stub
     super.release();
+    if (net != null) {
+      net.release();
+      net = null;
+    }
     converter1.close();
-    converter2.close();
   }
 
   @Override
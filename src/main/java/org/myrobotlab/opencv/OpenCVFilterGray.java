@@ -25,7 +25,7 @@
 
 package org.myrobotlab.opencv;
 
-import static org.bytedeco.opencv.global.opencv_core.cvCreateImage;
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_8U;
 import static org.bytedeco.opencv.global.opencv_imgproc.CV_BGR2GRAY;
 import static org.bytedeco.opencv.global.opencv_imgproc.cvCvtColor;
 
@@ -42,8 +42,6 @@ public class OpenCVFilterGray extends OpenCVFilter {
 
   public final static Logger log = LoggerFactory.getLogger(OpenCVFilterGray.class);
 
-  transient IplImage gray = null;
-
   public OpenCVFilterGray(String name) {
     super(name);
   }
@@ -54,13 +52,13 @@ public class OpenCVFilterGray extends OpenCVFilter {
 
   @Override
   public void imageChanged(IplImage image) {
-    gray = cvCreateImage(image.cvSize(), 8, 1);
   }
 
   @Override
   public IplImage process(IplImage image) {
 
     if (image.nChannels() == 3) {
+      IplImage gray = getPooledImage(image.width(), image.height(), IPL_DEPTH_8U, 1);
       cvCvtColor(image, gray, CV_BGR2GRAY);
       return gray;
     }
@@ -10,8 +10,10 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.bytedeco.opencv.opencv_core.AbstractCvScalar;
 import org.bytedeco.opencv.opencv_core.CvScalar;
@@ -23,6 +25,8 @@ import org.deeplearning4j.nn.modelimport.keras.exceptions.InvalidKerasConfigurat
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.geometry.Rectangle;
+import org.myrobotlab.opencv.InferenceExecutor.BatchModel;
+import org.myrobotlab.opencv.InferenceExecutor.Model;
 import org.myrobotlab.service.Deeplearning4j;
 import org.myrobotlab.service.Runtime;
 import org.slf4j.Logger;
@@ -34,15 +38,38 @@ import org.slf4j.Logger;
  * @author kwatters
  *
  */
-public class OpenCVFilterMiniXception extends OpenCVFilter implements Runnable {
+public class OpenCVFilterMiniXception extends OpenCVFilter {
 
   private static final long serialVersionUID = 1L;
   public transient final static Logger log = LoggerFactory.getLogger(OpenCVFilterMiniXception.class.getCanonicalName());
   private transient Deeplearning4j dl4j;
   private transient CvFont font = cvFont(CV_FONT_HERSHEY_PLAIN);
-  protected Boolean running;
   public Map<String, Double> lastResult = null;
-  private volatile IplImage lastImage = null;
+  /**
+   * a face to classify with the confidence of the filter submitting it - the
+   * model is shared by the filters
+   */
+  static class Face {
+    final IplImage image;
+    final double confidence;
+
+    Face(IplImage image, double confidence) {
+      this.image = image;
+      this.confidence = confidence;
+    }
+  }
+
+  /**
+   * mini XCEPTION in the shared InferenceExecutor - null if it could not be
+   * loaded
+   */
+  private transient Model<Face, Map<String, Double>> miniXception;
+  /**
+   * faces being classified - null when the next can be submitted
+   */
+  private transient volatile CompletableFuture<Void> pending = null;
+  private transient int count = 0;
+  private transient long start = System.currentTimeMillis();
   // the additional border around the face detection to include in the emotion
   // classification. (in pixels)
   private int boxSlop = 10;
@@ -68,10 +95,29 @@ public class OpenCVFilterMiniXception extends OpenCVFilter implements Runnable {
       return;
     }
     log.info("Done loading model..");
-    // start classifier thread
-    Thread classifier = new Thread(this, "DL4JMiniXceptionClassifierThread");
-    classifier.start();
-    log.info("DL4J Mini Xception Classifier thread started : {}", this.name);
+    // dl4j classifies an image at a time - the faces of a frame are classified
+    // in turn
+    Deeplearning4j service = dl4j;
+    miniXception = getInferenceModel("dl4j.miniXception:" + service.getName(), () -> new BatchModel<Face, Map<String, Double>>() {
+      @Override
+      public List<Map<String, Double>> infer(List<Face> faces) throws Exception {
+        List<Map<String, Double>> results = new ArrayList<>();
+        for (Face face : faces) {
+          try {
+            results.add(service.classifyImageMiniEXCEPTION(face.image, face.confidence));
+          } finally {
+            face.image.deallocate();
+          }
+        }
+        return results;
+      }
+
+      @Override
+      public void discard(Face face) {
+        face.image.deallocate();
+      }
+    });
+    log.info("DL4J Mini Xception classifier registered : {}", this.name);
   }
 
   @Override
@@ -84,14 +130,14 @@ public class OpenCVFilterMiniXception extends OpenCVFilter implements Runnable {
     }
 
     // there's something currently being processed.. skip
-    if (lastImage != null) {
+    if (miniXception == null || pending != null) {
       return image;
     }
-    // here we want to update the lastImage as the one with the bounding box.
+    // here we want to classify the faces in the bounding boxes.
     List<Rectangle> boxes = data.getBoundingBoxArray();
-    // we should grab the center of the first box..
-    // crop a square around that center.. and set that as the last image to pass
-    // to the emotion detector.
+    // we should grab the center of each box..
+    // crop a square around that center.. and pass it to the emotion detector.
+    List<Face> faces = new ArrayList<>();
     if (boxes != null) {
       for (Rectangle box : boxes) {
         // log.info("Processing Box : {}", box);
@@ -103,17 +149,47 @@ public class OpenCVFilterMiniXception extends OpenCVFilter implements Runnable {
         // int miniExceptionWidth = 64;
         Rect miniBox = new Rect(x - miniExceptionWidth / 2, y - miniExceptionWidth / 2, miniExceptionWidth, miniExceptionWidth);
         // now.. we need to crap the image for this bounding box..
-        lastImage = extractSubImage(converter1.toMat(image), miniBox);
+        faces.add(new Face(extractSubImage(converter1.toMat(image), miniBox), confidence));
         // Here
       }
     }
+    if (faces.isEmpty()) {
+      return image;
+    }
+
+    // the faces of the frame are submitted together
+    List<CompletableFuture<Map<String, Double>>> futures = miniXception.submitAll(faces);
+    CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    pending = all;
+    // runs on the thread of the model
+    all.whenComplete((v, e) -> {
+      pending = null;
+      if (e != null) {
+        log.warn("Exception classifying image!", e);
+        return;
+      }
+      for (CompletableFuture<Map<String, Double>> future : futures) {
+        lastResult = future.join();
+        count++;
+        // Sort this lastResult based on it's value..
+        if (count % 100 == 0) {
+          double rate = 1000.0 * count / (System.currentTimeMillis() - start);
+          log.info("DL4J Filter Rate: {}", rate);
+        }
+        invoke("publishClassification", lastResult);
+        if (lastResult != null && lastResult.size() > 0)
+          log.info(formatResultString(lastResult));
+      }
+    });
 
     return image;
   }
 
   private IplImage extractSubImage(Mat inputMat, Rect boundingBox) {
     Mat cropped = new Mat(inputMat, boundingBox);
-    IplImage image = converter2.toImage(cropped);
+    // a copy - the converter re-uses its image and the crop is classified
+    // later
+    IplImage image = converter2.toImage(cropped).clone();
     show(image, "sub image from miniXception.");
     return image;
   }
@@ -155,71 +231,14 @@ public class OpenCVFilterMiniXception extends OpenCVFilter implements Runnable {
 
   @Override
   public void release() {
-    running = false;
+    if (miniXception != null) {
+      miniXception.release();
+      miniXception = null;
+    }
     converter1.close();
     converter2.close();
-    if (dl4j != null) {
-      dl4j.releaseService();
-    }
-  }
-
-  @Override
-  public void run() {
-
-    int count = 0;
-    long start = System.currentTimeMillis();
-    log.info("Starting the DL4J classifier thread...");
-    running = true;
-    // in a loop, grab the current image and classify it and update the result.
-    while (running) {// FIXME - must be able to release !!
-
-      if (!enabled) {
-        // sleep to avoid cpu usage
-        // TODO: come up with a better way of doing this (maybe shutdown this
-        // thread and restart when it enables/disbales?)
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-          log.info("Dl4j classifier thread interrupted", e);
-        }
-        continue;
-      }
-      // log.info("Running!!!");
-      // now we need to know which image we should classify
-      // there likely needs to be some synchronization on this too.. o/w the
-      // main thread will
-      // be updating it while it's being classified maybe?!
-      if (lastImage != null) {
-        try {
-          count++;
-          lastResult = dl4j.classifyImageMiniEXCEPTION(lastImage, confidence);
-          // Sort this lastResult based on it's value..
-          if (count % 100 == 0) {
-            double rate = 1000.0 * count / (System.currentTimeMillis() - start);
-            log.info("DL4J Filter Rate: {}", rate);
-          }
-          invoke("publishClassification", lastResult);
-          if (lastResult != null && lastResult.size() > 0)
-            log.info(formatResultString(lastResult));
-        } catch (IOException e) {
-          log.warn("Exception classifying image!", e);
-        }
-        // at this point, presumably we've finished classifying this image.. we
-        // should null it out.
-        lastImage = null;
-      } else {
-        // log.info("No Image to classify...");
-      }
-      // TODO: see why there's a race condition. i seem to need a little delay
-      // here o/w the recognition never seems to start.
-      // maybe lastImage needs to be marked as volatile ?
-      try {
-        Thread.sleep(1);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      }
-    }
+    // the dl4j service is shared with the other dl4j filters - it keeps running
+    dl4j = null;
   }
 
   @Override
@@ -45,8 +45,6 @@ public class OpenCVFilterResize extends OpenCVFilter {
 
   private static final long serialVersionUID = 1L;
 
-  transient IplImage resized;
-
   private int destWidth = 480;
   private int destHeight = 640;
   // TODO: why the heck do we need to convert back and forth, and is this
@@ -66,7 +64,6 @@ public class OpenCVFilterResize extends OpenCVFilter {
 
   @Override
   public void imageChanged(IplImage image) {
-    resized = AbstractIplImage.createCompatible(image);
   }
 
   private Mat resizeImage(Mat img, int w, int h) {
@@ -81,9 +78,9 @@ public class OpenCVFilterResize extends OpenCVFilter {
 
   @Override
   public IplImage process(IplImage image) {
-    Mat resizedMat = converterToMat.convertToMat(converterToIpl.convert(image));
-    Mat res = resizeImage(resizedMat, destWidth, destHeight);
-    return converterToMat.convertToIplImage(converterToIpl.convert(res));
+    IplImage resized = getPooledImage(destWidth, destHeight, image.depth(), image.nChannels());
+    cvResize(image, resized);
+    return resized;
   }
 
   public static IplImage resizeImage(final IplImage img, float percent) {
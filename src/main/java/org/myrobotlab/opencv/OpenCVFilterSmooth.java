@@ -41,8 +41,6 @@ public class OpenCVFilterSmooth extends OpenCVFilter {
 
   public final static Logger log = LoggerFactory.getLogger(OpenCVFilterSmooth.class.getCanonicalName());
 
-  transient IplImage buffer = null;
-
   public OpenCVFilterSmooth() {
     super();
   }
@@ -62,9 +60,12 @@ public class OpenCVFilterSmooth extends OpenCVFilter {
 
     // cvDrawRect(image, startPoint, startPoint,
     // fillColor, 2, 1, 0);
-    cvSmooth(image, image, CV_GAUSSIAN, 9, 7, 7, 1);
+    // not in place - the input stays as it was for other filters and the
+    // display
+    IplImage smoothed = getPooledImage(image);
+    cvSmooth(image, smoothed, CV_GAUSSIAN, 9, 7, 7, 1);
 
-    return image;
+    return smoothed;
 
   }
 
@@ -1,7 +1,5 @@
 package org.myrobotlab.opencv;
 
-import static org.bytedeco.opencv.global.opencv_core.CV_32F;
-import static org.bytedeco.opencv.global.opencv_dnn.blobFromImage;
 import static org.bytedeco.opencv.global.opencv_dnn.readNetFromDarknet;
 
 import java.awt.Color;
@@ -16,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 import org.bytedeco.javacv.OpenCVFrameConverter;
 import org.bytedeco.opencv.opencv_core.IplImage;
@@ -25,24 +24,26 @@ import org.bytedeco.opencv.opencv_core.Scalar;
 import org.bytedeco.opencv.opencv_core.Size;
 import org.bytedeco.opencv.opencv_dnn.Net;
 import org.myrobotlab.document.Classification;
-import org.myrobotlab.framework.Service;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.geometry.Rectangle;
+import org.myrobotlab.opencv.InferenceExecutor.Model;
 import org.slf4j.Logger;
 
-public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
+/**
+ * yolo object detection - frames are classified by the shared
+ * InferenceExecutor while the filter goes on with the next frames, a frame is
+ * submitted when the previous one is done
+ *
+ */
+public class OpenCVFilterYolo extends OpenCVFilter {
 
   private static final long serialVersionUID = 1L;
   public final static Logger log = LoggerFactory.getLogger(OpenCVFilterYolo.class);
 
-  protected Boolean running;
-
   // zero offset to where the confidence level is in the output matrix of the
   // darknet.
   private static final int CONFIDENCE_INDEX = 4;
 
-  transient private final OpenCVFrameConverter.ToIplImage grabberConverter = new OpenCVFrameConverter.ToIplImage();
-
   private float confidenceThreshold = 0.25F;
   // the column in the detection matrix that contains the confidence level. (I
   // think?)
@@ -58,48 +59,68 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
   public String modelWeights = "yolov2.weights";
   public String modelNames = "coco.names";
 
-  int classifierThreadCount = 0;
-
   transient DecimalFormat df2 = new DecimalFormat("#.###");
 
   transient private OpenCVFrameConverter.ToIplImage converterToIpl = new OpenCVFrameConverter.ToIplImage();
 
   boolean debug = false;
-  transient private Net net;
+  /**
+   * the net in the shared InferenceExecutor
+   */
+  transient private Model<Mat, Mat> net;
   ArrayList<String> classNames;
   public ArrayList<Classification> lastResult = null;
-  transient private volatile IplImage lastImage = null;
-  private volatile boolean pending = false;
-  transient private Thread classifier;
+  /**
+   * frame being classified - null when the next can be submitted
+   */
+  transient private volatile CompletableFuture<Mat> pending = null;
+  transient private CloseableFrameConverter converter = new CloseableFrameConverter();
+  transient private int count = 0;
+  transient private long start = 0;
+  transient private boolean loadError = false;
 
   public OpenCVFilterYolo(String name) {
     super(name);
-    enable(); // start classifier thread
   }
 
   public OpenCVFilterYolo() {
     this(null);
   }
 
-  private void loadYolo() {
-    log.info("loadYolo - begin");
-
-    try {
-      net = readNetFromDarknet(darknetHome + File.separator + modelConfig, darknetHome + File.separator + modelWeights);
-      log.info("Loaded yolo darknet model to opencv");
-    } catch (Exception e) {
-      log.error("readNetFromDarknet could not read", e);
-      return;
+  /**
+   * @return the net registered in the InferenceExecutor - it reads the model
+   *         on the first frame
+   */
+  private Model<Mat, Mat> loadYolo() {
+    if (net != null || loadError) {
+      return net;
     }
+    log.info("loadYolo - begin");
     // load the class names
     try {
       classNames = loadClassNames(darknetHome + File.separator + modelNames);
     } catch (IOException e) {
       log.warn("Error unable to load class names from file {}", modelNames, e);
-      return;
+      loadError = true;
+      return null;
     }
-    log.info("Done loading model..");
+    String cfg = darknetHome + File.separator + modelConfig;
+    String weights = darknetHome + File.separator + modelWeights;
+    // TODO: I think yolo expects RGB color (which is inverted in the blob)
+    // so if the input image isn't in RGB color, we might need a cvCutColor
+    net = getInferenceModel("yolo:" + weights, () -> new DnnBatchModel(() -> {
+      try {
+        Net darknet = readNetFromDarknet(cfg, weights);
+        log.info("Loaded yolo darknet model to opencv");
+        return darknet;
+      } catch (Exception e) {
+        log.error("readNetFromDarknet could not read", e);
+        return null;
+      }
+    }, 1 / 255.0, new Size(416, 416), new Scalar(), true, "detection_out", DnnBatchModel.Output.ROWS));
+    start = System.currentTimeMillis();
     log.info("loadYolo - end");
+    return net;
   }
 
   private ArrayList<String> loadClassNames(String filename) throws IOException {
@@ -122,122 +143,78 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
 
   @Override
   public IplImage process(IplImage image) throws InterruptedException {
-    if (lastResult != null) {
-      // the thread running will be updating lastResult for it as fast as it
-      // can.
-      // displayResult(image, lastResult);
+    // only the latest frame is classified - frames coming while the previous
+    // one is classified are not
+    if (!enabled || pending != null) {
+      return image;
     }
-    // ok now we just need to update the image that the current thread is
-    // processing (if the current thread is idle i guess?)
-    lastImage = image;
-    if (enabled) {
-      pending = true;
+    Model<Mat, Mat> net = loadYolo();
+    if (net == null) {
+      return image;
     }
-    return image;
-  }
-
-  @Override
-  public void imageChanged(IplImage image) {
-  }
-
-  @Override
-  public void run() {
-    log.info("yolo run - begin");
-    try {
-      int count = 0;
-      long start = System.currentTimeMillis();
-      loadYolo();
-      log.info("Starting the Yolo classifier thread...");
-      // in a loop, grab the current image and classify it and update the
-      // result.
-      running = true;
-      // loading the model takes a lot of time, we want to block enable/disable
-      // until we are actually running - then we notifyAll
-
-      while (running && enabled) {
-        if (!pending) {
-          log.debug("Skipping frame");
-          Thread.sleep(10);
-          continue;
+    // a copy - the frame's buffers are re-used once it's done
+    Mat inputMat = converter.toMat(image).clone();
+    String id = String.format("%s.%s-%d", data.getName(), name, data.getFrameIndex());
+    CompletableFuture<Mat> future = net.submit(inputMat);
+    pending = future;
+    // runs on the thread of the model
+    future.whenComplete((detectionMat, e) -> {
+      try {
+        if (e != null) {
+          // failed or cancelled - the copy is not used
+          inputMat.close();
+          log.error("yolo classification failed", e);
+          return;
+        }
+        lastResult = yoloFrame(detectionMat, inputMat, id);
+        detectionMat.close();
+        count++;
+        if (count % 10 == 0) {
+          double rate = 1000.0 * count / (System.currentTimeMillis() - start);
+          log.info("Yolo Classification Rate : {}", rate);
         }
 
-        log.info("process - begin");
-        // only classify this if we haven't already classified it.
-        if (lastImage != null) {
-          // lastResult = dl4j.classifyImageVGG16(lastImage);
-          log.debug("Doing yolo...");
-          lastResult = yoloFrame(lastImage);
-          // log.info("Yolo done.");
-          // we processed, next object we'll pick up.
-          pending = false;
-          count++;
-          if (count % 10 == 0) {
-            double rate = 1000.0 * count / (System.currentTimeMillis() - start);
-            log.info("Yolo Classification Rate : {}", rate);
-          }
-
-          Map<String, List<Classification>> ret = new TreeMap<>();
-          for (Classification c : lastResult) {
-            List<Classification> nl = null;
-            if (ret.containsKey(c.getLabel())) {
-              nl = ret.get(c.getLabel());
-            } else {
-              nl = new ArrayList<>();
-              ret.put(c.getLabel(), nl);
-            }
-            nl.add(c);
+        Map<String, List<Classification>> ret = new TreeMap<>();
+        for (Classification c : lastResult) {
+          List<Classification> nl = null;
+          if (ret.containsKey(c.getLabel())) {
+            nl = ret.get(c.getLabel());
+          } else {
+            nl = new ArrayList<>();
+            ret.put(c.getLabel(), nl);
           }
-
-          invoke("publishClassification", ret);
-        } else {
-          log.info("No Image to classify...");
+          nl.add(c);
         }
-        // TODO: see why there's a race condition. i seem to need a little delay
-        // here o/w the recognition never seems to start.
-        // maybe lastImage needs to be marked as volatile ?
-
-        Thread.sleep(1);
-      } // while (running)
 
-    } catch (Exception e) {
-      log.error("yolo thread threw", e);
-    }
-
-    synchronized (lock) {
-      classifier = null;
-    }
+        invoke("publishClassification", ret);
+      } catch (Exception ex) {
+        log.error("yolo classification threw", ex);
+      } finally {
+        pending = null;
+      }
+    });
+    return image;
+  }
 
-    log.info("yolo exiting classifier thread");
-    log.info("run - end");
+  @Override
+  public void imageChanged(IplImage image) {
   }
 
-  private ArrayList<Classification> yoloFrame(IplImage frame) {
-    log.debug("Starting yolo on frame...");
-    log.info("yoloFrame - begin");
+  /**
+   * @param detectionMat
+   *          the rows of the detection_out layer for the frame
+   * @param inputMat
+   *          the frame
+   * @param id
+   *          id of the classifications
+   * @return the objects detected
+   */
+  private ArrayList<Classification> yoloFrame(Mat detectionMat, Mat inputMat, String id) {
+    log.debug("yoloFrame - begin");
     // this is our list of objects that have been detected in a given frame.
     ArrayList<Classification> yoloObjects = new ArrayList<Classification>();
-    // convert that frame to a matrix (Mat) using the frame converters in javacv
-
-    log.info("yoloFrame - grabberConverter {}", frame);
-    // log.info("Yolo frame start");
-    Mat inputMat = grabberConverter.convertToMat(grabberConverter.convert(frame));
-    // log.info("Input mat created");
-    // TODO: I think yolo expects RGB color (which is inverted in the next step)
-    // so if the input image isn't in RGB color, we might need a cvCutColor
-    log.info("yoloFrame - blobFromImage");
-    Mat inputBlob = blobFromImage(inputMat, 1 / 255.F, new Size(416, 416), new Scalar(), true, false, CV_32F);
-    // put our frame/input blob into the model.
-    // log.info("input blob created");
-    log.info("yoloFrame - blob {}", inputBlob);
-    net.setInput(inputBlob);
-
-    log.debug("Feed forward!");
-    // log.info("Input blob set on network.");
-    // ask for the detection_out layer i guess? not sure the details of the
-    // forward method, but this computes everything like magic!
-    Mat detectionMat = net.forward("detection_out");
-    // log.info("output detection matrix produced");
-    log.debug("detection matrix computed");
+    // the frame went through the net (as part of a batch) in the
+    // InferenceExecutor - each row of the detection matrix is a box
     // iterate the rows of the detection matrix.
     for (int i = 0; i < detectionMat.rows(); i++) {
       Mat currentRow = detectionMat.row(i);
@@ -308,18 +285,18 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
             debug = false;
             show(cropped, "detected img");
           }
-          Classification obj = new Classification(String.format("%s.%s-%d", data.getName(), name, data.getFrameIndex()));
+          Classification obj = new Classification(id);
           obj.setLabel(label);
           obj.setBoundingBox(xLeftBottom, yLeftBottom, xRightTop - xLeftBottom, yRightTop - yLeftBottom);
           obj.setConfidence(confidence);
           // obj.setImage(data.getDisplay());
           // for non-serializable "local" image objects
-          obj.setObject(frame);
+          obj.setObject(converterToIpl.convertToIplImage(converterToIpl.convert(inputMat)));
           yoloObjects.add(obj);
         }
       }
     }
-    log.info("yoloFrame - end");
+    log.debug("yoloFrame - end");
     return yoloObjects;
   }
 
@@ -341,54 +318,15 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
 
   @Override
   public void release() {
-    // synchronized (lock) {
     log.info("release - begin");
-    disable(); // blocks until ready
-
-    // while(isRunning){ sleep(30) .. check again }
-    // bleed out the thread before deallocating
-
+    disable();
+    // a frame being classified is cancelled
     if (net != null) {
-      net.deallocate();
+      net.release();
       net = null;
     }
+    converter.close();
     log.info("release - end");
-    // }
-  }
-
-  volatile Object lock = new Object();
-
-  @Override
-  public void enable() {
-    if (classifier != null) {
-      // already enabled
-      return;
-    }
-    log.info("enabling yolo");
-    synchronized (lock) {
-      log.info("enable - begin");
-      super.enable();
-      if (classifier == null) {
-        classifier = new Thread(this, "YoloClassifierThread");
-        classifier.start();
-      }
-      log.info("enable - end");
-    }
-  }
-
-  @Override
-  public void disable() {
-    super.disable();
-    if (classifier == null) {
-      // already disabled
-      return;
-    }
-    int waitTime = 0;    
-    while (classifier != null && waitTime < 1000) {
-      ++waitTime;
-      Service.sleep(10);
-    }
-    log.info("capture - waited {} times", waitTime);
   }
 
   @Override
@@ -0,0 +1,389 @@
+package org.myrobotlab.sensor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.abstracts.ServoMoveBatch;
+import org.slf4j.Logger;
+
+/**
+ * One timer thread for all servo motions (trajectory estimation and encoder
+ * publishing) instead of a thread per servo. Motions are kept on a hashed
+ * timing wheel - a ring of buckets each holding the motions due on ticks
+ * which hash to it - so a tick only looks at the motions due then.
+ *
+ * <pre>
+ * ticks are on a fixed grid (start + n * tickMs) and a motion runs on the
+ * ticks which are multiples of its interval - after their first tick, motions
+ * with the same interval run in lockstep instead of drifting apart
+ *
+ * the motions due on a tick run in one ServoMoveBatch - servo moves they
+ * start (e.g. synced servos) go out as one message per controller
+ * </pre>
+ *
+ * Latency (how late a tick started) and overruns (a tick started a full tick
+ * late or took longer than a tick) are in getStats, and go to the stats
+ * listener about once a second - the shared scheduler publishes them as
+ * Runtime.publishMotionStats.
+ */
+public class MotionScheduler implements Runnable {
+
+  public final static Logger log = LoggerFactory.getLogger(MotionScheduler.class);
+
+  /**
+   * a motion run by the scheduler
+   */
+  public interface Motion {
+    /**
+     * @param now
+     *          ms timestamp of the tick
+     * @return false when done - it is not run again
+     */
+    boolean tick(long now);
+  }
+
+  /**
+   * a scheduled motion - cancel it to stop it
+   */
+  public static class Scheduled {
+    final Motion motion;
+    final int intervalTicks;
+    long deadline;
+    volatile boolean cancelled = false;
+
+    Scheduled(Motion motion, int intervalTicks) {
+      this.motion = motion;
+      this.intervalTicks = intervalTicks;
+    }
+
+    public void cancel() {
+      cancelled = true;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+
+  public static class Stats implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public long tickMs;
+    public long ticks;
+    /**
+     * motions on the wheel
+     */
+    public int motions;
+    /**
+     * motions run on the last tick
+     */
+    public int lastRun;
+    /**
+     * how late the last tick started
+     */
+    public long latencyUs;
+    public long maxLatencyUs;
+    /**
+     * how long the last tick took
+     */
+    public long durationUs;
+    public long maxDurationUs;
+    /**
+     * ticks started a full tick late or which took longer than a tick
+     */
+    public long overruns;
+  }
+
+  static MotionScheduler instance = null;
+
+  final String name;
+
+  final long tickMs;
+
+  final long tickNanos;
+
+  /**
+   * nano time of the ticks - System.nanoTime unless a test drives them
+   */
+  final LongSupplier clock;
+
+  /**
+   * false when ticks are driven by calling step - no timer thread
+   */
+  final boolean timer;
+
+  volatile Consumer<Stats> statsListener = null;
+
+  final List<List<Scheduled>> wheel = new ArrayList<>();
+
+  /**
+   * scheduled from other threads - put on the wheel by the timer thread
+   */
+  final ConcurrentLinkedQueue<Scheduled> added = new ConcurrentLinkedQueue<>();
+
+  // below only touched by the timer thread
+  long tick = 0;
+
+  int size = 0;
+
+  final Stats stats = new Stats();
+
+  transient Thread thread = null;
+
+  volatile boolean running = false;
+
+  /**
+   * @return the scheduler shared by all servos
+   */
+  public static synchronized MotionScheduler getInstance() {
+    if (instance == null) {
+      instance = new MotionScheduler("motion-scheduler", 20, 64);
+      instance.setStatsListener(stats -> Runtime.getInstance().invoke("publishMotionStats", stats));
+    }
+    return instance;
+  }
+
+  /**
+   * @param name
+   *          name of the timer thread
+   * @param tickMs
+   *          resolution
+   * @param buckets
+   *          size of the wheel - motions further out than buckets ticks go
+   *          around it more than once
+   */
+  public MotionScheduler(String name, long tickMs, int buckets) {
+    this(name, tickMs, buckets, System::nanoTime, true);
+  }
+
+  /**
+   * @param name
+   *          name of the timer thread
+   * @param tickMs
+   *          resolution
+   * @param buckets
+   *          size of the wheel
+   * @param clock
+   *          nano time
+   * @param timer
+   *          false to drive the ticks with step instead of a timer thread
+   */
+  MotionScheduler(String name, long tickMs, int buckets, LongSupplier clock, boolean timer) {
+    this.name = name;
+    this.clock = clock;
+    this.timer = timer;
+    this.tickMs = tickMs;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+    for (int i = 0; i < buckets; ++i) {
+      wheel.add(new ArrayList<>());
+    }
+    stats.tickMs = tickMs;
+  }
+
+  /**
+   * runs a motion every intervalMs, starting on the next tick, until it is
+   * done or cancelled
+   *
+   * @param motion
+   *          the motion
+   * @param intervalMs
+   *          rounded to whole ticks
+   * @return handle to cancel it
+   */
+  public Scheduled schedule(Motion motion, long intervalMs) {
+    Scheduled s = new Scheduled(motion, (int) Math.max(1, Math.round((double) intervalMs / tickMs)));
+    added.add(s);
+    synchronized (this) {
+      if (timer && thread == null) {
+        running = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+      }
+      // wake it if idle
+      notifyAll();
+    }
+    return s;
+  }
+
+  public long getTickMs() {
+    return tickMs;
+  }
+
+  /**
+   * @param listener
+   *          gets the stats about once a second while motions run
+   */
+  public void setStatsListener(Consumer<Stats> listener) {
+    statsListener = listener;
+  }
+
+  public Stats getStats() {
+    synchronized (stats) {
+      Stats copy = new Stats();
+      copy.tickMs = stats.tickMs;
+      copy.ticks = stats.ticks;
+      copy.motions = stats.motions;
+      copy.lastRun = stats.lastRun;
+      copy.latencyUs = stats.latencyUs;
+      copy.maxLatencyUs = stats.maxLatencyUs;
+      copy.durationUs = stats.durationUs;
+      copy.maxDurationUs = stats.maxDurationUs;
+      copy.overruns = stats.overruns;
+      return copy;
+    }
+  }
+
+  public synchronized void stop() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    long next = clock.getAsLong();
+    try {
+      while (running) {
+        // nothing to do - sleep until something is scheduled
+        synchronized (this) {
+          while (running && size == 0 && added.isEmpty()) {
+            wait();
+            next = clock.getAsLong();
+          }
+        }
+
+        long wait = next - clock.getAsLong();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+          if (Thread.interrupted()) {
+            break;
+          }
+          continue;
+        }
+
+        long late = clock.getAsLong() - next;
+        // a whole tick behind - catch up the grid instead of bursting ticks
+        if (late >= tickNanos) {
+          next += (late / tickNanos) * tickNanos;
+        }
+        step(late);
+        next += tickNanos;
+      }
+    } catch (InterruptedException e) {
+      log.info("stopping {}", name);
+    }
+    synchronized (this) {
+      thread = null;
+    }
+  }
+
+  /**
+   * one tick of the timer - runs the due motions and records the stats
+   *
+   * @param lateNanos
+   *          how late the tick started
+   * @return number of motions run
+   */
+  int step(long lateNanos) {
+    long start = clock.getAsLong();
+    int ran = tick(System.currentTimeMillis());
+    long duration = clock.getAsLong() - start;
+
+    boolean report = false;
+    synchronized (stats) {
+      ++stats.ticks;
+      stats.motions = size;
+      stats.lastRun = ran;
+      stats.latencyUs = lateNanos / 1000;
+      stats.maxLatencyUs = Math.max(stats.maxLatencyUs, stats.latencyUs);
+      stats.durationUs = duration / 1000;
+      stats.maxDurationUs = Math.max(stats.maxDurationUs, stats.durationUs);
+      if (lateNanos >= tickNanos || duration > tickNanos) {
+        ++stats.overruns;
+      }
+      report = stats.ticks % Math.max(1, 1000 / tickMs) == 0;
+    }
+    Consumer<Stats> listener = statsListener;
+    if (report && listener != null) {
+      try {
+        listener.accept(getStats());
+      } catch (Exception e) {
+        log.error("{} stats listener threw", name, e);
+      }
+    }
+    return ran;
+  }
+
+  /**
+   * runs the motions due now
+   *
+   * @param now
+   *          ms timestamp of the tick
+   * @return number of motions run
+   */
+  int tick(long now) {
+    ++tick;
+    Scheduled s;
+    while ((s = added.poll()) != null) {
+      if (!s.cancelled) {
+        s.deadline = tick;
+        add(s);
+      }
+    }
+
+    List<Scheduled> bucket = wheel.get((int) (tick % wheel.size()));
+    if (bucket.isEmpty()) {
+      return 0;
+    }
+
+    // not due yet (further than one turn) stay, the rest run
+    List<Scheduled> due = new ArrayList<>();
+    for (int i = bucket.size() - 1; i >= 0; --i) {
+      Scheduled b = bucket.get(i);
+      if (b.cancelled || b.deadline <= tick) {
+        bucket.remove(i);
+        --size;
+        if (!b.cancelled) {
+          due.add(b);
+        }
+      }
+    }
+
+    int ran = 0;
+    try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+      // scheduled order
+      for (int i = due.size() - 1; i >= 0; --i) {
+        Scheduled d = due.get(i);
+        boolean again = false;
+        try {
+          again = d.motion.tick(now);
+          ++ran;
+        } catch (Exception e) {
+          log.error("{} motion threw", name, e);
+        }
+        if (again && !d.cancelled) {
+          // next multiple of the interval - motions with the same interval
+          // run on the same ticks whenever they started
+          d.deadline = (tick / d.intervalTicks + 1) * d.intervalTicks;
+          add(d);
+        }
+      }
+    }
+    return ran;
+  }
+
+  private void add(Scheduled s) {
+    wheel.get((int) (s.deadline % wheel.size())).add(s);
+    ++size;
+  }
+
+}
@@ -2,7 +2,6 @@ package org.myrobotlab.sensor;
 
 import java.util.Set;
 
-import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.Broadcaster;
 import org.myrobotlab.logging.LoggerFactory;
@@ -13,8 +12,9 @@ import org.slf4j.Logger;
 
 /**
  * TimeEncoder - a universal time encoder used for doing estimations and
- * planning of trajectories and paths. It works on a persistent thread put in a
- * wait state, waiting for requested estimations.
+ * planning of trajectories and paths. Moves are run by the shared
+ * MotionScheduler, which publishes the estimates of all servos in lockstep
+ * ticks - no thread per servo.
  * 
  * @author GroG
  * 
@@ -24,15 +24,22 @@ import org.slf4j.Logger;
  *         multiple calculations/trajectories/encoding for many other services
  *
  */
-public class TimeEncoder implements Runnable, EncoderControl {
+public class TimeEncoder implements MotionScheduler.Motion, EncoderControl {
 
   public final static Logger log = LoggerFactory.getLogger(TimeEncoder.class);
 
   // FIXME - remove type specific references
   EncoderListener servo = null;
 
-  boolean isRunning = false;
-  transient Thread myThread = null;
+  /**
+   * the move being run by the scheduler - null when not moving
+   */
+  transient MotionScheduler.Scheduled scheduled = null;
+
+  /**
+   * the next tick is the first of the move
+   */
+  boolean started = false;
 
   // default max speed
   // Common servos have operating speeds in the range of 0.05 to 0.2 s/60
@@ -92,7 +99,7 @@ public class TimeEncoder implements Runnable, EncoderControl {
   }
 
   // TODO - cool this works deprecate other
-  public long calculateTrajectory(double inBeginPos, double inTargetPos, Double inSpeed) {
+  public synchronized long calculateTrajectory(double inBeginPos, double inTargetPos, Double inSpeed) {
     // find current distance - // make a plan ...
     beginPos = inBeginPos;
     targetPos = inTargetPos;
@@ -125,83 +132,70 @@ public class TimeEncoder implements Runnable, EncoderControl {
 
   // TODO - processTrajectory()
   void processTrajectory(String name) {
-    synchronized (this) { // TODO - change to "this" when not a service
-      // this starts the time encoder thread waiting for move commands
-      // to start the process of processing a "planned move" sequence
-      this.notifyAll();
+    synchronized (this) {
+      stopMove = false;
+      if (!enabled || speedDegreesPerMs == 0) {
+        // FIXME may need some adjustment in this - should a stop event with 0
+        // pos change be sent ?
+        log.info("speed is 0 - not moving");
+        return;
+      }
+      // a new move while moving - the running one picks up the new trajectory
+      if (scheduled == null) {
+        started = true;
+        scheduled = MotionScheduler.getInstance().schedule(this, sampleIntervalMs);
+      }
     }
   }
 
+  /**
+   * one tick of the move - publishes the estimated position
+   */
   @Override
-  public void run() {
-    try {
-
-      isRunning = true;
-      while (isRunning) {
-
-        // wait for next move ...
-        synchronized (this) {
-          stopMove = false;
-          this.wait();
-          stopMove = false;
+  public boolean tick(long ts) {
+    EncoderData d;
+    boolean first;
+    boolean done;
+    synchronized (this) {
+      if (stopMove) {
+        endMoveTs = now;
+      }
+      now = ts;
+      done = stopMove || now >= endMoveTs || !enabled;
+      if (!stopMove) {
+        // speed has +/- direction
+        estimatedPos = beginPos + speedDegreesPerMs * (now - beginMoveTs);
+        if (beginPos < targetPos && estimatedPos > targetPos) {
+          estimatedPos = targetPos;
         }
-
-        if (speedDegreesPerMs == 0) {
-          // FIXME may need some adjustment in this - should a stop event with 0
-          // pos change be sent ?
-          log.info("speed is 0 - not moving");
-          continue;
+        if (beginPos > targetPos && estimatedPos < targetPos) {
+          estimatedPos = targetPos;
         }
+      }
+      first = started;
+      started = false;
+      if (done) {
+        scheduled = null;
+        stopMove = false;
+      }
+      // log.info(String.format("new pos %.2f", estimatedPos)); helpful to
+      // - Kwatters - SHOULD PROBABLY BE -> EncoderData(name, null,
+      // targetPos, estimatedPos) !!!
+      d = new EncoderData(name, null, estimatedPos, estimatedPos);
+    }
 
-        boolean started = true;
-
-        while (now < endMoveTs && isRunning) {
-
-          if (stopMove) {
-            endMoveTs = now;
-            break;
-          }
-
-          now = System.currentTimeMillis();
-          // speed has +/- direction
-          estimatedPos = beginPos + speedDegreesPerMs * (now - beginMoveTs);
-
-          if (beginPos < targetPos && estimatedPos > targetPos) {
-            estimatedPos = targetPos;
-          }
-          if (beginPos > targetPos && estimatedPos < targetPos) {
-            estimatedPos = targetPos;
-          }
-
-          // log.info(String.format("new pos %.2f", estimatedPos)); helpful to
-          // - Kwatters - SHOULD PROBABLY BE -> EncoderData(name, null,
-          // targetPos, estimatedPos) !!!
-          EncoderData d = new EncoderData(name, null, estimatedPos, estimatedPos);
-
-          if (started) {
-            // ((Broadcaster)servo).broadcast("publishedServoStopped",
-            // ServoStatus.SERVO_STOPPED, estimatedPos);
-            ((Broadcaster) servo).broadcast("publishServoStarted", servo.getName(), estimatedPos);
-            started = false;
-          }
-          servo.onEncoderData(d);// FIXME !! - broadcast this
-          Service.sleep(sampleIntervalMs);
-        }
+    if (first && !done) {
+      ((Broadcaster) servo).broadcast("publishServoStarted", servo.getName(), estimatedPos);
+    }
+    servo.onEncoderData(d);// FIXME !! - broadcast this
 
-        // when we are leaving - its a "finished move"
-        // log.info("finished moved");
-        EncoderData d = new EncoderData(name, null, estimatedPos, estimatedPos);
-        servo.onEncoderData(d);
-        // ((Broadcaster)servo).broadcast("publishedServoStopped",
-        // ServoStatus.SERVO_STOPPED, estimatedPos);
-        // FYI - broadcast by-passes queues, but can publish based on notify
-        // entries
-        ((Broadcaster) servo).broadcast("publishServoStopped", servo.getName(), estimatedPos);
-      }
-    } catch (InterruptedException e) {
-      log.info("stopping TimeEncoder Timer ...");
+    if (done) {
+      // when we are leaving - its a "finished move"
+      // FYI - broadcast by-passes queues, but can publish based on notify
+      // entries
+      ((Broadcaster) servo).broadcast("publishServoStopped", servo.getName(), d.angle);
     }
-    myThread = null;
+    return !done;
   }
 
   @Override
@@ -269,19 +263,17 @@ public class TimeEncoder implements Runnable, EncoderControl {
   }
 
   @Override
-  public void disable() {
-    isRunning = false;
-    if (myThread != null) {
-      myThread.interrupt();
+  public synchronized void disable() {
+    enabled = false;
+    if (scheduled != null) {
+      scheduled.cancel();
+      scheduled = null;
     }
   }
 
   @Override
   public void enable() {
-    if (myThread == null) {
-      myThread = new Thread(this, String.format("%s.%s.time-encoder", servo.getName(), getName()));
-      myThread.start();
-    }
+    enabled = true;
   }
 
   @Override
@@ -10,6 +10,7 @@ import java.util.Set;
 
 import org.myrobotlab.framework.Registration;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.TaskScheduler.ScheduledTask;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
@@ -71,11 +72,9 @@ public class Ads1115 extends Service<Ads1115Config> implements I2CControl, PinAr
    * Publisher - Publishes pin data at a regular interval
    * 
    */
-  public class Publisher extends Thread {
+  public class Publisher implements Runnable {
 
-    public Publisher(String name) {
-      super(String.format("%s.publisher", name));
-    }
+    transient ScheduledTask task = null;
 
     void publishPinData() {
 
@@ -107,23 +106,33 @@ public class Ads1115 extends Service<Ads1115Config> implements I2CControl, PinAr
 
     @Override
     public void run() {
+      try {
+        publishPinData();
+      } catch (Exception e) {
+        log.error("publisher threw", e);
+        stop();
+      }
+    }
 
-      log.info("New publisher instance started at a sample frequency of {} Hz", sampleFreq);
-      long sleepTime = 1000 / (long) sampleFreq;
+    /**
+     * samples at a fixed rate on the Runtime's TaskScheduler
+     */
+    synchronized public void start() {
+      if (task != null) {
+        return;
+      }
+      log.info("publisher started at a sample frequency of {} Hz", sampleFreq);
+      long periodMs = Math.max(1, Math.round(1000 / sampleFreq));
       isPublishing = true;
-      try {
-        while (isPublishing) {
-          Thread.sleep(sleepTime);
-          publishPinData();
-        }
+      task = Runtime.getTaskScheduler().scheduleAtFixedRate(String.format("%s.publisher", getName()), this, periodMs, periodMs);
+    }
 
-      } catch (Exception e) {
-        if (e instanceof InterruptedException) {
-          log.info("Shutting down Publisher");
-        } else {
-          isPublishing = false;
-          log.error("publisher threw", e);
-        }
+    synchronized public void stop() {
+      isPublishing = false;
+      if (task != null) {
+        log.info("Shutting down Publisher");
+        task.cancel();
+        task = null;
       }
     }
   }
@@ -392,7 +401,7 @@ public class Ads1115 extends Service<Ads1115Config> implements I2CControl, PinAr
    */
   Map<String, Set<Integer>> pinSets = new HashMap<String, Set<Integer>>();
 
-  transient Publisher publisher = null;
+  final transient Publisher publisher = new Publisher();
 
   double sampleFreq = 1; // Set
   // default // hZ.
@@ -584,9 +593,13 @@ public class Ads1115 extends Service<Ads1115Config> implements I2CControl, PinAr
     for (int i = 0; i < pinDataCnt; i++) {
       disablePin(i);
     }
-    if (isPublishing) {
-      isPublishing = false;
-    }
+    publisher.stop();
+  }
+
+  @Override
+  public void stopService() {
+    super.stopService();
+    publisher.stop();
   }
 
   @Override
@@ -602,8 +615,6 @@ public class Ads1115 extends Service<Ads1115Config> implements I2CControl, PinAr
     invoke("publishPinDefinition", pin);
 
     if (!isPublishing) {
-      log.info("Starting a new publisher instance");
-      publisher = new Publisher(getName());
       publisher.start();
     }
   }
@@ -1058,6 +1069,11 @@ public class Ads1115 extends Service<Ads1115Config> implements I2CControl, PinAr
       return this.sampleFreq;
     }
     this.sampleFreq = rate;
+    // the period is fixed when scheduled
+    if (isPublishing) {
+      publisher.stop();
+      publisher.start();
+    }
     return rate;
   }
 
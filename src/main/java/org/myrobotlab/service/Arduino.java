@@ -16,13 +16,16 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.myrobotlab.arduino.BoardInfo;
 import org.myrobotlab.arduino.BoardType;
 import org.myrobotlab.arduino.DeviceSummary;
+import org.myrobotlab.arduino.I2CTransactions;
 import org.myrobotlab.arduino.Msg;
 import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.NameProvider;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
@@ -39,6 +42,7 @@ import org.myrobotlab.sensor.EncoderData;
 import org.myrobotlab.service.abstracts.AbstractMicrocontroller;
 import org.myrobotlab.service.config.ArduinoConfig;
 import org.myrobotlab.service.data.DeviceMapping;
+import org.myrobotlab.service.data.I2CSample;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
 import org.myrobotlab.service.data.ServoMove;
@@ -81,6 +85,20 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
     public String deviceAddress;
   }
 
+  /**
+   * a register MrlComm reads on its own and streams back - see i2cSubscribe
+   */
+  public static class I2CSampling {
+    public transient I2CControl control;
+    public int busAddress;
+    public int deviceAddress;
+    public int register;
+    public int size;
+    public int interval;
+    public int batchSize;
+    public int requestId;
+  }
+
   public static final int ANALOG = 1;
 
   public transient static final int BOARD_TYPE_ID_ADK_MEGA = 3;
@@ -155,15 +173,23 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
 
   I2CBus i2cBus = null;
 
-  volatile byte[] i2cData = new byte[64];
+  /**
+   * i2c reads waiting for their data - matched by request id, so many reads
+   * from different threads can be in flight
+   */
+  final transient I2CTransactions i2cTransactions = new I2CTransactions(getName(), t -> sendI2cTransaction(t));
 
   /**
-   * i2c This needs to be volatile because it will be updated in a different
-   * threads
+   * not the transactions' own lock - a send can block on the ack window while
+   * data is coming back
    */
-  volatile boolean i2cDataReturned = false;
+  final transient Object i2cSendLock = new Object();
 
-  volatile int i2cDataSize;
+  /**
+   * registers MrlComm samples by request id - their own id space, separate
+   * from the reads in i2cTransactions
+   */
+  final transient Map<Integer, I2CSampling> i2cSamplings = new ConcurrentHashMap<>();
 
   Map<String, I2CDeviceMap> i2cDevices = new ConcurrentHashMap<String, I2CDeviceMap>();
 
@@ -173,6 +199,24 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
 
   public final transient Msg msg = new Msg(this, null);
 
+  /**
+   * servo moves per servoMoveToMicrosecondsMulti - 3 bytes each and the
+   * message has to fit MrlComm's receive buffer
+   */
+  public static final int MAX_SERVO_MOVES_PER_MSG = (MAX_MSG_SIZE - 5) / 3;
+
+  /**
+   * moves of a ServoMoveBatch which are still arriving - they are sent
+   * together once all of them are here
+   */
+  final transient List<ServoMove> servoMoveBatch = new ArrayList<>();
+
+  /**
+   * ms an incomplete servo move batch is held - its other moves may never
+   * arrive, e.g. when they are filtered or a servo is not attached here
+   */
+  public static final long SERVO_MOVE_BATCH_TIMEOUT_MS = 20;
+
   Integer nextDeviceId = 0;
 
   /**
@@ -623,6 +667,8 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
           error("MrlComm.ino responded with version %s expected version is %s", version, MRLCOMM_VERSION);
         } else {
           info("%s connected on %s responded version %s ... goodtimes...", serial.getName(), serial.getPortName(), version);
+          // same version - MrlComm supports the ack window
+          setAckWindow(config.ackWindow);
         }
       } else {
         log.error("board info is null ! - has MrlComm.ino been loaded ?");
@@ -652,6 +698,11 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
         reattach(device);
       }
 
+      // a reset board has forgotten its samplings
+      for (I2CSampling sampling : i2cSamplings.values()) {
+        sendI2cSampling(sampling);
+      }
+
       List<PinDefinition> list = getPinList();
       for (PinDefinition pindef : list) {
         if (pindef.isEnabled()) {
@@ -723,6 +774,11 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
     // The order of the detach is important because the higher level service may
     // want to execute something that
     // needs this service to still be availabe
+    for (I2CSampling sampling : i2cSamplings.values()) {
+      if (sampling.control == control) {
+        i2cUnsubscribe(control, sampling.busAddress, sampling.deviceAddress, sampling.register);
+      }
+    }
     if (i2cDevices.containsKey(control.getName())) {
       i2cDevices.remove(control.getName());
       control.detachI2CController(this);
@@ -828,6 +884,24 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
     msg.enableAcks(enabled);
   }
 
+  // > setAckWindow/windowSize
+  /**
+   * number of messages sent to MrlComm before waiting for an ack
+   * 
+   * @param windowSize
+   *          max un-acked messages, 0 or 1 waits for the ack of each message
+   * @return true if MrlComm acked the change
+   */
+  public boolean setAckWindow(int windowSize) {
+    config.ackWindow = windowSize;
+    if (!isConnected()) {
+      return false;
+    }
+    boolean ret = msg.enableAckWindow(windowSize);
+    info("%s ack window %s", getName(), msg.isAckWindowEnabled() ? windowSize : "disabled");
+    return ret;
+  }
+
   transient BoardInfoPoller poller = new BoardInfoPoller();
 
   public class BoardInfoPoller implements Runnable {
@@ -1224,57 +1298,54 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
   }
 
   @Override
-  // > i2cRead/deviceId/deviceAddress/size
   public int i2cRead(I2CControl control, int busAddress, int deviceAddress, byte[] buffer, int size) {
-    i2cDataReturned = false;
+    return i2cWait(control, i2cReadAsync(control, busAddress, deviceAddress, size), buffer);
+  }
+
+  @Override
+  // > i2cRead/deviceId/deviceAddress/size/requestId
+  public CompletableFuture<byte[]> i2cReadAsync(I2CControl control, int busAddress, int deviceAddress, int size) {
     // Get the device index to the MRL i2c bus
     String i2cBus = String.format("I2CBus%s", busAddress);
     int deviceId = getDeviceId(i2cBus);
-    log.info("i2cRead requesting {} bytes", size);
-    msg.i2cRead(deviceId, deviceAddress, size);
+    log.debug("i2cRead requesting {} bytes", size);
+    return i2cTransactions.submit(deviceId, deviceAddress, null, size);
+  }
 
-    int retry = 0;
-    int retryMax = 1000; // ( About 1000ms = s)
+  /**
+   * waits for an async read and copies its data into the caller's buffer
+   * 
+   * @return number of bytes read, -1 if the read failed or timed out
+   */
+  private int i2cWait(I2CControl control, CompletableFuture<byte[]> future, byte[] buffer) {
     try {
-      /**
-       * We will wait up to retryMax times to get the i2c data back from
-       * MrlComm.c and wait 1 ms between each try. A blocking queue is not
-       * needed, as this is only a single data element - and blocking is not
-       * necessary.
-       */
-      while ((retry < retryMax) && (!i2cDataReturned)) {
-        sleep(1);
-        ++retry;
-      }
+      byte[] data = future.get();
+      int size = Math.min(data.length, buffer.length);
+      System.arraycopy(data, 0, buffer, 0, size);
+      log.debug("i2cRead returned {} bytes to caller {}.", size, control.getName());
+      return size;
+    } catch (InterruptedException e) {
+      // the transaction is abandoned - nobody waits for its data
+      future.cancel(false);
+      Thread.currentThread().interrupt();
+      log.warn("i2cRead for {} interrupted", control.getName());
+      return -1;
     } catch (Exception e) {
-      Logging.logError(e);
-    }
-    if (i2cDataReturned) {
-      log.debug("i2cReturnData returned {} bytes to caller {}.", i2cDataSize, control.getName());
-      for (int i = 0; i < i2cDataSize; i++) {
-        buffer[i] = i2cData[i];
-        log.debug("i2cReturnData returned ix {} value {}", i, buffer[i]);
-      }
-      return i2cDataSize;
+      // Time out, no data returned
+      log.warn("i2cRead for {} returned no data - {}", control.getName(), e.toString());
+      return -1;
     }
-    // Time out, no data returned
-    return -1;
   }
 
   /**
-   * This methods is called by the i2cBus object when data is returned from the
-   * i2cRead It populates the i2cData area and sets the i2cDataReturned flag to
-   * true so that the loop in i2cRead can return the data to the caller
+   * This method was called by the i2cBus object when data was returned from
+   * the i2cRead. Data now comes back with the request id of its read through
+   * publishI2cData - data without one can't be matched to a read.
    * 
    */
   @Override
   public void i2cReturnData(int[] rawData) {
-    i2cDataSize = rawData.length;
-    for (int i = 0; i < i2cDataSize; i++) {
-      i2cData[i] = (byte) (rawData[i] & 0xff);
-    }
-    log.debug("i2cReturnData invoked. i2cDataSize = {}", i2cDataSize);
-    i2cDataReturned = true;
+    log.warn("i2cReturnData {} bytes without request id - dropped", rawData.length);
   }
 
   @Override
@@ -1293,50 +1364,103 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
   }
 
   @Override
-  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
   public int i2cWriteRead(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, byte[] readBuffer, int readSize) {
-    if (writeSize != 1) {
-      i2cWrite(control, busAddress, deviceAddress, writeBuffer, writeSize);
-      return i2cRead(control, busAddress, deviceAddress, readBuffer, readSize);
-    } else {
-      i2cDataReturned = false;
-      // Get the device index to the MRL i2c bus
-      String i2cBus = String.format("I2CBus%s", busAddress);
-      int deviceId = getDeviceId(i2cBus);
-
-      int msgBuffer[] = new int[4];
-      msgBuffer[0] = deviceId;
-      msgBuffer[1] = deviceAddress;
-      msgBuffer[2] = readSize;
-      msgBuffer[3] = writeBuffer[0];
-      msg.i2cWriteRead(deviceId, deviceAddress, readSize, writeBuffer[0] & 0xFF);
-      int retry = 0;
-      int retryMax = 1000; // ( About 1000ms = s)
-      try {
-        /**
-         * We will wait up to retryMax times to get the i2c data back from
-         * MrlComm.c and wait 1 ms between each try. A blocking queue is not
-         * needed, as this is only a single data element - and blocking is not
-         * necessary.
-         */
-        while ((retry < retryMax) && (!i2cDataReturned)) {
-          sleep(1);
-          ++retry;
-        }
-      } catch (Exception e) {
-        Logging.logError(e);
+    return i2cWait(control, i2cWriteReadAsync(control, busAddress, deviceAddress, writeBuffer, writeSize, readSize), readBuffer);
+  }
+
+  @Override
+  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
+  public CompletableFuture<byte[]> i2cWriteReadAsync(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, int readSize) {
+    String i2cBus = String.format("I2CBus%s", busAddress);
+    int deviceId = getDeviceId(i2cBus);
+    int[] write = new int[writeSize];
+    for (int i = 0; i < writeSize; ++i) {
+      write[i] = writeBuffer[i] & 0xFF;
+    }
+    return i2cTransactions.submit(deviceId, deviceAddress, write, readSize);
+  }
+
+  /**
+   * sends a queued i2c read - a single byte write (the register) goes with
+   * the read in one i2cWriteRead, longer writes are sent as an i2cWrite right
+   * before the read
+   */
+  private void sendI2cTransaction(I2CTransactions.Transaction t) {
+    // nothing may be sent to the bus between write and read
+    synchronized (i2cSendLock) {
+      if (t.write != null && t.write.length == 1) {
+        msg.i2cWriteRead(t.bus, t.deviceAddress, t.readSize, t.write[0], t.requestId);
+        return;
       }
-      if (i2cDataReturned) {
-        log.debug("i2cReturnData returned %s bytes to caller {}.", i2cDataSize, control.getName());
-        for (int i = 0; i < i2cDataSize; i++) {
-          readBuffer[i] = i2cData[i];
-          log.debug("i2cReturnData returned ix {} value {}", i, readBuffer[i]);
-        }
-        return i2cDataSize;
+      if (t.write != null) {
+        msg.i2cWrite(t.bus, t.deviceAddress, t.write);
       }
-      // Time out, no data returned
-      return -1;
+      msg.i2cRead(t.bus, t.deviceAddress, t.readSize, t.requestId);
+    }
+  }
+
+  /**
+   * MrlComm reads the register every intervalMs and streams the samples back
+   * in publishI2cSamples - no round trip per sample
+   */
+  // > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+  @Override
+  public synchronized boolean i2cSubscribe(I2CControl control, int busAddress, int deviceAddress, int register, int size, int intervalMs, int batchSize) {
+    I2CSampling sampling = getI2cSampling(control, busAddress, deviceAddress, register);
+    if (sampling == null) {
+      int requestId = 0;
+      while (i2cSamplings.containsKey(requestId)) {
+        ++requestId;
+      }
+      if (requestId > 255) {
+        error("too many i2c samplings");
+        return false;
+      }
+      sampling = new I2CSampling();
+      sampling.control = control;
+      sampling.busAddress = busAddress;
+      sampling.deviceAddress = deviceAddress;
+      sampling.register = register;
+      sampling.requestId = requestId;
+    }
+    sampling.size = size;
+    // b16 interval, 0 would stop it
+    sampling.interval = Math.max(1, Math.min(intervalMs, Short.MAX_VALUE));
+    sampling.batchSize = Math.max(1, Math.min(batchSize, 255));
+    i2cSamplings.put(sampling.requestId, sampling);
+    sendI2cSampling(sampling);
+    return true;
+  }
+
+  @Override
+  public synchronized void i2cUnsubscribe(I2CControl control, int busAddress, int deviceAddress, int register) {
+    I2CSampling sampling = getI2cSampling(control, busAddress, deviceAddress, register);
+    if (sampling == null) {
+      return;
+    }
+    i2cSamplings.remove(sampling.requestId);
+    Integer deviceId = getDeviceId(String.format("I2CBus%s", busAddress));
+    if (deviceId != null && isConnected()) {
+      msg.i2cSample(deviceId, deviceAddress, register, sampling.size, 0, 0, sampling.requestId);
+    }
+  }
+
+  private I2CSampling getI2cSampling(I2CControl control, int busAddress, int deviceAddress, int register) {
+    for (I2CSampling sampling : i2cSamplings.values()) {
+      if (sampling.control == control && sampling.busAddress == busAddress && sampling.deviceAddress == deviceAddress && sampling.register == register) {
+        return sampling;
+      }
+    }
+    return null;
+  }
+
+  private void sendI2cSampling(I2CSampling sampling) {
+    Integer deviceId = getDeviceId(String.format("I2CBus%s", sampling.busAddress));
+    if (deviceId == null) {
+      error("i2c bus %d not attached", sampling.busAddress);
+      return;
     }
+    msg.i2cSample(deviceId, sampling.deviceAddress, sampling.register, sampling.size, sampling.interval, sampling.batchSize, sampling.requestId);
   }
 
   @Override
@@ -1516,6 +1640,7 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
   @Override
   public void onDisconnect(String portName) {
     msg.onDisconnect(portName);
+    i2cTransactions.cancelAll();
     info("%s disconnected from %s", getName(), portName);
     enableBoardInfo(false);
     // chained...
@@ -1587,11 +1712,11 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
     pinMode(pinDef.getAddress(), mode);
   }
 
-  // < publishAck/function
+  // < publishAck/function/seq
   @Override
-  public void publishAck(Integer function/* byte */) {
+  public void publishAck(Integer function/* byte */, Integer seq/* byte */) {
     if (msg.debug) {
-      log.info("{} Message Ack received: =={}==", getName(), Msg.methodToString(function));
+      log.info("{} Message Ack received: =={}== seq {}", getName(), Msg.methodToString(function), seq);
     }
   }
 
@@ -1636,6 +1761,12 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
     // }
     // }
 
+    // throughput of the ack window with the board info heartbeat
+    QueueStats stats = msg.getAckWindowStats();
+    if (stats != null) {
+      updateStats(stats);
+    }
+
     // we send here - because this is a "command" message, and we don't want the
     // possibility of
     // block this "status" msgs
@@ -1718,14 +1849,60 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
   /**
    * @param deviceId
    *          - mrl device identifier
+   * @param requestId
+   *          - id of the read the data belongs to
    * @param data
    *          - data to publish from I2c
    */
-  // < publishI2cData/deviceId/[] data
+  // < publishI2cData/deviceId/requestId/[] data
   @Override
-  public void publishI2cData(Integer deviceId, int[] data) {
-    log.info("publishI2cData");
-    i2cReturnData(data);
+  public void publishI2cData(Integer deviceId, Integer requestId, int[] data) {
+    log.debug("publishI2cData bus {} request {} {} bytes", deviceId, requestId, data.length);
+    i2cTransactions.onData(deviceId, requestId, data);
+  }
+
+  /**
+   * samples of a register MrlComm reads on its own - timestamp is the board's
+   * millis() of the first sample, each sample in data is prefixed by its ms
+   * since the previous one. They go straight to the control which subscribed
+   * and are published for anyone else listening.
+   * 
+   * @param deviceId
+   *          the i2c bus
+   * @param requestId
+   *          id of the sampling
+   * @param timestamp
+   *          board ms of the first sample
+   * @param data
+   *          the samples
+   * @return the samples
+   */
+  // < publishI2cSamples/deviceId/requestId/bu32 timestamp/[] data
+  @Override
+  public I2CSample[] publishI2cSamples(Integer deviceId, Integer requestId, Long timestamp, int[] data) {
+    I2CSampling sampling = i2cSamplings.get(requestId);
+    if (sampling == null) {
+      log.info("dropping i2c samples of request {} - not subscribed", requestId);
+      return null;
+    }
+    int stride = sampling.size + 1;
+    I2CSample[] samples = new I2CSample[data.length / stride];
+    long time = timestamp;
+    for (int i = 0; i < samples.length; ++i) {
+      int offset = i * stride;
+      time += data[offset];
+      byte[] bytes = new byte[sampling.size];
+      for (int j = 0; j < bytes.length; ++j) {
+        bytes[j] = (byte) data[offset + 1 + j];
+      }
+      samples[i] = new I2CSample(sampling.control.getName(), sampling.busAddress, sampling.deviceAddress, sampling.register, time, bytes);
+    }
+    try {
+      sampling.control.onI2CSamples(samples);
+    } catch (Exception e) {
+      log.error("{} onI2CSamples threw", sampling.control.getName(), e);
+    }
+    return samples;
   }
 
   /**
@@ -1952,6 +2129,14 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
   @Override
   // > servoWrite/deviceId/target
   public void onServoMoveTo(ServoMove move) {
+    List<ServoMove> batch = collectServoMove(move);
+    if (batch != null) {
+      onServoMoveToMulti(batch);
+    }
+    if (move.batch != null) {
+      return;
+    }
+
     if (!isConnected()) {
       info("arduino cannot move servo %s when not connected", move.name);
       return;
@@ -1969,6 +2154,100 @@ public class Arduino extends AbstractMicrocontroller<ArduinoConfig> implements I
     msg.servoMoveToMicroseconds(deviceId, us);
   }
 
+  /**
+   * collects the moves of a batch
+   * 
+   * @param move
+   *          the arriving move
+   * @return the moves to send now - the batch once all its moves arrived, or
+   *         an incomplete one when a move of another batch or a single move
+   *         arrives first
+   */
+  private List<ServoMove> collectServoMove(ServoMove move) {
+    List<ServoMove> ready = null;
+    boolean held = false;
+    synchronized (servoMoveBatch) {
+      if (!servoMoveBatch.isEmpty() && !servoMoveBatch.get(0).batch.equals(move.batch)) {
+        ready = takeIncompleteBatch();
+      }
+      if (move.batch != null) {
+        servoMoveBatch.add(move);
+        if (move.batchSize == null || servoMoveBatch.size() >= move.batchSize) {
+          if (ready == null) {
+            ready = new ArrayList<>();
+          }
+          ready.addAll(servoMoveBatch);
+          servoMoveBatch.clear();
+        } else {
+          held = servoMoveBatch.size() == 1;
+        }
+      }
+    }
+    if (held) {
+      // sent without the missing moves if they don't come in time
+      addTask("flushServoMoveBatch." + move.batch, true, 0, SERVO_MOVE_BATCH_TIMEOUT_MS, "flushServoMoveBatch", move.batch);
+    }
+    return ready;
+  }
+
+  /**
+   * sends the moves of a batch which did not complete in
+   * SERVO_MOVE_BATCH_TIMEOUT_MS
+   * 
+   * @param batch
+   *          id of the batch
+   */
+  public void flushServoMoveBatch(String batch) {
+    List<ServoMove> moves = null;
+    synchronized (servoMoveBatch) {
+      if (servoMoveBatch.isEmpty() || !servoMoveBatch.get(0).batch.equals(batch)) {
+        // already sent
+        return;
+      }
+      moves = takeIncompleteBatch();
+    }
+    onServoMoveToMulti(moves);
+  }
+
+  private List<ServoMove> takeIncompleteBatch() {
+    log.warn("servo move batch {} incomplete - {} of {} moves arrived", servoMoveBatch.get(0).batch, servoMoveBatch.size(), servoMoveBatch.get(0).batchSize);
+    List<ServoMove> moves = new ArrayList<>(servoMoveBatch);
+    servoMoveBatch.clear();
+    return moves;
+  }
+
+  /**
+   * moves many servos with as few servoMoveToMicrosecondsMulti messages as
+   * possible instead of one message per servo
+   */
+  @Override
+  // > servoMoveToMicrosecondsMulti/[] moves
+  public void onServoMoveToMulti(List<ServoMove> moves) {
+    if (!isConnected()) {
+      info("arduino cannot move %d servos when not connected", moves.size());
+      return;
+    }
+
+    // deviceId/b16 target triplets
+    int[] data = new int[moves.size() * 3];
+    int size = 0;
+    for (ServoMove move : moves) {
+      Integer deviceId = getDeviceId(move.name);
+      if (deviceId == null) {
+        log.warn("servoMoveToMulti servo {} does not have a corresponding device currently - did you attach?", move.name);
+        continue;
+      }
+      int us = degreeToMicroseconds(move.outputPos);
+      data[size++] = deviceId;
+      data[size++] = (us >> 8) & 0xFF;
+      data[size++] = us & 0xFF;
+    }
+    log.debug("servoMoveToMicrosecondsMulti {} servos", size / 3);
+    for (int i = 0; i < size; i += MAX_SERVO_MOVES_PER_MSG * 3) {
+      msg.servoMoveToMicrosecondsMulti(Arrays.copyOfRange(data, i, Math.min(size, i + MAX_SERVO_MOVES_PER_MSG * 3)));
+    }
+  }
+
   @Override
   // > servoSetVelocity/deviceId/b16 velocity
   public void onServoSetSpeed(ServoSpeed servoSpeed) {
@@ -12,6 +12,8 @@ import java.util.List;
 
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.TaskScheduler.ScheduledTask;
+import org.myrobotlab.framework.TaskScheduler.TaskStats;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.config.ClockConfig;
 import org.slf4j.Logger;
@@ -23,58 +25,57 @@ import org.slf4j.Logger;
  */
 public class Clock extends Service<ClockConfig> {
 
-  public class ClockThread implements Runnable {
+  /**
+   * ticks at a fixed rate on the Runtime's TaskScheduler - a slow subscriber
+   * does not make the clock drift
+   */
+  public class ClockTicker implements Runnable {
 
-    private transient Thread thread = null;
-    
+    private transient ScheduledTask task = null;
 
     @Override
     public void run() {
-
-      try {
-
-        config.running = true;
-        invoke("publishClockStarted");
-        while (config.running) {
-          Thread.sleep(config.interval);
-          Date now = new Date();
-          for (Message msg : events) {
-            send(msg);
-          }
-          invoke("pulse", now);
-          invoke("publishTime", now);
-          invoke("publishEpoch", now);
-        }
-      } catch (InterruptedException e) {
-        log.info("ClockThread interrupt");
+      Date now = new Date();
+      for (Message msg : events) {
+        send(msg);
       }
-      config.running = false;
-      thread = null;
+      invoke("pulse", now);
+      invoke("publishTime", now);
+      invoke("publishEpoch", now);
     }
 
-    // FIXME - synchronized methods is silly here - access needs to be
-    // synchronized "between" start & stop
-    // TODO - create and use a single thread - use wait(sleep) notify for
-    // control
     synchronized public void start() {
-      if (thread == null) {
-        thread = new Thread(this, getName() + "_ticking_thread");
-        thread.start();                
+      if (task == null) {
+        config.running = true;
+        invoke("publishClockStarted");
+        // first tick an interval after start
+        task = Runtime.getTaskScheduler().scheduleAtFixedRate(getName() + "_ticker", this, config.interval, config.interval);
       } else {
         log.info("{} already started", getName());
       }
     }
 
     synchronized public void stop() {
-
-      if (thread != null) {
-        thread.interrupt();
+      if (task != null) {
+        task.cancel();
+        task = null;
+        config.running = false;
         broadcastState();
       } else {
         log.info("{} already stopped", getName());
       }
       config.running = false;
-      Service.sleep(20);
+    }
+
+    synchronized public boolean isRunning() {
+      return task != null;
+    }
+
+    /**
+     * @return jitter and overruns of the ticks - null if stopped
+     */
+    synchronized public TaskStats getStats() {
+      return (task == null) ? null : task.getStats();
     }
   }
   
@@ -82,7 +83,7 @@ public class Clock extends Service<ClockConfig> {
 
   final public static Logger log = LoggerFactory.getLogger(Clock.class);
 
-  final protected transient ClockThread myClock = new ClockThread();
+  final protected transient ClockTicker myClock = new ClockTicker();
 
   /**
    * list of messages the clock can send - these are set with addClockEvent
@@ -157,9 +158,20 @@ public class Clock extends Service<ClockConfig> {
    */
   public void setInterval(Integer milliseconds) {
     config.interval = milliseconds;
+    // the rate is fixed when scheduled
+    if (myClock.isRunning()) {
+      restartClock();
+    }
     broadcastState();
   }
 
+  /**
+   * @return jitter and overruns of the ticks - null if the clock is stopped
+   */
+  public TaskStats getClockStats() {
+    return myClock.getStats();
+  }
+
   @Deprecated /* use startClock skipFirst is default behavior */
   public void startClock(boolean skipFirst) {
     startClock();
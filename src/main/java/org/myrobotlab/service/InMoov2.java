@@ -33,6 +33,7 @@ import org.myrobotlab.service.FiniteStateMachine.StateChange;
 import org.myrobotlab.service.Log.LogEntry;
 import org.myrobotlab.service.abstracts.AbstractSpeechRecognizer;
 import org.myrobotlab.service.abstracts.AbstractSpeechSynthesis;
+import org.myrobotlab.service.abstracts.ServoMoveBatch;
 import org.myrobotlab.service.config.InMoov2Config;
 import org.myrobotlab.service.config.OpenCVConfig;
 import org.myrobotlab.service.config.SpeechSynthesisConfig;
@@ -1133,10 +1134,12 @@ public class InMoov2 extends Service<InMoov2Config>
     log.debug("onJointAngles {}", angleMap);
     // here we can make decisions on what ik sets we want to use and
     // what body parts are to move
-    for (String name : angleMap.keySet()) {
-      ServiceInterface si = Runtime.getService(name);
-      if (si != null && si instanceof ServoControl) {
-        ((Servo) si).moveTo(angleMap.get(name));
+    try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+      for (String name : angleMap.keySet()) {
+        ServiceInterface si = Runtime.getService(name);
+        if (si != null && si instanceof ServoControl) {
+          ((Servo) si).moveTo(angleMap.get(name));
+        }
       }
     }
   }
@@ -12,6 +12,7 @@ import org.myrobotlab.kinematics.DHLink;
 import org.myrobotlab.kinematics.DHRobotArm;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.MathUtils;
+import org.myrobotlab.service.abstracts.ServoMoveBatch;
 import org.myrobotlab.service.config.InMoov2ArmConfig;
 import org.myrobotlab.service.interfaces.IKJointAngleListener;
 import org.myrobotlab.service.interfaces.ServoControl;
@@ -211,14 +212,16 @@ public class InMoov2Arm extends Service<InMoov2ArmConfig> implements IKJointAngl
 
   public void moveTo(Double bicepPos, Double rotatePos, Double shoulderPos, Double omoplatePos) {
     log.debug("{} moveTo {} {} {} {}", getName(), bicepPos, rotatePos, shoulderPos, omoplatePos);
-    if (bicep != null)
-      bicep.moveTo(bicepPos);
-    if (rotate != null)
-      rotate.moveTo(rotatePos);
-    if (shoulder != null)
-      shoulder.moveTo(shoulderPos);
-    if (omoplate != null)
-      omoplate.moveTo(omoplatePos);
+    try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+      if (bicep != null)
+        bicep.moveTo(bicepPos);
+      if (rotate != null)
+        rotate.moveTo(rotatePos);
+      if (shoulder != null)
+        shoulder.moveTo(shoulderPos);
+      if (omoplate != null)
+        omoplate.moveTo(omoplatePos);
+    }
   }
 
   public void moveToBlocking(double bicep, double rotate, double shoulder, double omoplate) {
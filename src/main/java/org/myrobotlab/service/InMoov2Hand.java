@@ -14,6 +14,7 @@ import org.myrobotlab.io.FileIO;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.abstracts.ServoMoveBatch;
 import org.myrobotlab.service.config.InMoov2HandConfig;
 import org.myrobotlab.service.data.LeapData;
 import org.myrobotlab.service.data.LeapHand;
@@ -378,23 +379,25 @@ public class InMoov2Hand extends Service<InMoov2HandConfig> implements LeapDataL
     if (log.isDebugEnabled()) {
       log.debug("{}.moveTo {} {} {} {} {} {}", getName(), thumbPos, indexPos, majeurePos, ringFingerPos, pinkyPos, wristPos);
     }
-    if (thumb != null && thumbPos != null) {
-      thumb.moveTo(thumbPos);
-    }
-    if (index != null && indexPos != null) {
-      index.moveTo(indexPos);
-    }
-    if (majeure != null && majeurePos != null) {
-      majeure.moveTo(majeurePos);
-    }
-    if (ringFinger != null && ringFingerPos != null) {
-      ringFinger.moveTo(ringFingerPos);
-    }
-    if (pinky != null && pinkyPos != null) {
-      pinky.moveTo(pinkyPos);
-    }
-    if (wrist != null && wristPos != null) {
-      wrist.moveTo(wristPos);
+    try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+      if (thumb != null && thumbPos != null) {
+        thumb.moveTo(thumbPos);
+      }
+      if (index != null && indexPos != null) {
+        index.moveTo(indexPos);
+      }
+      if (majeure != null && majeurePos != null) {
+        majeure.moveTo(majeurePos);
+      }
+      if (ringFinger != null && ringFingerPos != null) {
+        ringFinger.moveTo(ringFingerPos);
+      }
+      if (pinky != null && pinkyPos != null) {
+        pinky.moveTo(pinkyPos);
+      }
+      if (wrist != null && wristPos != null) {
+        wrist.moveTo(wristPos);
+      }
     }
   }
 
@@ -11,6 +11,7 @@ import org.myrobotlab.io.FileIO;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.abstracts.ServoMoveBatch;
 import org.myrobotlab.service.config.InMoov2HeadConfig;
 import org.myrobotlab.service.interfaces.ServoControl;
 import org.slf4j.Logger;
@@ -273,34 +274,36 @@ public class InMoov2Head extends Service<InMoov2HeadConfig> {
     // In theory this could use mrl standard pub/sub by mapping different output
     // topics to ServoControl.onServoMoveTo
     // but I'm tired ... :)
-    ServoControl neck = (ServoControl) Runtime.getService(getPeerName("neck"));
-    if (neck != null) {
-      neck.moveTo(neckPos);
-    }
-
-    ServoControl rothead = (ServoControl) Runtime.getService(getPeerName("rothead"));
-    if (rothead != null) {
-      rothead.moveTo(rotheadPos);
-    }
-
-    ServoControl eyeX = (ServoControl) Runtime.getService(getPeerName("eyeX"));
-    if (eyeX != null) {
-      eyeX.moveTo(eyeXPos);
-    }
-
-    ServoControl eyeY = (ServoControl) Runtime.getService(getPeerName("eyeY"));
-    if (eyeY != null) {
-      eyeY.moveTo(eyeYPos);
-    }
-
-    ServoControl jaw = (ServoControl) Runtime.getService(getPeerName("jaw"));
-    if (jaw != null) {
-      jaw.moveTo(jawPos);
-    }
-
-    ServoControl rollNeck = (ServoControl) Runtime.getService(getPeerName("rollNeck"));
-    if (rollNeck != null) {
-      rollNeck.moveTo(rollNeckPos);
+    try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+      ServoControl neck = (ServoControl) Runtime.getService(getPeerName("neck"));
+      if (neck != null) {
+        neck.moveTo(neckPos);
+      }
+
+      ServoControl rothead = (ServoControl) Runtime.getService(getPeerName("rothead"));
+      if (rothead != null) {
+        rothead.moveTo(rotheadPos);
+      }
+
+      ServoControl eyeX = (ServoControl) Runtime.getService(getPeerName("eyeX"));
+      if (eyeX != null) {
+        eyeX.moveTo(eyeXPos);
+      }
+
+      ServoControl eyeY = (ServoControl) Runtime.getService(getPeerName("eyeY"));
+      if (eyeY != null) {
+        eyeY.moveTo(eyeYPos);
+      }
+
+      ServoControl jaw = (ServoControl) Runtime.getService(getPeerName("jaw"));
+      if (jaw != null) {
+        jaw.moveTo(jawPos);
+      }
+
+      ServoControl rollNeck = (ServoControl) Runtime.getService(getPeerName("rollNeck"));
+      if (rollNeck != null) {
+        rollNeck.moveTo(rollNeckPos);
+      }
     }
   }
 
@@ -10,6 +10,7 @@ import org.myrobotlab.io.FileIO;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.abstracts.ServoMoveBatch;
 import org.myrobotlab.service.config.InMoov2TorsoConfig;
 import org.myrobotlab.service.interfaces.ServoControl;
 import org.slf4j.Logger;
@@ -120,14 +121,16 @@ public class InMoov2Torso extends Service<InMoov2TorsoConfig> {
     if (log.isDebugEnabled()) {
       log.debug("{} moveTo {} {} {}", getName(), topStomPos, midStomPos, lowStomPos);
     }
-    if (topStom != null && topStomPos != null) {
-      this.topStom.moveTo(topStomPos);
-    }
-    if (midStom != null && midStomPos != null) {
-      this.midStom.moveTo(midStomPos);
-    }
-    if (lowStom != null && lowStomPos != null) {
-      this.lowStom.moveTo(lowStomPos);
+    try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+      if (topStom != null && topStomPos != null) {
+        this.topStom.moveTo(topStomPos);
+      }
+      if (midStom != null && midStomPos != null) {
+        this.midStom.moveTo(midStomPos);
+      }
+      if (lowStom != null && lowStomPos != null) {
+        this.lowStom.moveTo(lowStomPos);
+      }
     }
   }
 
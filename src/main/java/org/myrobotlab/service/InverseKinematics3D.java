@@ -1,14 +1,20 @@
 package org.myrobotlab.service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.TaskScheduler.ScheduledTask;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.kinematics.DHLink;
 import org.myrobotlab.kinematics.DHRobotArm;
+import org.myrobotlab.kinematics.DLSIKSolver;
+import org.myrobotlab.kinematics.IKSolution;
+import org.myrobotlab.kinematics.IKSolver;
+import org.myrobotlab.kinematics.JacobianIKSolver;
 import org.myrobotlab.kinematics.Matrix;
 import org.myrobotlab.kinematics.Point;
 import org.myrobotlab.logging.LoggerFactory;
@@ -25,9 +31,11 @@ import org.slf4j.Logger;
  * 
  * InverseKinematics3D - This class provides a 3D based inverse kinematics
  * implementation that allows you to specify the robot arm geometry based on DH
- * Parameters. This will use a pseudo-inverse jacobian gradient descent approach
- * to move the end affector to the desired x,y,z postions in space with respect
- * to the base frame.
+ * Parameters. This will use a damped least squares (Levenberg-Marquardt)
+ * solver to move the end affector to the desired x,y,z postions in space with
+ * respect to the base frame - setSolver("jacobian") for the pseudo-inverse
+ * jacobian gradient descent approach. Iterations, error and latency of each
+ * solve are published with publishIKSolution.
  * 
  * Rotation and Orientation information is not currently supported. (but should
  * be easy to add)
@@ -52,7 +60,9 @@ public class InverseKinematics3D extends Service<InverseKinematics3DConfig> impl
   private Point scale = null;
 
   // check - http://myrobotlab.org/content/inverse-kinematics-update
-  transient InputTrackingThread trackingThread = null;
+  transient InputTracker tracker = null;
+
+  transient IKSolver solver = new DLSIKSolver();
 
   public InverseKinematics3D(String n, String id) {
     super(n, id);
@@ -60,75 +70,68 @@ public class InverseKinematics3D extends Service<InverseKinematics3DConfig> impl
   }
 
   public void startTracking() {
-    log.info("startTracking - starting new joystick input tracking thread {}_tracking", getName());
-    if (trackingThread != null) {
+    log.info("startTracking - starting new joystick input tracking task {}_tracking", getName());
+    if (tracker != null) {
       stopTracking();
     }
-    trackingThread = new InputTrackingThread(String.format("%s_tracking", getName()));
-    trackingThread.start();
+    tracker = new InputTracker();
+    tracker.start(String.format("%s_tracking", getName()));
   }
 
   public void stopTracking() {
-    if (trackingThread != null) {
-      trackingThread.setTracking(false);
+    if (tracker != null) {
+      tracker.setTracking(false);
+      tracker = null;
     }
   }
 
-  public class InputTrackingThread extends Thread {
+  /**
+   * moves the arm by the joystick velocity at a fixed rate on the Runtime's
+   * TaskScheduler - each step covers exactly the poll interval, so a slow
+   * moveTo does not make the arm slower
+   */
+  public class InputTracker implements Runnable {
+
+    // how many ms between movements.
+    final long pollInterval = 250;
+
+    final String arm = "myArm";
 
-    private boolean isTracking = false;
+    private transient ScheduledTask task = null;
 
-    public InputTrackingThread(String name) {
-      super(name);
+    public synchronized void start(String name) {
+      if (task == null) {
+        task = Runtime.getTaskScheduler().scheduleAtFixedRate(name, this, pollInterval, pollInterval);
+      }
     }
 
     @Override
     public void run() {
-
       // Ok, here we are. if we're running..
       // we should be updating the move to based on the velocities
       // that are being tracked with the joystick.
 
-      // how many ms to wait between movements.
-      long pollInterval = 250;
-
-      String arm = "myArm";
-      isTracking = true;
-      long now = System.currentTimeMillis();
-      while (isTracking) {
-        long pause = now + pollInterval - System.currentTimeMillis();
-        try {
-          // the number of milliseconds until we update the position
-          Thread.sleep(pause);
-        } catch (InterruptedException e) {
-          // TODO Auto-generated catch block
-          log.info("Interrupted tracking thread.");
-          e.printStackTrace();
-          isTracking = false;
-        }
-        // lets get the current position
-        // current position + velocity * time
-        Point current = currentPosition(arm);
-        Point targetPoint = current.add(joystickLinearVelocity.multiplyXYZ(pollInterval / 1000.0));
-        if (!targetPoint.equals(current)) {
-          log.info("Velocity: {} Old: {} New: {}", joystickLinearVelocity, current, targetPoint);
-        }
-
-        invoke("publishTracking", targetPoint);
-        moveTo(arm, targetPoint);
-        // update current timestamp to determine how long we should wait
-        // before the next moveTo is called.
-        now = System.currentTimeMillis();
+      // lets get the current position
+      // current position + velocity * time
+      Point current = currentPosition(arm);
+      Point targetPoint = current.add(joystickLinearVelocity.multiplyXYZ(pollInterval / 1000.0));
+      if (!targetPoint.equals(current)) {
+        log.info("Velocity: {} Old: {} New: {}", joystickLinearVelocity, current, targetPoint);
       }
 
+      invoke("publishTracking", targetPoint);
+      moveTo(arm, targetPoint);
     }
 
-    public boolean isTracking() {
-      return isTracking;
+    public synchronized boolean isTracking() {
+      return task != null;
     }
 
-    public void setTracking(boolean isTracking) {
-      this.isTracking = isTracking;
+    public synchronized void setTracking(boolean isTracking) {
+      if (!isTracking && task != null) {
+        task.cancel();
+        task = null;
+      }
     }
   }
 
@@ -177,10 +180,10 @@ public class InverseKinematics3D extends Service<InverseKinematics3DConfig> impl
   public Point rotateAndTranslate(Point pIn) {
 
     Matrix m = new Matrix(4, 1);
-    m.elements[0][0] = pIn.getX();
-    m.elements[1][0] = pIn.getY();
-    m.elements[2][0] = pIn.getZ();
-    m.elements[3][0] = 1;
+    m.set(0, 0, pIn.getX());
+    m.set(1, 0, pIn.getY());
+    m.set(2, 0, pIn.getZ());
+    m.set(3, 0, 1);
     Matrix pOM = inputMatrix.multiply(m);
 
     // TODO: compute the roll pitch yaw
@@ -188,7 +191,7 @@ public class InverseKinematics3D extends Service<InverseKinematics3DConfig> impl
     double pitch = 0;
     double yaw = 0;
 
-    Point pOut = new Point(pOM.elements[0][0], pOM.elements[1][0], pOM.elements[2][0], roll, pitch, yaw);
+    Point pOut = new Point(pOM.get(0, 0), pOM.get(1, 0), pOM.get(2, 0), roll, pitch, yaw);
     return pOut;
   }
 
@@ -210,6 +213,26 @@ public class InverseKinematics3D extends Service<InverseKinematics3DConfig> impl
   public void moveTo(String name, Point p) {
 
     log.info("Raw Input : {} - {}", name, p);
+    p = toArmFrame(p);
+    IKSolution solution = solver.solve(arms.get(name), p);
+    solution.arm = name;
+    invoke("publishIKSolution", solution);
+    // publish even when not solved - the solution has the error, let the
+    // robot determine if it was success or not
+    if (!solution.success) {
+      log.info("Unsuccessful to solve IK! {}", solution);
+    }
+    publishTelemetry(name);
+  }
+
+  /**
+   * scales, then rotates and translates a point by the input scale and matrix
+   * 
+   * @param p
+   *          input point
+   * @return the point in the base frame of the arms
+   */
+  public Point toArmFrame(Point p) {
     if (scale != null) {
       // scale the x,y,z by the factors stored in the scale point. (really
       // vector i guess?)
@@ -217,22 +240,72 @@ public class InverseKinematics3D extends Service<InverseKinematics3DConfig> impl
       double y = scale.getY() * p.getY();
       double z = scale.getZ() * p.getZ();
       p = new Point(x, y, z, p.getRoll(), p.getPitch(), p.getYaw());
-      log.info("Scaled Input {}", p);
+      log.debug("Scaled Input {}", p);
     }
     if (inputMatrix != null) {
       p = rotateAndTranslate(p);
-      log.info("Rot/Translated input {}", p);
+      log.debug("Rot/Translated input {}", p);
     }
-    boolean success = arms.get(name).moveToGoal(p);
-    success = true; // FIXME change object to send error tolerance - let the
-                    // robot determine if it was success or not
-    if (success) {
-      publishTelemetry(name);
+    return p;
+  }
+
+  public List<IKSolution> solveBatch(List<Point> points) {
+    return solveBatch(currentArm, points);
+  }
+
+  /**
+   * solves the points of a path for planning - the points are solved in
+   * parallel on copies of the arm, which does not move
+   * 
+   * @param name
+   *          the arm
+   * @param points
+   *          input points - scaled, rotated and translated as in moveTo
+   * @return the solutions (joint positions, iterations, error and latency)
+   *         in the order of the points
+   */
+  public List<IKSolution> solveBatch(String name, List<Point> points) {
+    List<Point> goals = new ArrayList<>(points.size());
+    for (Point p : points) {
+      goals.add(toArmFrame(p));
+    }
+    long start = System.currentTimeMillis();
+    List<IKSolution> solutions = arms.get(name).solveBatch(solver, goals);
+    int solved = 0;
+    for (IKSolution solution : solutions) {
+      solution.arm = name;
+      if (solution.success) {
+        ++solved;
+      }
+    }
+    log.info("solved {} of {} points in {} ms", solved, solutions.size(), System.currentTimeMillis() - start);
+    invoke("publishIKSolutions", solutions);
+    return solutions;
+  }
+
+  /**
+   * @param type
+   *          "dls" damped least squares (default) or "jacobian" pseudo-inverse
+   *          jacobian gradient descent
+   */
+  public void setSolver(String type) {
+    if ("dls".equalsIgnoreCase(type)) {
+      setSolver(new DLSIKSolver());
+    } else if ("jacobian".equalsIgnoreCase(type)) {
+      setSolver(new JacobianIKSolver());
     } else {
-      log.info("Unsuccessful to solve IK!");
+      error("unknown solver %s - dls or jacobian", type);
     }
   }
 
+  public void setSolver(IKSolver solver) {
+    this.solver = solver;
+  }
+
+  public IKSolver getSolver() {
+    return solver;
+  }
+
   // public void publishTelemetry()
 
   // TODO - publishTelemetry() which iterates through all parts
@@ -381,6 +454,28 @@ public class InverseKinematics3D extends Service<InverseKinematics3DConfig> impl
     return tracking;
   }
 
+  /**
+   * published per moveTo
+   * 
+   * @param solution
+   *          iterations, error and latency of the solve
+   * @return the solution
+   */
+  public IKSolution publishIKSolution(IKSolution solution) {
+    return solution;
+  }
+
+  /**
+   * published per solveBatch
+   * 
+   * @param solutions
+   *          the solutions of the batch
+   * @return the solutions
+   */
+  public List<IKSolution> publishIKSolutions(List<IKSolution> solutions) {
+    return solutions;
+  }
+
   // input data from point publisher
   public void onPoint(Point point) {
     // TODO : move input matrix translation to here? or somewhere?
@@ -9,6 +9,7 @@ import java.util.Set;
 
 import org.myrobotlab.framework.Registration;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.TaskScheduler.ScheduledTask;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
@@ -16,6 +17,7 @@ import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.service.config.Mpu6050Config;
 import org.myrobotlab.service.config.ServiceConfig;
+import org.myrobotlab.service.data.I2CSample;
 import org.myrobotlab.service.data.Orientation;
 import org.myrobotlab.service.interfaces.I2CControl;
 import org.myrobotlab.service.interfaces.I2CController;
@@ -74,40 +76,101 @@ public class Mpu6050 extends Service<Mpu6050Config> implements I2CControl, Orien
 
   protected class OrientationPublisher implements Runnable {
     protected boolean isRunning = false;
-    private transient Thread thread = null;
+    /**
+     * the controller reads the registers on its own and samples come in
+     * onI2CSamples - no polling thread
+     */
+    protected boolean subscribed = false;
+    /**
+     * setup or polling on the Runtime's TaskScheduler
+     */
+    private transient ScheduledTask task = null;
 
+    /**
+     * polls the registers - when the controller can't sample them
+     */
     @Override
     public void run() {
       try {
-        isRunning = true;
-        dmpInitialize(); // TODO check initialize() switch use dmp?
-        while (isRunning) {
-          refresh();
-          invoke("publishOrientation", data.orientation);
-          invoke("publishMpu6050Data", data);
+        refresh();
+        invoke("publishOrientation", data.orientation);
+        invoke("publishMpu6050Data", data);
+      } catch (Exception e) {
+        log.error("publisher threw", e);
+        error("publisher error %s", e.getMessage());
+        stop();
+      }
+    }
 
-          sleep((int) (1000 / sampleRateHz));
+    private void setup() {
+      try {
+        dmpInitialize(); // TODO check initialize() switch use dmp?
+        synchronized (this) {
+          if (isRunning && !subscribe()) {
+            poll();
+          }
         }
       } catch (Exception e) {
         log.error("publisher threw", e);
         error("publisher error %s", e.getMessage());
+        isRunning = false;
       }
-      isRunning = false;
+    }
+
+    /**
+     * polls at a fixed rate of sampleRateHz
+     */
+    protected synchronized void poll() {
+      if (task != null) {
+        task.cancel();
+      }
+      long periodMs = Math.max(1, Math.round(1000 / sampleRateHz));
+      task = Runtime.getTaskScheduler().scheduleAtFixedRate(String.format("%s-publisher", getName()), this, periodMs, periodMs);
+    }
+
+    protected synchronized boolean isPolling() {
+      return isRunning && !subscribed && task != null && !task.isDone();
     }
 
     public synchronized void start() {
       if (isRunning) {
         return;
       }
-      thread = new Thread(this, String.format("%s-publisher", getName()));
-      thread.start();
+      isRunning = true;
+      // initializing blocks on i2c - not on the caller's thread
+      task = Runtime.getTaskScheduler().schedule(String.format("%s-publisher-setup", getName()), this::setup, 0);
       broadcastState();
     }
 
     public synchronized void stop() {
       isRunning = false;
+      if (task != null) {
+        task.cancel();
+        task = null;
+      }
+      if (subscribed && controller != null) {
+        controller.i2cUnsubscribe(Mpu6050.this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), MPU6050_RA_ACCEL_XOUT_H);
+      }
+      subscribed = false;
       broadcastState();
     }
+
+    /**
+     * asks the controller to sample accel, temperature and gyro at sampleRateHz
+     * - delivered about 20 times a second
+     * 
+     * @return false if it can't, the registers have to be polled
+     */
+    protected synchronized boolean subscribe() {
+      if (!isRunning || controller == null) {
+        return false;
+      }
+      int intervalMs = (int) (1000 / sampleRateHz);
+      int batchSize = Math.max(1, (int) (sampleRateHz / 20));
+      lastnow = 0;
+      subscribed = controller.i2cSubscribe(Mpu6050.this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), MPU6050_RA_ACCEL_XOUT_H, 14, intervalMs, batchSize);
+      return subscribed;
+    }
   }
 
   static class Mpu6050Data {
@@ -259,6 +322,33 @@ public class Mpu6050 extends Service<Mpu6050Config> implements I2CControl, Orien
     // Request 14 bytes from the MPU-6050
     byte[] readbuffer = new byte[14];
     controller.i2cRead(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), readbuffer, readbuffer.length);
+    setRaw(readbuffer);
+  }
+
+  /**
+   * samples of MPU6050_RA_ACCEL_XOUT_H the controller read on its own
+   */
+  @Override
+  public void onI2CSamples(I2CSample[] samples) {
+    if (!publisher.isRunning) {
+      return;
+    }
+    for (I2CSample sample : samples) {
+      if (sample.data.length < 14) {
+        continue;
+      }
+      setRaw(sample.data);
+      // the board's clock - the samples of a batch arrive together
+      complementaryFilter(data.gyroX, data.gyroY, data.gyroZ, data.accelX, data.accelY, data.accelZ, sample.timestamp);
+      invoke("publishOrientation", data.orientation);
+      invoke("publishMpu6050Data", data);
+    }
+  }
+
+  /**
+   * fills data from the 14 bytes starting at MPU6050_RA_ACCEL_XOUT_H
+   */
+  protected void setRaw(byte[] readbuffer) {
     // Fill the variables with the result from the read operation
     data.accelX = readbuffer[0] << 8 | readbuffer[1] & 0xFF;
     data.accelY = readbuffer[2] << 8 | readbuffer[3] & 0xFF;
@@ -290,9 +380,12 @@ public class Mpu6050 extends Service<Mpu6050Config> implements I2CControl, Orien
   double lastnow = 0;
 
   public void complementaryFilter(double gyro_x, double gyro_y, double gyro_z, double acc_x, double acc_y, double acc_z) {
+    complementaryFilter(gyro_x, gyro_y, gyro_z, acc_x, acc_y, acc_z, System.currentTimeMillis());
+  }
+
+  protected void complementaryFilter(double gyro_x, double gyro_y, double gyro_z, double acc_x, double acc_y, double acc_z, long now) {
 
     // All angles are calculatd in radians
-    long now = System.currentTimeMillis();
     if (lastnow == 0) {
       lastnow = now - .05;
     }
@@ -4479,6 +4572,12 @@ public class Mpu6050 extends Service<Mpu6050Config> implements I2CControl, Orien
       return;
     }
     sampleRateHz = rateHz;
+    if (publisher.subscribed) {
+      publisher.subscribe();
+    } else if (publisher.isPolling()) {
+      // the rate is fixed when scheduled
+      publisher.poll();
+    }
     broadcastState();
   }
 
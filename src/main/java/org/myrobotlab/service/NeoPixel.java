@@ -34,6 +34,7 @@ import java.util.concurrent.BlockingQueue;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.TaskScheduler.ScheduledTask;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
 import org.myrobotlab.logging.Level;
@@ -105,89 +106,184 @@ public class NeoPixel extends Service<NeoPixelConfig> implements NeoPixelControl
   }
 
   /**
-   * Thread to do animations Java side and push the changing of pixels to the
-   * neopixel
+   * Does animations Java side and pushes the changing of pixels to the
+   * neopixel. Runs on the Runtime's TaskScheduler only while there is display
+   * data - the steps of a flash are timed by the scheduler instead of sleeping
+   * on a thread of its own.
    */
-  private class Worker implements Runnable {
+  private class Worker {
 
     boolean running = false;
 
-    private transient Thread thread = null;
+    /**
+     * a run is scheduled or in progress
+     */
+    private boolean pending = false;
+
+    /**
+     * a run is in progress - it goes on if started again before it ended
+     */
+    private boolean inRun = false;
+
+    /**
+     * id of the last run scheduled - a run cancelled too late to stop it
+     * finds a newer id and does nothing
+     */
+    private int scheduled = 0;
+
+    private transient ScheduledTask task = null;
+
+    /**
+     * flash being played and its next step - on and off of each flash
+     */
+    private LedDisplayData flashing = null;
+
+    private int flashStep = 0;
+
+    /**
+     * schedules the next run
+     */
+    private void schedule(long delayMs) {
+      pending = true;
+      int id = ++scheduled;
+      task = Runtime.getTaskScheduler().schedule(String.format("%s-animation-runner", getName()), () -> run(id), delayMs);
+    }
 
-    @Override
-    public void run() {
-      running = true;
+    private void run(int id) {
+      synchronized (this) {
+        if (!running || id != scheduled) {
+          // stopped, or stopped and started again, after it was due
+          return;
+        }
+        inRun = true;
+      }
+      long delayMs = 0;
+      try {
+        delayMs = process();
+      } catch (Exception e) {
+        error(e);
+      }
+      synchronized (this) {
+        inRun = false;
+        task = null;
+        pending = false;
+        if (!running) {
+          flashing = null;
+          return;
+        }
+        if (delayMs > 0) {
+          // next step of a flash
+          schedule(delayMs);
+        } else if (!displayQueue.isEmpty()) {
+          // added while finishing
+          kick();
+        }
+      }
+    }
+
+    /**
+     * processes display data until the queue is empty or a flash has to wait
+     * 
+     * @return ms to wait for the next step of a flash, 0 when done
+     */
+    private long process() {
       while (running) {
-        try {
-          LedDisplayData display = displayQueue.take();
-          // get led display data
-          log.debug(display.toString());
-
-          NeoPixelController npc = (NeoPixelController) Runtime.getService(controller);
-          if (npc == null) {
-            error("%s cannot process display data controller not set", getName());
-            continue;
+        if (flashing != null) {
+          long delayMs = flash();
+          if (delayMs > 0) {
+            return delayMs;
           }
+          continue;
+        }
 
-          if ("animation".equals(display.action)) {
-            npc.neoPixelClear(getName());
-            // sleep(100);
-            Double fps = fpsToWaitMs(speedFps);
-            npc.neoPixelSetAnimation(getName(), animations.get(display.animation), red, green, blue, white, fps.intValue());
-            currentAnimation = display.animation;
-          } else if ("clear".equals(display.action)) {
-            // sleep(100);
-            npc.neoPixelClear(getName());
-            currentAnimation = null;
-          } else if ("writeMatrix".equals(display.action)) {
-            // sleep(100);
-            npc.neoPixelWriteMatrix(getName(), getPixelSet().flatten());
-          } else if ("fill".equals(display.action)) {
-            Flash f = display.flashes.get(0);
-            // sleep(100);
-            npc.neoPixelFill(getName(), display.beginAddress, display.onCount, f.red, f.green, f.blue, f.white);
-          } else if ("brightness".equals(display.action)) {
-            // sleep(100);
-            display.brightness = (display.brightness > 255) ? 255 : display.brightness;
-            display.brightness = (display.brightness < 0) ? 0 : display.brightness;
-            npc.neoPixelSetBrightness(getName(), display.brightness);
-          } else if ("flash".equals(display.action)) {
-
-            // FIXME disable currentAnimation ??? // save it ?
-            // sleep(100);
-            npc.neoPixelClear(getName());
-            for (int count = 0; count < display.flashes.size(); count++) {
-              Flash flash = display.flashes.get(count);
-              npc.neoPixelFill(getName(), 0, count, flash.red, flash.green, flash.blue, flash.white);
-              sleep(flash.timeOn);
-              npc.neoPixelClear(getName());
-              sleep(flash.timeOff);
-            }
-          }
-          // start animations
-          // playAnimation(lastAnimation);
-        } catch (InterruptedException ex) {
-          log.info("shutting down worker");
-        } catch (Exception e) {
-          error(e);
+        LedDisplayData display = displayQueue.poll();
+        if (display == null) {
+          return 0;
+        }
+        // get led display data
+        log.debug(display.toString());
+
+        NeoPixelController npc = (NeoPixelController) Runtime.getService(controller);
+        if (npc == null) {
+          error("%s cannot process display data controller not set", getName());
+          continue;
+        }
+
+        if ("animation".equals(display.action)) {
+          npc.neoPixelClear(getName());
+          Double fps = fpsToWaitMs(speedFps);
+          npc.neoPixelSetAnimation(getName(), animations.get(display.animation), red, green, blue, white, fps.intValue());
+          currentAnimation = display.animation;
+        } else if ("clear".equals(display.action)) {
+          npc.neoPixelClear(getName());
+          currentAnimation = null;
+        } else if ("writeMatrix".equals(display.action)) {
+          npc.neoPixelWriteMatrix(getName(), getPixelSet().flatten());
+        } else if ("fill".equals(display.action)) {
+          Flash f = display.flashes.get(0);
+          npc.neoPixelFill(getName(), display.beginAddress, display.onCount, f.red, f.green, f.blue, f.white);
+        } else if ("brightness".equals(display.action)) {
+          display.brightness = (display.brightness > 255) ? 255 : display.brightness;
+          display.brightness = (display.brightness < 0) ? 0 : display.brightness;
+          npc.neoPixelSetBrightness(getName(), display.brightness);
+        } else if ("flash".equals(display.action)) {
+          // FIXME disable currentAnimation ??? // save it ?
+          npc.neoPixelClear(getName());
+          flashing = display;
+          flashStep = 0;
         }
       }
-      running = false;
+      return 0;
+    }
+
+    /**
+     * next step of the flash being played
+     * 
+     * @return ms until the step after, 0 when the flash is done
+     */
+    private long flash() {
+      NeoPixelController npc = (NeoPixelController) Runtime.getService(controller);
+      int count = flashStep / 2;
+      if (npc == null || count >= flashing.flashes.size()) {
+        flashing = null;
+        return 0;
+      }
+      Flash flash = flashing.flashes.get(count);
+      boolean on = flashStep % 2 == 0;
+      ++flashStep;
+      if (on) {
+        npc.neoPixelFill(getName(), 0, count, flash.red, flash.green, flash.blue, flash.white);
+        return Math.max(1, flash.timeOn);
+      }
+      npc.neoPixelClear(getName());
+      return Math.max(1, flash.timeOff);
+    }
+
+    /**
+     * schedules a run if none is pending
+     */
+    public synchronized void kick() {
+      if (running && !pending) {
+        schedule(0);
+      }
     }
 
-    // FIXME - this should just wait/notify - not start a thread
     public synchronized void start() {
-      running = false;
-      thread = new Thread(this, String.format("%s-animation-runner", getName()));
-      thread.start();
+      running = true;
+      kick();
     }
 
     public synchronized void stop() {
       running = false;
-      if (thread != null) {
-        thread.interrupt();
+      if (task != null) {
+        task.cancel();
+      }
+      task = null;
+      if (!inRun) {
+        pending = false;
+        flashing = null;
       }
-      thread = null;
+      // else the run in progress ends, or goes on if started again
     }
   }
 
@@ -343,7 +439,7 @@ public class NeoPixel extends Service<NeoPixelConfig> implements NeoPixelControl
   protected int white = 0;
 
   /**
-   * thread for doing off board and in memory animations
+   * worker for doing off board and in memory animations
    */
   protected final Worker worker;
 
@@ -367,6 +463,7 @@ public class NeoPixel extends Service<NeoPixelConfig> implements NeoPixelControl
       warn("dropping display task");
     } else {
       displayQueue.add(data);
+      worker.kick();
     }
   }
 
@@ -41,6 +41,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -49,6 +50,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -100,6 +102,7 @@ import org.myrobotlab.cv.CVFilter;
 import org.myrobotlab.document.Classification;
 import org.myrobotlab.document.Classifications;
 import org.myrobotlab.framework.Instantiator;
+import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.image.ColoredPoint;
@@ -112,8 +115,15 @@ import org.myrobotlab.math.geometry.Point2df;
 import org.myrobotlab.math.geometry.PointCloud;
 import org.myrobotlab.net.Http;
 import org.myrobotlab.opencv.CloseableFrameConverter;
+import org.myrobotlab.opencv.FilterStats;
 import org.myrobotlab.opencv.FilterWrapper;
 import org.myrobotlab.opencv.FrameFileRecorder;
+import org.myrobotlab.opencv.FramePipeline;
+import org.myrobotlab.opencv.FramePipeline.StageStats;
+import org.myrobotlab.opencv.ImagePool;
+import org.myrobotlab.opencv.ImagePool.PoolStats;
+import org.myrobotlab.opencv.InferenceExecutor;
+import org.myrobotlab.opencv.InferenceExecutor.InferenceStats;
 import org.myrobotlab.opencv.OpenCVData;
 import org.myrobotlab.opencv.OpenCVFilter;
 import org.myrobotlab.opencv.OpenCVFilterFaceDetectDNN;
@@ -184,19 +194,33 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
             newFrame = grabber.grab();
           }
 
+          // the frame is copied (into a pooled image) if it is used again
+          boolean copy = false;
           if (newFrame != null) {
             lastFrame = newFrame;
           } else if (newFrame == null && lastFrame != null) {
-            newFrame = lastFrame.clone();
+            newFrame = lastFrame;
+            copy = true;
           } else {
             error("could not get valid frame");
             stopCapture();
           }
 
+          boolean pipelined = config.pipelined;
+          if (pipelined) {
+            // throttle here - the stages run behind the grab
+            long wait = (maxFps == null) ? 0 : (1000 / maxFps) - (System.currentTimeMillis() - frameStartTs);
+            if (wait > 0) {
+              sleep((int) wait);
+            }
+            // the grabber re-uses its buffer for the next frame
+            copy = true;
+          }
+
           frameStartTs = System.currentTimeMillis();
           ++frameIndex;
 
-          data = new OpenCVData(getName(), frameStartTs, frameIndex, newFrame);
+          data = new OpenCVData(getName(), frameStartTs, frameIndex, newFrame, imagePool, copy);
 
           if (grabber.getClass().equals(OpenKinectFrameGrabber.class)) {
             // by default this framegrabber returns video
@@ -205,10 +229,20 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
             // here we need ot add the video
 
             IplImage video = ((OpenKinectFrameGrabber) grabber).grabVideo();
-            data.putKinect(converter.toImage(newFrame), video);
+            IplImage depth = converter.toImage(newFrame);
+            if (pipelined) {
+              video = data.copy(video);
+              depth = data.copy(depth);
+            }
+            data.putKinect(depth, video);
           }
 
-          processVideo(data);
+          if (pipelined) {
+            processPipelined(data);
+          } else {
+            closePipeline(true);
+            processVideo(data);
+          }
 
           if (lengthInFrames > 1 && loop && frameIndex > lengthInFrames - 2) {
             grabber.setFrameNumber(0);
@@ -216,9 +250,19 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
           }
         } // end of while - no longer capturing
 
+      } catch (InterruptedException e) {
+        log.info("run - interrupted");
       } catch (Exception e) {
         log.error("failed getting frame", e);
       }
+
+      // frames still in the pipeline are dropped
+      try {
+        closePipeline(false);
+      } catch (InterruptedException e) {
+        log.info("run - interrupted closing pipeline");
+      }
+      imagePool.clear();
       // begin capturing ...
 
       frameIndex = 0;
@@ -471,6 +515,10 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
 
   transient BlockingQueue<Map<String, List<Classification>>> blockingClassification = new LinkedBlockingQueue<>();
 
+  /**
+   * next frame for getOpenCVData - detached and released by the capture loop,
+   * dropping it needs no release
+   */
   transient BlockingQueue<OpenCVData> blockingData = new LinkedBlockingQueue<>();
   Integer cameraIndex;
   volatile boolean capturing = false;
@@ -547,6 +595,26 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
 
   final transient private VideoProcessor vp = new VideoProcessor();
 
+  /**
+   * filters running as stages when config.pipelined - only started, closed and
+   * fed by the video processor thread
+   */
+  transient volatile FramePipeline<OpenCVData> pipeline = null;
+
+  /**
+   * the filters and stages the pipeline was built from
+   */
+  transient Map<String, OpenCVFilter> pipelineFilters = null;
+
+  transient List<List<String>> pipelineStages = null;
+
+  transient long lastStatsTs = 0;
+
+  /**
+   * images of the frames - filter outputs and copies of grabbed frames
+   */
+  final transient ImagePool imagePool = new ImagePool(8);
+
   Integer width = null;
 
   boolean recordingFrames = false;
@@ -558,7 +626,12 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
   /**
    * Used to provide a thread safe way of setting filter states
    */
-  private Map<String, OpenCVFilter> newFilterStates = new HashMap<>();
+  private Map<String, OpenCVFilter> newFilterStates = new ConcurrentHashMap<>();
+
+  /**
+   * time each filter takes per frame - by filter name
+   */
+  final transient Map<String, FilterStats> filterStats = new ConcurrentHashMap<>();
 
   boolean display = true;
 
@@ -1110,6 +1183,12 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
 
   // FIXME - TODO track(type)
 
+  /**
+   * @param timeout
+   *          ms to wait for the next frame
+   * @return the next frame, null if none came in time - it is detached from
+   *         the image pool, it's the caller's and does not have to be released
+   */
   public OpenCVData getOpenCVData(Integer timeout) {
     blockingData.clear();
     OpenCVData newData = null;
@@ -1175,10 +1254,34 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
       return;
     }
 
+    processFilters(data, filters.values());
+
+    publishVideo(data);
+
+    // delay if needed to maxFps
+    if (maxFps != null && frameEndTs - frameStartTs < 1000 / maxFps) {
+      sleep((1000 / maxFps) - (int) (frameEndTs - frameStartTs));
+    }
+
+  } // end processVideo
+
+  /**
+   * runs the filters on a frame - all of them, or the ones of a pipeline stage
+   * 
+   * @param data
+   *          the frame
+   * @param filters
+   *          the filters in pipeline order
+   * @throws InterruptedException
+   *           when stopping
+   */
+  private void processFilters(OpenCVData data, Collection<OpenCVFilter> filters) throws InterruptedException {
+    // nobody watching - no filter draws its display
+    boolean display = isDisplayWanted();
     // process each filter
-    // for (String filterName : filters.keySet()) {
-    for (OpenCVFilter filter : filters.values()) {
+    for (OpenCVFilter filter : filters) {
       if (filter.isEnabled() & !stopping) {
+        long start = System.nanoTime();
         IplImage input = filter.setData(data);
         if (input == null) {
           log.error("could not get setData image");
@@ -1188,17 +1291,35 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
         // process the previous filter's output
         IplImage processed = filter.process(input);
         filter.postProcess(processed);
-        filter.processDisplay();
+        if (display) {
+          filter.processDisplay();
+        }
+        filterStats.computeIfAbsent(filter.name, FilterStats::new).record(System.nanoTime() - start);
         processFilterStateUpdates(filter);
       }
     } // for each filter
+  }
+
+  /**
+   * display, publishing and recording of a processed frame
+   * 
+   * @param data
+   *          the frame
+   */
+  private void publishVideo(OpenCVData data) {
 
     // get the display filter to process
 
-    putText("frame: %d", frameIndex);
-    putText("time:  %d", frameStartTs);
+    putText("frame: %d", data.getFrameIndex());
+    putText("time:  %d", data.getTs());
 
-    BufferedImage displayImage = data.getDisplay();
+    if (canvasFrame != null && (!nativeViewer || isHeadless())) {
+      canvasFrame.dispose();
+      canvasFrame = null;
+    }
+
+    // the display is only converted and drawn if somebody is watching
+    BufferedImage displayImage = isDisplayWanted() ? data.getDisplay() : null;
     if (displayImage != null) {
       Graphics2D g2d = displayImage.createGraphics();
 
@@ -1212,12 +1333,12 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
         }
 
         BufferedImage b = data.getDisplay();
-        SerializableImage si = new SerializableImage(b, displayFilter, frameIndex);
+        SerializableImage si = new SerializableImage(b, displayFilter, data.getFrameIndex());
         invoke("publishDisplay", si);
 
-        if (webViewer) {
-          // broadcast(???)
-          WebImage webImage = new WebImage(b, getName(), frameIndex);
+        if (webViewer && hasSubscribers("publishWebDisplay")) {
+          // same jpeg as the publishDisplay subscribers (VideoStreamer) get
+          WebImage webImage = new WebImage(si, getName(), webQuality);
           // latency use the original ts from before fetch image and the filters
           // !
           webImage.ts = data.getTs();
@@ -1239,20 +1360,24 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
               canvasFrame.showImage(frame);
             }
           }
-        } else if (canvasFrame != null && !nativeViewer) {
-          canvasFrame.dispose();
-          canvasFrame = null;
         }
 
       }
     }
 
+    // subscribers and getOpenCVData callers keep the frame as long as they
+    // like - its images don't go back to the pool
+    boolean waiting = blockingData.isEmpty();
+    if (waiting || hasSubscribers("publishOpenCVData") || hasSubscribers("publishCvData")) {
+      data.detach();
+    }
+
     invoke("publishOpenCVData", data);
 
     // standard generic CvData publish
     invoke("publishCvData", data);
 
-    if (blockingData.size() == 0) {
+    if (waiting) {
       blockingData.add(data);
     }
 
@@ -1270,14 +1395,138 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
 
     frameEndTs = System.currentTimeMillis();
 
-    // delay if needed to maxFps
-    if (maxFps != null && frameEndTs - frameStartTs < 1000 / maxFps) {
-      sleep((1000 / maxFps) - (int) (frameEndTs - frameStartTs));
+    if (frameEndTs - lastStatsTs >= 1000) {
+      lastStatsTs = frameEndTs;
+      invoke("publishImagePoolStats", getImagePoolStats());
+      if (pipeline != null) {
+        invoke("publishPipelineStats", getPipelineStats());
+      }
+      invoke("publishFilterStats", getFilterStats());
+      List<InferenceStats> inferenceStats = getInferenceStats();
+      if (!inferenceStats.isEmpty()) {
+        invoke("publishInferenceStats", inferenceStats);
+      }
     }
 
     data.dispose();
+  }
 
-  } // end processVideo
+  /**
+   * @return true if the display of a frame is used - by the native viewer,
+   *         subscribers of publishDisplay or, with the web viewer, of
+   *         publishWebDisplay
+   */
+  boolean isDisplayWanted() {
+    return (nativeViewer && !isHeadless()) || hasSubscribers("publishDisplay") || (webViewer && hasSubscribers("publishWebDisplay"));
+  }
+
+  private boolean hasSubscribers(String topic) {
+    if (getOutbox() == null) {
+      return false;
+    }
+    List<MRLListener> listeners = getOutbox().getSubscriptions().get(topic);
+    return listeners != null && !listeners.isEmpty();
+  }
+
+  /**
+   * hands a frame to the pipeline - started again if the filters or stages
+   * changed, after the frames in it went through
+   * 
+   * @param data
+   *          the frame
+   * @throws InterruptedException
+   *           when stopping
+   */
+  private void processPipelined(OpenCVData data) throws InterruptedException {
+    if (stopping) {
+      data.dispose();
+      return;
+    }
+    if (pipeline != null && (pipelineFilters != filters || pipelineStages != config.pipelineStages)) {
+      closePipeline(true);
+    }
+    if (pipeline == null) {
+      startPipeline();
+    }
+    try {
+      pipeline.submit(data);
+    } catch (InterruptedException e) {
+      data.dispose();
+      throw e;
+    }
+  }
+
+  /**
+   * a stage per filter - consecutive filters in the same config.pipelineStages
+   * group share one - and a last stage publishing the frames
+   */
+  private void startPipeline() {
+    Map<String, OpenCVFilter> current = filters;
+    List<List<String>> stages = config.pipelineStages;
+    FramePipeline<OpenCVData> p = new FramePipeline<>(getName(), config.pipelineQueueSize);
+
+    List<OpenCVFilter> group = new ArrayList<>();
+    List<String> groupNames = null;
+    for (OpenCVFilter filter : current.values()) {
+      List<String> names = null;
+      if (stages != null) {
+        for (List<String> s : stages) {
+          if (s != null && s.contains(filter.name)) {
+            names = s;
+            break;
+          }
+        }
+      }
+      if (!group.isEmpty() && (names == null || names != groupNames)) {
+        addStage(p, group);
+        group = new ArrayList<>();
+      }
+      group.add(filter);
+      groupNames = names;
+    }
+    if (!group.isEmpty()) {
+      addStage(p, group);
+    }
+
+    p.addStage("publish", data -> {
+      publishVideo(data);
+    });
+    // frames a stage threw on or dropped on close go back to the pool
+    p.setOnDrop(OpenCVData::dispose);
+    p.start();
+    log.info("{} pipeline started with {} stages", getName(), p.getStageCount());
+
+    pipelineFilters = current;
+    pipelineStages = stages;
+    pipeline = p;
+  }
+
+  private void addStage(FramePipeline<OpenCVData> p, List<OpenCVFilter> group) {
+    StringBuilder name = new StringBuilder();
+    for (OpenCVFilter filter : group) {
+      if (name.length() > 0) {
+        name.append("+");
+      }
+      name.append(filter.name);
+    }
+    p.addStage(name.toString(), data -> processFilters(data, group));
+  }
+
+  /**
+   * @param finish
+   *          true to let the frames in it go through, false to drop them
+   * @throws InterruptedException
+   *           interrupted while waiting for the stages
+   */
+  private void closePipeline(boolean finish) throws InterruptedException {
+    FramePipeline<OpenCVData> p = pipeline;
+    if (p == null) {
+      return;
+    }
+    pipeline = null;
+    p.close(finish);
+    log.info("{} pipeline closed", getName());
+  }
 
   /**
    * A new method to protect filters from other threads doing updates possibly
@@ -1511,6 +1760,11 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
    */
   protected boolean webViewer = false;
 
+  /**
+   * jpeg quality of the web viewer 0.0 - 1.0, null for the default
+   */
+  protected Double webQuality = null;
+
   public void startStreamer() {
     try {
       if (ffmpegStreamer != null) {
@@ -1647,6 +1901,7 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
       OpenCVFilter removed = newFilters.remove(name);
       removed.release();
       filters = newFilters;
+      filterStats.remove(name);
       broadcastState();
     }
   }
@@ -1660,6 +1915,7 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
       filter.release();
     }
     filters = new LinkedHashMap<>();
+    filterStats.clear();
     broadcastState();
   }
 
@@ -1826,10 +2082,154 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
   public void setMaxFps(Integer fps) {
     if (fps == null || fps < 1 || fps > 1000) {
       maxFps = null;
+      return;
     }
     maxFps = fps;
   }
 
+  /**
+   * run the filters as a pipeline of stages on their own threads, so the next
+   * frames are grabbed and go through the first filters while a slow filter
+   * works on a frame - frames are still published in order
+   * 
+   * @param b
+   *          true to run the filters pipelined
+   */
+  public void setPipelined(boolean b) {
+    config.pipelined = b;
+  }
+
+  public boolean isPipelined() {
+    return config.pipelined;
+  }
+
+  /**
+   * groups of filters running on one stage when pipelined - e.g. cheap filters
+   * before a detector, filters not in a group get their own stage
+   * 
+   * @param stages
+   *          lists of filter names, the filters of a group must be next to
+   *          each other in the pipeline
+   */
+  public void setPipelineStages(List<List<String>> stages) {
+    config.pipelineStages = stages;
+  }
+
+  /**
+   * @return per stage latency and queue depth - empty when not pipelined
+   */
+  public List<StageStats> getPipelineStats() {
+    FramePipeline<OpenCVData> p = pipeline;
+    return (p == null) ? new ArrayList<>() : p.getStats();
+  }
+
+  /**
+   * published about every second while pipelined
+   * 
+   * @param stats
+   *          per stage stats
+   * @return the stats
+   */
+  public List<StageStats> publishPipelineStats(List<StageStats> stats) {
+    return stats;
+  }
+
+  /**
+   * @return mean, p50, p99 and max time per frame of each filter, in filter
+   *         order
+   */
+  public List<FilterStats> getFilterStats() {
+    List<FilterStats> stats = new ArrayList<>();
+    for (OpenCVFilter filter : filters.values()) {
+      FilterStats s = filterStats.get(filter.name);
+      if (s != null) {
+        stats.add(s.getStats());
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * starts the filter stats over - e.g. after a warm up
+   */
+  public void resetFilterStats() {
+    for (FilterStats s : filterStats.values()) {
+      s.reset();
+    }
+  }
+
+  /**
+   * published about every second while capturing
+   * 
+   * @param stats
+   *          per filter stats
+   * @return the stats
+   */
+  public List<FilterStats> publishFilterStats(List<FilterStats> stats) {
+    return stats;
+  }
+
+  /**
+   * @return leases, hit rate and native bytes of the frame image pool
+   */
+  public PoolStats getImagePoolStats() {
+    return imagePool.getStats();
+  }
+
+  /**
+   * published about every second while capturing
+   * 
+   * @param stats
+   *          image pool stats
+   * @return the stats
+   */
+  public PoolStats publishImagePoolStats(PoolStats stats) {
+    return stats;
+  }
+
+  /**
+   * batching of the dnn filters' models - they are shared by all OpenCV
+   * services, so the settings also apply to the models registered by the
+   * others
+   * 
+   * @param maxBatch
+   *          most jobs (frames, face crops ...) run in one batch
+   * @param maxWaitMs
+   *          ms a job waits for more jobs from other filters or cameras
+   */
+  public void setInferenceBatch(int maxBatch, long maxWaitMs) {
+    config.inferenceMaxBatch = maxBatch;
+    config.inferenceMaxWaitMs = maxWaitMs;
+    InferenceExecutor.getInstance().setBatching(maxBatch, maxWaitMs);
+  }
+
+  public int getInferenceMaxBatch() {
+    return config.inferenceMaxBatch;
+  }
+
+  public long getInferenceMaxWaitMs() {
+    return config.inferenceMaxWaitMs;
+  }
+
+  /**
+   * @return throughput, batch sizes and latency histograms of the dnn models
+   *         of all OpenCV services
+   */
+  public List<InferenceStats> getInferenceStats() {
+    return InferenceExecutor.getInstance().getStats();
+  }
+
+  /**
+   * published about every second while capturing with dnn filters
+   * 
+   * @param stats
+   *          per model stats
+   * @return the stats
+   */
+  public List<InferenceStats> publishInferenceStats(List<InferenceStats> stats) {
+    return stats;
+  }
+
   public void setPipeline(String pipeline) {
     this.pipelineSelected = pipeline;
     this.inputSource = "pipeline";
@@ -1845,6 +2245,14 @@ public class OpenCV extends AbstractComputerVision<OpenCVConfig> implements Imag
     webViewer = b;
   }
 
+  /**
+   * @param quality
+   *          jpeg quality of the web viewer 0.0 - 1.0, null for the default
+   */
+  public void setWebQuality(Double quality) {
+    webQuality = quality;
+  }
+
   public void setNativeViewer(boolean b) {
     nativeViewer = b;
   }
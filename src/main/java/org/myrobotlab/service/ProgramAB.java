@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -485,6 +486,27 @@ public class ProgramAB extends Service<ProgramABConfig>
     return patterns;
   }
 
+  /**
+   * Return the templates of an AIML Bot which are plain text - responses which
+   * are always the same, e.g. to prewarm the audio cache of a speech synthesis
+   * service
+   * 
+   * @param botName
+   *          the bots name from which to return it's templates.
+   * @return the distinct templates without aiml tags
+   */
+  public ArrayList<String> listStaticTemplates(String botName) {
+    Set<String> templates = new LinkedHashSet<String>();
+    Bot bot = getBot(botName);
+    for (Category c : bot.brain.getCategories()) {
+      String template = c.getTemplate();
+      if (template != null && !template.contains("<") && template.trim().length() > 0) {
+        templates.add(template.trim());
+      }
+    }
+    return new ArrayList<String>(templates);
+  }
+
   /**
    * Return the number of milliseconds since the last response was given -1 if a
    * response has never been given.
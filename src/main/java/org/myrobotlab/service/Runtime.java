@@ -58,6 +58,7 @@ import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.MethodCache;
 import org.myrobotlab.framework.MethodEntry;
 import org.myrobotlab.framework.NameGenerator;
+import org.myrobotlab.framework.Outbox;
 import org.myrobotlab.framework.Peer;
 import org.myrobotlab.framework.Plan;
 import org.myrobotlab.framework.Platform;
@@ -68,6 +69,8 @@ import org.myrobotlab.framework.ServiceReservation;
 import org.myrobotlab.framework.StartYml;
 import org.myrobotlab.framework.StaticType;
 import org.myrobotlab.framework.Status;
+import org.myrobotlab.framework.TaskScheduler;
+import org.myrobotlab.framework.TaskScheduler.TaskStats;
 import org.myrobotlab.framework.interfaces.ConfigurableService;
 import org.myrobotlab.framework.interfaces.MessageListener;
 import org.myrobotlab.framework.interfaces.NameProvider;
@@ -90,6 +93,7 @@ import org.myrobotlab.net.RouteTable;
 import org.myrobotlab.net.WsClient;
 import org.myrobotlab.process.InProcessCli;
 import org.myrobotlab.process.Launcher;
+import org.myrobotlab.sensor.MotionScheduler;
 import org.myrobotlab.service.config.RuntimeConfig;
 import org.myrobotlab.service.config.ServiceConfig;
 import org.myrobotlab.service.data.Locale;
@@ -803,6 +807,12 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
     }
     for (Map.Entry<String, ServiceInterface> entry : sorted.entrySet()) {
       log.info(entry.getKey() + "/" + entry.getValue());
+      Outbox outbox = entry.getValue().getOutbox();
+      if (outbox != null) {
+        // local - a consistent snapshot of the subscription registry
+        ret.put(entry.getKey(), outbox.getNotifyList());
+        continue;
+      }
       List<String> flks = entry.getValue().getNotifyListKeySet();
       Map<String, List<MRLListener>> subret = new TreeMap<String, List<MRLListener>>();
       for (String sn : flks) {
@@ -1396,6 +1406,42 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
     return java.lang.Runtime.getRuntime().totalMemory();
   }
 
+  /**
+   * The scheduler all service tasks (addTask) and periodic workers run on - a
+   * small pool of threads instead of a Timer or a thread per task.
+   *
+   * @return the process wide task scheduler
+   */
+  public static TaskScheduler getTaskScheduler() {
+    return TaskScheduler.getInstance();
+  }
+
+  /**
+   * @return runs, jitter and overruns of all scheduled tasks
+   */
+  public static List<TaskStats> getTaskStats() {
+    return TaskScheduler.getInstance().getStats();
+  }
+
+  /**
+   * @return ticks, latency and overruns of the scheduler running the servo
+   *         motions
+   */
+  public static MotionScheduler.Stats getMotionStats() {
+    return MotionScheduler.getInstance().getStats();
+  }
+
+  /**
+   * published about once a second while servo motions run
+   * 
+   * @param stats
+   *          motion scheduler stats
+   * @return the stats
+   */
+  public MotionScheduler.Stats publishMotionStats(MotionScheduler.Stats stats) {
+    return stats;
+  }
+
   /**
    * FIXME - terrible use a uuid
    * 
@@ -1406,8 +1452,7 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
    * @return a unique id
    */
   public static final synchronized long getUniqueID() {
-    ++uniqueID;
-    return System.currentTimeMillis();
+    return ++uniqueID;
   }
 
   /**
@@ -2196,6 +2241,7 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
         synchronized (INSTANCE_LOCK) {
           runtime = null;
         }
+        TaskScheduler.shutdownInstance();
       } else {
         // put runtime in new registry
         Runtime.getInstance();
@@ -2463,6 +2509,12 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
         url += "?id=" + getId();
       }
 
+      // ask for single pass or binary message encoding - old instances
+      // ignore it
+      if (!url.contains("encoding=")) {
+        url += "&encoding=" + ((config.remoteEncoding == null) ? CodecUtils.ENCODING_JSON_TYPED : config.remoteEncoding);
+      }
+
       WsClient client2 = new WsClient();
       client2.connect(this, url);
 
@@ -2485,6 +2537,10 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
       // addendum
       connection.put("User-Agent", "runtime-client");
 
+      // double encoded until the remote shows it understands single pass or
+      // binary
+      connection.put("encoding", CodecUtils.ENCODING_JSON);
+
       addConnection(client2.getId(), url, connection);
 
       // direct send - may not have and "id" so it will be too runtime vs
@@ -2535,8 +2591,60 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
         log.debug("data - [{}]", data);
       }
 
-      // decoding message envelope
-      Message msg = CodecUtils.fromJson(data, Message.class);
+      // decoding message envelope and parameters
+      Message msg = CodecUtils.jsonToMessage(data, (String) connection.get("encoding"));
+      if (msg == null) {
+        return;
+      }
+      if (CodecUtils.ENCODING_JSON_TYPED.equals(msg.encoding)) {
+        // remote understands single pass encoding - use it from now on
+        connection.put("encoding", CodecUtils.ENCODING_JSON_TYPED);
+      }
+      processRemoteMessage(uuid, msg);
+
+    } catch (Exception e) {
+      log.error("processing msg threw", e);
+    }
+  }
+
+  /**
+   * callback - binary message from a client connection which negotiated a
+   * binary codec
+   *
+   * @param uuid
+   *          - connection for incoming data
+   * @param data
+   *          Incoming message in Smile or CBOR form
+   */
+  @Override
+  public void onRemoteMessage(String uuid, byte[] data) {
+    try {
+      Connection connection = getConnection(uuid);
+      if (connection == null) {
+        error("no connection with uuid %s", uuid);
+        return;
+      }
+
+      // remote answers in binary - use it from now on
+      connection.put("encoding", CodecUtils.getBinaryEncoding(data));
+
+      Message msg = CodecUtils.binaryToMessage(data);
+      if (msg == null) {
+        return;
+      }
+      processRemoteMessage(uuid, msg);
+
+    } catch (Exception e) {
+      log.error("processing msg threw", e);
+    }
+  }
+
+  /**
+   * routes or invokes a decoded remote message
+   */
+  private void processRemoteMessage(String uuid, Message msg) {
+    try {
+
       log.info("==> {} --> {}.{}", msg.sender, msg.name, msg.method);
       msg.setProperty("uuid", uuid); // Properties ???? REMOVE ???
 
@@ -2555,18 +2663,22 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
       // FIXME - see if same code block exists in WebGui .. normalize
       if (isLocal(msg)) {
 
+        if (inbox.pendingReplies.complete(msg)) {
+          // return of a sendBlocking or sendAsync to the remote
+          return;
+        }
+
         // log.info("--> {}.{} from {}", msg.name, msg.method, msg.sender);
 
         String serviceName = msg.getName();
-        // to decode fully we need class name, method name, and an array of json
-        // encoded parameters
+        // parameters were decoded with the envelope
         MethodCache cache = MethodCache.getInstance();
         Class<?> clazz = Runtime.getClass(serviceName);
         if (clazz == null) {
           log.error("local msg but no Class for requested service {}", serviceName);
           return;
         }
-        Object[] params = cache.getDecodedJsonParameters(clazz, msg.method, msg.data);
+        Object[] params = msg.data;
 
         Method method = cache.getMethod(clazz, msg.method, params);
         ServiceInterface si = Runtime.getService(serviceName);
@@ -2584,6 +2696,11 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
         // propagate return data to subscribers
         si.out(msg.method, ret);
 
+        if (Message.BLOCKING.equals(msg.status)) {
+          // the remote sendBlocking or sendAsync waits on the msgId
+          sendReturn(msg, ret);
+        }
+
       } else {
         log.info("GATEWAY {} RELAY {} --to--> {}.{}", getName(), msg.sender, msg.name, msg.method);
         send(msg);
@@ -3494,9 +3611,8 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
    */
   static public void removeAllSubscriptions() {
     for (ServiceInterface si : getLocalServices().values()) {
-      List<String> nlks = si.getNotifyListKeySet();
-      for (int i = 0; i < nlks.size(); ++i) {
-        si.getNotifyList().clear();
+      if (si.getOutbox() != null) {
+        si.getOutbox().reset();
       }
     }
   }
@@ -4308,7 +4424,12 @@ public class Runtime extends Service<RuntimeConfig> implements MessageListener,
        * ======================================================================
        */
 
-      client.send(CodecUtils.toJsonMsg(msg));
+      String encoding = (String) conn.get("encoding");
+      if (CodecUtils.isBinaryEncoding(encoding)) {
+        client.send(CodecUtils.toBinaryMsg(msg, encoding));
+      } else {
+        client.send(CodecUtils.toJsonMsg(msg, encoding));
+      }
     }
   }
 
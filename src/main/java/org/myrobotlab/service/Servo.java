@@ -118,7 +118,7 @@ public class Servo extends AbstractServo<ServoConfig> {
     // broadcast("publishServoMoveTo", new ServoMove(getName(), newPos,
     // mapper.calcOutput(newPos))); apparently we want input here
     // THIS IS CONSUMED BY ARDUINO CONTROLLER - IT USES ServoMove.outputPos !!!!
-    broadcast("publishServoMoveTo", new ServoMove(getName(), newPos, mapper.calcOutput(newPos)));
+    sendServoMove(new ServoMove(getName(), newPos, mapper.calcOutput(newPos)), blocking);
 
     // TODO: this block isn't tested by ServoTest
     if (isBlocking && blocking) {
@@ -26,6 +26,7 @@ import org.myrobotlab.kinematics.Pose;
 import org.myrobotlab.kinematics.PoseMove;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.abstracts.ServoMoveBatch;
 import org.myrobotlab.service.config.ServoMixerConfig;
 import org.myrobotlab.service.interfaces.Processor;
 import org.myrobotlab.service.interfaces.SelectListener;
@@ -99,9 +100,11 @@ public class ServoMixer extends Service<ServoMixerConfig> implements ServiceLife
           Map<String, Map<String, Object>> moves = (Map) action.value;
 
           // do the moves
-          for (String servoName : moves.keySet()) {
-            Map<String, Object> move = moves.get(servoName);
-            moveTo(servoName, move);
+          try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+            for (String servoName : moves.keySet()) {
+              Map<String, Object> move = moves.get(servoName);
+              moveTo(servoName, move);
+            }
           }
 
           // Boolean blocking = (Boolean) move.get("blocking");
@@ -654,20 +657,22 @@ public class ServoMixer extends Service<ServoMixerConfig> implements ServiceLife
         return;
       }
 
-      for (String sc : p.getMoves().keySet()) {
-        PoseMove pm = p.getMoves().get(sc);
-        ServoControl servo = (ServoControl) Runtime.getService(sc);
-        if (servo == null) {
-          warn("servo (%s) cannot move to pose because it does not exist", sc);
-          continue;
-        }
-        Double speed = pm.speed;
-        Double position = pm.position;
-        servo.setSpeed(speed);
-        if (blocking) {
-          servo.moveToBlocking(position);
-        } else {
-          servo.moveTo(position);
+      try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+        for (String sc : p.getMoves().keySet()) {
+          PoseMove pm = p.getMoves().get(sc);
+          ServoControl servo = (ServoControl) Runtime.getService(sc);
+          if (servo == null) {
+            warn("servo (%s) cannot move to pose because it does not exist", sc);
+            continue;
+          }
+          Double speed = pm.speed;
+          Double position = pm.position;
+          servo.setSpeed(speed);
+          if (blocking) {
+            servo.moveToBlocking(position);
+          } else {
+            servo.moveTo(position);
+          }
         }
       }
       invoke("publishStopPose", name);
@@ -8,10 +8,16 @@ import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -34,6 +40,7 @@ import org.atmosphere.nettosphere.Nettosphere;
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Message;
+import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.framework.Registration;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
@@ -43,6 +50,7 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.net.BareBonesBrowserLaunch;
 import org.myrobotlab.net.Connection;
+import org.myrobotlab.net.SendQueue;
 import org.myrobotlab.service.config.WebGuiConfig;
 import org.myrobotlab.service.interfaces.AuthorizationProvider;
 import org.myrobotlab.service.interfaces.Gateway;
@@ -210,6 +218,17 @@ public class WebGui extends Service<WebGuiConfig>
 
   protected int maxMsgSize = 1048576;
 
+  /**
+   * outbound queue and writer of each connection - publishers only encode and
+   * queue, a slow client backs up its own queue
+   */
+  transient protected final Map<String, SendQueue> sendQueues = new ConcurrentHashMap<>();
+
+  /**
+   * max time a writer waits for a message to be written to a client
+   */
+  protected long sendTimeoutMs = 10000;
+
   public WebGui(String n, String id) {
     super(n, id);
 
@@ -231,6 +250,10 @@ public class WebGui extends Service<WebGuiConfig>
         log.info("onDisconnect - {} {}", event, uuid);
         Runtime runtime = Runtime.getInstance();
         runtime.removeConnection(uuid);
+        SendQueue queue = sendQueues.remove(uuid);
+        if (queue != null) {
+          queue.stop();
+        }
         // runtime.removeRoute(uuid);
         // sessions.remove(uuid);
         if (event.isCancelled()) {
@@ -459,6 +482,10 @@ public class WebGui extends Service<WebGuiConfig>
         if (newPersistentConnection) {
           r.suspend();
         }
+        if (CodecUtils.isBinaryEncoding(getEncoding(uuid))) {
+          // binary codec - messages go out as binary frames
+          r.forceBinaryWrite(true);
+        }
         // FIXME - needed ?? - we use BroadcastFactory now !
         setBroadcaster(r);
       }
@@ -470,11 +497,18 @@ public class WebGui extends Service<WebGuiConfig>
 
       String bodyData = null;
 
+      // binary message from a client which negotiated a binary codec
+      byte[] bodyBytes = null;
+
       if (request.body() != null && !request.body()
           .isEmpty() /* && !apiKey.equals(CodecUtils.API_MESSAGES) */) {
         // log.info("apiKey {}", apiKey);
         // body returns null after destroy
-        if (CodecUtils.API_MESSAGES.equals(apiKey)) {
+        if (CodecUtils.API_MESSAGES.equals(apiKey) && request.body().hasBytes() && CodecUtils.isBinaryEncoding(getEncoding(uuid))) {
+          // the frame may be a slice of a larger buffer
+          int offset = request.body().byteOffset();
+          bodyBytes = Arrays.copyOfRange(request.body().asBytes(), offset, offset + request.body().byteLength());
+        } else if (CodecUtils.API_MESSAGES.equals(apiKey)) {
           bodyData = request.body().asString();
         } else {
           bodyData = new String(request.body().asBytes());
@@ -514,8 +548,10 @@ public class WebGui extends Service<WebGuiConfig>
         Message subscribe = Message.createMessage(getFullName(), "runtime", "addListener", listener);
         // Default serialization to json/text is to json encode the parameter
         // list
-        // then json encode the message
-        out.write(CodecUtils.toJsonMsg(subscribe).getBytes());
+        // then json encode the message - unless the client asked for single
+        // pass encoding
+        String encoding = getEncoding(uuid);
+        out.write(encode(subscribe, encoding));
 
         // describe
         Message describe = getDescribeMsg(uuid); // SEND BACK describe(hello)
@@ -524,7 +560,7 @@ public class WebGui extends Service<WebGuiConfig>
         // request.getRequestURI()));
         // out.write(CodecUtils.toJson(describe).getBytes());
         // describe.setName("runtime@" + id);
-        out.write(CodecUtils.toJsonMsg(describe).getBytes());// DOUBLE-ENCODE
+        out.write(encode(describe, encoding));
         // i assume that flush/close happen when out of scope - but do it
         // explicitly here
         out.flush();
@@ -562,12 +598,16 @@ public class WebGui extends Service<WebGuiConfig>
         return;
       }
 
-      if (bodyData != null) {
+      if (bodyData != null || bodyBytes != null) {
 
         // decoding 1st pass - decodes the containers
         Message msg = null;
         try {
-          msg = CodecUtils.jsonToMessage(bodyData);
+          if (bodyBytes != null) {
+            msg = CodecUtils.binaryToMessage(bodyBytes);
+          } else {
+            msg = CodecUtils.jsonToMessage(bodyData, getEncoding(uuid));
+          }
           if (msg == null) {
             log.error("Got null message from client, check client code for bugs");
             return;
@@ -713,6 +753,33 @@ public class WebGui extends Service<WebGuiConfig>
     return Runtime.getInstance().isLocal(msg);
   }
 
+  /**
+   * @param uuid
+   *          connection uuid
+   * @return message encoding negotiated by the connection
+   */
+  private String getEncoding(String uuid) {
+    Connection connection = Runtime.getInstance().getConnection(uuid);
+    if (connection == null || connection.get("encoding") == null) {
+      return CodecUtils.ENCODING_JSON;
+    }
+    return (String) connection.get("encoding");
+  }
+
+  /**
+   * @param msg
+   *          the message
+   * @param encoding
+   *          encoding negotiated by the connection
+   * @return the message encoded for the connection
+   */
+  private byte[] encode(Message msg, String encoding) {
+    if (CodecUtils.isBinaryEncoding(encoding)) {
+      return CodecUtils.toBinaryMsg(msg, encoding);
+    }
+    return CodecUtils.toJsonMsg(msg, encoding).getBytes();
+  }
+
   private boolean upsertConnection(AtmosphereResource r) {
     String uuid = r.uuid();
     Runtime runtime = Runtime.getInstance();
@@ -744,6 +811,10 @@ public class WebGui extends Service<WebGuiConfig>
       // addendum
       connection.put("user", "root");
 
+      // message encoding - clients which understand the single pass or a
+      // binary protocol ask for it, old clients get the double encoded one
+      connection.put("encoding", CodecUtils.getSupportedEncoding(request.getParameter("encoding")));
+
       while (headerNames.hasMoreElements()) {
         String headerName = headerNames.nextElement();
         Enumeration<String> headers = request.getHeaders(headerName);
@@ -939,36 +1010,141 @@ public class WebGui extends Service<WebGuiConfig>
       // add our id - we don't want to see it again
       msg.addHop(getId());
 
-      // Double encoding - parameters then message
-      String json = CodecUtils.toJsonMsg(msg);
-
-      if (json.length() > maxMsgSize) {
-        log.info(String.format("sendRemote default msg size (%d) exceeded 65536 for msg %s", json.length(), msg));
-        /*
-         * debugging large msgs try {
-         * FileIO.toFile(String.format("too-big-%s-%d.json", msg.method,
-         * System.currentTimeMillis()), json); } catch (Exception e) { }
-         */
-      }
-
+      Collection<Connection> clients = null;
       if (broadcastMode) {
-        // multi-cast mode all clients have a single id
-        broadcaster.broadcast(json);
+        // multi-cast mode all clients have a single id - every connection
+        // gets it
+        clients = Runtime.getInstance().getConnections(getName()).values();
       } else {
         // uni-cast mode - all clients have their own id
         Connection c = Runtime.getInstance().getRoute(msg.getId());
-        Broadcaster broadcaster = getBroadcasterFactory().lookup(c.getUuid());
-        if (broadcaster == null) {
-          log.warn("{} failed to lookup broadcaster {} client gone?", getName(), c.getUuid());
+        if (c == null) {
+          log.warn("{} no route to {} client gone?", getName(), msg.getId());
           return;
         }
-        broadcaster.broadcast(json);
+        clients = Collections.singletonList(c);
+      }
+
+      // Double encoding - parameters then message, or single pass / binary
+      // if the connection negotiated it - each encoding is done once and
+      // shared by the connections which use it
+      Map<String, Object> encoded = new HashMap<>();
+      for (Connection c : clients) {
+        String encoding = (String) c.get("encoding");
+        if (encoding == null) {
+          encoding = CodecUtils.ENCODING_JSON;
+        }
+        Object data = encoded.get(encoding);
+        if (data == null) {
+          if (CodecUtils.isBinaryEncoding(encoding)) {
+            data = CodecUtils.toBinaryMsg(msg, encoding);
+          } else {
+            data = CodecUtils.toJsonMsg(msg, encoding);
+          }
+          encoded.put(encoding, data);
+          if (size(data) > maxMsgSize) {
+            log.info(String.format("sendRemote default msg size (%d) exceeded 65536 for msg %s", size(data), msg));
+            /*
+             * debugging large msgs try {
+             * FileIO.toFile(String.format("too-big-%s-%d.json", msg.method,
+             * System.currentTimeMillis()), json); } catch (Exception e) { }
+             */
+          }
+        }
+        // queued - the connection's writer sends it
+        getSendQueue(c.getUuid()).offer(msg.sender, msg.method, msg.name, data, size(data));
       }
     } catch (Exception e) {
       log.error("WebGui.sendRemote threw", e);
     }
   }
 
+  private static int size(Object encoded) {
+    return (encoded instanceof byte[]) ? ((byte[]) encoded).length : ((String) encoded).length();
+  }
+
+  /**
+   * @param uuid
+   *          connection uuid
+   * @return the outbound queue of the connection - created and started on
+   *         first use
+   */
+  protected SendQueue getSendQueue(String uuid) {
+    return sendQueues.computeIfAbsent(uuid, k -> {
+      SendQueue queue = new SendQueue(k, data -> write(k, data), config.sendQueueMaxBytes, new HashSet<>(config.coalesce), new HashMap<>(config.maxRates));
+      queue.start();
+      return queue;
+    });
+  }
+
+  /**
+   * writer of a send queue - waits until the message is written so a slow
+   * client backs up its own queue
+   */
+  private void write(String uuid, Object data) {
+    Broadcaster broadcaster = getBroadcasterFactory().lookup(uuid);
+    if (broadcaster == null) {
+      log.warn("{} failed to lookup broadcaster {} client gone?", getName(), uuid);
+      return;
+    }
+    try {
+      broadcaster.broadcast(data).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (Exception e) {
+      log.warn("{} write to {} failed {}", getName(), uuid, e.toString());
+    }
+  }
+
+  /**
+   * send lag, queued messages and bytes, drop and coalesce counts of each
+   * connection - max lag is reset
+   *
+   * @return connection uuid to stats
+   */
+  public Map<String, QueueStats> getSendQueueStats() {
+    Map<String, QueueStats> stats = new TreeMap<>();
+    for (SendQueue queue : sendQueues.values()) {
+      stats.put(queue.getUuid(), queue.getStats());
+    }
+    return stats;
+  }
+
+  /**
+   * max bytes queued for a client before its oldest messages are dropped
+   *
+   * @param maxBytes
+   *          byte budget of each connection
+   */
+  public void setSendQueueMaxBytes(long maxBytes) {
+    config.sendQueueMaxBytes = maxBytes;
+    applySendQueueConfig();
+  }
+
+  /**
+   * cap the rate a topic is sent to each client - messages in between are
+   * coalesced and the latest value is sent
+   *
+   * @param topic
+   *          callback method or service.method
+   * @param maxRate
+   *          max messages per second, null or 0 removes the cap
+   */
+  public void setMaxRate(String topic, Double maxRate) {
+    if (maxRate == null || maxRate <= 0) {
+      config.maxRates.remove(topic);
+    } else {
+      config.maxRates.put(topic, maxRate);
+    }
+    applySendQueueConfig();
+  }
+
+  protected void applySendQueueConfig() {
+    for (SendQueue queue : sendQueues.values()) {
+      queue.setMaxBytes(config.sendQueueMaxBytes);
+      queue.setCoalesce(new HashSet<>(config.coalesce));
+      queue.setMaxRates(new HashMap<>(config.maxRates));
+    }
+  }
+
   // === begin positioning panels plumbing ===
   public void set(String name, int x, int y) {
     set(name, x, y, 0); // or is z -1 ?
@@ -1100,6 +1276,10 @@ public class WebGui extends Service<WebGuiConfig>
     stopMdns();
     stop();
     inMsgQueue.stop();
+    for (SendQueue queue : sendQueues.values()) {
+      queue.stop();
+    }
+    sendQueues.clear();
   }
 
   /**
@@ -1176,6 +1356,7 @@ public class WebGui extends Service<WebGuiConfig>
     if (c.enableMdns) {
       startMdns();
     }
+    applySendQueueConfig();
     return c;
   }
 
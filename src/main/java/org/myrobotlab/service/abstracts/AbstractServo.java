@@ -711,6 +711,21 @@ public abstract class AbstractServo<C extends ServoConfig> extends Service<C> im
    */
   abstract protected boolean processMove(Double newPos, boolean blocking, Long timeoutMs);
 
+  /**
+   * publishes a move to the controller - a non-blocking move started in a
+   * ServoMoveBatch is published when the batch closes
+   * 
+   * @param move
+   *          the move
+   * @param blocking
+   *          blocking moves are always published right away
+   */
+  protected void sendServoMove(ServoMove move, boolean blocking) {
+    if (blocking || !ServoMoveBatch.add(this, move)) {
+      broadcast("publishServoMoveTo", move);
+    }
+  }
+
   @Override /*
              * FIXME these should be returning null - the event itself is enough
              * info - sending whole servo is excessive
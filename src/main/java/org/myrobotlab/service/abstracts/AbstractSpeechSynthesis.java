@@ -1,13 +1,24 @@
 package org.myrobotlab.service.abstracts;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.audio.AudioCache;
+import org.myrobotlab.audio.AudioCache.VoiceStats;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.io.FileIO;
@@ -28,6 +39,7 @@ import org.myrobotlab.service.interfaces.SpeechSynthesis;
 import org.myrobotlab.service.interfaces.SpeechSynthesisControl;
 import org.myrobotlab.service.interfaces.TextListener;
 import org.myrobotlab.service.interfaces.TextPublisher;
+import org.myrobotlab.string.WordReplacer;
 import org.slf4j.Logger;
 
 public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> extends Service<C> implements SpeechSynthesis, TextListener, KeyConsumer, AudioListener {
@@ -196,7 +208,42 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
    */
   protected String lastUtterance;
 
-  transient HashMap<AudioData, String> utterances = new HashMap<AudioData, String>();
+  // parts are generated by the synthesis threads
+  transient Map<AudioData, String> utterances = new ConcurrentHashMap<AudioData, String>();
+
+  /**
+   * synthesizes the parts of utterances ahead of the part playing
+   */
+  private transient ExecutorService synthesizer = null;
+
+  /**
+   * parts submitted to the synthesizer and not played yet
+   */
+  private transient Set<Future<AudioData>> synthesizing = ConcurrentHashMap.newKeySet();
+
+  /**
+   * incremented by stop - parts of utterances started before are not played
+   */
+  private transient AtomicInteger stops = new AtomicInteger();
+
+  /**
+   * index of audioFile/&lt;Service&gt; - built on first use
+   */
+  private transient AudioCache audioCache = null;
+
+  /**
+   * cache directories known to exist
+   */
+  private transient Set<String> cacheDirs = ConcurrentHashMap.newKeySet();
+
+  /**
+   * config.substitutions compiled - built again when they changed
+   */
+  private transient volatile WordReplacer replacer = null;
+
+  private transient volatile Map<String, String> replacerSource = null;
+
+  private transient volatile boolean substitutionsChanged = false;
 
   /**
    * AudioFile peer for caching and playing effects
@@ -492,7 +539,7 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
       // create subdirectories if necessary
       File f = new File(filename);
       File dir = f.getParentFile();
-      if (!dir.exists()) {
+      if (cacheDirs.add(dir.getPath()) && !dir.exists()) {
         dir.mkdirs();
       }
 
@@ -573,20 +620,13 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
       // broadcast the original text to be processed/parsed
       invoke("publishSpeechRequested", toSpeak);
 
-      // normalize to lower case
-      toSpeak = toSpeak.toLowerCase();
-
-      // process substitutions
-      if (config.substitutions != null) {
-        for (String substitute : config.substitutions.keySet()) {
-          toSpeak = toSpeak.replace(substitute, config.substitutions.get(substitute));
-        }
-      }
-
-      List<String> spokenParts = parseEffects(toSpeak);
+      List<String> spokenParts = preprocess(toSpeak);
 
       toSpeak = filterText(toSpeak);
 
+      List<String> texts = new ArrayList<>();
+      List<AudioData> parts = new ArrayList<>();
+
       for (String speak : spokenParts) {
 
         AudioData audioData = null;
@@ -602,7 +642,8 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
         }
 
         if (!config.mute) {
-          process(audioData, speak, config.blocking);
+          texts.add(speak);
+          parts.add(audioData);
         } else {
           log.info("not producing audio for {} - currently we are mute", speak);
         }
@@ -610,6 +651,8 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
         // effect files are handled differently from generated audio
         playList.add(audioData);
       }
+
+      process(parts, texts, config.blocking);
       // FIXME - in theory "speaking" means generating audio from some text
       // so starting speaking event is when the first audio is "started"
       // and finished speaking is when the last audio is finished
@@ -620,6 +663,47 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
     return playList;
   }
 
+  /**
+   * lower case, substitutions, split on effects
+   * 
+   * @param toSpeak
+   *          phrase to speak
+   * @return the parts - text or #effect#
+   */
+  private List<String> preprocess(String toSpeak) {
+    // normalize to lower case
+    toSpeak = toSpeak.toLowerCase();
+
+    // process substitutions - all in one pass
+    WordReplacer substitutions = getReplacer();
+    if (substitutions != null) {
+      toSpeak = substitutions.replace(toSpeak);
+    }
+
+    return parseEffects(toSpeak);
+  }
+
+  /**
+   * @return config.substitutions compiled, null if there are none - compiled
+   *         again if replaceWord changed them or the config was replaced
+   */
+  private WordReplacer getReplacer() {
+    Map<String, String> substitutions = config.substitutions;
+    if (substitutions == null || substitutions.isEmpty()) {
+      return null;
+    }
+    WordReplacer r = replacer;
+    if (r == null || substitutionsChanged || replacerSource != substitutions || r.size() != substitutions.size()) {
+      substitutionsChanged = false;
+      long start = System.currentTimeMillis();
+      r = new WordReplacer(new HashMap<>(substitutions));
+      log.info("{} compiled {} substitutions in {} ms", getName(), r.size(), System.currentTimeMillis() - start);
+      replacer = r;
+      replacerSource = substitutions;
+    }
+    return r;
+  }
+
   @Deprecated /* use replaceWord */
   public void addSubstitution(String key, String replacement) {
     replaceWord(key, replacement);
@@ -628,22 +712,44 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
   /**
    * replace word for example : worke could get substituted to worky or work-ee
    * or "something" that phonetically works for the current speech synthesis
-   * service
+   * service - only whole words are replaced
    */
   @Override
   public void replaceWord(String key, String replacement) {
     config.substitutions.put(key.toLowerCase(), replacement.toLowerCase());
+    substitutionsChanged = true;
   }
 
   @Override
   public void replaceWord(WordFilter filter) {
     config.substitutions.put(filter.word.toLowerCase(), filter.substitute.toLowerCase());
+    substitutionsChanged = true;
   }
 
+  /**
+   * published per part - how long generating its audio took (0 ms when it was
+   * cached)
+   * 
+   * @param timeMs
+   *          generation time
+   * @return the generation time
+   */
   public Long publishGenerationTime(Long timeMs) {
     return timeMs;
   }
 
+  /**
+   * published per utterance - from the speak request until the audio of its
+   * first part was handed to the player
+   * 
+   * @param timeMs
+   *          time to first audio
+   * @return the time to first audio
+   */
+  public Long publishTimeToFirstAudio(Long timeMs) {
+    return timeMs;
+  }
+
   /**
    * process speaking - generate the text to be spoken or play a cache file if
    * appropriate
@@ -657,33 +763,236 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
    * @return block - to block or not
    */
   public AudioData process(AudioData audioData, String speak, boolean block) {
+    generate(audioData, speak);
+    if (audioData.isValid()) {
+      play(audioData, block);
+    }
+    return audioData;
+  }
 
+  /**
+   * plays the parts of an utterance in order while the synthesis threads
+   * generate the next config.lookAhead parts - the gap between two parts is
+   * no longer the generation time of the second. stop() drops the parts not
+   * played yet, a part being generated is finished (it may be cached) but not
+   * played.
+   * 
+   * @param parts
+   *          audio of the parts
+   * @param texts
+   *          text of the parts
+   * @param block
+   *          play blocking
+   */
+  protected void process(List<AudioData> parts, List<String> texts, boolean block) {
+    long start = System.currentTimeMillis();
+    int stop = stops.get();
+    int lookAhead = Math.max(0, config.lookAhead);
+    List<Future<AudioData>> generated = new ArrayList<>();
+    boolean first = true;
+    try {
+      for (int i = 0; i < parts.size(); i++) {
+        // keep lookAhead parts generating ahead of this one
+        while (generated.size() < parts.size() && generated.size() <= i + lookAhead) {
+          AudioData audioData = parts.get(generated.size());
+          String speak = texts.get(generated.size());
+          Future<AudioData> future = getSynthesizer().submit(() -> generate(audioData, speak));
+          synthesizing.add(future);
+          generated.add(future);
+        }
+
+        AudioData audioData = null;
+        try {
+          audioData = generated.get(i).get();
+        } catch (CancellationException e) {
+          break;
+        } catch (ExecutionException e) {
+          log.error("could not generate audio", e);
+        }
+        synthesizing.remove(generated.get(i));
+        if (stops.get() != stop) {
+          log.info("{} stopped", getName());
+          break;
+        }
+        if (audioData == null || !audioData.isValid()) {
+          continue;
+        }
+        if (first) {
+          invoke("publishTimeToFirstAudio", System.currentTimeMillis() - start);
+          first = false;
+        }
+        play(audioData, block);
+      }
+    } catch (InterruptedException e) {
+      log.info("{} interrupted while speaking", getName());
+      Thread.currentThread().interrupt();
+    } finally {
+      // stopped - nothing left to generate
+      for (Future<AudioData> future : generated) {
+        future.cancel(false);
+        synthesizing.remove(future);
+      }
+    }
+  }
+
+  /**
+   * generates the audio of a part unless it's cached
+   * 
+   * @param audioData
+   *          where the audio goes
+   * @param speak
+   *          text of the part
+   * @return the audioData - not valid if it could not be generated
+   */
+  AudioData generate(AudioData audioData, String speak) {
     try {
 
       long generateStartTs = System.currentTimeMillis();
       utterances.put(audioData, speak);
 
-      if (!audioData.isValid()) {
-        log.debug("try generating audio data [{}] from [{}]", audioData, speak);
-        generateAudioData(audioData, speak);
+      File file = getCacheFile(audioData);
+      boolean cached = false;
+      if (file != null && getAudioCache().lookup(file)) {
+        byte[] clip = getAudioCache().getData(file);
+        if (clip != null) {
+          audioData.inputStream = new ByteArrayInputStream(clip);
+          cached = true;
+        } else if (audioData.isValid()) {
+          // not kept in memory - played from the file
+          cached = true;
+        } else {
+          // indexed but gone, e.g. deleted by hand
+          log.info("{} is no longer cached - generating it again", file);
+          getAudioCache().remove(file);
+        }
+      }
+      if (!cached) {
+        if (!audioData.isValid()) {
+          log.debug("try generating audio data [{}] from [{}]", audioData, speak);
+          generateAudioData(audioData, speak);
+        }
+        if (file != null && audioData.isValid()) {
+          getAudioCache().put(file);
+        }
       }
 
       invoke("publishGenerationTime", System.currentTimeMillis() - generateStartTs);
 
       if (!audioData.isValid()) {
         log.error("speech service could not generate audio data [{}]", audioData);
-        return audioData;
       }
-
-      play(audioData, block);
     } catch (Exception e) {
       log.error("could not generate audio", e);
       error("%s %s", e.getClass().getSimpleName(), e.getMessage());
     }
-
     return audioData;
   }
 
+  /**
+   * @param audioData
+   *          audio of a part
+   * @return its file if it's in the cache directory of the service, else null
+   *         (e.g. an effect)
+   */
+  private File getCacheFile(AudioData audioData) {
+    if (audioData.getFileName() == null) {
+      return null;
+    }
+    File file = new File(audioData.getFileName()).getAbsoluteFile();
+    File dir = file.getParentFile();
+    if (dir == null || dir.getParentFile() == null || !dir.getParentFile().equals(getAudioCache().getRoot())) {
+      return null;
+    }
+    return file;
+  }
+
+  public synchronized AudioCache getAudioCache() {
+    if (audioCache == null) {
+      File root = new File(System.getProperty("user.dir") + File.separator + globalFileCacheDir + File.separator + getClass().getSimpleName()).getAbsoluteFile();
+      audioCache = new AudioCache(root, 0, 0, 0, 0);
+    }
+    audioCache.setLimits(config.cacheMaxMb * 1024L * 1024L, config.cacheMaxAgeDays * 24L * 3600L * 1000L, config.cacheClipKb * 1024L, config.cacheMemoryMb * 1024L * 1024L);
+    return audioCache;
+  }
+
+  /**
+   * @return hits, misses, files and bytes of the audio cache per voice
+   */
+  public List<VoiceStats> getCacheStats() {
+    return getAudioCache().getStats();
+  }
+
+  public List<VoiceStats> publishCacheStats(List<VoiceStats> stats) {
+    return stats;
+  }
+
+  /**
+   * synthesizes phrases into the audio cache in the background (e.g. all the
+   * responses a chatbot can give) with the current voice - no audio is played.
+   * Up to config.synthesisThreads parts are generated at a time, a speak
+   * request waits for one part at most. publishCacheStats when done.
+   * 
+   * @param phrases
+   *          phrases to cache
+   */
+  public void prewarm(List<String> phrases) {
+    Thread prewarm = new Thread(() -> {
+      long start = System.currentTimeMillis();
+      int generated = 0;
+      List<Future<AudioData>> pending = new ArrayList<>();
+      try {
+        for (String phrase : phrases) {
+          for (String part : preprocess(phrase)) {
+            if (part.trim().length() == 0 || (part.startsWith("#") && part.endsWith("#"))) {
+              continue;
+            }
+            AudioData audioData = new AudioData(getLocalFileName(part));
+            File file = getCacheFile(audioData);
+            if (file == null || getAudioCache().contains(file)) {
+              continue;
+            }
+            if (pending.size() >= Math.max(1, config.synthesisThreads)) {
+              pending.remove(0).get();
+            }
+            pending.add(getSynthesizer().submit(() -> {
+              generateAudioData(audioData, part);
+              if (audioData.isValid()) {
+                getAudioCache().put(file);
+              }
+              return audioData;
+            }));
+            ++generated;
+          }
+        }
+        for (Future<AudioData> future : pending) {
+          future.get();
+        }
+      } catch (InterruptedException e) {
+        log.info("{} prewarm interrupted", getName());
+        return;
+      } catch (Exception e) {
+        error("prewarm %s", e.getMessage());
+        log.error("prewarm threw", e);
+      }
+      log.info("{} prewarm generated {} parts of {} phrases in {} ms", getName(), generated, phrases.size(), System.currentTimeMillis() - start);
+      invoke("publishCacheStats", getCacheStats());
+    }, String.format("%s_prewarm", getName()));
+    prewarm.setDaemon(true);
+    prewarm.start();
+  }
+
+  private synchronized ExecutorService getSynthesizer() {
+    if (synthesizer == null) {
+      AtomicInteger count = new AtomicInteger();
+      synthesizer = Executors.newFixedThreadPool(Math.max(1, config.synthesisThreads), r -> {
+        Thread t = new Thread(r, String.format("%s_synthesis_%d", getName(), count.getAndIncrement()));
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return synthesizer;
+  }
+
   @Override
   public List<AudioData> speak(String toSpeak) {
     return parse(toSpeak);
@@ -761,11 +1070,13 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
 
   public void purgeFile(String filename) {
     audioFile.deleteFile(filename);
+    getAudioCache().remove(new File(filename));
   }
 
   public void purgeCache() {
     // audioFile.deleteFiles(String.format("%s%s, args)globalFileCacheDir);
     audioFile.deleteFiles(this.getClass().getSimpleName());
+    getAudioCache().clear();
   }
 
   @Override
@@ -1047,8 +1358,28 @@ public abstract class AbstractSpeechSynthesis<C extends SpeechSynthesisConfig> e
     return lang.trim().toLowerCase();
   }
 
+  /**
+   * stops the audio playing and drops the parts of utterances not played yet
+   */
   public void stop() {
-    audioFile.stop();
+    stops.incrementAndGet();
+    for (Future<AudioData> future : synthesizing) {
+      future.cancel(false);
+    }
+    if (audioFile != null) {
+      audioFile.stop();
+    }
+  }
+
+  @Override
+  public void stopService() {
+    super.stopService();
+    synchronized (this) {
+      if (synthesizer != null) {
+        synthesizer.shutdownNow();
+        synthesizer = null;
+      }
+    }
   }
 
   public String setAudioEffects(String audioEffects) {
@@ -0,0 +1,128 @@
+package org.myrobotlab.service.abstracts;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.data.ServoMove;
+import org.slf4j.Logger;
+
+/**
+ * Collects the moves of servos started together, so a controller can move
+ * all of its servos with one command instead of one per servo.
+ *
+ * <pre>
+ * try (ServoMoveBatch batch = ServoMoveBatch.begin()) {
+ *   thumb.moveTo(20.0);
+ *   index.moveTo(30.0);
+ *   ...
+ * }
+ * </pre>
+ *
+ * Non-blocking moves started on the thread of the batch are held back until
+ * it closes. They are then published as usual, tagged with the batch id and
+ * the number of moves going to the same controller, so the controller knows
+ * when it has all of them - publishing is synchronous for local controllers,
+ * so they arrive back to back. Nested batches join the outer one.
+ */
+public class ServoMoveBatch implements AutoCloseable {
+
+  public final static Logger log = LoggerFactory.getLogger(ServoMoveBatch.class);
+
+  static final ThreadLocal<ServoMoveBatch> current = new ThreadLocal<>();
+
+  static final AtomicLong ids = new AtomicLong();
+
+  final String id;
+
+  /**
+   * the outer batch closes - not this one
+   */
+  final boolean nested;
+
+  /**
+   * latest move of each servo - in the order they started
+   */
+  final Map<AbstractServo, ServoMove> moves = new LinkedHashMap<>();
+
+  private ServoMoveBatch(boolean nested) {
+    this.id = String.format("b%d", ids.incrementAndGet());
+    this.nested = nested;
+  }
+
+  /**
+   * starts collecting the moves of this thread
+   *
+   * @return the batch, close it to send the moves
+   */
+  public static ServoMoveBatch begin() {
+    if (current.get() != null) {
+      return new ServoMoveBatch(true);
+    }
+    ServoMoveBatch batch = new ServoMoveBatch(false);
+    current.set(batch);
+    return batch;
+  }
+
+  /**
+   * adds a move to the batch of this thread
+   *
+   * @param servo
+   *          the servo moving
+   * @param move
+   *          its move
+   * @return false if there is no batch - the move should be published now
+   */
+  static boolean add(AbstractServo servo, ServoMove move) {
+    ServoMoveBatch batch = current.get();
+    if (batch == null) {
+      return false;
+    }
+    // a second move of the same servo replaces the first
+    batch.moves.remove(servo);
+    batch.moves.put(servo, move);
+    return true;
+  }
+
+  public int size() {
+    return moves.size();
+  }
+
+  /**
+   * publishes the collected moves, grouped by controller
+   */
+  @Override
+  public void close() {
+    if (nested || current.get() != this) {
+      return;
+    }
+    current.remove();
+
+    Map<String, List<AbstractServo>> groups = new LinkedHashMap<>();
+    for (AbstractServo servo : moves.keySet()) {
+      String controller = servo.getController();
+      groups.computeIfAbsent((controller == null) ? "" : controller, k -> new ArrayList<>()).add(servo);
+    }
+
+    for (String controller : groups.keySet()) {
+      List<AbstractServo> servos = groups.get(controller);
+      for (AbstractServo servo : servos) {
+        ServoMove move = moves.get(servo);
+        if (servos.size() > 1) {
+          move.batch = id;
+          move.batchSize = servos.size();
+        }
+        try {
+          servo.broadcast("publishServoMoveTo", move);
+        } catch (Exception e) {
+          log.error("{} batch {} move threw", servo.getName(), id, e);
+        }
+      }
+    }
+    moves.clear();
+  }
+
+}
@@ -16,6 +16,14 @@ public class ArduinoConfig extends ServiceConfig {
    */
   public boolean connect;
 
+  /**
+   * messages sent to MrlComm before waiting for an ack - acks carry sequence
+   * numbers and un-acked messages are retransmitted. 0 or 1 waits for the ack
+   * of each message. Off by default - the sequence byte leaves one byte less
+   * for the parameters of a message, and MrlComm must be version 69 or later.
+   */
+  public int ackWindow = 0;
+
   @Override
   public Plan getDefault(Plan plan, String name) {
     super.getDefault(plan, name);
@@ -1,6 +1,7 @@
 package org.myrobotlab.service.config;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.myrobotlab.opencv.OpenCVFilter;
@@ -20,4 +21,32 @@ public class OpenCVConfig extends ServiceConfig {
    */
   public boolean flip = false;
 
+  /**
+   * run the filters as stages on their own threads - frames are grabbed and
+   * go through the first filters while later filters work on earlier frames
+   */
+  public boolean pipelined = false;
+
+  /**
+   * when pipelined - groups of filter names sharing a stage, other filters
+   * get a stage each
+   */
+  public List<List<String>> pipelineStages = null;
+
+  /**
+   * when pipelined - frames waiting for each stage
+   */
+  public int pipelineQueueSize = 2;
+
+  /**
+   * most jobs (frames, face crops ...) a dnn filter's model runs in one batch
+   */
+  public int inferenceMaxBatch = 4;
+
+  /**
+   * ms a job waits for more jobs to batch with - only when other filters or
+   * cameras use the same model
+   */
+  public long inferenceMaxWaitMs = 10;
+
 }
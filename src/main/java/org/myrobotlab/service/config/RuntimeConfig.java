@@ -31,6 +31,13 @@ public class RuntimeConfig extends ServiceConfig {
    * through java.util.Locale.getDefault()
    */
   public String locale = Locale.getDefault().getTag();
+
+  /**
+   * Message encoding requested when connecting to another instance - json-typed,
+   * or the binary smile or cbor. Instances which do not support it answer with
+   * the double encoded json.
+   */
+  public String remoteEncoding = "json-typed";
   
 
   /**
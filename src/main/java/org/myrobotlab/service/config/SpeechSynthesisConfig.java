@@ -16,12 +16,46 @@ public class SpeechSynthesisConfig extends ServiceConfig {
   public String[] speechRecognizers;
   /**
    * substitutions are phonetic substitutions for a specific instance of speech
-   * synthesis service
+   * synthesis service - whole words, all replaced in one pass over the text
    */
   public Map<String, String> substitutions;
 
   public String voice;
 
+  /**
+   * parts of an utterance (sentences, effects) synthesized ahead of the one
+   * playing
+   */
+  public int lookAhead = 2;
+
+  /**
+   * threads synthesizing parts - more than 1 only for engines which can
+   * synthesize concurrently
+   */
+  public int synthesisThreads = 1;
+
+  /**
+   * size limit of the audio cache of the service - least recently used files
+   * are deleted first, 0 (default) for no limit - no generated file is
+   * deleted unless a limit is set
+   */
+  public int cacheMaxMb = 0;
+
+  /**
+   * cached files not used for longer are deleted - 0 to keep them
+   */
+  public int cacheMaxAgeDays = 0;
+
+  /**
+   * cached files up to this size are kept in memory - 0 for none
+   */
+  public int cacheClipKb = 256;
+
+  /**
+   * memory for cached clips
+   */
+  public int cacheMemoryMb = 32;
+
   @Override
   public Plan getDefault(Plan plan, String name) {
     super.getDefault(plan, name);
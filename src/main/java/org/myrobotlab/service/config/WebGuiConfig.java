@@ -1,7 +1,9 @@
 package org.myrobotlab.service.config;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class WebGuiConfig extends ServiceConfig {
 
@@ -9,10 +11,34 @@ public class WebGuiConfig extends ServiceConfig {
   public boolean autoStartBrowser = true;
   public boolean enableMdns = false;
   public List<String> resources = new ArrayList<>();
+
+  /**
+   * max bytes queued for a client before its oldest messages are dropped
+   */
+  public long sendQueueMaxBytes = 8 * 1024 * 1024;
+
+  /**
+   * topics - callback method or service.method - a slow client only gets the
+   * latest value of
+   */
+  public List<String> coalesce = new ArrayList<>();
+
+  /**
+   * max messages per second sent to a client for a topic - callback method or
+   * service.method
+   */
+  public Map<String, Double> maxRates = new HashMap<>();
   
   public WebGuiConfig() {
     resources.add("./resource/WebGui/app");
     resources.add("./resource");    
+    coalesce.add("onState");
+    coalesce.add("onServoEvent");
+    coalesce.add("onEncoderData");
+    coalesce.add("onPinArray");
+    coalesce.add("onWebDisplay");
+    coalesce.add("onPose");
+    coalesce.add("onStats");
   }
 
 }
@@ -0,0 +1,45 @@
+package org.myrobotlab.service.data;
+
+import java.io.Serializable;
+
+/**
+ * Bytes read from a register of an i2c device by a controller sampling it on
+ * its own - see I2CController.i2cSubscribe
+ */
+public class I2CSample implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * name of the I2CControl which subscribed
+   */
+  public String name;
+
+  public int bus;
+
+  public int deviceAddress;
+
+  public int register;
+
+  /**
+   * when it was read - in ms of the controller's clock, only the differences
+   * between samples are meaningful
+   */
+  public long timestamp;
+
+  public byte[] data;
+
+  public I2CSample(String name, int bus, int deviceAddress, int register, long timestamp, byte[] data) {
+    this.name = name;
+    this.bus = bus;
+    this.deviceAddress = deviceAddress;
+    this.register = register;
+    this.timestamp = timestamp;
+    this.data = data;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s bus %d address 0x%02x register 0x%02x at %d - %d bytes", name, bus, deviceAddress, register, timestamp, data.length);
+  }
+
+}
@@ -18,6 +18,16 @@ public class ServoMove {
    * the input value after the servos mapper has been applied
    */
   public Double outputPos;
+  /**
+   * id of the ServoMoveBatch this move was started in, null if it was sent on
+   * its own
+   */
+  public String batch;
+  /**
+   * number of moves of the batch sent to the same controller - the controller
+   * can send them together once all have arrived
+   */
+  public Integer batchSize;
 
   public ServoMove(final String name, final Double inputPos, final Double outputPos) {
     this.name = name;
@@ -27,6 +37,9 @@ public class ServoMove {
 
   @Override
   public String toString() {
+    if (batch != null) {
+      return String.format("%s inputPos %.2f outputPos %.2f batch %s of %d", name, inputPos, outputPos, batch, batchSize);
+    }
     return String.format("%s inputPos %.2f outputPos %.2f", name, inputPos, outputPos);
   }
 
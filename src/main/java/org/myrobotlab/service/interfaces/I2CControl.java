@@ -27,6 +27,7 @@ package org.myrobotlab.service.interfaces;
 
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.NameProvider;
+import org.myrobotlab.service.data.I2CSample;
 
 public interface I2CControl extends NameProvider, Attachable {
 
@@ -55,4 +56,14 @@ public interface I2CControl extends NameProvider, Attachable {
   public void attachI2CController(I2CController controller);
 
   public void detachI2CController(I2CController controller);
+
+  /**
+   * samples of the registers this control subscribed to with
+   * I2CController.i2cSubscribe - in the order they were read
+   * 
+   * @param samples
+   *          one batch from the controller
+   */
+  default void onI2CSamples(I2CSample[] samples) {
+  }
 }
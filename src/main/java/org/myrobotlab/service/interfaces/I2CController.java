@@ -1,5 +1,9 @@
 package org.myrobotlab.service.interfaces;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
 import org.myrobotlab.framework.interfaces.Attachable;
 
 /*
@@ -64,4 +68,100 @@ public interface I2CController extends Attachable {
    */
   int i2cWriteRead(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, byte[] readBuffer, int readSize);
 
+  /**
+   * Reads bytes from the i2c device without blocking the caller. Controllers
+   * which talk to the bus asynchronously (e.g. Arduino) override this - the
+   * default does the blocking read and returns a completed future.
+   * 
+   * @param control
+   *          c
+   * @param busAddress
+   *          bus address
+   * @param deviceAddress
+   *          device address
+   * @param size
+   *          number of bytes to be read
+   * @return future completed with the bytes read, completed exceptionally if
+   *         the read failed or timed out
+   */
+  default CompletableFuture<byte[]> i2cReadAsync(I2CControl control, int busAddress, int deviceAddress, int size) {
+    byte[] buffer = new byte[size];
+    return toFuture(buffer, i2cRead(control, busAddress, deviceAddress, buffer, size));
+  }
+
+  /**
+   * Writes then reads bytes to/from the i2c device without blocking the
+   * caller, see i2cReadAsync
+   * 
+   * @param control
+   *          c
+   * @param busAddress
+   *          bus address
+   * @param deviceAddress
+   *          device address
+   * @param writeBuffer
+   *          buffer of data to be written to the i2c device in one go
+   * @param writeSize
+   *          number of bytes to be written from buffer
+   * @param readSize
+   *          number of bytes to be read
+   * @return future completed with the bytes read
+   */
+  default CompletableFuture<byte[]> i2cWriteReadAsync(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, int readSize) {
+    byte[] buffer = new byte[readSize];
+    return toFuture(buffer, i2cWriteRead(control, busAddress, deviceAddress, writeBuffer, writeSize, buffer, readSize));
+  }
+
+  /**
+   * Asks the controller to read size bytes from a register of the i2c device
+   * every intervalMs on its own and deliver them to control.onI2CSamples,
+   * batchSize samples at a time. Subscribing again to the same register
+   * changes the sampling.
+   * 
+   * @param control
+   *          c
+   * @param busAddress
+   *          bus address
+   * @param deviceAddress
+   *          device address
+   * @param register
+   *          register read from
+   * @param size
+   *          number of bytes read each sample
+   * @param intervalMs
+   *          ms between samples
+   * @param batchSize
+   *          samples delivered together, the controller may deliver fewer
+   * @return false if the controller can not sample - the control has to poll
+   *         with i2cWriteRead itself
+   */
+  default boolean i2cSubscribe(I2CControl control, int busAddress, int deviceAddress, int register, int size, int intervalMs, int batchSize) {
+    return false;
+  }
+
+  /**
+   * stops a sampling started with i2cSubscribe
+   * 
+   * @param control
+   *          c
+   * @param busAddress
+   *          bus address
+   * @param deviceAddress
+   *          device address
+   * @param register
+   *          register read from
+   */
+  default void i2cUnsubscribe(I2CControl control, int busAddress, int deviceAddress, int register) {
+  }
+
+  static CompletableFuture<byte[]> toFuture(byte[] buffer, int read) {
+    CompletableFuture<byte[]> future = new CompletableFuture<>();
+    if (read < 0) {
+      future.completeExceptionally(new IOException("i2c read failed"));
+    } else {
+      future.complete((read == buffer.length) ? buffer : Arrays.copyOf(buffer, read));
+    }
+    return future;
+  }
+
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package org.myrobotlab.service.interfaces;
 
 import org.myrobotlab.arduino.BoardInfo;
 import org.myrobotlab.sensor.EncoderData;
+import org.myrobotlab.service.data.I2CSample;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
 
@@ -20,7 +21,7 @@ public interface MrlCommPublisher {
       Integer boardTypeId/* byte */, Integer microsPerLoop/* b16 */,
       Integer sram/* b16 */, Integer activePins, int[] deviceSummary/* [] */);
 
-  public void publishAck(Integer function/* byte */);
+  public void publishAck(Integer function/* byte */, Integer seq/* byte */);
 
   public int[] publishCustomMsg(int[] msg);
 
@@ -30,7 +31,9 @@ public interface MrlCommPublisher {
 
   public EncoderData publishEncoderData(Integer deviceId, Integer position);
 
-  public void publishI2cData(Integer deviceId, int[] data);
+  public void publishI2cData(Integer deviceId, Integer requestId, int[] data);
+
+  public I2CSample[] publishI2cSamples(Integer deviceId, Integer requestId, Long timestamp, int[] data);
 
   public SerialRelayData publishSerialData(Integer deviceId, int[] data);
 
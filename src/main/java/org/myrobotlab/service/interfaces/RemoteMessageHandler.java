@@ -2,4 +2,16 @@ package org.myrobotlab.service.interfaces;
 
 public interface RemoteMessageHandler {
   public void onRemoteMessage(String uuid, String data);
+
+  /**
+   * binary message - only received by handlers which negotiated a binary
+   * codec, others ignore it
+   * 
+   * @param uuid
+   *          connection
+   * @param data
+   *          Smile or CBOR encoded message
+   */
+  default public void onRemoteMessage(String uuid, byte[] data) {
+  }
 }
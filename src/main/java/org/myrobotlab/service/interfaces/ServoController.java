@@ -25,6 +25,8 @@
 
 package org.myrobotlab.service.interfaces;
 
+import java.util.List;
+
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.service.data.ServoMove;
 import org.myrobotlab.service.data.ServoSpeed;
@@ -65,6 +67,21 @@ public interface ServoController extends Attachable {
    */
   void onServoMoveTo(ServoMove move);
 
+  /**
+   * Move several servos at once. Moves started in a ServoMoveBatch arrive at
+   * onServoMoveTo tagged with the batch and its size, a controller which can
+   * send many moves in one command collects them and moves them all here -
+   * the default moves them one by one
+   * 
+   * @param moves
+   *          - moves of servos attached to this controller
+   */
+  default void onServoMoveToMulti(List<ServoMove> moves) {
+    for (ServoMove move : moves) {
+      onServoMoveTo(move);
+    }
+  }
+
   /**
    * Stop the servo regardless of where it is in its move
    * 
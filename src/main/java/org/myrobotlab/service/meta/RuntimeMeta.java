@@ -32,6 +32,9 @@ public class RuntimeMeta extends MetaData {
     addDependency("com.fasterxml.jackson.core", "jackson-annotations", "2.14.0");
     addDependency("com.fasterxml.jackson.core", "jackson-databind", "2.14.0");
     addDependency("com.fasterxml.jackson.module", "jackson-module-no-ctor-deser", "2.14.0");
+    // binary message codecs
+    addDependency("com.fasterxml.jackson.dataformat", "jackson-dataformat-smile", "2.14.0");
+    addDependency("com.fasterxml.jackson.dataformat", "jackson-dataformat-cbor", "2.14.0");
     // apache 2.0 license
     // addDependency("org.apache.ivy", "ivy", "2.4.0-5");
     addDependency("org.apache.ivy", "ivy", IvyWrapper.IVY_VERSION);
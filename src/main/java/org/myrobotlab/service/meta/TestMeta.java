@@ -17,6 +17,8 @@ public class TestMeta extends MetaData {
     addCategory("testing");
     setAvailable(false);
     addDependency("junit", "junit", "4.13.1");
+    addDependency("org.openjdk.jmh", "jmh-core", "1.37");
+    addDependency("org.openjdk.jmh", "jmh-generator-annprocess", "1.37");
     // addPeer("python", "Python", "python to excercise python scripts");
 
   }
@@ -0,0 +1,246 @@
+package org.myrobotlab.string;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces all words of a dictionary in one pass over the text - an
+ * Aho-Corasick automaton of the words, instead of a String.replace per word.
+ *
+ * <pre>
+ * boundaries   a word only matches whole - the chars before and after it are
+ *              not letters or digits (a word starting or ending with another
+ *              char, e.g. "mr.", matches there on anything)
+ * overlaps     the leftmost match wins, the longest of those starting at the
+ *              same char - replacements are not matched again
+ * </pre>
+ *
+ * Immutable once built, so it can be shared by threads.
+ */
+public class WordReplacer {
+
+  /**
+   * per state - the chars of its transitions, sorted, and the states they go
+   * to
+   */
+  final char[][] keys;
+  final int[][] next;
+
+  /**
+   * per state - the state of its longest proper suffix in the trie
+   */
+  final int[] fail;
+
+  /**
+   * per state - index of the word ending there, -1 if none
+   */
+  final int[] word;
+
+  /**
+   * per state - the nearest state on its fail chain where a word ends, -1 if
+   * none
+   */
+  final int[] output;
+
+  /**
+   * transitions of the root on ascii chars - most chars of a text go back to
+   * it
+   */
+  final int[] root = new int[128];
+
+  final String[] words;
+
+  final String[] replacements;
+
+  /**
+   * @param substitutions
+   *          word to its replacement - empty words are ignored
+   */
+  public WordReplacer(Map<String, String> substitutions) {
+    List<String> w = new ArrayList<>();
+    List<String> r = new ArrayList<>();
+    for (Map.Entry<String, String> e : substitutions.entrySet()) {
+      if (e.getKey() != null && e.getKey().length() > 0) {
+        w.add(e.getKey());
+        r.add((e.getValue() == null) ? "" : e.getValue());
+      }
+    }
+    words = w.toArray(new String[0]);
+    replacements = r.toArray(new String[0]);
+
+    // trie
+    List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+    List<Integer> ends = new ArrayList<>();
+    trie.add(new TreeMap<>());
+    ends.add(-1);
+    for (int i = 0; i < words.length; ++i) {
+      int state = 0;
+      for (char c : words[i].toCharArray()) {
+        Integer to = trie.get(state).get(c);
+        if (to == null) {
+          to = trie.size();
+          trie.add(new TreeMap<>());
+          ends.add(-1);
+          trie.get(state).put(c, to);
+        }
+        state = to;
+      }
+      ends.set(state, i);
+    }
+
+    int size = trie.size();
+    keys = new char[size][];
+    next = new int[size][];
+    word = new int[size];
+    for (int s = 0; s < size; ++s) {
+      TreeMap<Character, Integer> t = trie.get(s);
+      keys[s] = new char[t.size()];
+      next[s] = new int[t.size()];
+      int j = 0;
+      for (Map.Entry<Character, Integer> e : t.entrySet()) {
+        keys[s][j] = e.getKey();
+        next[s][j] = e.getValue();
+        ++j;
+      }
+      word[s] = ends.get(s);
+    }
+
+    for (int j = 0; j < keys[0].length; ++j) {
+      if (keys[0][j] < root.length) {
+        root[keys[0][j]] = next[0][j];
+      }
+    }
+
+    // fail and output links - breadth first, parents before children
+    fail = new int[size];
+    output = new int[size];
+    output[0] = -1;
+    int[] queue = new int[size];
+    int head = 0;
+    int tail = 0;
+    for (int child : next[0]) {
+      fail[child] = 0;
+      output[child] = -1;
+      queue[tail++] = child;
+    }
+    while (head < tail) {
+      int s = queue[head++];
+      for (int j = 0; j < keys[s].length; ++j) {
+        char c = keys[s][j];
+        int child = next[s][j];
+        int f = fail[s];
+        int to;
+        while ((to = step(f, c)) < 0 && f != 0) {
+          f = fail[f];
+        }
+        fail[child] = (to < 0) ? 0 : to;
+        output[child] = (word[fail[child]] >= 0) ? fail[child] : output[fail[child]];
+        queue[tail++] = child;
+      }
+    }
+  }
+
+  /**
+   * @return the state the transition on c goes to, -1 if there is none
+   */
+  private int step(int state, char c) {
+    if (state == 0 && c < root.length) {
+      int to = root[c];
+      return (to == 0) ? -1 : to;
+    }
+    int j = Arrays.binarySearch(keys[state], c);
+    return (j < 0) ? -1 : next[state][j];
+  }
+
+  static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c);
+  }
+
+  /**
+   * @param text
+   *          text to replace the words in
+   * @return the text with the words replaced - the same instance if there
+   *         was nothing to replace
+   */
+  public String replace(String text) {
+    if (text == null || words.length == 0) {
+      return text;
+    }
+    int n = text.length();
+    // longest word starting at each char, by index + 1
+    int[] best = null;
+    int state = 0;
+    for (int i = 0; i < n; ++i) {
+      char c = text.charAt(i);
+      int to;
+      while ((to = step(state, c)) < 0 && state != 0) {
+        state = fail[state];
+      }
+      state = (to < 0) ? 0 : to;
+
+      for (int s = (word[state] >= 0) ? state : output[state]; s >= 0; s = output[s]) {
+        int w = word[s];
+        int start = i + 1 - words[w].length();
+        if (!isWhole(text, words[w], start, i + 1)) {
+          continue;
+        }
+        if (best == null) {
+          best = new int[n];
+        }
+        if (best[start] == 0 || words[best[start] - 1].length() < words[w].length()) {
+          best[start] = w + 1;
+        }
+      }
+    }
+
+    if (best == null) {
+      return text;
+    }
+
+    StringBuilder sb = new StringBuilder(n + 16);
+    int i = 0;
+    while (i < n) {
+      if (best[i] > 0) {
+        int w = best[i] - 1;
+        sb.append(replacements[w]);
+        i += words[w].length();
+      } else {
+        sb.append(text.charAt(i));
+        ++i;
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return true if the word at start..end of the text is not part of a
+   *         longer word
+   */
+  private static boolean isWhole(String text, String word, int start, int end) {
+    if (start > 0 && isWordChar(word.charAt(0)) && isWordChar(text.charAt(start - 1))) {
+      return false;
+    }
+    if (end < text.length() && isWordChar(word.charAt(word.length() - 1)) && isWordChar(text.charAt(end))) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return number of words
+   */
+  public int size() {
+    return words.length;
+  }
+
+  /**
+   * @return number of states of the automaton
+   */
+  public int getStateCount() {
+    return keys.length;
+  }
+
+}
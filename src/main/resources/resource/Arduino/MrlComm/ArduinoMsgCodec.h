@@ -9,7 +9,7 @@
  * 							src\resource\Arduino\generate\ArduinoMsgCodec.template.h
  */
 
-#define MRLCOMM_VERSION			68
+#define MRLCOMM_VERSION			72
 #define MAGIC_NUMBER            170 // 10101010
 #define MAX_MSG_SIZE			64
 
@@ -41,7 +41,7 @@
 #define SOFT_RESET 7
 // > enableAck/bool enabled
 #define ENABLE_ACK 8
-// < publishAck/function
+// < publishAck/function/seq
 #define PUBLISH_ACK 9
 // > echo/f32 myFloat/myByte/f32 secondFloat
 #define ECHO 10
@@ -55,13 +55,13 @@
 #define DEVICE_DETACH 14
 // > i2cBusAttach/deviceId/i2cBus
 #define I2C_BUS_ATTACH 15
-// > i2cRead/deviceId/deviceAddress/size
+// > i2cRead/deviceId/deviceAddress/size/requestId
 #define I2C_READ 16
 // > i2cWrite/deviceId/deviceAddress/[] data
 #define I2C_WRITE 17
-// > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
+// > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
 #define I2C_WRITE_READ 18
-// < publishI2cData/deviceId/[] data
+// < publishI2cData/deviceId/requestId/[] data
 #define PUBLISH_I2C_DATA 19
 // > neoPixelAttach/deviceId/pin/b16 numPixels/depth
 #define NEO_PIXEL_ATTACH 20
@@ -143,6 +143,14 @@
 #define PUBLISH_MRL_COMM_BEGIN 58
 // > servoStop/deviceId
 #define SERVO_STOP 59
+// > setAckWindow/windowSize
+#define SET_ACK_WINDOW 60
+// > servoMoveToMicrosecondsMulti/[] moves
+#define SERVO_MOVE_TO_MICROSECONDS_MULTI 61
+// > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+#define I2C_SAMPLE 62
+// < publishI2cSamples/deviceId/requestId/bu32 timestamp/[] data
+#define PUBLISH_I2C_SAMPLES 63
 
 
 
@@ -146,11 +146,28 @@ int MrlComm::getCustomMsgSize()
 
 void MrlComm::processCommand()
 {
+	byte method = msg->getMethod();
+	// setAckWindow is processed out of sequence - it (re)starts the sequence
+	if (ackWindow > 0 && method != SET_ACK_WINDOW)
+	{
+		byte seq = msg->getSeq();
+		if (seq != nextSeq)
+		{
+			// a retransmit of a processed message or a message after a lost one
+			// re-ack the last processed message and wait for the retransmit
+			msg->publishAck(method, nextSeq - 1);
+			return;
+		}
+		++nextSeq;
+		msg->processCommand();
+		msg->publishAck(method, seq);
+		return;
+	}
 
 	msg->processCommand();
 	if (ackEnabled)
 	{
-		msg->publishAck(msg->getMethod());
+		msg->publishAck(method, 0);
 	}
 }
 
@@ -159,6 +176,13 @@ void MrlComm::enableAck(boolean enabled)
 	ackEnabled = enabled;
 }
 
+// > setAckWindow/windowSize
+void MrlComm::setAckWindow(byte windowSize)
+{
+	ackWindow = windowSize;
+	nextSeq = 0;
+}
+
 bool MrlComm::readMsg()
 {
 	return msg->readMsg();
@@ -313,10 +337,10 @@ void MrlComm::i2cBusAttach(byte deviceId, byte i2cBus)
 	i2cbus->attach(i2cBus);
 }
 
-// > i2cRead/deviceId/deviceAddress/size
-void MrlComm::i2cRead(byte deviceId, byte deviceAddress, byte size)
+// > i2cRead/deviceId/deviceAddress/size/requestId
+void MrlComm::i2cRead(byte deviceId, byte deviceAddress, byte size, byte requestId)
 {
-	((MrlI2CBus *)getDevice(deviceId))->i2cRead(deviceAddress, size);
+	((MrlI2CBus *)getDevice(deviceId))->i2cRead(deviceAddress, size, requestId);
 }
 
 // > i2cWrite/deviceId/deviceAddress/[] data
@@ -325,10 +349,16 @@ void MrlComm::i2cWrite(byte deviceId, byte deviceAddress, byte dataSize, const b
 	((MrlI2CBus *)getDevice(deviceId))->i2cWrite(deviceAddress, dataSize, data);
 }
 
-// > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
-void MrlComm::i2cWriteRead(byte deviceId, byte deviceAddress, byte readSize, byte writeValue)
+// > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
+void MrlComm::i2cWriteRead(byte deviceId, byte deviceAddress, byte readSize, byte writeValue, byte requestId)
 {
-	((MrlI2CBus *)getDevice(deviceId))->i2cWriteRead(deviceAddress, readSize, writeValue);
+	((MrlI2CBus *)getDevice(deviceId))->i2cWriteRead(deviceAddress, readSize, writeValue, requestId);
+}
+
+// > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+void MrlComm::i2cSample(byte deviceId, byte deviceAddress, byte registerAddress, byte size, int interval, byte batchSize, byte requestId)
+{
+	((MrlI2CBus *)getDevice(deviceId))->i2cSample(deviceAddress, registerAddress, size, interval, batchSize, requestId);
 }
 
 /////////////////////////////////// NeoPixel Begin ///////////////////////////////////////////
@@ -439,6 +469,16 @@ void MrlComm::servoMoveToMicroseconds(byte deviceId, int target)
 	servo->moveToMicroseconds(target);
 }
 
+// > servoMoveToMicrosecondsMulti/[] moves
+void MrlComm::servoMoveToMicrosecondsMulti(byte movesSize, const byte *moves)
+{
+	// deviceId/b16 target triplets
+	for (int i = 0; i + 2 < movesSize; i += 3)
+	{
+		servoMoveToMicroseconds(moves[i], (moves[i + 1] << 8) + moves[i + 2]);
+	}
+}
+
 void MrlComm::setDebug(boolean enabled)
 {
 	msg->debug = enabled;
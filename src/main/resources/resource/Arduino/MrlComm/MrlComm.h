@@ -75,6 +75,10 @@ public:
   Device *getDevice(int id);
   Msg *getMsg();
   bool ackEnabled = true;
+  // max un-acked messages of Java-land - 0 acks one message at a time
+  byte ackWindow = 0;
+  // sequence number of the next message to process when the ack window is enabled
+  byte nextSeq = 0;
 
   Device *addDevice(Device *device);
   void update();
@@ -102,12 +106,12 @@ public:
   void deviceDetach( byte deviceId);
   // > i2cBusAttach/deviceId/i2cBus
   void i2cBusAttach( byte deviceId,  byte i2cBus);
-  // > i2cRead/deviceId/deviceAddress/size
-  void i2cRead( byte deviceId,  byte deviceAddress,  byte size);
+  // > i2cRead/deviceId/deviceAddress/size/requestId
+  void i2cRead( byte deviceId,  byte deviceAddress,  byte size,  byte requestId);
   // > i2cWrite/deviceId/deviceAddress/[] data
   void i2cWrite( byte deviceId,  byte deviceAddress,  byte dataSize, const byte*data);
-  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
-  void i2cWriteRead( byte deviceId,  byte deviceAddress,  byte readSize,  byte writeValue);
+  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
+  void i2cWriteRead( byte deviceId,  byte deviceAddress,  byte readSize,  byte writeValue,  byte requestId);
   // > neoPixelAttach/deviceId/pin/b16 numPixels/depth
   void neoPixelAttach( byte deviceId,  byte pin,  int numPixels,  byte depth);
   // > neoPixelSetAnimation/deviceId/animation/red/green/blue/white/b32 wait_ms
@@ -168,6 +172,12 @@ public:
   void setZeroPoint( byte deviceId);
   // > servoStop/deviceId
   void servoStop( byte deviceId);
+  // > setAckWindow/windowSize
+  void setAckWindow( byte windowSize);
+  // > servoMoveToMicrosecondsMulti/[] moves
+  void servoMoveToMicrosecondsMulti( byte movesSize, const byte*moves);
+  // > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+  void i2cSample( byte deviceId,  byte deviceAddress,  byte registerAddress,  byte size,  int interval,  byte batchSize,  byte requestId);
     // </generatedCallBacks>
   // end
 
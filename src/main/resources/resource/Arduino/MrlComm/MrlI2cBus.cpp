@@ -9,6 +9,15 @@ MrlI2CBus::MrlI2CBus(int deviceId) :
 	    // Force 400 KHz i2c
 		Wire.setClock(400000L);
 //	}
+	for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+		samples[i] = NULL;
+	}
+}
+
+MrlI2CBus::~MrlI2CBus() {
+	for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+		delete samples[i];
+	}
 }
 
 bool MrlI2CBus::attach(byte bus) {
@@ -26,12 +35,13 @@ void MrlI2CBus::i2cWrite(byte deviceAddress, byte dataSize, const byte*data) {
 	Wire.endTransmission();
 }
 
-// I2CREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE
-// PUBLISH_SENSOR_DATA | DEVICE_INDEX | DATASIZE | DATA ....
+// I2CREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE | REQUEST_ID
+// PUBLISH_I2C_DATA | DEVICE_INDEX | REQUEST_ID | DATASIZE | DATA ....
 // DEVICE_INDEX = Index to the I2C bus
 // I2CADDRESS = The address of the i2c device
 // DATA_SIZE = The number of bytes to read from the i2c device
-void MrlI2CBus::i2cRead(byte deviceAddress, byte size) {
+// REQUEST_ID = sent back with the data so it can be matched to its request
+void MrlI2CBus::i2cRead(byte deviceAddress, byte size, byte requestId) {
 
 	int answer = Wire.requestFrom(deviceAddress, size); // reqest a number of bytes to read
 
@@ -40,15 +50,15 @@ void MrlI2CBus::i2cRead(byte deviceAddress, byte size) {
 	}
 
 	// byte deviceId = ioCmd[1]; not needed we have our own deviceId
-	msg->publishI2cData(id, msg->getBuffer(), msg->getBufferSize());
+	msg->publishI2cData(id, requestId, msg->getBuffer(), msg->getBufferSize());
 }
 
-// I2WRITEREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE | DEVICE_MEMORY_ADDRESS
-// PUBLISH_SENSOR_DATA | DEVICE_INDEX | DATASIZE | DATA ....
+// I2WRITEREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE | DEVICE_MEMORY_ADDRESS | REQUEST_ID
+// PUBLISH_I2C_DATA | DEVICE_INDEX | REQUEST_ID | DATASIZE | DATA ....
 // DEVICE_INDEX = Index to the I2C bus
 // I2CADDRESS = The address of the i2c device
 // DATA_SIZE = The number of bytes to read from the i2c device
-void MrlI2CBus::i2cWriteRead(byte deviceAddress, byte readSize, byte writeValue) {
+void MrlI2CBus::i2cWriteRead(byte deviceAddress, byte readSize, byte writeValue, byte requestId) {
 	Wire.beginTransmission(deviceAddress); // address to the i2c device
 	Wire.write(writeValue);             // device memory address to read from
 	Wire.endTransmission();
@@ -59,9 +69,112 @@ void MrlI2CBus::i2cWriteRead(byte deviceAddress, byte readSize, byte writeValue)
 	}
 
 	// byte deviceId = ioCmd[1];
-	msg->publishI2cData(id, msg->getBuffer(), msg->getBufferSize());
+	msg->publishI2cData(id, requestId, msg->getBuffer(), msg->getBufferSize());
+}
+
+// I2CSAMPLE | DEVICE_INDEX | I2CADDRESS | REGISTER | DATASIZE | INTERVAL(2) | BATCHSIZE | REQUEST_ID
+// PUBLISH_I2C_SAMPLES | DEVICE_INDEX | REQUEST_ID | TIMESTAMP(4) | DATASIZE | (DELTA_MS | DATA ....) ....
+// starts, changes or stops (interval 0) reading a register every interval ms
+// the batch is cut down to what fits into one message
+void MrlI2CBus::i2cSample(byte deviceAddress, byte registerAddress, byte size, int interval, byte batchSize, byte requestId) {
+	int slot = -1;
+	for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+		if (samples[i] != NULL && samples[i]->requestId == requestId) {
+			slot = i;
+			break;
+		}
+	}
+
+	if (interval <= 0) {
+		if (slot >= 0) {
+			delete samples[slot];
+			samples[slot] = NULL;
+		}
+		return;
+	}
+
+	if (size == 0 || size + 1 > MAX_I2C_SAMPLES_DATA) {
+		msg->publishError(F("i2c sample size"));
+		return;
+	}
+
+	if (slot < 0) {
+		for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+			if (samples[i] == NULL) {
+				slot = i;
+				samples[i] = new I2cSample();
+				break;
+			}
+		}
+	}
+
+	if (slot < 0) {
+		msg->publishError(F("no free i2c sample"));
+		return;
+	}
+
+	I2cSample* sample = samples[slot];
+	sample->requestId = requestId;
+	sample->deviceAddress = deviceAddress;
+	sample->registerAddress = registerAddress;
+	sample->size = size;
+	sample->interval = interval;
+	sample->batchSize = max(1, min((int)batchSize, MAX_I2C_SAMPLES_DATA / (size + 1)));
+	sample->lastSample = millis() - interval;
+	sample->count = 0;
+	sample->dataSize = 0;
+}
+
+void MrlI2CBus::readSample(I2cSample* sample, unsigned long now) {
+	sample->lastSample = now;
+
+	Wire.beginTransmission(sample->deviceAddress);
+	Wire.write(sample->registerAddress);
+	Wire.endTransmission();
+	int answer = Wire.requestFrom(sample->deviceAddress, sample->size);
+	if (answer != sample->size) {
+		// short read - skip this sample
+		while (Wire.available()) {
+			Wire.read();
+		}
+		return;
+	}
+
+	// the ms since the previous sample has to fit its byte - start a new batch
+	if (sample->count > 0 && now - sample->lastStored > 255) {
+		publishSamples(sample);
+	}
+	if (sample->count == 0) {
+		sample->timestamp = now;
+		sample->lastStored = now;
+	}
+
+	sample->data[sample->dataSize++] = now - sample->lastStored;
+	for (int i = 0; i < answer; i++) {
+		sample->data[sample->dataSize++] = Wire.read();
+	}
+	sample->lastStored = now;
+	sample->count++;
+
+	if (sample->count >= sample->batchSize) {
+		publishSamples(sample);
+	}
+}
+
+void MrlI2CBus::publishSamples(I2cSample* sample) {
+	if (sample->count > 0) {
+		msg->publishI2cSamples(id, sample->requestId, sample->timestamp, sample->data, sample->dataSize);
+	}
+	sample->count = 0;
+	sample->dataSize = 0;
 }
 
 void MrlI2CBus::update() {
-	//Nothing to do
+	unsigned long now = millis();
+	for (int i = 0; i < MAX_I2C_SAMPLES; i++) {
+		I2cSample* sample = samples[i];
+		if (sample != NULL && now - sample->lastSample >= sample->interval) {
+			readSample(sample, now);
+		}
+	}
 }
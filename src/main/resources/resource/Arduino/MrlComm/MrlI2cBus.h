@@ -3,6 +3,31 @@
 
 #include <Wire.h>
 
+// samplings one bus can run at a time
+#define MAX_I2C_SAMPLES 4
+// data of one publishI2cSamples - MAX_MSG_SIZE less the header
+// MAGIC|SIZE|METHOD|DEVICE_INDEX|REQUEST_ID|TIMESTAMP(4)|DATASIZE
+#define MAX_I2C_SAMPLES_DATA (MAX_MSG_SIZE - 10)
+
+/**
+ * a register of an i2c device read every interval ms, batchSize samples are
+ * collected before they are published
+ */
+struct I2cSample {
+	byte requestId;
+	byte deviceAddress;
+	byte registerAddress;
+	byte size;
+	unsigned int interval;
+	byte batchSize;
+	unsigned long lastSample;
+	unsigned long lastStored;
+	unsigned long timestamp;
+	byte count;
+	byte dataSize;
+	byte data[MAX_I2C_SAMPLES_DATA];
+};
+
 /**
  * I2C bus
  * TODO:KW? don't allow this class to write directly to the global serial port
@@ -23,12 +48,17 @@
 class MrlI2CBus : public Device {
   private:
 	int bus;
+	I2cSample* samples[MAX_I2C_SAMPLES];
+	void readSample(I2cSample* sample, unsigned long now);
+	void publishSamples(I2cSample* sample);
   public:
     MrlI2CBus(int deviceId);
+    ~MrlI2CBus();
     bool attach(byte bus);
-    void i2cRead(byte deviceAddress, byte size);
+    void i2cRead(byte deviceAddress, byte size, byte requestId);
     void i2cWrite(byte deviceAddress, byte dataSize, const byte*data);
-    void i2cWriteRead(byte deviceAddress, byte readSize, byte writeValue);
+    void i2cWriteRead(byte deviceAddress, byte readSize, byte writeValue, byte requestId);
+    void i2cSample(byte deviceAddress, byte registerAddress, byte size, int interval, byte batchSize, byte requestId);
     void update();
 };
 
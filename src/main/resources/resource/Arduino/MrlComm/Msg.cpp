@@ -78,12 +78,12 @@ Msg* Msg::getInstance() {
   void deviceDetach( byte deviceId);
   // > i2cBusAttach/deviceId/i2cBus
   void i2cBusAttach( byte deviceId,  byte i2cBus);
-  // > i2cRead/deviceId/deviceAddress/size
-  void i2cRead( byte deviceId,  byte deviceAddress,  byte size);
+  // > i2cRead/deviceId/deviceAddress/size/requestId
+  void i2cRead( byte deviceId,  byte deviceAddress,  byte size,  byte requestId);
   // > i2cWrite/deviceId/deviceAddress/[] data
   void i2cWrite( byte deviceId,  byte deviceAddress,  byte dataSize, const byte*data);
-  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
-  void i2cWriteRead( byte deviceId,  byte deviceAddress,  byte readSize,  byte writeValue);
+  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue/requestId
+  void i2cWriteRead( byte deviceId,  byte deviceAddress,  byte readSize,  byte writeValue,  byte requestId);
   // > neoPixelAttach/deviceId/pin/b16 numPixels/depth
   void neoPixelAttach( byte deviceId,  byte pin,  int numPixels,  byte depth);
   // > neoPixelSetAnimation/deviceId/animation/red/green/blue/white/b32 wait_ms
@@ -144,6 +144,12 @@ Msg* Msg::getInstance() {
   void setZeroPoint( byte deviceId);
   // > servoStop/deviceId
   void servoStop( byte deviceId);
+  // > setAckWindow/windowSize
+  void setAckWindow( byte windowSize);
+  // > servoMoveToMicrosecondsMulti/[] moves
+  void servoMoveToMicrosecondsMulti( byte movesSize, const byte*moves);
+  // > i2cSample/deviceId/deviceAddress/registerAddress/size/b16 interval/batchSize/requestId
+  void i2cSample( byte deviceId,  byte deviceAddress,  byte registerAddress,  byte size,  int interval,  byte batchSize,  byte requestId);
 
  */
 
@@ -171,11 +177,12 @@ void Msg::publishBoardInfo( byte version,  byte boardType,  int microsPerLoop,
   reset();
 }
 
-void Msg::publishAck( byte function) {
+void Msg::publishAck( byte function,  byte seq) {
   write(MAGIC_NUMBER);
-  write(1 + 1); // size
+  write(1 + 1 + 1); // size
   write(PUBLISH_ACK); // msgType = 9
   write(function);
+  write(seq);
   flush();
   reset();
 }
@@ -200,11 +207,12 @@ void Msg::publishCustomMsg(const byte* msg,  byte msgSize) {
   reset();
 }
 
-void Msg::publishI2cData( byte deviceId, const byte* data,  byte dataSize) {
+void Msg::publishI2cData( byte deviceId,  byte requestId, const byte* data,  byte dataSize) {
   write(MAGIC_NUMBER);
-  write(1 + 1 + (1 + dataSize)); // size
+  write(1 + 1 + 1 + (1 + dataSize)); // size
   write(PUBLISH_I2C_DATA); // msgType = 19
   write(deviceId);
+  write(requestId);
   write((byte*)data, dataSize);
   flush();
   reset();
@@ -279,6 +287,18 @@ void Msg::publishMrlCommBegin( byte version) {
   reset();
 }
 
+void Msg::publishI2cSamples( byte deviceId,  byte requestId,  unsigned long timestamp, const byte* data,  byte dataSize) {
+  write(MAGIC_NUMBER);
+  write(1 + 1 + 1 + 4 + (1 + dataSize)); // size
+  write(PUBLISH_I2C_SAMPLES); // msgType = 63
+  write(deviceId);
+  write(requestId);
+  writebu32(timestamp);
+  write((byte*)data, dataSize);
+  flush();
+  reset();
+}
+
 
 void Msg::processCommand() {
 
@@ -360,7 +380,9 @@ void Msg::processCommand() {
       startPos += 1;
       byte size = ioCmd[startPos+1]; // bu8
       startPos += 1;
-      mrlComm->i2cRead( deviceId,  deviceAddress,  size);
+      byte requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      mrlComm->i2cRead( deviceId,  deviceAddress,  size,  requestId);
       break;
 	}
   case I2C_WRITE: { // i2cWrite
@@ -383,7 +405,9 @@ void Msg::processCommand() {
       startPos += 1;
       byte writeValue = ioCmd[startPos+1]; // bu8
       startPos += 1;
-      mrlComm->i2cWriteRead( deviceId,  deviceAddress,  readSize,  writeValue);
+      byte requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      mrlComm->i2cWriteRead( deviceId,  deviceAddress,  readSize,  writeValue,  requestId);
       break;
 	}
   case NEO_PIXEL_ATTACH: { // neoPixelAttach
@@ -670,6 +694,37 @@ void Msg::processCommand() {
       byte deviceId = ioCmd[startPos+1]; // bu8
       startPos += 1;
       mrlComm->servoStop( deviceId);
+      break;
+	}
+  case SET_ACK_WINDOW: { // setAckWindow
+      byte windowSize = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      mrlComm->setAckWindow( windowSize);
+      break;
+	}
+  case SERVO_MOVE_TO_MICROSECONDS_MULTI: { // servoMoveToMicrosecondsMulti
+      const byte* moves = ioCmd+startPos+2;
+      byte movesSize = ioCmd[startPos+1];
+      startPos += 1 + ioCmd[startPos+1];
+      mrlComm->servoMoveToMicrosecondsMulti( movesSize, moves);
+      break;
+	}
+  case I2C_SAMPLE: { // i2cSample
+      byte deviceId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte deviceAddress = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte registerAddress = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte size = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      int interval = b16(ioCmd, startPos+1);
+      startPos += 2; //b16
+      byte batchSize = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte requestId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      mrlComm->i2cSample( deviceId,  deviceAddress,  registerAddress,  size,  interval,  batchSize,  requestId);
       break;
 	}
 
@@ -856,3 +911,7 @@ void Msg::begin(HardwareSerial& hardwareSerial){
 byte Msg::getMethod(){
 	return ioCmd[0];
 }
+
+byte Msg::getSeq(){
+	return ioCmd[msgSize - 1];
+}
@@ -94,10 +94,10 @@ public:
 	// generated send (PC <-- MrlComm) methods
 	void publishMRLCommError(const char* errorMsg,  byte errorMsgSize);
 	void publishBoardInfo( byte version,  byte boardType,  int microsPerLoop,  int sram,  byte activePins, const byte* deviceSummary,  byte deviceSummarySize);
-	void publishAck( byte function);
+	void publishAck( byte function,  byte seq);
 	void publishEcho( float myFloat,  byte myByte,  float secondFloat);
 	void publishCustomMsg(const byte* msg,  byte msgSize);
-	void publishI2cData( byte deviceId, const byte* data,  byte dataSize);
+	void publishI2cData( byte deviceId,  byte requestId, const byte* data,  byte dataSize);
 	void publishDebug(const char* debugMsg,  byte debugMsgSize);
 	void publishPinArray(const byte* data,  byte dataSize);
 	void publishServoEvent( byte deviceId,  byte eventType,  int currentPos,  int targetPos);
@@ -105,6 +105,7 @@ public:
 	void publishUltrasonicSensorData( byte deviceId,  int echoTime);
 	void publishEncoderData( byte deviceId,  int position);
 	void publishMrlCommBegin( byte version);
+	void publishI2cSamples( byte deviceId,  byte requestId,  unsigned long timestamp, const byte* data,  byte dataSize);
 
 	// handles all (PC --> MrlComm) methods
 	// void handle(int[] ioCmd); // send size too ?
@@ -121,6 +122,8 @@ public:
 	void write(const unsigned char* buffer, int len);
 	bool readMsg();
 	byte getMethod();
+	// sequence number - last byte of a message when the ack window is enabled
+	byte getSeq();
 
 };
 
@@ -253,3 +253,7 @@ void Msg::begin(HardwareSerial& hardwareSerial){
 byte Msg::getMethod(){
 	return ioCmd[0];
 }
+
+byte Msg::getSeq(){
+	return ioCmd[msgSize - 1];
+}
@@ -108,6 +108,8 @@ public:
 	void write(const unsigned char* buffer, int len);
 	bool readMsg();
 	byte getMethod();
+	// sequence number - last byte of a message when the ack window is enabled
+	byte getSeq();
 
 };
 
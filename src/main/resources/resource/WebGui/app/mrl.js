@@ -111,7 +111,7 @@ angular.module('mrlapp.mrl', []).provider('mrl', [function() {
     // See the following link for all websocket configuration
     // https://raw.githubusercontent.com/Atmosphere/atmosphere-javascript/master/modules/javascript/src/main/webapp/javascript/atmosphere.js
     this.request = {
-        url: document.location.origin.toString() + '/api/messages?user=root&pwd=pwd&session_id=2309adf3dlkdk&id=' + this.id,
+        url: document.location.origin.toString() + '/api/messages?user=root&pwd=pwd&session_id=2309adf3dlkdk&encoding=json-typed&id=' + this.id,
         transport: 'websocket',
         maxRequest: 100,
         maxReconnectOnClose: 100,
@@ -255,19 +255,9 @@ angular.module('mrlapp.mrl', []).provider('mrl', [function() {
     this.sendMessage = function(msg) {
         // GOOD DEBUGGING
         // console.info('out-msg <-- ' + msg.name + '.' + msg.method)
-        msg.encoding = 'json'
-        if (msg.data != null && msg.data.length > 0) {
-            // reverse encoding - pop off undefined
-            // to shrink paramter length
-            // js implementation -
-            var pos = msg.data.length - 1
-            for (let i = pos; i > -1; --i) {
-                if (typeof msg.data[i] == 'undefined') {} else {
-                    msg.data[i] = JSON.stringify(msg.data[i])
-                }
-            }
-        }
-
+        // single pass - parameters are embedded json values, the
+        // connection asked for 'json-typed' encoding
+        msg.encoding = 'json-typed'
         var json = JSON.stringify(msg)
         _self.sendRaw(json)
     }
@@ -405,7 +395,8 @@ angular.module('mrlapp.mrl', []).provider('mrl', [function() {
                 }
 
                 // second parse decodes each parameter in the array
-                if (msg.data) {
+                // single pass 'json-typed' msgs have them decoded already
+                if (msg.data && msg.encoding != 'json-typed') {
                     for (let x = 0; x < msg.data.length; ++x) {
                         msg.data[x] = jQuery.parseJSON(msg.data[x])
                     }
@@ -0,0 +1,173 @@
+package org.myrobotlab.arduino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.myrobotlab.framework.QueueStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class AckWindowTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(AckWindowTest.class);
+
+  List<byte[]> written = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * servoMoveToMicroseconds - MAGIC|SIZE|METHOD|deviceId|b16 target
+   */
+  static byte[] message(int deviceId) {
+    return new byte[] { (byte) Msg.MAGIC_NUMBER, 4, (byte) Msg.SERVO_MOVE_TO_MICROSECONDS, (byte) deviceId, 5, (byte) 220 };
+  }
+
+  static int seq(byte[] data) {
+    return data[data.length - 1] & 0xFF;
+  }
+
+  @Test
+  public void pipelined() throws Exception {
+    AckWindow window = new AckWindow("test", 4, Msg.MAX_MSG_SIZE, data -> written.add(data));
+    for (int i = 0; i < 4; ++i) {
+      assertTrue(window.send(message(i)));
+    }
+    // nothing acked yet - all sent
+    assertEquals(4, written.size());
+    assertEquals(4, window.size());
+
+    byte[] first = written.get(0);
+    assertEquals(7, first.length);
+    assertEquals(5, first[1]);
+    assertEquals(0, seq(first));
+    assertEquals(3, seq(written.get(3)));
+
+    // cumulative
+    window.ack(2);
+    assertEquals(1, window.size());
+    // stale ack is ignored
+    window.ack(1);
+    assertEquals(1, window.size());
+    window.ack(3);
+    assertEquals(0, window.size());
+
+    QueueStats stats = window.getStats();
+    assertEquals(4, stats.total);
+    assertEquals(0, stats.retransmitted);
+  }
+
+  @Test
+  public void blocksWhenFull() throws Exception {
+    AckWindow window = new AckWindow("test", 2, Msg.MAX_MSG_SIZE, data -> written.add(data));
+    window.setTimeout(5000);
+    window.send(message(0));
+    window.send(message(1));
+    AtomicBoolean sent = new AtomicBoolean(false);
+    Thread sender = new Thread(() -> {
+      try {
+        sent.set(window.send(message(2)));
+      } catch (Exception e) {
+        log.error("send threw", e);
+      }
+    });
+    sender.start();
+    Thread.sleep(100);
+    assertFalse(sent.get());
+    window.ack(0);
+    sender.join(3000);
+    assertTrue(sent.get());
+    assertEquals(2, seq(written.get(2)));
+  }
+
+  @Test
+  public void byteBudget() throws Exception {
+    // 7 byte messages - 2 fit in 16 bytes
+    AckWindow window = new AckWindow("test", 8, 16, data -> written.add(data));
+    window.setTimeout(30);
+    window.setMaxRetries(100);
+    window.send(message(0));
+    window.send(message(1));
+    assertEquals(2, written.size());
+    // blocks until the oldest times out and is retransmitted, still not acked
+    Thread ack = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+      }
+      window.ack(1);
+    });
+    ack.start();
+    window.send(message(2));
+    assertTrue(written.size() > 3);
+    assertEquals(1, window.size());
+  }
+
+  @Test
+  public void oversize() throws Exception {
+    // 6 bytes and the sequence byte don't fit in 6
+    AckWindow window = new AckWindow("test", 8, 6, data -> written.add(data));
+    try {
+      window.send(message(0));
+      assertTrue("expected the message to be rejected", false);
+    } catch (IllegalArgumentException e) {
+      log.info("{}", e.getMessage());
+    }
+    assertEquals(0, written.size());
+    assertEquals(0, window.size());
+  }
+
+  @Test
+  public void retransmit() throws Exception {
+    AckWindow window = new AckWindow("test", 8, Msg.MAX_MSG_SIZE, data -> written.add(data));
+    window.setTimeout(20);
+    window.send(message(0));
+    window.send(message(1));
+    window.send(message(2));
+    // MrlComm lost seq 1 - acks 0 and drops 2
+    window.ack(0);
+    Thread.sleep(30);
+    window.checkTimeouts();
+    // go back n - 1 and 2 again
+    assertEquals(5, written.size());
+    assertEquals(1, seq(written.get(3)));
+    assertEquals(2, seq(written.get(4)));
+    window.ack(2);
+    assertEquals(0, window.size());
+    assertEquals(2, window.getStats().retransmitted);
+  }
+
+  @Test
+  public void givesUp() throws Exception {
+    AckWindow window = new AckWindow("test", 1, Msg.MAX_MSG_SIZE, data -> written.add(data));
+    window.setTimeout(10);
+    window.setMaxRetries(2);
+    assertTrue(window.send(message(0)));
+    // never acked - 2 retransmits then the window closes
+    assertFalse(window.send(message(1)));
+    assertTrue(window.isClosed());
+    assertEquals(3, written.size());
+    QueueStats stats = window.getStats();
+    assertEquals(1, stats.dropped);
+    assertEquals(2, stats.retransmitted);
+  }
+
+  @Test
+  public void sequenceWraps() throws Exception {
+    AckWindow window = new AckWindow("test", 8, Msg.MAX_MSG_SIZE, data -> written.add(data));
+    for (int i = 0; i < 300; ++i) {
+      window.send(message(i & 0xFF));
+      window.ack(seq(written.get(i)));
+    }
+    assertEquals(255, seq(written.get(255)));
+    assertEquals(0, seq(written.get(256)));
+    assertEquals(0, window.size());
+    assertEquals(300, window.getStats().total);
+  }
+
+}
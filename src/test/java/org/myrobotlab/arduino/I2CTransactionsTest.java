@@ -0,0 +1,138 @@
+package org.myrobotlab.arduino;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.myrobotlab.arduino.I2CTransactions.Transaction;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class I2CTransactionsTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(I2CTransactionsTest.class);
+
+  List<Transaction> sent = Collections.synchronizedList(new ArrayList<>());
+
+  List<String> sendThreads = Collections.synchronizedList(new ArrayList<>());
+
+  void send(Transaction t) {
+    sendThreads.add(Thread.currentThread().getName());
+    sent.add(t);
+  }
+
+  /**
+   * reads freed by data are followed up by the worker
+   */
+  void waitForSent(int count) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    while (sent.size() < count && System.currentTimeMillis() - start < 1000) {
+      Thread.sleep(1);
+    }
+    assertEquals(count, sent.size());
+  }
+
+  @Test
+  public void matchedByRequestId() throws Exception {
+    I2CTransactions transactions = new I2CTransactions("test", t -> send(t));
+    CompletableFuture<byte[]> accel = transactions.submit(0, 0x68, new int[] { 0x3B }, 6);
+    CompletableFuture<byte[]> adc = transactions.submit(0, 0x48, new int[] { 0x00 }, 2);
+    assertEquals(2, sent.size());
+    assertEquals(0x68, sent.get(0).deviceAddress);
+
+    // data comes back in the other order
+    assertTrue(transactions.onData(0, sent.get(1).requestId, new int[] { 1, 2 }));
+    assertTrue(transactions.onData(0, sent.get(0).requestId, new int[] { 1, 2, 3, 4, 5, 0xFF }));
+    assertArrayEquals(new byte[] { 1, 2 }, adc.get(1, TimeUnit.SECONDS));
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, -1 }, accel.get(1, TimeUnit.SECONDS));
+    assertEquals(0, transactions.size());
+  }
+
+  @Test
+  public void queuedPerBus() throws Exception {
+    I2CTransactions transactions = new I2CTransactions("test", t -> send(t));
+    transactions.setMaxInFlight(2);
+    List<CompletableFuture<byte[]>> reads = new ArrayList<>();
+    for (int i = 0; i < 5; ++i) {
+      reads.add(transactions.submit(0, 0x68, null, 1));
+    }
+    // another bus has its own slots
+    transactions.submit(1, 0x68, null, 1);
+    assertEquals(3, sent.size());
+    assertEquals(6, transactions.size());
+
+    // each answer sends the next queued read of the bus
+    for (int i = 0; i < 5; ++i) {
+      waitForSent(Math.min(3 + i, 6));
+      Transaction t = sent.stream().filter(s -> s.bus == 0 && !s.future.isDone()).findFirst().get();
+      transactions.onData(0, t.requestId, new int[] { t.requestId });
+    }
+    for (CompletableFuture<byte[]> read : reads) {
+      assertTrue(read.isDone());
+    }
+    assertEquals(6, sent.size());
+  }
+
+  @Test
+  public void timeoutFreesSlot() throws Exception {
+    I2CTransactions transactions = new I2CTransactions("test", t -> send(t));
+    transactions.setMaxInFlight(1);
+    transactions.setTimeout(50);
+    CompletableFuture<byte[]> lost = transactions.submit(0, 0x68, null, 1);
+    CompletableFuture<byte[]> next = transactions.submit(0, 0x68, null, 1);
+    assertEquals(1, sent.size());
+    try {
+      lost.get(1, TimeUnit.SECONDS);
+      fail("lost read completed");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    // the queued read is sent once the lost one timed out
+    waitForSent(2);
+    // late data of the lost read is dropped
+    assertFalse(transactions.onData(0, sent.get(0).requestId, new int[] { 7 }));
+    assertTrue(transactions.onData(0, sent.get(1).requestId, new int[] { 8 }));
+    assertArrayEquals(new byte[] { 8 }, next.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void sendsOnTheWorker() throws Exception {
+    I2CTransactions transactions = new I2CTransactions("test", t -> send(t));
+    transactions.setMaxInFlight(1);
+    transactions.submit(0, 0x68, null, 1);
+    CompletableFuture<byte[]> next = transactions.submit(0, 0x68, null, 1);
+    assertEquals(1, sent.size());
+    // the serial reader delivering data does not send the next read
+    transactions.onData(0, sent.get(0).requestId, new int[] { 1 });
+    waitForSent(2);
+    assertEquals(Thread.currentThread().getName(), sendThreads.get(0));
+    assertEquals("test_i2c", sendThreads.get(1));
+    transactions.onData(0, sent.get(1).requestId, new int[] { 2 });
+    assertArrayEquals(new byte[] { 2 }, next.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void cancelAll() throws Exception {
+    I2CTransactions transactions = new I2CTransactions("test", t -> send(t));
+    transactions.setMaxInFlight(1);
+    CompletableFuture<byte[]> first = transactions.submit(0, 0x68, null, 1);
+    CompletableFuture<byte[]> second = transactions.submit(0, 0x68, null, 1);
+    transactions.cancelAll();
+    assertTrue(first.isCancelled());
+    assertTrue(second.isCancelled());
+    assertEquals(0, transactions.size());
+  }
+
+}
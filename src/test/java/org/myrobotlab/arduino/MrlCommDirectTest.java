@@ -10,6 +10,7 @@ import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.sensor.EncoderData;
 import org.myrobotlab.serial.PortJSSC;
+import org.myrobotlab.service.data.I2CSample;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
 import org.myrobotlab.service.interfaces.MrlCommPublisher;
@@ -265,7 +266,7 @@ public class MrlCommDirectTest implements SerialDataListener, MrlCommPublisher,
   }
 
   @Override
-  public void publishAck(Integer function) {
+  public void publishAck(Integer function, Integer seq) {
     // if we get an ack.. the msg object isn't pending anymore.
     numAcks++;
     // msg.ackReceived(function);
@@ -303,11 +304,17 @@ public class MrlCommDirectTest implements SerialDataListener, MrlCommPublisher,
   }
 
   @Override
-  public void publishI2cData(Integer deviceId, int[] data) {
+  public void publishI2cData(Integer deviceId, Integer requestId, int[] data) {
     // TODO Auto-generated method stub
     log.info("Publish I2C data");
   }
 
+  @Override
+  public I2CSample[] publishI2cSamples(Integer deviceId, Integer requestId, Long timestamp, int[] data) {
+    log.info("Publish I2C samples");
+    return null;
+  }
+
   @Override
   public SerialRelayData publishSerialData(Integer deviceId, int[] data) {
     // TODO Auto-generated method stub
@@ -0,0 +1,130 @@
+package org.myrobotlab.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.myrobotlab.audio.AudioCache.VoiceStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class AudioCacheTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(AudioCacheTest.class);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  File write(String voice, String name, int size, long lastModified) throws IOException {
+    File dir = new File(folder.getRoot(), voice);
+    dir.mkdirs();
+    File file = new File(dir, name);
+    byte[] data = new byte[size];
+    data[0] = (byte) name.charAt(0);
+    Files.write(file.toPath(), data);
+    file.setLastModified(lastModified);
+    return file;
+  }
+
+  @Test
+  public void indexAndStats() throws Exception {
+    long now = System.currentTimeMillis();
+    File a = write("Mark", "a.mp3", 100, now);
+    write("Mark", "b.mp3", 100, now);
+    write("Kate", "c.mp3", 100, now);
+    AudioCache cache = new AudioCache(folder.getRoot(), 0, 0, 0, 0);
+    assertEquals(3, cache.size());
+    assertEquals(300, cache.getBytes());
+
+    assertTrue(cache.lookup(a));
+    assertFalse(cache.lookup(new File(a.getParentFile(), "missing.mp3")));
+    assertFalse(cache.lookup(new File(folder.getRoot(), "Kate/missing.mp3")));
+
+    List<VoiceStats> stats = cache.getStats();
+    assertEquals(2, stats.size());
+    VoiceStats kate = stats.get(0);
+    VoiceStats mark = stats.get(1);
+    log.info("{} - {}", kate, mark);
+    assertEquals("Kate", kate.voice);
+    assertEquals(1, kate.files);
+    assertEquals(0.0, kate.getHitRate(), 0.0);
+    assertEquals(2, mark.files);
+    assertEquals(200, mark.bytes);
+    assertEquals(0.5, mark.getHitRate(), 0.0);
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() throws Exception {
+    long now = System.currentTimeMillis();
+    File a = write("Mark", "a.mp3", 100, now - 3000);
+    File b = write("Mark", "b.mp3", 100, now - 2000);
+    File c = write("Mark", "c.mp3", 100, now - 1000);
+    AudioCache cache = new AudioCache(folder.getRoot(), 300, 0, 0, 0);
+    assertEquals(3, cache.size());
+    // a is now the most recently used
+    assertTrue(cache.lookup(a));
+
+    File d = write("Mark", "d.mp3", 100, now);
+    cache.put(d);
+    assertEquals(3, cache.size());
+    assertFalse(b.exists());
+    assertFalse(cache.contains(b));
+    assertTrue(a.exists());
+    assertTrue(c.exists());
+    assertEquals(300, cache.getBytes());
+  }
+
+  @Test
+  public void evictByAge() throws Exception {
+    long now = System.currentTimeMillis();
+    File old = write("Mark", "old.mp3", 100, now - 60000);
+    File recent = write("Mark", "recent.mp3", 100, now);
+    AudioCache cache = new AudioCache(folder.getRoot(), 0, 30000, 0, 0);
+    assertEquals(1, cache.size());
+    assertFalse(old.exists());
+    assertTrue(cache.contains(recent));
+  }
+
+  @Test
+  public void clipsInMemory() throws Exception {
+    long now = System.currentTimeMillis();
+    File small = write("Mark", "small.mp3", 100, now);
+    File other = write("Mark", "other.mp3", 100, now);
+    File big = write("Mark", "big.mp3", 1000, now);
+    AudioCache cache = new AudioCache(folder.getRoot(), 0, 0, 200, 150);
+    assertNull(cache.getData(big));
+    byte[] data = cache.getData(small);
+    assertArrayEquals(Files.readAllBytes(small.toPath()), data);
+    assertEquals(100, cache.getMemoryBytes());
+    // over memoryBytes - the least recently used clip is dropped
+    assertEquals(100, cache.getData(other).length);
+    assertEquals(100, cache.getMemoryBytes());
+    assertTrue(small.exists());
+  }
+
+  @Test
+  public void deletedFiles() throws Exception {
+    long now = System.currentTimeMillis();
+    File clip = write("Mark", "clip.mp3", 100, now);
+    AudioCache cache = new AudioCache(folder.getRoot(), 0, 0, 200, 200);
+    assertTrue(cache.lookup(clip));
+    assertTrue(clip.delete());
+    // still indexed - the read fails and drops it
+    assertTrue(cache.lookup(clip));
+    assertNull(cache.getData(clip));
+    assertFalse(cache.contains(clip));
+    assertEquals(0, cache.getBytes());
+  }
+
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,7 +13,10 @@ import java.util.Map;
 import org.bouncycastle.util.Strings;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.myrobotlab.framework.MRLListener;
+import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.Platform;
+import org.myrobotlab.service.Runtime;
 import org.myrobotlab.service.data.Locale;
 import org.myrobotlab.service.data.Orientation;
 import org.myrobotlab.test.AbstractTest;
@@ -186,6 +190,75 @@ public class CodecUtilsTest extends AbstractTest {
     
   }
 
+  @Test
+  public void testMessageEncodings() {
+    Runtime.getInstance();
+    MRLListener listener = new MRLListener("describe", "test@remote", "onDescribe");
+    Message msg = Message.createMessage("test@remote", "runtime", "addListener", listener);
+
+    // single pass
+    String json = CodecUtils.toJsonTypedMsg(msg);
+    assertTrue(json.contains(CodecUtils.ENCODING_JSON_TYPED));
+    assertEquals(null, msg.encoding);
+    Message decoded = CodecUtils.jsonToMessage(json, CodecUtils.ENCODING_JSON);
+    assertEquals("addListener", decoded.method);
+    assertEquals(listener, decoded.data[0]);
+    assertEquals(CodecUtils.ENCODING_JSON_TYPED, decoded.encoding);
+
+    // double encoded - old clients
+    json = CodecUtils.toJsonMsg(msg);
+    decoded = CodecUtils.jsonToMessage(json);
+    assertEquals(listener, decoded.data[0]);
+
+    // envelope field order does not matter, untyped parameters are decoded
+    // by their json type
+    json = "{\"data\":[1,2.5,\"x\",[1]],\"method\":\"noSuchMethod\",\"name\":\"nobody@remote\",\"encoding\":\"json-typed\"}";
+    decoded = CodecUtils.jsonToMessage(json);
+    assertEquals(1, decoded.data[0]);
+    assertEquals(2.5, decoded.data[1]);
+    assertEquals("x", decoded.data[2]);
+    assertEquals(ArrayList.class, decoded.data[3].getClass());
+  }
+
+  @Test
+  public void testBinaryMessageEncodings() {
+    Runtime.getInstance();
+    MRLListener listener = new MRLListener("describe", "test@remote", "onDescribe");
+    Message msg = Message.createMessage("test@remote", "runtime", "addListener", listener);
+
+    byte[] payload = new byte[4096];
+    for (int i = 0; i < payload.length; ++i) {
+      payload[i] = (byte) i;
+    }
+    Message raw = Message.createMessage("test@remote", "nobody@remote", "onBytes", new Object[] { payload });
+    int jsonSize = CodecUtils.toJsonTypedMsg(raw).length();
+
+    for (String encoding : new String[] { CodecUtils.ENCODING_SMILE, CodecUtils.ENCODING_CBOR }) {
+      byte[] bytes = CodecUtils.toBinaryMsg(msg, encoding);
+      assertEquals(encoding, CodecUtils.getBinaryEncoding(bytes));
+      assertEquals(null, msg.encoding);
+      Message decoded = CodecUtils.binaryToMessage(bytes);
+      assertEquals("addListener", decoded.method);
+      assertEquals(listener, decoded.data[0]);
+      assertEquals(encoding, decoded.encoding);
+
+      // raw binary - not base64
+      bytes = CodecUtils.toBinaryMsg(raw, encoding);
+      assertTrue(bytes.length < jsonSize);
+      decoded = CodecUtils.binaryToMessage(bytes);
+      assertTrue(Arrays.equals(payload, (byte[]) decoded.data[0]));
+
+      // double encoded data relayed in a binary envelope
+      bytes = CodecUtils.toBinaryMsg(CodecUtils.fromJson(CodecUtils.toJsonMsg(msg), Message.class), encoding);
+      decoded = CodecUtils.binaryToMessage(bytes);
+      assertEquals(listener, decoded.data[0]);
+    }
+
+    assertEquals(CodecUtils.ENCODING_SMILE, CodecUtils.getSupportedEncoding("smile"));
+    assertEquals(CodecUtils.ENCODING_JSON, CodecUtils.getSupportedEncoding("xml"));
+    assertEquals(CodecUtils.ENCODING_JSON, CodecUtils.getSupportedEncoding(null));
+  }
+
   @Test
   public void testBase64() {
     // not a very comprehensive test, but a sanity check none the less.
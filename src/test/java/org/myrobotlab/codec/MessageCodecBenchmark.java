@@ -0,0 +1,137 @@
+package org.myrobotlab.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.image.SerializableImage;
+import org.myrobotlab.opencv.OpenCVData;
+import org.myrobotlab.service.data.PinData;
+import org.myrobotlab.service.interfaces.ServoEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encode and decode time of remote messages with the double encoded json,
+ * the single pass json and the binary Smile and CBOR codecs, for the payloads
+ * most often sent to remote instances and the WebGui. main prints the encoded
+ * size of each before running.
+ *
+ * The messages are addressed to an unknown service, so parameters are decoded
+ * the way a relaying gateway decodes them - by their virtual class field.
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar MessageCodecBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+  static final String[] PAYLOADS = { "ServoEvent", "OpenCVData", "SerializableImage", "PinData[]" };
+
+  static final String[] ENCODINGS = { CodecUtils.ENCODING_JSON, CodecUtils.ENCODING_JSON_TYPED, CodecUtils.ENCODING_SMILE, CodecUtils.ENCODING_CBOR };
+
+  @Param({ "ServoEvent", "OpenCVData", "SerializableImage", "PinData[]" })
+  public String payload;
+
+  @Param({ "json", "json-typed", "smile", "cbor" })
+  public String encoding;
+
+  Message msg;
+
+  byte[] encoded;
+
+  @Setup
+  public void setup() {
+    msg = createMessage(payload);
+    encoded = encode(msg, encoding);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return encode(msg, encoding);
+  }
+
+  @Benchmark
+  public Message decode() {
+    return decode(encoded, encoding);
+  }
+
+  static Message createMessage(String payload) {
+    Object data = null;
+    switch (payload) {
+      case "ServoEvent":
+        data = new ServoEvent("i01.head.neck", 92.5);
+        break;
+      case "OpenCVData":
+        OpenCVData cvData = new OpenCVData();
+        cvData.setName("i01.opencv");
+        cvData.setFrameIndex(1024);
+        cvData.setTimestamp(System.currentTimeMillis());
+        cvData.setSelectedFilter("i01.opencv.output");
+        cvData.setBlurriness(182.3);
+        data = cvData;
+        break;
+      case "SerializableImage":
+        // about the size of a 640x480 jpg
+        byte[] jpg = new byte[40 * 1024];
+        new Random(0).nextBytes(jpg);
+        data = new SerializableImage(jpg, "i01.opencv", 1024);
+        break;
+      case "PinData[]":
+        PinData[] pins = new PinData[16];
+        for (int i = 0; i < pins.length; ++i) {
+          pins[i] = new PinData(String.format("A%d", i), i * 64);
+        }
+        data = pins;
+        break;
+      default:
+        throw new IllegalArgumentException(payload);
+    }
+    return Message.createMessage("i01@robot", "webgui@remote", "onData", new Object[] { data });
+  }
+
+  static byte[] encode(Message msg, String encoding) {
+    if (CodecUtils.isBinaryEncoding(encoding)) {
+      return CodecUtils.toBinaryMsg(msg, encoding);
+    }
+    return CodecUtils.toJsonMsg(msg, encoding).getBytes(StandardCharsets.UTF_8);
+  }
+
+  static Message decode(byte[] data, String encoding) {
+    if (CodecUtils.isBinaryEncoding(encoding)) {
+      return CodecUtils.binaryToMessage(data);
+    }
+    return CodecUtils.jsonToMessage(new String(data, StandardCharsets.UTF_8), encoding);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (String payload : PAYLOADS) {
+      Message msg = createMessage(payload);
+      StringBuilder sb = new StringBuilder(String.format("%-18s", payload));
+      for (String encoding : ENCODINGS) {
+        sb.append(String.format(" %s %d bytes", encoding, encode(msg, encoding).length));
+      }
+      System.out.println(sb);
+    }
+    new Runner(new OptionsBuilder().include(MessageCodecBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -3,9 +3,16 @@ package org.myrobotlab.framework;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.net.Connection;
+import org.myrobotlab.net.WsClient;
 import org.myrobotlab.service.Runtime;
 import org.myrobotlab.service.TestThrower;
 import org.myrobotlab.test.AbstractTest;
@@ -15,6 +22,28 @@ public class BlockingTest extends AbstractTest {
 
   public final static Logger log = LoggerFactory.getLogger(BlockingTest.class);
 
+  /**
+   * websocket client of a remote instance - keeps what runtime sends it
+   */
+  static class RemoteClient extends WsClient {
+    final LinkedBlockingQueue<Message> sent = new LinkedBlockingQueue<>();
+
+    @Override
+    public void send(String json) {
+      sent.add(CodecUtils.jsonToMessage(json));
+    }
+
+    Message next(String status) throws InterruptedException {
+      Message msg = null;
+      while ((msg = sent.poll(3, TimeUnit.SECONDS)) != null) {
+        if (status.equals(msg.status)) {
+          return msg;
+        }
+      }
+      return null;
+    }
+  }
+
   @BeforeClass
   public static void setUpBeforeClass() throws Exception {
     // // LoggingFactory.init("WARN"); <- do not do this .. changing log levels
@@ -36,8 +65,46 @@ public class BlockingTest extends AbstractTest {
     assertTrue("1s process", System.currentTimeMillis() - startTime > 500);
     assertEquals(7, (int)ret);
 
+    // correlated by msgId through the pending reply table
+    Object asyncRet = thower07.sendAsync("catcher07", "onInt", 5).get(3, TimeUnit.SECONDS);
+    assertEquals(5, (int)(Integer)asyncRet);
+
     Runtime.release("catcher07");
     Runtime.release("thower07");
   }
 
+  @Test
+  public void remoteBlockingTest() throws Exception {
+    Runtime runtime = Runtime.getInstance();
+    Runtime.start("catcher08", "TestCatcher");
+    String uuid = "blocking-test-remote08";
+    RemoteClient client = new RemoteClient();
+    Connection connection = new Connection(uuid, "remote08", runtime.getName());
+    connection.putTransient("c-client", client);
+    runtime.addConnection(uuid, "remote08", connection);
+
+    // a sendBlocking from the remote instance gets a RETURN with its msgId
+    Message request = Message.createMessage("thrower08@remote08", "catcher08", "onInt", 3);
+    request.msgId = 808;
+    request.status = Message.BLOCKING;
+    runtime.onRemoteMessage(uuid, CodecUtils.toJsonMsg(request));
+    Message reply = client.next(Message.RETURN);
+    assertTrue("no RETURN for the remote request", reply != null);
+    assertEquals(808, reply.msgId);
+    assertEquals(3, ((Number) reply.data[0]).intValue());
+
+    // a sendAsync to the remote instance is completed by its RETURN
+    CompletableFuture<Object> future = runtime.sendAsync("catcher08@remote08", "onInt", 5);
+    request = client.next(Message.BLOCKING);
+    assertTrue("the request did not go to the remote", request != null);
+    reply = Message.createMessage("catcher08@remote08", request.getSrcFullName(), "onOnInt", 5);
+    reply.msgId = request.msgId;
+    reply.status = Message.RETURN;
+    runtime.onRemoteMessage(uuid, CodecUtils.toJsonMsg(reply));
+    assertEquals(5, ((Number) future.get(3, TimeUnit.SECONDS)).intValue());
+
+    runtime.removeConnection(uuid);
+    Runtime.release("catcher08");
+  }
+
 }
\ No newline at end of file
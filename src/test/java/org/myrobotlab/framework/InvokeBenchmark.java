@@ -0,0 +1,122 @@
+package org.myrobotlab.framework;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.service.Runtime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per message invoke cost.
+ *
+ * <pre>
+ * reflect  - the previous path, MethodCache.getMethod (string key) + Method.invoke
+ * invoker  - MethodCache.getInvoker + MethodInvoker.invoke
+ * listener - invoker cached on the MRLListener, as broadcast callbacks use it
+ * message  - Service.invoke(Message) end to end on runtime
+ * </pre>
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar InvokeBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvokeBenchmark {
+
+  public static class Target {
+    int total = 0;
+
+    public int onInt(Integer i) {
+      total += i;
+      return total;
+    }
+
+    public void onData(String name, Double value) {
+      total += value.intValue();
+    }
+  }
+
+  Target target;
+
+  MethodCache cache;
+
+  MRLListener listener;
+
+  Runtime runtime;
+
+  Message msg;
+
+  Object[] intParams = new Object[] { 7 };
+
+  Object[] dataParams = new Object[] { "servo01", 7.0 };
+
+  @Setup(Level.Trial)
+  public void setup() {
+    target = new Target();
+    cache = MethodCache.getInstance();
+    cache.cacheMethodEntries(Target.class);
+    listener = new MRLListener("publishInt", "target", "onInt");
+    runtime = Runtime.getInstance();
+    msg = Message.createMessage("bench", runtime.getFullName(), "getName", null);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Runtime.shutdown();
+  }
+
+  @Benchmark
+  public Object reflect() throws Exception {
+    Method method = cache.getMethod(Target.class, "onInt", intParams);
+    return method.invoke(target, intParams);
+  }
+
+  @Benchmark
+  public Object reflectTwoParams() throws Exception {
+    Method method = cache.getMethod(Target.class, "onData", dataParams);
+    return method.invoke(target, dataParams);
+  }
+
+  @Benchmark
+  public Object invoker() throws Exception {
+    return cache.getInvoker(Target.class, "onInt", intParams).invoke(target, intParams);
+  }
+
+  @Benchmark
+  public Object invokerTwoParams() throws Exception {
+    return cache.getInvoker(Target.class, "onData", dataParams).invoke(target, dataParams);
+  }
+
+  @Benchmark
+  public Object listener() throws Exception {
+    return listener.getInvoker(Target.class, intParams).invoke(target, intParams);
+  }
+
+  @Benchmark
+  public Object message() {
+    return runtime.invoke(msg);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(InvokeBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
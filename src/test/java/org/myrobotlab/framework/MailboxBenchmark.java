@@ -0,0 +1,117 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.framework.interfaces.Mailbox;
+import org.myrobotlab.framework.interfaces.Mailbox.OverrunPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of the original LinkedList Inbox/Outbox queue vs the lock free
+ * ring buffer with 1, 4 and 16 threads publishing into a single consumer.
+ * Each invocation moves MESSAGES messages through a BLOCK mailbox, so nothing
+ * is dropped.
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar MailboxBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MailboxBenchmark {
+
+  static final int MESSAGES = 1 << 16;
+
+  @Param({ "linked", "ring" })
+  public String type;
+
+  @Param({ "1", "4", "16" })
+  public int producers;
+
+  @Param({ "1024" })
+  public int maxQueue;
+
+  Mailbox mailbox;
+
+  ExecutorService pool;
+
+  Message msg;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    pool = Executors.newFixedThreadPool(producers + 1);
+    msg = Message.createMessage("sender", "receiver", "onData", 1);
+  }
+
+  @Setup(Level.Invocation)
+  public void newMailbox() {
+    if ("linked".equals(type)) {
+      mailbox = new LinkedListMailbox(maxQueue, OverrunPolicy.BLOCK);
+    } else {
+      mailbox = new RingBufferMailbox(maxQueue, OverrunPolicy.BLOCK);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public int transfer() throws InterruptedException {
+    int perProducer = MESSAGES / producers;
+    CountDownLatch done = new CountDownLatch(1);
+    int[] received = new int[1];
+
+    pool.execute(() -> {
+      try {
+        for (int i = 0; i < perProducer * producers; ++i) {
+          mailbox.take();
+          ++received[0];
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    });
+
+    for (int p = 0; p < producers; ++p) {
+      pool.execute(() -> {
+        for (int i = 0; i < perProducer; ++i) {
+          mailbox.offer(msg);
+        }
+      });
+    }
+
+    done.await();
+    return received[0];
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(MailboxBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -225,6 +225,25 @@ public class MethodCacheTest extends AbstractTest {
     assertTrue("verifying getInt is 7", 7 == r);
   }
 
+  @Test
+  public void invokerTest() throws IllegalAccessException, InvocationTargetException, ClassNotFoundException {
+    MethodInvoker invoker = cache.getInvoker(TestCatcher.class, "primitiveOnlyMethod", 3);
+    assertEquals("primitive invoker", 5, invoker.invoke(tester, 5));
+    assertTrue("same invoker second time", invoker == cache.getInvoker(TestCatcher.class, "primitiveOnlyMethod", 5));
+
+    Integer[] testArray = new Integer[] { 3, 5, 10 };
+    invoker = cache.getInvoker(TestCatcher.class, "getPin", new Object[] { testArray });
+    assertEquals("array invoker", testArray, invoker.invoke(tester, new Object[] { testArray }));
+
+    invoker = cache.getInvoker(TestCatcher.class, "isRunning");
+    assertEquals("no param invoker", true, invoker.invoke(tester));
+
+    MRLListener listener = new MRLListener("publishInt", "tester", "onInt");
+    MethodInvoker callback = listener.getInvoker(TestCatcher.class, 5);
+    assertEquals("listener invoker", 5, callback.invoke(tester, 5));
+    assertTrue("listener caches invoker", callback == listener.getInvoker(TestCatcher.class, 6));
+  }
+
   public static void main(String[] args) {
     try {
 
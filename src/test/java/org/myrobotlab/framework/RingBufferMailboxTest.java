@@ -0,0 +1,197 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.myrobotlab.framework.interfaces.Mailbox.OverrunPolicy;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class RingBufferMailboxTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(RingBufferMailboxTest.class);
+
+  private Message msg(int i) {
+    return Message.createMessage("sender", "receiver", "onInt", i);
+  }
+
+  @Test
+  public void fifoAndDropNewest() {
+    RingBufferMailbox mailbox = new RingBufferMailbox(3);
+    assertNull(mailbox.poll());
+    assertTrue(mailbox.offer(msg(0)));
+    assertTrue(mailbox.offer(msg(1)));
+    assertTrue(mailbox.offer(msg(2)));
+    assertFalse(mailbox.offer(msg(3)));
+    assertEquals(3, mailbox.size());
+    assertEquals(1, mailbox.getDropped());
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(i, mailbox.poll().data[0]);
+    }
+    assertNull(mailbox.poll());
+    assertEquals(0, mailbox.size());
+  }
+
+  @Test
+  public void dropOldest() {
+    RingBufferMailbox mailbox = new RingBufferMailbox(2, OverrunPolicy.DROP_OLDEST);
+    for (int i = 0; i < 5; ++i) {
+      assertTrue(mailbox.offer(msg(i)));
+    }
+    assertEquals(3, mailbox.getDropped());
+    assertEquals(3, mailbox.poll().data[0]);
+    assertEquals(4, mailbox.poll().data[0]);
+  }
+
+  @Test
+  public void blockingProducers() throws InterruptedException {
+    RingBufferMailbox mailbox = new RingBufferMailbox(8, OverrunPolicy.BLOCK);
+    int producers = 4;
+    int count = 1000;
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; ++p) {
+      Thread t = new Thread(() -> {
+        for (int i = 0; i < count; ++i) {
+          mailbox.offer(msg(i));
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+
+    for (int i = 0; i < producers * count; ++i) {
+      assertTrue(mailbox.take() != null);
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(0, mailbox.getDropped());
+    assertEquals(0, mailbox.size());
+  }
+
+  @Test
+  public void resizeWhileTaking() throws InterruptedException {
+    Inbox inbox = new Inbox("resize");
+    LinkedBlockingQueue<Message> taken = new LinkedBlockingQueue<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        while (true) {
+          taken.add(inbox.getMsg());
+        }
+      } catch (InterruptedException e) {
+      }
+    });
+    consumer.start();
+    inbox.add(msg(0));
+    assertEquals(0, taken.poll(1, TimeUnit.SECONDS).data[0]);
+    // the consumer is waiting on the mailbox being replaced
+    while (consumer.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    inbox.setMaxQueueSize(4);
+    assertEquals(4, inbox.getMailbox().getMaxSize());
+    inbox.add(msg(1));
+    Message msg = taken.poll(1, TimeUnit.SECONDS);
+    assertTrue("the consumer was left on the old mailbox", msg != null);
+    assertEquals(1, msg.data[0]);
+    consumer.interrupt();
+  }
+
+  @Test
+  public void swapWhileAdding() throws InterruptedException {
+    Inbox inbox = new Inbox("swap");
+    // room for all of them - any message lost is lost in a swap
+    inbox.setMaxQueueSize(65536);
+    int producers = 4;
+    int count = 5000;
+    LinkedBlockingQueue<Message> taken = new LinkedBlockingQueue<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        while (true) {
+          taken.add(inbox.getMsg());
+        }
+      } catch (InterruptedException e) {
+      }
+    });
+    consumer.start();
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; ++p) {
+      Thread t = new Thread(() -> {
+        for (int i = 0; i < count; ++i) {
+          inbox.add(msg(i));
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+    for (int i = 0; threads.stream().anyMatch(Thread::isAlive); ++i) {
+      inbox.setMaxQueueSize((i % 2 == 0) ? 32768 : 65536);
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    for (int i = 0; i < producers * count; ++i) {
+      assertTrue(String.format("lost %d messages", producers * count - i), taken.poll(1, TimeUnit.SECONDS) != null);
+    }
+    assertFalse(inbox.isBufferOverrun());
+    consumer.interrupt();
+  }
+
+  @Test
+  public void outboxGrowsByDefault() {
+    Outbox outbox = new Outbox("grow");
+    assertEquals(OverrunPolicy.GROW, outbox.getOverrunPolicy());
+    for (int i = 0; i < outbox.getMaxQueueSize() + 10; ++i) {
+      outbox.add(msg(i));
+    }
+    assertEquals(outbox.getMaxQueueSize() + 10, outbox.size());
+    assertEquals(0, outbox.getMsgBox().getDropped());
+
+    // dropping is opted into
+    outbox.setMaxQueueSize(4);
+    outbox.setOverrunPolicy(OverrunPolicy.DROP_NEWEST);
+    outbox.getMsgBox().clear();
+    for (int i = 0; i < 6; ++i) {
+      outbox.add(msg(i));
+    }
+    assertEquals(4, outbox.size());
+    assertEquals(2, outbox.getMsgBox().getDropped());
+
+    // back to growing
+    outbox.setBlocking(false);
+    assertEquals(OverrunPolicy.GROW, outbox.getOverrunPolicy());
+    outbox.add(msg(6));
+    assertEquals(5, outbox.size());
+
+    try {
+      new RingBufferMailbox(4, OverrunPolicy.GROW);
+      assertTrue("expected a ring buffer not to grow", false);
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void moveTo() {
+    RingBufferMailbox from = new RingBufferMailbox(8);
+    RingBufferMailbox to = new RingBufferMailbox(8);
+    from.offer(msg(0));
+    from.offer(Mailboxes.WAKE_UP);
+    from.offer(msg(1));
+    assertEquals(2, Mailboxes.moveTo(from, to));
+    assertEquals(0, to.poll().data[0]);
+    assertEquals(1, to.poll().data[0]);
+    // wake ups stay for the consumers of the old one
+    assertTrue(from.poll() == Mailboxes.WAKE_UP);
+    assertNull(from.poll());
+  }
+
+}
@@ -0,0 +1,178 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.myrobotlab.framework.SubscriberQueue.SlowSubscriberPolicy;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class SubscriberQueueTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(SubscriberQueueTest.class);
+
+  private Message msg(String method, int i) {
+    return Message.createMessage("publisher", "subscriber", method, i);
+  }
+
+  /**
+   * sender which waits on a latch before delivering - a slow subscriber
+   */
+  static class SlowSender implements java.util.function.Consumer<Message> {
+    List<Object> received = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public void accept(Message msg) {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+      }
+      received.add(msg.data[0]);
+    }
+
+    void waitFor(int count) throws InterruptedException {
+      long start = System.currentTimeMillis();
+      while (received.size() < count && System.currentTimeMillis() - start < 3000) {
+        Thread.sleep(5);
+      }
+    }
+  }
+
+  @Test
+  public void fifo() throws InterruptedException {
+    SlowSender sender = new SlowSender();
+    sender.release.countDown();
+    SubscriberQueue queue = new SubscriberQueue("publisher", "subscriber", sender, 16, SlowSubscriberPolicy.BLOCK);
+    int count = 1000;
+    for (int i = 0; i < count; ++i) {
+      assertTrue(queue.offer(msg("onInt", i)));
+    }
+    sender.waitFor(count);
+    assertEquals(count, sender.received.size());
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i, sender.received.get(i));
+    }
+    assertEquals(0, queue.getStats().dropped);
+  }
+
+  @Test
+  public void drop() throws InterruptedException {
+    SlowSender sender = new SlowSender();
+    SubscriberQueue queue = new SubscriberQueue("publisher", "subscriber", sender, 2, SlowSubscriberPolicy.DROP);
+    queue.offer(msg("onInt", 0));
+    assertTrue(sender.started.await(3, TimeUnit.SECONDS));
+    for (int i = 1; i < 10; ++i) {
+      queue.offer(msg("onInt", i));
+    }
+    assertEquals(2, queue.size());
+    assertFalse(queue.offer(msg("onInt", 10)));
+    sender.release.countDown();
+    sender.waitFor(3);
+    assertEquals(3, sender.received.size());
+    assertEquals(8, queue.getStats().dropped);
+  }
+
+  @Test
+  public void coalesceLatest() throws InterruptedException {
+    SlowSender sender = new SlowSender();
+    SubscriberQueue queue = new SubscriberQueue("publisher", "subscriber", sender, 4, SlowSubscriberPolicy.COALESCE_LATEST);
+    queue.offer(msg("onInt", 0));
+    assertTrue(sender.started.await(3, TimeUnit.SECONDS));
+    for (int i = 1; i <= 100; ++i) {
+      queue.offer(msg("onInt", i));
+      queue.offer(msg("onOther", -i));
+    }
+    assertEquals(2, queue.size());
+    QueueStats stats = queue.getStats();
+    assertEquals(198, stats.coalesced);
+    assertEquals(2, stats.currentQueueCount);
+
+    sender.release.countDown();
+    sender.waitFor(3);
+    assertEquals(3, sender.received.size());
+    assertEquals(0, sender.received.get(0));
+    assertEquals(100, sender.received.get(1));
+    assertEquals(-100, sender.received.get(2));
+  }
+
+  @Test
+  public void blockAndLag() throws InterruptedException {
+    SlowSender sender = new SlowSender();
+    SubscriberQueue queue = new SubscriberQueue("publisher", "subscriber", sender, 1, SlowSubscriberPolicy.BLOCK);
+    queue.offer(msg("onInt", 0));
+    assertTrue(sender.started.await(3, TimeUnit.SECONDS));
+    queue.offer(msg("onInt", 1));
+
+    Thread publisher = new Thread(() -> {
+      queue.offer(msg("onInt", 2));
+    });
+    publisher.start();
+    publisher.join(200);
+    assertTrue("publisher should block on a full queue", publisher.isAlive());
+
+    sender.release.countDown();
+    publisher.join(3000);
+    assertFalse(publisher.isAlive());
+    sender.waitFor(3);
+    assertEquals(3, sender.received.size());
+    QueueStats stats = queue.getStats();
+    assertEquals(3, stats.total);
+    assertEquals(0, stats.dropped);
+    assertTrue(stats.maxLag >= 100);
+  }
+
+  @Test
+  public void blockedSubscriberDoesNotDelayOthers() throws InterruptedException {
+    // one worker to start with - the blocked delivery holds it
+    OutboxDispatcher dispatcher = new OutboxDispatcher(1);
+    SlowSender blocked = new SlowSender();
+    SlowSender other = new SlowSender();
+    other.release.countDown();
+    SubscriberQueue blockedQueue = new SubscriberQueue("publisher", "blocked", blocked, 4, SlowSubscriberPolicy.DROP, dispatcher);
+    SubscriberQueue otherQueue = new SubscriberQueue("publisher", "other", other, 4, SlowSubscriberPolicy.DROP, dispatcher);
+    blockedQueue.offer(msg("onInt", 0));
+    assertTrue(blocked.started.await(3, TimeUnit.SECONDS));
+
+    // the publisher's outbox thread
+    int count = 100;
+    Thread publisher = new Thread(() -> {
+      try {
+        for (int i = 1; i <= count; ++i) {
+          blockedQueue.offer(msg("onInt", i));
+          otherQueue.offer(msg("onInt", i));
+          // the other subscriber keeps up
+          other.waitFor(i);
+        }
+      } catch (InterruptedException e) {
+      }
+    });
+    publisher.start();
+    publisher.join(5000);
+    assertFalse("the publisher was held up", publisher.isAlive());
+    assertEquals(count, other.received.size());
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i + 1, other.received.get(i));
+    }
+    assertTrue(dispatcher.getThreadCount() > 1);
+
+    // the blocked one got its first, kept 4 and dropped the rest
+    assertEquals(0, blocked.received.size());
+    assertEquals(count - 4, blockedQueue.getStats().dropped);
+    blocked.release.countDown();
+    blocked.waitFor(5);
+    assertEquals(5, blocked.received.size());
+  }
+
+}
@@ -0,0 +1,72 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.myrobotlab.framework.SubscriptionRegistry.Topic;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class SubscriptionRegistryTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(SubscriptionRegistryTest.class);
+
+  @Test
+  public void addRemove() {
+    SubscriptionRegistry registry = new SubscriptionRegistry();
+    assertTrue(registry.isEmpty());
+    assertTrue(registry.add(new MRLListener("publishInt", "a@test", "onInt")));
+    assertTrue(registry.add(new MRLListener("publishInt", "b@test", "onInt")));
+    assertTrue(registry.add(new MRLListener("publishState", "a@test", "onState")));
+    assertFalse("duplicate", registry.add(new MRLListener("publishInt", "a@test", "onInt")));
+
+    List<MRLListener> before = registry.get("publishInt");
+    assertEquals(2, before.size());
+
+    assertTrue(registry.remove("publishInt", "b@test", "onInt"));
+    assertFalse(registry.remove("publishInt", "b@test", "onInt"));
+    // readers keep their snapshot
+    assertEquals(2, before.size());
+    assertEquals(1, registry.get("publishInt").size());
+
+    registry.removeSubscriber("a@test");
+    assertNull(registry.get("publishInt"));
+    assertNull(registry.get("publishState"));
+    assertTrue(registry.getAll().isEmpty());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void snapshotsAreImmutable() {
+    SubscriptionRegistry registry = new SubscriptionRegistry();
+    registry.add(new MRLListener("publishInt", "a@test", "onInt"));
+    registry.get("publishInt").clear();
+  }
+
+  @Test
+  public void filtersAreResolved() {
+    SubscriptionRegistry registry = new SubscriptionRegistry();
+    registry.add(new MRLListener("publishInt", "a@test", "onInt"));
+    registry.add(new MRLListener("publishInt", "b@test", "onInt"));
+    Topic topic = registry.getTopic("publishInt");
+    assertNull(topic.filters);
+
+    registry.putFilter("b@test", "onInt", msg -> true);
+    topic = registry.getTopic("publishInt");
+    assertNull(topic.getFilter(0));
+    assertTrue(topic.getFilter(1).filter(null));
+
+    // subscribing after the filter was set
+    registry.add(new MRLListener("publishState", "b@test", "onInt"));
+    assertTrue(registry.getTopic("publishState").getFilter(0) != null);
+
+    registry.removeFilter("b@test", "onInt");
+    assertNull(registry.getTopic("publishInt").filters);
+  }
+
+}
@@ -0,0 +1,156 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.myrobotlab.framework.TaskScheduler.ScheduledTask;
+import org.myrobotlab.framework.TaskScheduler.TaskStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class TaskSchedulerTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(TaskSchedulerTest.class);
+
+  TaskScheduler scheduler = new TaskScheduler();
+
+  @After
+  public void stop() {
+    scheduler.shutdown();
+  }
+
+  static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+    }
+  }
+
+  @Test
+  public void fixedRate() throws Exception {
+    List<Long> runs = Collections.synchronizedList(new ArrayList<>());
+    ScheduledTask task = scheduler.scheduleAtFixedRate("rate", () -> {
+      runs.add(System.currentTimeMillis());
+      sleep(20);
+    }, 0, 50);
+    Thread.sleep(520);
+    task.cancel();
+    // a run taking 20 ms does not stretch the period
+    assertTrue(String.format("%d runs", runs.size()), runs.size() >= 9 && runs.size() <= 12);
+    long span = runs.get(runs.size() - 1) - runs.get(0);
+    assertTrue(String.format("span %d", span), Math.abs(span - (runs.size() - 1) * 50) < 40);
+    TaskStats stats = task.getStats();
+    assertTrue(stats.fixedRate);
+    assertEquals(0, stats.overruns);
+  }
+
+  @Test
+  public void fixedDelay() throws Exception {
+    List<Long> runs = Collections.synchronizedList(new ArrayList<>());
+    ScheduledTask task = scheduler.scheduleWithFixedDelay("delay", () -> {
+      runs.add(System.currentTimeMillis());
+      sleep(20);
+    }, 0, 50);
+    Thread.sleep(520);
+    task.cancel();
+    // a run every 70 ms - the delay starts when a run ended
+    assertTrue(String.format("%d runs", runs.size()), runs.size() >= 6 && runs.size() <= 8);
+    for (int i = 1; i < runs.size(); ++i) {
+      long interval = runs.get(i) - runs.get(i - 1);
+      assertTrue(String.format("interval %d", interval), interval >= 65);
+    }
+  }
+
+  @Test
+  public void oneShot() throws Exception {
+    AtomicInteger count = new AtomicInteger();
+    ScheduledTask task = scheduler.schedule("once", count::incrementAndGet, 20);
+    assertEquals(1, scheduler.getStats().size());
+    Thread.sleep(100);
+    assertEquals(1, count.get());
+    assertTrue(task.isDone());
+    assertEquals(0, scheduler.getStats().size());
+  }
+
+  @Test
+  public void cancel() throws Exception {
+    AtomicInteger count = new AtomicInteger();
+    ScheduledTask task = scheduler.scheduleAtFixedRate("cancel", count::incrementAndGet, 0, 10);
+    Thread.sleep(100);
+    task.cancel();
+    Thread.sleep(20);
+    int stopped = count.get();
+    assertTrue(stopped > 0);
+    Thread.sleep(100);
+    assertEquals(stopped, count.get());
+    assertTrue(task.isCancelled());
+    assertEquals(0, scheduler.getStats().size());
+  }
+
+  @Test
+  public void overrunsAndErrors() throws Exception {
+    AtomicInteger count = new AtomicInteger();
+    ScheduledTask slow = scheduler.scheduleAtFixedRate("slow", () -> sleep(30), 0, 20);
+    ScheduledTask bad = scheduler.scheduleAtFixedRate("bad", () -> {
+      count.incrementAndGet();
+      throw new IllegalStateException("bad task");
+    }, 0, 20);
+    Thread.sleep(300);
+    assertEquals(2, scheduler.getStats().size());
+    slow.cancel();
+    bad.cancel();
+    Thread.sleep(50);
+    TaskStats stats = slow.getStats();
+    log.info("runs {} overruns {} max jitter {} ms max duration {} ms", stats.runs, stats.overruns, stats.maxJitterMs, stats.maxDurationMs);
+    assertTrue(stats.overruns > 0);
+    assertTrue(stats.maxDurationMs >= 30);
+    assertTrue(stats.maxJitterMs > 0);
+    // an exception does not cancel it
+    assertTrue(count.get() > 5);
+    assertEquals(count.get(), bad.getStats().errors);
+  }
+
+  @Test
+  public void blockingTasks() throws Exception {
+    // more blocking runs than cpus
+    int blocking = java.lang.Runtime.getRuntime().availableProcessors() + 2;
+    for (int i = 0; i < blocking; ++i) {
+      scheduler.scheduleWithFixedDelay("blocking" + i, () -> sleep(500), 0, 10);
+    }
+    List<Long> runs = Collections.synchronizedList(new ArrayList<>());
+    ScheduledTask clock = scheduler.scheduleAtFixedRate("clock", () -> runs.add(System.currentTimeMillis()), 20, 20);
+    Thread.sleep(300);
+    clock.cancel();
+    // the clock ticks while they block
+    assertTrue(String.format("%d runs", runs.size()), runs.size() >= 10);
+    assertTrue(clock.getStats().maxJitterMs < 100);
+    assertTrue(scheduler.getThreadCount() > blocking);
+  }
+
+  @Test
+  public void shutdown() throws Exception {
+    AtomicInteger count = new AtomicInteger();
+    ScheduledTask task = scheduler.scheduleAtFixedRate("shutdown", count::incrementAndGet, 0, 10);
+    Thread.sleep(50);
+    scheduler.shutdown();
+    assertTrue(task.isCancelled());
+    assertEquals(0, scheduler.getStats().size());
+    int stopped = count.get();
+    Thread.sleep(50);
+    assertEquals(stopped, count.get());
+    // nothing runs after
+    ScheduledTask late = scheduler.schedule("late", count::incrementAndGet, 0);
+    Thread.sleep(20);
+    assertTrue(late.isCancelled());
+    assertEquals(stopped, count.get());
+  }
+
+}
@@ -0,0 +1,89 @@
+package org.myrobotlab.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encoding cost of a 640x480 OpenCV display frame with a WebGui and a
+ * VideoStreamer watching - times 30 fps it's the cpu share per second of
+ * video.
+ *
+ * <pre>
+ * separate - WebImage encodes a jpeg, MjpegServer a png (SerializableImage.getBytes)
+ * shared   - one jpeg (SerializableImage.getJpeg) for both
+ * </pre>
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar DisplayEncodeBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DisplayEncodeBenchmark {
+
+  BufferedImage frame;
+
+  int frameIndex = 0;
+
+  @Setup
+  public void setup() {
+    // a camera like frame - gradients and noise
+    Random random = new Random(1);
+    frame = new BufferedImage(640, 480, BufferedImage.TYPE_3BYTE_BGR);
+    for (int y = 0; y < 480; ++y) {
+      for (int x = 0; x < 640; ++x) {
+        int n = random.nextInt(16);
+        frame.setRGB(x, y, new Color((x / 3 + n) & 0xff, (y / 2 + n) & 0xff, ((x + y) / 5 + n) & 0xff).getRGB());
+      }
+    }
+  }
+
+  SerializableImage display() {
+    ++frameIndex;
+    Graphics2D g2d = frame.createGraphics();
+    g2d.setColor(Color.BLACK);
+    g2d.drawString(String.format("frame: %d", frameIndex), 20, 10);
+    g2d.dispose();
+    return new SerializableImage(frame, "display", frameIndex);
+  }
+
+  @Benchmark
+  public void separate(Blackhole bh) {
+    SerializableImage si = display();
+    bh.consume(new WebImage(si.getImage(), "opencv", frameIndex));
+    bh.consume(si.getBytes());
+  }
+
+  @Benchmark
+  public void shared(Blackhole bh) {
+    SerializableImage si = display();
+    bh.consume(new WebImage(si, "opencv", null));
+    bh.consume(si.getJpeg(null));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(DisplayEncodeBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
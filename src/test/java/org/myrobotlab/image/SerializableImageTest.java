@@ -0,0 +1,39 @@
+package org.myrobotlab.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.test.AbstractTest;
+
+public class SerializableImageTest extends AbstractTest {
+
+  @Test
+  public void jpegEncodedOnce() throws Exception {
+    BufferedImage img = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+    SerializableImage si = new SerializableImage(img, "display", 1);
+    byte[] jpeg = si.getJpeg(null);
+    assertSame(jpeg, si.getJpeg(null));
+    byte[] low = si.getJpeg(0.2);
+    assertNotSame(jpeg, low);
+    assertSame(low, si.getJpeg(0.2));
+
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+    assertEquals(64, decoded.getWidth());
+    assertEquals(48, decoded.getHeight());
+
+    WebImage web = new WebImage(si, "opencv", null);
+    assertEquals(1, (int) web.frameIndex);
+    assertTrue(web.data.startsWith("data:image/jpeg;base64,"));
+    assertEquals(CodecUtils.toBase64(jpeg), web.data.substring("data:image/jpeg;base64,".length()));
+  }
+
+}
@@ -0,0 +1,108 @@
+package org.myrobotlab.kinematics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * CollisionDectection.runTest per IK step - an arm of 5 parts moves a little,
+ * then every item is tested. The other items are capsules on a jittered grid
+ * (like kinect objects) which don't collide, so every pair the broad phase
+ * lets through is tested.
+ *
+ * <pre>
+ * runTest  - broad phase, then the closest point test of overlapping boxes
+ * allPairs - the closest point test of every pair (runTest before the broad
+ *            phase)
+ * </pre>
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar CollisionDectectionBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollisionDectectionBenchmark {
+
+  @Param({ "20", "200", "2000" })
+  public int items;
+
+  CollisionDectection detection;
+
+  CollisionItem[] arm = new CollisionItem[5];
+
+  double angle = 0;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(1);
+    detection = new CollisionDectection();
+    // cells of 150 mm, capsules of at most 100 mm with a radius of 20 mm
+    int side = (int) Math.ceil(Math.cbrt(items));
+    for (int i = 0; i < items - arm.length; i++) {
+      double x = (i % side) * 150;
+      double y = ((i / side) % side) * 150;
+      double z = (i / (side * side)) * 150 + 1000;
+      Point origin = new Point(x + random.nextDouble() * 20, y + random.nextDouble() * 20, z + random.nextDouble() * 20, 0, 0, 0);
+      Point end = origin.add(new Point(random.nextDouble() * 60, random.nextDouble() * 60, random.nextDouble() * 60, 0, 0, 0));
+      detection.addItem(new CollisionItem(origin, end, "object" + i, 5 + random.nextDouble() * 15, false));
+    }
+    for (int i = 0; i < arm.length; i++) {
+      arm[i] = new CollisionItem(new Point(0, 0, 0, 0, 0, 0), new Point(0, 0, 0, 0, 0, 0), "arm" + i, 30, false);
+      if (i > 0) {
+        arm[i].addIgnore(arm[i - 1].getName());
+      }
+      detection.addItem(arm[i]);
+    }
+    moveArm();
+  }
+
+  /**
+   * the arm below the objects, swinging a little each step
+   */
+  void moveArm() {
+    angle += 0.01;
+    Point joint = new Point(0, 0, 0, 0, 0, 0);
+    for (int i = 0; i < arm.length; i++) {
+      double a = angle + i * 0.5;
+      Point next = joint.add(new Point(100 * Math.cos(a), 100 * Math.sin(a), 50, 0, 0, 0));
+      arm[i].setOrigin(joint);
+      arm[i].setEnd(next);
+      joint = next;
+    }
+  }
+
+  @Benchmark
+  public boolean runTest() {
+    moveArm();
+    return detection.runTest().haveCollision;
+  }
+
+  @Benchmark
+  public boolean allPairs() {
+    moveArm();
+    return CollisionDectectionTest.allPairs(detection);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(CollisionDectectionBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -0,0 +1,154 @@
+package org.myrobotlab.kinematics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class CollisionDectectionTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(CollisionDectectionTest.class);
+
+  /**
+   * every item against every other, ignores by name - what runTest did before
+   * the broad phase
+   *
+   * @return true if any pair collides
+   */
+  static boolean allPairs(CollisionDectection detection) {
+    for (CollisionItem item : detection.getItems().values()) {
+      for (CollisionItem citem : detection.getItems().values()) {
+        if (item == citem || item.ignore.contains(citem.getName()) || citem.ignore.contains(item.getName())) {
+          continue;
+        }
+        Double[] tk = new Double[2];
+        Point[] points = detection.getClosestPoint(item, citem, tk, new Double[3]);
+        double rad1 = (tk[0] <= 0.0 || tk[0] >= 1.0) ? 0 : item.getRadius();
+        double rad2 = (tk[1] == 0.0 || tk[1] == 1.0) ? 0 : citem.getRadius();
+        if (points[0].distanceTo(points[1]) <= rad1 + rad2) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  static CollisionItem randomItem(Random random, String name, double space) {
+    Point origin = new Point(random.nextDouble() * space, random.nextDouble() * space, random.nextDouble() * space, 0, 0, 0);
+    Point end = origin.add(new Point(random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100, 0, 0, 0));
+    return new CollisionItem(origin, end, name, 5 + random.nextDouble() * 25, false);
+  }
+
+  @Test
+  public void sameAsAllPairs() {
+    Random random = new Random(1);
+    int collisions = 0;
+    for (int run = 0; run < 200; run++) {
+      CollisionDectection detection = new CollisionDectection();
+      int count = 2 + random.nextInt(40);
+      for (int i = 0; i < count; i++) {
+        CollisionItem item = randomItem(random, "item" + i, 500);
+        if (i > 0 && random.nextInt(4) == 0) {
+          item.addIgnore("item" + random.nextInt(i));
+        }
+        detection.addItem(item);
+      }
+      boolean expected = allPairs(detection);
+      assertEquals(expected, detection.runTest().haveCollision);
+      assertEquals(expected, detection.haveCollision());
+      if (expected) {
+        ++collisions;
+      }
+    }
+    log.info("{} of 200 runs collide", collisions);
+    assertTrue(collisions > 20 && collisions < 180);
+  }
+
+  @Test
+  public void incremental() {
+    Random random = new Random(2);
+    CollisionDectection detection = new CollisionDectection();
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      CollisionItem item = randomItem(random, "item" + i, 800);
+      detection.addItem(item);
+      names.add(item.getName());
+    }
+    for (int step = 0; step < 300; step++) {
+      switch (random.nextInt(5)) {
+        case 0:
+          // moved through addItem like the arm parts
+          CollisionItem moved = randomItem(random, names.get(random.nextInt(names.size())), 800);
+          detection.addItem(moved);
+          break;
+        case 1:
+          CollisionItem item = detection.getItem(names.get(random.nextInt(names.size())));
+          item.setEnd(item.getEnd().add(new Point(random.nextDouble() * 100 - 50, 0, random.nextDouble() * 100 - 50, 0, 0, 0)));
+          break;
+        case 2:
+          detection.addIgnore(names.get(random.nextInt(names.size())), names.get(random.nextInt(names.size())));
+          break;
+        case 3:
+          String name = names.remove(random.nextInt(names.size()));
+          detection.removeObject(name);
+          CollisionItem added = randomItem(random, name + "_", 800);
+          detection.addItem(added);
+          names.add(added.getName());
+          break;
+        default:
+          detection.removeIgnore(names.get(random.nextInt(names.size())), names.get(random.nextInt(names.size())));
+      }
+      assertEquals("step " + step, allPairs(detection), detection.runTest().haveCollision);
+    }
+  }
+
+  @Test
+  public void ignored() {
+    CollisionDectection detection = new CollisionDectection();
+    detection.addItem(new CollisionItem(new Point(0, 0, 0, 0, 0, 0), new Point(100, 0, 0, 0, 0, 0), "upperArm", 20, false));
+    detection.addItem(new CollisionItem(new Point(100, 0, 0, 0, 0, 0), new Point(100, 100, 0, 0, 0, 0), "forearm", 20, false));
+    detection.addItem(new CollisionItem(new Point(500, 500, 500, 0, 0, 0), new Point(600, 500, 500, 0, 0, 0), "table", 20, false));
+    assertTrue(detection.runTest().haveCollision);
+    detection.addIgnore("forearm", "upperArm");
+    assertFalse(detection.runTest().haveCollision);
+    // the forearm swings into the table
+    detection.getItem("forearm").setEnd(new Point(550, 500, 500, 0, 0, 0));
+    CollisionDectection.CollisionResults results = detection.runTest();
+    assertTrue(results.haveCollision);
+    assertTrue("table".equals(results.collisionItems[0].getName()) || "table".equals(results.collisionItems[1].getName()));
+    detection.removeObject("table");
+    assertFalse(detection.runTest().haveCollision);
+  }
+
+  @Test
+  public void replacedItemsAndSwappedIgnores() {
+    CollisionDectection detection = new CollisionDectection();
+    detection.addItem(new CollisionItem(new Point(0, 0, 0, 0, 0, 0), new Point(100, 0, 0, 0, 0, 0), "upperArm", 20, false));
+    detection.addItem(new CollisionItem(new Point(100, 0, 0, 0, 0, 0), new Point(100, 100, 0, 0, 0, 0), "forearm", 20, false));
+    detection.addItem(new CollisionItem(new Point(500, 500, 500, 0, 0, 0), new Point(600, 500, 500, 0, 0, 0), "table", 20, false));
+    detection.addIgnore("forearm", "upperArm");
+    assertFalse(detection.runTest().haveCollision);
+
+    // same number of items - the table is put across the upper arm
+    detection.getItems().put("table", new CollisionItem(new Point(50, -50, 0, 0, 0, 0), new Point(50, 50, 0, 0, 0, 0), "table", 20, false));
+    assertTrue(detection.runTest().haveCollision);
+    detection.addIgnore("table", "upperArm");
+    detection.addIgnore("table", "forearm");
+    assertFalse(detection.runTest().haveCollision);
+
+    // same size of ignore list - a different pair is ignored
+    detection.removeIgnore("table", "upperArm");
+    detection.addIgnore("table", "nothing");
+    assertEquals(2, detection.getItem("table").getIgnore().size());
+    assertTrue(detection.runTest().haveCollision);
+  }
+
+}
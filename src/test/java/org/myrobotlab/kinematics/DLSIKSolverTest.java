@@ -0,0 +1,118 @@
+package org.myrobotlab.kinematics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.InMoov2Arm;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class DLSIKSolverTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(DLSIKSolverTest.class);
+
+  DLSIKSolver solver = new DLSIKSolver();
+
+  /**
+   * palm positions of random joint positions - all reachable
+   */
+  static List<Point> randomGoals(int count) {
+    Random random = new Random(1);
+    DHRobotArm arm = InMoov2Arm.getDHRobotArm("i01", "left");
+    List<Point> goals = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      for (DHLink link : arm.getLinks()) {
+        link.setTheta(link.getMin() + random.nextDouble() * (link.getMax() - link.getMin()));
+      }
+      goals.add(arm.getPalmPosition());
+    }
+    return goals;
+  }
+
+  static void assertWithinLimits(DHRobotArm arm) {
+    for (DHLink link : arm.getLinks()) {
+      assertTrue(link.toString(), link.getTheta() >= link.getMin() && link.getTheta() <= link.getMax());
+    }
+  }
+
+  @Test
+  public void solvesRandomGoals() {
+    DHRobotArm arm = InMoov2Arm.getDHRobotArm("i01", "left");
+    List<Point> goals = randomGoals(200);
+    int solved = 0;
+    int iterations = 0;
+    for (Point goal : goals) {
+      arm.centerAllJoints();
+      IKSolution solution = solver.solve(arm, goal);
+      assertWithinLimits(arm);
+      if (solution.success) {
+        ++solved;
+        assertTrue(goal.distanceTo(arm.getPalmPosition()) < 2.0);
+        assertEquals(solution.error, goal.distanceTo(solution.palm), 0.000001);
+      }
+      iterations += solution.iterations;
+    }
+    log.info("solved {} of {} - {} iterations per goal", solved, goals.size(), iterations / goals.size());
+    // some goals are only reachable from the other side of a limit
+    assertTrue(solved > 180);
+    assertTrue(iterations / goals.size() < 50);
+  }
+
+  @Test
+  public void warmStart() {
+    DHRobotArm arm = InMoov2Arm.getDHRobotArm("i01", "left");
+    arm.centerAllJoints();
+    Point center = arm.getPalmPosition();
+    int iterations = 0;
+    // 1 mm steps around a circle of 50 mm
+    for (int i = 0; i < 400; i++) {
+      double angle = i / 50.0;
+      Point goal = new Point(center.getX() + 50 * Math.cos(angle) - 50, center.getY() + 50 * Math.sin(angle), center.getZ());
+      IKSolution solution = solver.solve(arm, goal);
+      assertTrue(solution.toString(), solution.success);
+      iterations += solution.iterations;
+    }
+    // from the previous solution a step or none
+    assertTrue(String.format("%d iterations", iterations), iterations <= 400);
+  }
+
+  @Test
+  public void unreachable() {
+    DHRobotArm arm = InMoov2Arm.getDHRobotArm("i01", "left");
+    arm.centerAllJoints();
+    IKSolution solution = solver.solve(arm, new Point(5000, 5000, 5000));
+    assertFalse(solution.success);
+    assertWithinLimits(arm);
+    assertEquals(solution.error, arm.getPalmPosition().distanceTo(solution.goal), 0.000001);
+  }
+
+  @Test
+  public void solveBatch() {
+    DHRobotArm arm = InMoov2Arm.getDHRobotArm("i01", "left");
+    arm.centerAllJoints();
+    Point start = arm.getPalmPosition();
+    List<Point> goals = randomGoals(100);
+    List<IKSolution> solutions = arm.solveBatch(solver, goals);
+    assertEquals(goals.size(), solutions.size());
+    // the arm doesn't move
+    assertEquals(0.0, arm.getPalmPosition().distanceTo(start), 0.0);
+    DHRobotArm check = new DHRobotArm(arm);
+    for (int i = 0; i < goals.size(); i++) {
+      IKSolution solution = solutions.get(i);
+      assertEquals(goals.get(i), solution.goal);
+      // the positions put the palm where the solution says
+      for (int j = 0; j < solution.positions.length; j++) {
+        check.getLink(j).setTheta(solution.positions[j]);
+      }
+      assertEquals(solution.error, goals.get(i).distanceTo(check.getPalmPosition()), 0.000001);
+    }
+  }
+
+}
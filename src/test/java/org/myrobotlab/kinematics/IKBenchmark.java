@@ -0,0 +1,89 @@
+package org.myrobotlab.kinematics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.service.InMoov2Arm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * IK solves per second of DHRobotArm.moveToGoal on the InMoov left arm DH
+ * table.
+ *
+ * <pre>
+ * track - the goal moves 1 mm around a circle each solve, like joystick
+ *         tracking in InverseKinematics3D
+ * reach - from centered joints to a random reachable goal
+ * </pre>
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar IKBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IKBenchmark {
+
+  DHRobotArm arm;
+
+  Point center;
+
+  double angle = 0;
+
+  Point[] goals;
+
+  int goal = 0;
+
+  @Setup
+  public void setup() {
+    arm = InMoov2Arm.getDHRobotArm("i01", "left");
+    arm.centerAllJoints();
+    center = arm.getPalmPosition();
+
+    // reachable goals - palm positions of random joint angles
+    Random random = new Random(1);
+    DHRobotArm probe = InMoov2Arm.getDHRobotArm("i01", "left");
+    goals = new Point[64];
+    for (int i = 0; i < goals.length; i++) {
+      for (DHLink link : probe.getLinks()) {
+        link.setTheta(link.getMin() + random.nextDouble() * (link.getMax() - link.getMin()));
+      }
+      goals[i] = probe.getPalmPosition();
+    }
+  }
+
+  @Benchmark
+  public boolean track() {
+    // 1 mm steps around a circle of 50 mm
+    angle += 0.02;
+    Point target = new Point(center.getX() + 50 * Math.cos(angle), center.getY() + 50 * Math.sin(angle), center.getZ(), 0, 0, 0);
+    return arm.moveToGoal(target);
+  }
+
+  @Benchmark
+  public boolean reach() {
+    arm.centerAllJoints();
+    goal = (goal + 1) % goals.length;
+    return arm.moveToGoal(goals[goal]);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(IKBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -0,0 +1,119 @@
+package org.myrobotlab.kinematics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class MatrixTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(MatrixTest.class);
+
+  static final double EPSILON = 1e-9;
+
+  static Matrix matrix(double[][] rows) {
+    Matrix m = new Matrix(rows.length, rows[0].length);
+    for (int r = 0; r < rows.length; r++) {
+      for (int c = 0; c < rows[0].length; c++) {
+        m.set(r, c, rows[r][c]);
+      }
+    }
+    return m;
+  }
+
+  static void assertMatrix(double[][] expected, Matrix m) {
+    assertEquals(expected.length, m.getNumRows());
+    assertEquals(expected[0].length, m.getNumCols());
+    for (int r = 0; r < expected.length; r++) {
+      for (int c = 0; c < expected[0].length; c++) {
+        assertEquals(String.format("%d,%d of %s", r, c, m), expected[r][c], m.get(r, c), EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void inPlace() {
+    Matrix a = matrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } });
+    Matrix b = matrix(new double[][] { { 7, 8 }, { 9, 10 }, { 11, 12 } });
+
+    Matrix product = new Matrix(2, 2);
+    assertTrue(product == a.multiply(b, product));
+    assertMatrix(new double[][] { { 58, 64 }, { 139, 154 } }, product);
+    // same as the allocating one
+    assertArrayEquals(a.multiply(b).data, product.data, EPSILON);
+
+    Matrix transposed = new Matrix(3, 2);
+    assertTrue(transposed == a.transpose(transposed));
+    assertMatrix(new double[][] { { 1, 4 }, { 2, 5 }, { 3, 6 } }, transposed);
+
+    Matrix copy = new Matrix(2, 3).set(a);
+    assertTrue(copy.scale(2) == copy);
+    assertMatrix(new double[][] { { 2, 4, 6 }, { 8, 10, 12 } }, copy);
+    // a is untouched
+    assertMatrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } }, a);
+
+    assertMatrix(new double[][] { { 1, 0, 0 }, { 0, 1, 0 } }, copy.setIdentity());
+    assertTrue(copy.setZero().equals(0.0));
+
+    // bad dimensions leave the result alone
+    Matrix bad = new Matrix(3, 3);
+    a.multiply(b, bad);
+    assertTrue(bad.equals(0.0));
+  }
+
+  @Test
+  public void invert() {
+    // needs a row swap - the first pivot is 0
+    double[] a = new double[18];
+    System.arraycopy(new double[] { 0, 1, 2, 1, 0, 3, 4, -3, 8 }, 0, a, 0, 9);
+    assertTrue(Matrix.invert(a, 0, 9, 3));
+    double[] inverse = new double[9];
+    System.arraycopy(a, 9, inverse, 0, 9);
+    assertArrayEquals(new double[] { -4.5, 7, -1.5, -2, 4, -1, 1.5, -2, 0.5 }, inverse, EPSILON);
+
+    double[] singular = new double[8];
+    System.arraycopy(new double[] { 1, 2, 2, 4 }, 0, singular, 0, 4);
+    assertFalse(Matrix.invert(singular, 0, 4, 2));
+    assertFalse(Matrix.invert(new double[8], 0, 4, 2));
+  }
+
+  @Test
+  public void rightPseudoInverse() {
+    Matrix a = matrix(new double[][] { { 1, 0, 1 }, { 0, 1, 1 } });
+    Matrix pinv = new Matrix(3, 2);
+    double[] work = new double[8];
+    assertTrue(a.rightPseudoInverse(pinv, work));
+    assertMatrix(new double[][] { { 2.0 / 3, -1.0 / 3 }, { -1.0 / 3, 2.0 / 3 }, { 1.0 / 3, 1.0 / 3 } }, pinv);
+    // a right inverse
+    assertMatrix(new double[][] { { 1, 0 }, { 0, 1 } }, a.multiply(pinv));
+    // same as the general one
+    assertArrayEquals(a.pseudoInverse().data, pinv.data, EPSILON);
+
+    // rows not independent
+    Matrix dependent = matrix(new double[][] { { 1, 2, 3 }, { 2, 4, 6 } });
+    assertFalse(dependent.rightPseudoInverse(pinv, work));
+    // too little work space
+    assertFalse(a.rightPseudoInverse(pinv, new double[7]));
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void elements() {
+    Matrix a = matrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } });
+    double[][] elements = a.getElements();
+    assertArrayEquals(new double[] { 1, 2, 3 }, elements[0], EPSILON);
+    assertArrayEquals(new double[] { 4, 5, 6 }, elements[1], EPSILON);
+    // a copy
+    elements[0][0] = 9;
+    assertEquals(1, a.get(0, 0), EPSILON);
+
+    a.setElements(new double[][] { { 1, 2 }, { 3, 4 }, { 5, 6 } });
+    assertMatrix(new double[][] { { 1, 2 }, { 3, 4 }, { 5, 6 } }, a);
+  }
+
+}
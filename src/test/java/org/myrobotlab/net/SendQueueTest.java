@@ -0,0 +1,165 @@
+package org.myrobotlab.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+import org.myrobotlab.framework.QueueStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class SendQueueTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(SendQueueTest.class);
+
+  /**
+   * writer which waits on a latch before writing - a slow client
+   */
+  static class SlowWriter implements Consumer<Object> {
+    List<Object> written = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public void accept(Object data) {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+      }
+      written.add(data);
+    }
+
+    void waitFor(int count) throws InterruptedException {
+      long start = System.currentTimeMillis();
+      while (written.size() < count && System.currentTimeMillis() - start < 3000) {
+        Thread.sleep(5);
+      }
+    }
+  }
+
+  private SendQueue queue(SlowWriter writer, long maxBytes, String coalesce, Map<String, Double> maxRates) {
+    SendQueue queue = new SendQueue("client", writer, maxBytes, (coalesce == null) ? null : new HashSet<>(Collections.singletonList(coalesce)), maxRates);
+    queue.start();
+    return queue;
+  }
+
+  @Test
+  public void fifo() throws InterruptedException {
+    SlowWriter writer = new SlowWriter();
+    writer.release.countDown();
+    SendQueue queue = queue(writer, Long.MAX_VALUE, null, null);
+    int count = 1000;
+    for (int i = 0; i < count; ++i) {
+      assertTrue(queue.offer("servo", "onServoEvent", "m" + i, 8));
+    }
+    writer.waitFor(count);
+    assertEquals(count, writer.written.size());
+    for (int i = 0; i < count; ++i) {
+      assertEquals("m" + i, writer.written.get(i));
+    }
+    queue.stop();
+  }
+
+  @Test
+  public void coalesceLatest() throws InterruptedException {
+    SlowWriter writer = new SlowWriter();
+    SendQueue queue = queue(writer, Long.MAX_VALUE, "onServoEvent", null);
+    queue.offer("servo", "onServoEvent", "first", 8);
+    assertTrue(writer.started.await(3, TimeUnit.SECONDS));
+    for (int i = 0; i < 100; ++i) {
+      queue.offer("servo", "onServoEvent", "pos" + i, 8);
+      queue.offer("runtime", "onStatus", "status" + i, 8);
+    }
+    // all status messages + one servo position
+    assertEquals(101, queue.size());
+    QueueStats stats = queue.getStats();
+    assertEquals(99, stats.coalesced);
+    assertEquals(101 * 8, stats.bytes);
+
+    writer.release.countDown();
+    writer.waitFor(102);
+    assertEquals(102, writer.written.size());
+    assertEquals("pos99", writer.written.get(1));
+    assertEquals("status99", writer.written.get(101));
+    queue.stop();
+  }
+
+  @Test
+  public void coalescePerDestination() throws InterruptedException {
+    SlowWriter writer = new SlowWriter();
+    SendQueue queue = queue(writer, Long.MAX_VALUE, "onServoEvent", null);
+    queue.offer("runtime", "onStatus", "first", 8);
+    assertTrue(writer.started.await(3, TimeUnit.SECONDS));
+    for (int i = 0; i < 10; ++i) {
+      queue.offer("servo", "onServoEvent", "servoGui", "a" + i, 8);
+      queue.offer("servo", "onServoEvent", "slider", "b" + i, 8);
+    }
+    // same publisher and callback - one latest value per destination
+    assertEquals(2, queue.size());
+    assertEquals(18, queue.getStats().coalesced);
+
+    writer.release.countDown();
+    writer.waitFor(3);
+    assertEquals(3, writer.written.size());
+    assertEquals("a9", writer.written.get(1));
+    assertEquals("b9", writer.written.get(2));
+    queue.stop();
+  }
+
+  @Test
+  public void rateCap() throws InterruptedException {
+    SlowWriter writer = new SlowWriter();
+    writer.release.countDown();
+    Map<String, Double> maxRates = new HashMap<>();
+    maxRates.put("servo.onServoEvent", 10.0);
+    SendQueue queue = queue(writer, Long.MAX_VALUE, null, maxRates);
+    long start = System.currentTimeMillis();
+    while (System.currentTimeMillis() - start < 450) {
+      queue.offer("servo", "onServoEvent", System.currentTimeMillis(), 8);
+      Thread.sleep(2);
+    }
+    queue.offer("servo", "onServoEvent", "last", 8);
+    Thread.sleep(300);
+    // 10 per second - about 5 in 450 ms and the latest value at the end
+    assertTrue(writer.written.size() + " written", writer.written.size() >= 4 && writer.written.size() <= 7);
+    assertEquals("last", writer.written.get(writer.written.size() - 1));
+    queue.stop();
+  }
+
+  @Test
+  public void byteBudget() throws InterruptedException {
+    SlowWriter writer = new SlowWriter();
+    SendQueue queue = queue(writer, 100, null, null);
+    queue.offer("cv", "onWebDisplay", "frame0", 40);
+    assertTrue(writer.started.await(3, TimeUnit.SECONDS));
+    for (int i = 1; i <= 10; ++i) {
+      queue.offer("cv", "onWebDisplay", "frame" + i, 40);
+    }
+    // 2 frames fit in 100 bytes - the oldest are dropped
+    assertEquals(2, queue.size());
+    assertFalse(queue.offer("cv", "onWebDisplay", "huge", 1000));
+    QueueStats stats = queue.getStats();
+    assertEquals(9, stats.dropped);
+    assertEquals(80, stats.bytes);
+
+    writer.release.countDown();
+    writer.waitFor(3);
+    assertEquals("frame9", writer.written.get(1));
+    assertEquals("frame10", writer.written.get(2));
+    queue.stop();
+  }
+
+}
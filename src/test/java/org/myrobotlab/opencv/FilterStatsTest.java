@@ -0,0 +1,114 @@
+package org.myrobotlab.opencv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class FilterStatsTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(FilterStatsTest.class);
+
+  @Test
+  public void percentiles() {
+    FilterStats stats = new FilterStats("gray");
+    assertEquals(0, stats.getStats().frames);
+    // 1 .. 100 us
+    for (int i = 100; i > 0; --i) {
+      stats.record(i * 1000L);
+    }
+    FilterStats s = stats.getStats();
+    log.info("{}", s);
+    assertEquals("gray", s.name);
+    assertEquals(100, s.frames);
+    assertEquals(50, s.meanUs);
+    assertEquals(50, s.p50Us);
+    assertEquals(99, s.p99Us);
+    assertEquals(100, s.maxUs);
+
+    stats.reset();
+    s = stats.getStats();
+    assertEquals(0, s.frames);
+    assertEquals(0, s.maxUs);
+  }
+
+  @Test
+  public void percentilesOfRecentFrames() {
+    FilterStats stats = new FilterStats("canny");
+    stats.record(1000000L);
+    for (int i = 0; i < FilterStats.SAMPLES; ++i) {
+      stats.record(2000L);
+    }
+    FilterStats s = stats.getStats();
+    // the slow first frame is out of the samples, not out of the max
+    assertEquals(FilterStats.SAMPLES + 1, s.frames);
+    assertEquals(2, s.p99Us);
+    assertEquals(1000, s.maxUs);
+  }
+
+  @Test
+  public void parseFilters() {
+    Map<String, String> filters = OpenCVBenchmark.parseFilters("Gray, pd:PyramidDown,OpenCVFilterCanny");
+    assertEquals("[gray, pd, canny]", filters.keySet().toString());
+    assertEquals("[Gray, PyramidDown, Canny]", filters.values().toString());
+    assertEquals(0, OpenCVBenchmark.parseFilters("").size());
+    try {
+      OpenCVBenchmark.parseFilters("Gray,Gray");
+      assertTrue("expected a duplicate name error", false);
+    } catch (IllegalArgumentException e) {
+      log.info("{}", e.getMessage());
+    }
+  }
+
+  @Test
+  public void allocatedBytes() throws Exception {
+    assertEquals(30, OpenCVBenchmark.allocatedBetween(new long[] { 10, 20 }, new long[] { 15, 45 }));
+    // a thread gone
+    assertEquals(-1, OpenCVBenchmark.allocatedBetween(new long[] { 10, 20 }, new long[] { 15, -1 }));
+    assertEquals(-1, OpenCVBenchmark.allocatedBetween(null, new long[] { 15 }));
+
+    CountDownLatch allocate = new CountDownLatch(1);
+    CountDownLatch allocated = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    List<byte[]> kept = new ArrayList<>();
+    Thread worker = new Thread(() -> {
+      try {
+        allocate.await();
+        for (int i = 0; i < 100; ++i) {
+          kept.add(new byte[10000]);
+        }
+        allocated.countDown();
+        done.await();
+      } catch (InterruptedException e) {
+      }
+    }, "allocTest-video-processor-1");
+    worker.start();
+    long[] ids = OpenCVBenchmark.getFrameThreadIds("allocTest");
+    assertEquals(1, ids.length);
+    assertEquals(worker.getId(), ids[0]);
+    long[] start = OpenCVBenchmark.getAllocatedBytes(ids);
+    if (start == null) {
+      log.info("no thread allocation counters in this jvm");
+      worker.interrupt();
+      return;
+    }
+    allocate.countDown();
+    allocated.await();
+    long[] end = OpenCVBenchmark.getAllocatedBytes(ids);
+    long bytes = OpenCVBenchmark.allocatedBetween(start, end);
+    assertTrue(String.format("%d bytes", bytes), bytes >= 1000000);
+    // the worker is gone
+    done.countDown();
+    worker.join();
+    assertEquals(-1, OpenCVBenchmark.allocatedBetween(start, OpenCVBenchmark.getAllocatedBytes(ids)));
+  }
+
+}
@@ -0,0 +1,130 @@
+package org.myrobotlab.opencv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.opencv.FramePipeline.StageStats;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class FramePipelineTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(FramePipelineTest.class);
+
+  static void work(long ms) throws InterruptedException {
+    Thread.sleep(ms);
+  }
+
+  @Test
+  public void orderAndOverlap() throws Exception {
+    List<Integer> out = Collections.synchronizedList(new ArrayList<>());
+    FramePipeline<Integer> pipeline = new FramePipeline<>("test", 2);
+    pipeline.addStage("pre", f -> work(10));
+    pipeline.addStage("detect", f -> work(30));
+    pipeline.addStage("publish", f -> out.add(f));
+    pipeline.start();
+
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 20; ++i) {
+      pipeline.submit(i);
+    }
+    pipeline.close(true);
+    long duration = System.currentTimeMillis() - start;
+
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 20; ++i) {
+      expected.add(i);
+    }
+    assertEquals(expected, out);
+    // 20 x 40 ms one after the other - about 20 x 30 ms pipelined
+    log.info("20 frames in {} ms", duration);
+    assertTrue(String.format("%d ms", duration), duration < 750);
+
+    List<StageStats> stats = pipeline.getStats();
+    assertEquals(3, stats.size());
+    StageStats detect = stats.get(1);
+    log.info("{}", detect);
+    assertEquals(20, detect.frames);
+    assertTrue(detect.avgLatencyUs >= 30000);
+    assertEquals(0, detect.queued);
+  }
+
+  @Test
+  public void errorDropsFrame() throws Exception {
+    List<Integer> out = Collections.synchronizedList(new ArrayList<>());
+    FramePipeline<Integer> pipeline = new FramePipeline<>("test", 1);
+    pipeline.addStage("odd", f -> {
+      if (f % 2 == 1) {
+        throw new IllegalStateException("odd frame");
+      }
+    });
+    pipeline.addStage("publish", f -> out.add(f));
+    pipeline.start();
+    for (int i = 0; i < 6; ++i) {
+      pipeline.submit(i);
+    }
+    pipeline.close(true);
+    assertEquals(List.of(0, 2, 4), out);
+    assertEquals(3, pipeline.getStats().get(0).errors);
+    assertEquals(3, pipeline.getStats().get(1).frames);
+  }
+
+  @Test
+  public void closeDrops() throws Exception {
+    List<Integer> out = Collections.synchronizedList(new ArrayList<>());
+    FramePipeline<Integer> pipeline = new FramePipeline<>("test", 4);
+    pipeline.addStage("slow", f -> work(50));
+    pipeline.addStage("publish", f -> out.add(f));
+    pipeline.start();
+    for (int i = 0; i < 4; ++i) {
+      pipeline.submit(i);
+    }
+    long start = System.currentTimeMillis();
+    pipeline.close(false);
+    assertTrue(System.currentTimeMillis() - start < 100);
+    assertTrue(out.size() < 4);
+  }
+
+  @Test
+  public void droppedFramesHandedToOnDrop() throws Exception {
+    List<Integer> out = Collections.synchronizedList(new ArrayList<>());
+    List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+    FramePipeline<Integer> pipeline = new FramePipeline<>("test", 4);
+    pipeline.setOnDrop(f -> dropped.add(f));
+    pipeline.addStage("odd", f -> {
+      if (f % 2 == 1) {
+        throw new IllegalStateException("odd frame");
+      }
+    });
+    pipeline.addStage("publish", f -> out.add(f));
+    pipeline.start();
+    for (int i = 0; i < 6; ++i) {
+      pipeline.submit(i);
+    }
+    pipeline.close(true);
+    assertEquals(List.of(0, 2, 4), out);
+    assertEquals(List.of(1, 3, 5), dropped);
+
+    // every frame is either published or dropped when closed early
+    out.clear();
+    dropped.clear();
+    pipeline = new FramePipeline<>("test", 4);
+    pipeline.setOnDrop(f -> dropped.add(f));
+    pipeline.addStage("slow", f -> work(50));
+    pipeline.addStage("publish", f -> out.add(f));
+    pipeline.start();
+    for (int i = 0; i < 6; ++i) {
+      pipeline.submit(i);
+    }
+    pipeline.close(false);
+    assertEquals(6, out.size() + dropped.size());
+    assertTrue(dropped.size() > 0);
+  }
+
+}
@@ -0,0 +1,78 @@
+package org.myrobotlab.opencv;
+
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_16S;
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_16U;
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_32F;
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_8S;
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_8U;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bytedeco.opencv.opencv_core.IplImage;
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.opencv.ImagePool.PoolStats;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class ImagePoolTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(ImagePoolTest.class);
+
+  @Test
+  public void keys() {
+    int[] depths = { IPL_DEPTH_8U, IPL_DEPTH_8S, IPL_DEPTH_16U, IPL_DEPTH_16S, IPL_DEPTH_32F };
+    Set<Long> keys = new HashSet<>();
+    for (int depth : depths) {
+      for (int channels = 1; channels <= 4; ++channels) {
+        keys.add(ImagePool.key(640, 480, depth, channels));
+        keys.add(ImagePool.key(480, 640, depth, channels));
+        keys.add(ImagePool.key(1920, 1080, depth, channels));
+      }
+    }
+    // signed depths don't collide with unsigned ones, width with height
+    assertEquals(depths.length * 4 * 3, keys.size());
+    assertEquals(ImagePool.key(320, 240, IPL_DEPTH_8U, 3), ImagePool.key(320, 240, IPL_DEPTH_8U, 3));
+    assertNotEquals(ImagePool.key(320, 240, IPL_DEPTH_8U, 3), ImagePool.key(320, 241, IPL_DEPTH_8U, 3));
+  }
+
+  @Test
+  public void stats() {
+    ImagePool pool = new ImagePool(2);
+    PoolStats stats = pool.getStats();
+    assertEquals(0, stats.getHitRate(), 0);
+    assertEquals(0, stats.leased);
+
+    // a copy - not changed by the pool
+    pool.stats.hits = 3;
+    pool.stats.misses = 1;
+    stats = pool.getStats();
+    pool.stats.hits = 0;
+    assertEquals(0.75, stats.getHitRate(), 0.0001);
+    log.info("{}", stats);
+  }
+
+  @Test
+  public void forget() {
+    ImagePool pool = new ImagePool(2);
+    IplImage kept = pool.lease(32, 24, IPL_DEPTH_8U, 3);
+    IplImage published = pool.lease(32, 24, IPL_DEPTH_8U, 3);
+    assertEquals(2, pool.getStats().leased);
+    pool.release(kept);
+    // a published frame's image is not coming back
+    pool.forget(published);
+    PoolStats stats = pool.getStats();
+    assertEquals(0, stats.leased);
+    assertEquals(0, stats.bytesInUse);
+    assertEquals(1, stats.free);
+    // the released one is leased again, never the forgotten one
+    assertTrue(kept == pool.lease(32, 24, IPL_DEPTH_8U, 3));
+    assertEquals(0, pool.getStats().free);
+    pool.clear();
+  }
+
+}
@@ -0,0 +1,242 @@
+package org.myrobotlab.opencv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.opencv.InferenceExecutor.BatchModel;
+import org.myrobotlab.opencv.InferenceExecutor.InferenceStats;
+import org.myrobotlab.opencv.InferenceExecutor.Model;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class InferenceExecutorTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(InferenceExecutorTest.class);
+
+  /**
+   * doubles its inputs, records the batch sizes - batches wait for the gate
+   */
+  static class Doubler implements BatchModel<Integer, Integer> {
+    final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch gate;
+    final CountDownLatch entered = new CountDownLatch(1);
+    final List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+
+    Doubler(CountDownLatch gate) {
+      this.gate = gate;
+    }
+
+    @Override
+    public List<Integer> infer(List<Integer> inputs) throws Exception {
+      entered.countDown();
+      gate.await();
+      batchSizes.add(inputs.size());
+      if (inputs.contains(-1)) {
+        throw new IllegalArgumentException("-1");
+      }
+      List<Integer> outputs = new ArrayList<>();
+      for (Integer input : inputs) {
+        outputs.add(input * 2);
+      }
+      return outputs;
+    }
+
+    @Override
+    public void discard(Integer input) {
+      discarded.add(input);
+    }
+  }
+
+  InferenceExecutor executor = new InferenceExecutor();
+
+  @Test
+  public void batchesPendingJobs() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    Doubler doubler = new Doubler(gate);
+    Model<Integer, Integer> model = executor.getModel("doubler", () -> doubler, 4, 0);
+    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    futures.add(model.submit(0));
+    doubler.entered.await();
+    for (int i = 1; i < 9; ++i) {
+      futures.add(model.submit(i));
+    }
+    gate.countDown();
+    for (int i = 0; i < 9; ++i) {
+      assertEquals(i * 2, (int) futures.get(i).get(1, TimeUnit.SECONDS));
+    }
+    // the first job alone, then the pending ones up to maxBatch
+    assertEquals(Arrays.asList(1, 4, 4), doubler.batchSizes);
+    InferenceStats stats = model.getStats();
+    log.info("{}", stats);
+    assertEquals(9, stats.jobs);
+    assertEquals(3, stats.batches);
+    assertEquals(2, stats.batchSizeHistogram[4]);
+    assertEquals(3.0, stats.avgBatchSize, 0.001);
+    model.release();
+  }
+
+  @Test
+  public void submitAllInOneBatch() throws Exception {
+    Doubler doubler = new Doubler(new CountDownLatch(0));
+    Model<Integer, Integer> model = executor.getModel("doubler", () -> doubler, 8, 0);
+    for (int i = 0; i < 20; ++i) {
+      List<CompletableFuture<Integer>> futures = model.submitAll(Arrays.asList(1, 2, 3));
+      assertEquals(6, (int) futures.get(2).get(1, TimeUnit.SECONDS));
+    }
+    for (int size : doubler.batchSizes) {
+      assertEquals(3, size);
+    }
+    model.release();
+  }
+
+  @Test
+  public void waitsForOtherUsers() throws Exception {
+    Doubler doubler = new Doubler(new CountDownLatch(0));
+    Model<Integer, Integer> camera1 = executor.getModel("shared", () -> doubler, 2, 200);
+    Model<Integer, Integer> camera2 = executor.getModel("shared", () -> new Doubler(null), 2, 200);
+    assertTrue(camera1 == camera2);
+    assertEquals(1, executor.getStats().size());
+    assertEquals(2, executor.getStats().get(0).users);
+
+    CompletableFuture<Integer> f1 = camera1.submit(1);
+    Thread.sleep(20);
+    assertTrue(!f1.isDone());
+    CompletableFuture<Integer> f2 = camera2.submit(2);
+    assertEquals(4, (int) f2.get(1, TimeUnit.SECONDS));
+    assertEquals(2, (int) f1.get());
+    assertEquals(Arrays.asList(2), doubler.batchSizes);
+
+    // the wait is bounded
+    long start = System.currentTimeMillis();
+    camera1.submit(3).get(1, TimeUnit.SECONDS);
+    long waited = System.currentTimeMillis() - start;
+    assertTrue(String.format("waited %d ms", waited), waited >= 150 && waited < 800);
+
+    camera1.release();
+    assertEquals(1, executor.getStats().size());
+    camera2.release();
+    assertEquals(0, executor.getStats().size());
+  }
+
+  @Test
+  public void errorsAndRelease() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    Doubler doubler = new Doubler(gate);
+    Model<Integer, Integer> model = executor.getModel("errors", () -> doubler, 2, 0);
+    CompletableFuture<Integer> first = model.submit(1);
+    doubler.entered.await();
+    CompletableFuture<Integer> bad = model.submit(-1);
+    CompletableFuture<Integer> sameBatch = model.submit(5);
+    gate.countDown();
+    assertEquals(2, (int) first.get(1, TimeUnit.SECONDS));
+    try {
+      sameBatch.get(1, TimeUnit.SECONDS);
+      assertTrue("expected the batch to fail", false);
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    assertTrue(bad.isCompletedExceptionally());
+    assertEquals(2, model.getStats().errors);
+    // a model error does not stop the model
+    assertEquals(14, (int) model.submit(7).get(1, TimeUnit.SECONDS));
+
+    model.release();
+    assertTrue(model.submit(1).isCompletedExceptionally());
+  }
+
+  @Test
+  public void setBatchingAppliesToRegisteredModels() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    Doubler doubler = new Doubler(gate);
+    Model<Integer, Integer> model = executor.getModel("batching", () -> doubler, 1, 0);
+    executor.setBatching(4, 50);
+    assertEquals(4, executor.getStats().get(0).maxBatch);
+    assertEquals(50, executor.getStats().get(0).maxWaitMs);
+
+    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    futures.add(model.submit(0));
+    doubler.entered.await();
+    for (int i = 1; i < 5; ++i) {
+      futures.add(model.submit(i));
+    }
+    gate.countDown();
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(i * 2, (int) futures.get(i).get(1, TimeUnit.SECONDS));
+    }
+    // the first alone, the next 4 in one batch
+    assertEquals(Arrays.asList(1, 4), doubler.batchSizes);
+    model.release();
+  }
+
+  @Test
+  public void cancelledJobsDiscarded() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    Doubler doubler = new Doubler(gate);
+    Model<Integer, Integer> model = executor.getModel("cancel", () -> doubler, 4, 0);
+    CompletableFuture<Integer> first = model.submit(1);
+    doubler.entered.await();
+    CompletableFuture<Integer> cancelled = model.submit(2);
+    CompletableFuture<Integer> next = model.submit(3);
+    cancelled.cancel(false);
+    gate.countDown();
+    assertEquals(2, (int) first.get(1, TimeUnit.SECONDS));
+    assertEquals(6, (int) next.get(1, TimeUnit.SECONDS));
+    // skipped, not run
+    assertEquals(Arrays.asList(1, 1), doubler.batchSizes);
+    assertEquals(Arrays.asList(2), doubler.discarded);
+
+    // pending when released
+    CountDownLatch gate2 = new CountDownLatch(1);
+    Doubler blocked = new Doubler(gate2);
+    Model<Integer, Integer> released = executor.getModel("released", () -> blocked, 1, 0);
+    released.submit(1);
+    blocked.entered.await();
+    CompletableFuture<Integer> pending = released.submit(2);
+    released.release();
+    gate2.countDown();
+    try {
+      pending.get(1, TimeUnit.SECONDS);
+      assertTrue("expected the pending job to be cancelled", false);
+    } catch (CancellationException e) {
+    }
+    // after release
+    assertTrue(released.submit(3).isCompletedExceptionally());
+    long deadline = System.currentTimeMillis() + 1000;
+    while (blocked.discarded.size() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    List<Integer> discarded = new ArrayList<>(blocked.discarded);
+    Collections.sort(discarded);
+    assertEquals(Arrays.asList(2, 3), discarded);
+    model.release();
+  }
+
+  @Test
+  public void latencyHistogram() {
+    assertEquals(0, InferenceExecutor.bucket(500));
+    assertEquals(0, InferenceExecutor.bucket(1000));
+    assertEquals(1, InferenceExecutor.bucket(1001));
+    assertEquals(InferenceExecutor.LATENCY_BOUNDS_MS.length, InferenceExecutor.bucket(10000000));
+
+    InferenceStats stats = new InferenceStats();
+    assertEquals(-1, stats.getLatencyPercentileMs(0.5));
+    stats.latencyHistogram[2] = 90;
+    stats.latencyHistogram[5] = 10;
+    assertEquals(5, stats.getLatencyPercentileMs(0.5));
+    assertEquals(5, stats.getLatencyPercentileMs(0.9));
+    assertEquals(50, stats.getLatencyPercentileMs(0.95));
+  }
+
+}
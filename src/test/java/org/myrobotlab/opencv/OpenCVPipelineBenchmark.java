@@ -0,0 +1,92 @@
+package org.myrobotlab.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.opencv.opencv_core.IplImage;
+import org.myrobotlab.service.OpenCV;
+import org.myrobotlab.service.Runtime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time per frame of a filter chain on the test images - the frames are
+ * decoded once, each invocation runs one frame through the filters the way
+ * the capture loop does, without display. For a whole OpenCV service with
+ * per filter percentiles and allocation rate use OpenCVBenchmark.
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar OpenCVPipelineBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenCVPipelineBenchmark {
+
+  @Param({ "Gray", "Gray,PyramidDown", "Smooth,Canny" })
+  public String chain;
+
+  OpenCV opencv;
+
+  ImageFileFrameGrabber grabber;
+
+  ImagePool pool = new ImagePool(8);
+
+  List<OpenCVFilter> filters = new ArrayList<>();
+
+  int frameIndex = 0;
+
+  @Setup
+  public void setup() throws Exception {
+    opencv = (OpenCV) Runtime.start("benchmark", "OpenCV");
+    for (Map.Entry<String, String> filter : OpenCVBenchmark.parseFilters(chain).entrySet()) {
+      filters.add((OpenCVFilter) opencv.addFilter(filter.getKey(), filter.getValue()));
+    }
+    grabber = new ImageFileFrameGrabber("src/test/resources/OpenCV");
+    grabber.setPreload(true);
+  }
+
+  @Benchmark
+  public void frame(Blackhole bh) throws InterruptedException {
+    Frame frame = grabber.grab();
+    OpenCVData data = new OpenCVData("benchmark", System.currentTimeMillis(), ++frameIndex, frame, pool, false);
+    for (OpenCVFilter filter : filters) {
+      IplImage input = filter.setData(data);
+      IplImage processed = filter.process(input);
+      filter.postProcess(processed);
+      bh.consume(processed);
+    }
+    data.release();
+  }
+
+  @TearDown
+  public void teardown() throws Exception {
+    grabber.release();
+    Runtime.release(opencv.getName());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(OpenCVPipelineBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -0,0 +1,105 @@
+package org.myrobotlab.sensor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.sensor.MotionScheduler.Scheduled;
+import org.myrobotlab.sensor.MotionScheduler.Stats;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class MotionSchedulerTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(MotionSchedulerTest.class);
+
+  /**
+   * nano time of the test - only moves when a test moves it
+   */
+  AtomicLong clock = new AtomicLong();
+
+  /**
+   * 10 ms ticks on 8 buckets, driven by step - no timer thread
+   */
+  MotionScheduler scheduler = new MotionScheduler("test-scheduler", 10, 8, clock::get, false);
+
+  void steps(int count) {
+    for (int i = 0; i < count; ++i) {
+      scheduler.step(0);
+    }
+  }
+
+  @Test
+  public void lockstep() {
+    List<Long> a = new ArrayList<>();
+    List<Long> b = new ArrayList<>();
+    scheduler.schedule(now -> a.add(scheduler.tick) && a.size() < 5, 30);
+    steps(1);
+    scheduler.schedule(now -> b.add(scheduler.tick) && b.size() < 5, 30);
+    steps(20);
+    // same interval, same ticks after the first
+    assertEquals(Arrays.asList(1L, 3L, 6L, 9L, 12L), a);
+    assertEquals(Arrays.asList(2L, 3L, 6L, 9L, 12L), b);
+    assertEquals(0, scheduler.getStats().motions);
+  }
+
+  @Test
+  public void aroundTheWheel() {
+    // 12 ticks on a wheel of 8 buckets
+    List<Long> ticks = new ArrayList<>();
+    scheduler.schedule(now -> ticks.add(scheduler.tick) && ticks.size() < 3, 120);
+    steps(30);
+    assertEquals(Arrays.asList(1L, 12L, 24L), ticks);
+  }
+
+  @Test
+  public void cancel() {
+    AtomicInteger count = new AtomicInteger();
+    Scheduled s = scheduler.schedule(now -> count.incrementAndGet() > 0, 10);
+    steps(3);
+    assertEquals(3, count.get());
+    s.cancel();
+    steps(3);
+    assertEquals(3, count.get());
+    assertEquals(0, scheduler.getStats().motions);
+  }
+
+  @Test
+  public void stats() {
+    List<Stats> published = new ArrayList<>();
+    scheduler.setStatsListener(stats -> published.add(stats));
+    scheduler.schedule(now -> true, 10);
+    scheduler.schedule(now -> {
+      // longer than a tick
+      clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(15));
+      return true;
+    }, 50);
+    steps(4);
+    Stats stats = scheduler.getStats();
+    assertEquals(4, stats.ticks);
+    assertEquals(2, stats.motions);
+    assertEquals(1, stats.overruns);
+    assertEquals(15000, stats.maxDurationUs);
+    assertEquals(1, stats.lastRun);
+
+    // a tick started a whole tick late
+    scheduler.step(TimeUnit.MILLISECONDS.toNanos(12));
+    stats = scheduler.getStats();
+    assertEquals(2, stats.overruns);
+    assertEquals(12000, stats.maxLatencyUs);
+
+    // once a second of ticks
+    assertEquals(0, published.size());
+    steps(95);
+    assertEquals(1, published.size());
+    assertEquals(100, published.get(0).ticks);
+  }
+
+}
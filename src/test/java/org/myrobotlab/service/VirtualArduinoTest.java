@@ -1,5 +1,6 @@
 package org.myrobotlab.service;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -12,6 +13,7 @@ import org.myrobotlab.arduino.virtual.MrlServo;
 import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.sensor.EncoderData;
+import org.myrobotlab.service.data.I2CSample;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
 import org.myrobotlab.service.interfaces.MrlCommPublisher;
@@ -22,6 +24,10 @@ public class VirtualArduinoTest extends AbstractServiceTest implements MrlCommPu
 
   private Msg msg = new Msg(this, null);
   String testPort = "testPort";
+  Integer i2cRequestId;
+  int[] i2cData;
+  Integer i2cSamplesRequestId;
+  int[] i2cSamples;
   Serial serial = (Serial) Runtime.start("dteSerial", "Serial");
 
   @Override
@@ -79,6 +85,37 @@ public class VirtualArduinoTest extends AbstractServiceTest implements MrlCommPu
     // device to respond.
     Thread.sleep(50);
     assertEquals(s.targetPosUs, 1500);
+
+    // several servos in one message - deviceId/b16 target triplets
+    serial.write(msg.servoAttach(1, 8, 180, -1, "s2"));
+    Thread.sleep(50);
+    MrlServo s2 = (MrlServo) va.getDevice(1);
+    assertNotNull(s2);
+    serial.write(msg.servoMoveToMicrosecondsMulti(new int[] { 0, 1000 >> 8, 1000 & 0xFF, 1, 2000 >> 8, 2000 & 0xFF }));
+    Thread.sleep(50);
+    assertEquals(1000, s.targetPosUs);
+    assertEquals(2000, s2.targetPosUs);
+
+    // i2c data comes back with the request id of the read
+    serial.write(msg.i2cBusAttach(2, 1));
+    Thread.sleep(50);
+    serial.write(msg.i2cWriteRead(2, 0x68, 3, 0x10, 42));
+    Thread.sleep(50);
+    assertEquals(42, i2cRequestId.intValue());
+    assertArrayEquals(new int[] { 0x10, 0x11, 0x12 }, i2cData);
+
+    // MrlComm samples a register on its own - 3 samples per message, each
+    // prefixed by its ms since the previous one
+    serial.write(msg.i2cSample(2, 0x68, 0x3B, 2, 10, 3, 7));
+    Thread.sleep(200);
+    serial.write(msg.i2cSample(2, 0x68, 0x3B, 2, 0, 0, 7));
+    assertEquals(7, i2cSamplesRequestId.intValue());
+    assertEquals(9, i2cSamples.length);
+    assertEquals(0, i2cSamples[0]);
+    assertEquals(0x3B, i2cSamples[1]);
+    assertEquals(0x3C, i2cSamples[2]);
+    assertEquals(0x3B, i2cSamples[7]);
+
     serial.write(msg.servoSetVelocity(0, 22));
     Thread.sleep(50);
     assertEquals(s.velocity, 22);
@@ -112,8 +149,8 @@ public class VirtualArduinoTest extends AbstractServiceTest implements MrlCommPu
   }
 
   @Override
-  public void publishAck(Integer function) {
-    log.info("Publish Ack for function {}", VirtualMsg.methodToString(function));
+  public void publishAck(Integer function, Integer seq) {
+    log.info("Publish Ack for function {} seq {}", VirtualMsg.methodToString(function), seq);
   }
 
   @Override
@@ -142,8 +179,18 @@ public class VirtualArduinoTest extends AbstractServiceTest implements MrlCommPu
   }
 
   @Override
-  public void publishI2cData(Integer deviceId, int[] data) {
-    log.info("Publish I2C - Device ID: {} Data: {}", deviceId, data);
+  public void publishI2cData(Integer deviceId, Integer requestId, int[] data) {
+    log.info("Publish I2C - Device ID: {} Request ID: {} Data: {}", deviceId, requestId, data);
+    i2cRequestId = requestId;
+    i2cData = data;
+  }
+
+  @Override
+  public I2CSample[] publishI2cSamples(Integer deviceId, Integer requestId, Long timestamp, int[] data) {
+    log.info("Publish I2C Samples - Device ID: {} Request ID: {} Timestamp: {} Data: {}", deviceId, requestId, timestamp, data);
+    i2cSamplesRequestId = requestId;
+    i2cSamples = data;
+    return null;
   }
 
   @Override
@@ -6,13 +6,14 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.UnsupportedEncodingException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Service;
-import org.myrobotlab.framework.TimeoutException;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.net.Http;
 import org.myrobotlab.test.AbstractTest;
@@ -145,13 +146,11 @@ public class WebGuiTest extends AbstractTest {
   }
 
   @Test
-  public void sendBlockingTest() throws InterruptedException, TimeoutException {
+  public void sendBlockingTest() throws InterruptedException, ExecutionException {
     String retVal = "retVal";
-    // Put directly in blocking list because sendBlocking() won't use it for
-    // local
-    // services
-    Runtime.getInstance().getInbox().blockingList.put("runtime.onBlocking", new Object[1]);
-    Object[] blockingListRet = Runtime.getInstance().getInbox().blockingList.get("runtime.onBlocking");
+    // Register the pending reply directly because sendBlocking() won't use it
+    // for local services
+    CompletableFuture<Object> reply = Runtime.getInstance().getInbox().pendingReplies.expect("runtime", "onBlocking", 1000);
 
     // Delay in a new thread so we can get our wait() call in first
     new Thread(() -> {
@@ -162,16 +161,7 @@ public class WebGuiTest extends AbstractTest {
       Http.post("http://localhost:8889/api/service/runtime/onBlocking", "[\"" + retVal + "\"]");
     }).start();
 
-    long timeout = 1000;
-    synchronized (blockingListRet) {
-      long startTs = System.currentTimeMillis();
-      blockingListRet.wait(timeout);
-      if (System.currentTimeMillis() - startTs >= timeout) {
-        throw new TimeoutException("timeout of %d exceeded", timeout);
-      }
-    }
-
-    assertEquals(retVal, blockingListRet[0]);
+    assertEquals(retVal, reply.get());
   }
 
 }
@@ -0,0 +1,163 @@
+package org.myrobotlab.service.abstracts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.config.SpeechSynthesisConfig;
+import org.myrobotlab.service.data.AudioData;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class AbstractSpeechSynthesisTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(AbstractSpeechSynthesisTest.class);
+
+  /**
+   * generates a byte of audio per part after a delay, plays nothing - records
+   * what was generated and played
+   */
+  static class StubSpeech extends AbstractSpeechSynthesis<SpeechSynthesisConfig> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * ms to generate a part by its text
+     */
+    transient Map<String, Long> delays = new ConcurrentHashMap<>();
+
+    /**
+     * generation of a part waits for it when set
+     */
+    transient volatile CountDownLatch gate = null;
+
+    transient List<String> generated = Collections.synchronizedList(new ArrayList<>());
+
+    transient List<String> played = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * parts whose generation started when each part was played
+     */
+    transient List<Integer> startedAtPlay = Collections.synchronizedList(new ArrayList<>());
+
+    transient AtomicInteger started = new AtomicInteger();
+
+    public StubSpeech(String n, String id) {
+      super(n, id);
+      config = new SpeechSynthesisConfig();
+    }
+
+    @Override
+    public AudioData generateAudioData(AudioData audioData, String toSpeak) throws Exception {
+      started.incrementAndGet();
+      CountDownLatch g = gate;
+      if (g != null) {
+        g.await();
+      }
+      Long delay = delays.get(toSpeak);
+      if (delay != null) {
+        Thread.sleep(delay);
+      }
+      generated.add(toSpeak);
+      audioData.inputStream = new ByteArrayInputStream(new byte[] { 1 });
+      return audioData;
+    }
+
+    @Override
+    AudioData play(AudioData data, boolean block) {
+      startedAtPlay.add(started.get());
+      played.add(utterances.get(data));
+      return data;
+    }
+
+    @Override
+    public void loadVoices() throws Exception {
+    }
+
+    void speak(List<String> texts) {
+      List<AudioData> parts = new ArrayList<>();
+      for (String text : texts) {
+        parts.add(new AudioData("stub" + parts.size() + ".mp3"));
+      }
+      process(parts, texts, false);
+    }
+  }
+
+  StubSpeech speech = new StubSpeech("stubSpeech", null);
+
+  @After
+  public void release() {
+    speech.releaseService();
+  }
+
+  @Test
+  public void inOrder() {
+    speech.getConfig().synthesisThreads = 4;
+    speech.getConfig().lookAhead = 4;
+    List<String> texts = Arrays.asList("one", "two", "three", "four", "five");
+    // later parts are generated faster
+    for (int i = 0; i < texts.size(); i++) {
+      speech.delays.put(texts.get(i), (long) (texts.size() - i) * 20);
+    }
+    speech.speak(texts);
+    assertEquals(texts, speech.played);
+    assertEquals(texts.size(), speech.generated.size());
+  }
+
+  @Test
+  public void lookAhead() {
+    int lookAhead = 2;
+    speech.getConfig().synthesisThreads = 4;
+    speech.getConfig().lookAhead = lookAhead;
+    List<String> texts = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      texts.add("part " + i);
+      speech.delays.put("part " + i, 10L);
+    }
+    speech.speak(texts);
+    assertEquals(texts, speech.played);
+    for (int i = 0; i < texts.size(); i++) {
+      int ahead = speech.startedAtPlay.get(i) - (i + 1);
+      assertTrue(String.format("%d parts generated ahead of part %d", ahead, i), ahead <= lookAhead);
+    }
+  }
+
+  @Test
+  public void stopCancelsPending() throws Exception {
+    speech.getConfig().synthesisThreads = 1;
+    speech.getConfig().lookAhead = 3;
+    speech.gate = new CountDownLatch(1);
+    Thread speaking = new Thread(() -> speech.speak(Arrays.asList("one", "two", "three", "four")));
+    speaking.start();
+
+    // the first part is generating, the next ones wait for the thread
+    long deadline = System.currentTimeMillis() + 5000;
+    while (speech.started.get() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, speech.started.get());
+    speech.stop();
+    speech.gate.countDown();
+    speaking.join(5000);
+
+    // the part generating is finished, not played - the rest never start
+    TimeUnit.MILLISECONDS.sleep(50);
+    assertEquals(0, speech.played.size());
+    assertEquals(Arrays.asList("one"), speech.generated);
+    assertEquals(1, speech.started.get());
+  }
+
+}
@@ -0,0 +1,102 @@
+package org.myrobotlab.string;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Substitutions of speech synthesis on an utterance of about 30 words, a few
+ * of them in the dictionary.
+ *
+ * <pre>
+ * replacer - WordReplacer, one pass
+ * replace  - a String.replace per substitution (AbstractSpeechSynthesis before
+ *            WordReplacer)
+ * compile  - building the WordReplacer, done when the substitutions changed
+ * </pre>
+ *
+ * Not a unit test - run main or "java -jar benchmarks.jar WordReplacerBenchmark"
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WordReplacerBenchmark {
+
+  @Param({ "10", "1000", "10000" })
+  public int substitutions;
+
+  Map<String, String> map = new HashMap<>();
+
+  WordReplacer replacer;
+
+  String text;
+
+  static String word(Random random) {
+    int length = 3 + random.nextInt(7);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; ++i) {
+      sb.append((char) ('a' + random.nextInt(26)));
+    }
+    return sb.toString();
+  }
+
+  @Setup
+  public void setup() {
+    Random random = new Random(1);
+    String[] words = new String[substitutions];
+    for (int i = 0; i < substitutions; ++i) {
+      words[i] = word(random);
+      map.put(words[i], word(random));
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 30; ++i) {
+      sb.append((i % 10 == 0) ? words[random.nextInt(substitutions)] : word(random)).append((i % 8 == 7) ? ". " : " ");
+    }
+    text = sb.toString().trim();
+    replacer = new WordReplacer(map);
+  }
+
+  @Benchmark
+  public String replacer() {
+    return replacer.replace(text);
+  }
+
+  @Benchmark
+  public String replace() {
+    String toSpeak = text;
+    for (String substitute : map.keySet()) {
+      toSpeak = toSpeak.replace(substitute, map.get(substitute));
+    }
+    return toSpeak;
+  }
+
+  @Benchmark
+  public WordReplacer compile() {
+    return new WordReplacer(map);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(WordReplacerBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
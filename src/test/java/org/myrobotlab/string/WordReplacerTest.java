@@ -0,0 +1,85 @@
+package org.myrobotlab.string;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class WordReplacerTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(WordReplacerTest.class);
+
+  static WordReplacer replacer(String... pairs) {
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < pairs.length; i += 2) {
+      map.put(pairs[i], pairs[i + 1]);
+    }
+    return new WordReplacer(map);
+  }
+
+  @Test
+  public void wholeWords() {
+    WordReplacer r = replacer("inmoov", "in moov", "worke", "worky");
+    assertEquals("hello in moov, i am worky.", r.replace("hello inmoov, i am worke."));
+    // part of a longer word
+    assertEquals("inmoovs workers", r.replace("inmoovs workers"));
+    assertEquals("in moov", r.replace("inmoov"));
+    String unchanged = "nothing to replace";
+    assertSame(unchanged, r.replace(unchanged));
+  }
+
+  @Test
+  public void longestAndLeftmost() {
+    WordReplacer r = replacer("new", "knew", "new york", "big apple", "york", "yorkshire");
+    assertEquals("the big apple times", r.replace("the new york times"));
+    assertEquals("knew or yorkshire", r.replace("new or york"));
+    // overlapping - the leftmost wins
+    r = replacer("a b", "x", "b c", "y");
+    assertEquals("x c", r.replace("a b c"));
+  }
+
+  @Test
+  public void notMatchedAgain() {
+    WordReplacer r = replacer("a", "b", "b", "c");
+    assertEquals("b c", r.replace("a b"));
+  }
+
+  @Test
+  public void punctuation() {
+    // not a letter at its end - matches before anything
+    WordReplacer r = replacer("mr.", "mister", "%", " percent");
+    assertEquals("mister smith 50 percent", r.replace("mr. smith 50%"));
+    assertEquals("misterx", r.replace("mr.x"));
+  }
+
+  @Test
+  public void sameAsReplace() {
+    // words with no word in another - one pass gives the result of a
+    // String.replace per word with whole word matching
+    Random random = new Random(3);
+    Map<String, String> map = new HashMap<>();
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; ++i) {
+      String word = "w" + i + "x";
+      map.put(word, "r" + i);
+    }
+    for (int i = 0; i < 2000; ++i) {
+      text.append("w").append(random.nextInt(2000)).append("x ");
+    }
+    WordReplacer r = new WordReplacer(map);
+    String expected = text.toString();
+    for (Map.Entry<String, String> e : map.entrySet()) {
+      expected = expected.replaceAll("\\b" + e.getKey() + "\\b", e.getValue());
+    }
+    assertEquals(expected, r.replace(text.toString()));
+    log.info("{} words {} states", r.size(), r.getStateCount());
+  }
+
+}